@@ -29,6 +29,13 @@ android {
         sourceCompatibility = JavaVersion.VERSION_1_8
         targetCompatibility = JavaVersion.VERSION_1_8
     }
+    testOptions {
+        unitTests.all {
+            // The *Benchmark classes measure wall-clock throughput and only run when asked:
+            // ./gradlew test -Dbenchmark=true
+            it.systemProperty("benchmark", System.getProperty("benchmark") ?: "false")
+        }
+    }
 }
 
 dependencies {
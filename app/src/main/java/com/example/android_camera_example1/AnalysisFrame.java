@@ -0,0 +1,96 @@
+package com.example.android_camera_example1;
+
+import java.nio.ByteBuffer;
+
+// AnalysisFrame is a YUV_420_888 frame for a FrameAnalyzer: three planes with their row and
+// pixel strides, as laid out by Image.Plane, plus the sensor timestamp. It holds no Android
+// types so analyzers can be tested with synthetic plane data. The owner (usually the Image)
+// is closed once analysis is done or the frame is dropped.
+public class AnalysisFrame implements AutoCloseable {
+    // One image plane. Sample (x, y) is at y * rowStride + x * pixelStride.
+    public static class Plane {
+        private final ByteBuffer mBuffer;
+        private final int mRowStride;
+        private final int mPixelStride;
+
+        public Plane(ByteBuffer buffer, int rowStride, int pixelStride) {
+            mBuffer = buffer;
+            mRowStride = rowStride;
+            mPixelStride = pixelStride;
+        }
+
+        public ByteBuffer getBuffer() {
+            return mBuffer;
+        }
+
+        public int getRowStride() {
+            return mRowStride;
+        }
+
+        public int getPixelStride() {
+            return mPixelStride;
+        }
+    }
+
+    private final int mWidth;
+    private final int mHeight;
+    private final long mTimestampNanos;
+    private final Plane mY;
+    private final Plane mU;
+    private final Plane mV;
+    private AutoCloseable mOwner;
+
+    // Constructor for the AnalysisFrame class. owner may be null for synthetic frames.
+    public AnalysisFrame(int width, int height, long timestampNanos, Plane y, Plane u, Plane v, AutoCloseable owner) {
+        mWidth = width;
+        mHeight = height;
+        mTimestampNanos = timestampNanos;
+        mY = y;
+        mU = u;
+        mV = v;
+        mOwner = owner;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public long getTimestampNanos() {
+        return mTimestampNanos;
+    }
+
+    public Plane getY() {
+        return mY;
+    }
+
+    public Plane getU() {
+        return mU;
+    }
+
+    public Plane getV() {
+        return mV;
+    }
+
+    // Release the memory behind the frame. Safe to call more than once.
+    @Override
+    public void close() {
+        AutoCloseable owner;
+        synchronized (this) {
+            owner = mOwner;
+            mOwner = null;
+        }
+        if (owner == null) {
+            return;
+        }
+
+        try {
+            owner.close();
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to release analysis frame", e);
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package com.example.android_camera_example1;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+// AsyncImageWriter moves image writes off the camera callback thread. Images are queued in a
+// bounded queue and written by up to workerCount worker tasks on the given executor; a worker
+// exits when the queue is empty, so an idle writer holds no thread. Each record is inserted
+// as pending, written, then published, so partially written files never show up in the gallery.
+// When several images are queued (a burst), a worker inserts their records in one batch.
+// Image data is passed as a ByteBuffer, or as several written one after another (a gather
+// write), and written as-is, without a copy onto the heap. Several cameras can share one writer:
+// each submits as its own source, and the queue serves the sources round-robin with a fair
+// share of the capacity each (see FairWriteQueue).
+public class AsyncImageWriter<U> {
+    // Storage operations. FileHelper implements these with a ContentResolver and MediaStore;
+    // unit tests use a fake store so throughput and latency can be measured on the JVM.
+    public interface MediaStore<U> {
+        // Insert one pending record per display name, in order, and return their handles.
+        List<U> insertPending(List<String> displayNames) throws IOException;
+
+        // Write the remaining bytes of each buffer in data, in order, to a pending record.
+        void write(U uri, ByteBuffer[] data) throws IOException;
+
+        // Clear the pending flag so the record becomes visible.
+        void publish(U uri) throws IOException;
+
+        // Remove a pending record whose write failed.
+        void delete(U uri);
+    }
+
+    // A queued image write and the future that receives its final handle.
+    private static class WriteJob<U> {
+        final Object source;
+        final String displayName;
+        final ByteBuffer[] data;
+        final long submitNanos;
+        final CompletableFuture<U> result = new CompletableFuture<>();
+
+        WriteJob(Object source, String displayName, ByteBuffer[] data, long submitNanos) {
+            this.source = source;
+            this.displayName = displayName;
+            this.data = data;
+            this.submitNanos = submitNanos;
+        }
+    }
+
+    // Source of submit() calls that do not name one.
+    private static final Object DEFAULT_SOURCE = new Object();
+
+    private final MediaStore<U> mStore;
+    private final FairWriteQueue<WriteJob<U>> mQueue;
+    private final int mWorkerCount;
+    private final int mMaxBatchSize;
+    private final Executor mExecutor;
+    private int mActiveWorkers; // Worker tasks scheduled or running, guarded by this.
+    private final Map<Object, Integer> mUnfinished = new HashMap<>(); // Jobs not yet done per source, guarded by this.
+    private final LatencyHistogram mLatency = new LatencyHistogram(); // Submit to published.
+    private final LatencyHistogram mWriteLatency = new LatencyHistogram(); // Write and publish of one image.
+
+    // Counters for monitoring, guarded by this.
+    private long mImagesWritten;
+    private long mImagesFailed;
+    private long mBytesWritten;
+    private long mBatchCount;
+    private long mFirstSubmitNanos;
+    private long mLastCompleteNanos;
+
+    private final Runnable mWorkerTask = new Runnable() {
+        @Override
+        public void run() {
+            workLoop();
+        }
+    };
+
+    // Constructor for the AsyncImageWriter class. executor runs the worker tasks and should
+    // have at least workerCount threads.
+    public AsyncImageWriter(MediaStore<U> store, int queueCapacity, int workerCount, int maxBatchSize,
+                            Executor executor) {
+        if (queueCapacity < 1 || workerCount < 1 || maxBatchSize < 1) {
+            throw new IllegalArgumentException("queueCapacity, workerCount and maxBatchSize must be at least 1");
+        }
+        mStore = store;
+        mQueue = new FairWriteQueue<>(queueCapacity);
+        mWorkerCount = workerCount;
+        mMaxBatchSize = maxBatchSize;
+        mExecutor = executor;
+    }
+
+    // Queue the remaining bytes of data for writing. The buffer must stay valid until the future
+    // completes. Blocks while the queue is full, which pushes back on the caller.
+    public CompletableFuture<U> submit(String displayName, ByteBuffer data) {
+        return submit(displayName, new ByteBuffer[] {data});
+    }
+
+    // Queue the remaining bytes of several buffers for writing as one image, in order, for
+    // example new header bytes followed by the original data. The buffers must stay valid until
+    // the future completes.
+    public CompletableFuture<U> submit(String displayName, ByteBuffer[] data) {
+        return submit(DEFAULT_SOURCE, displayName, data);
+    }
+
+    // Queue an image on behalf of source, typically one camera's FileHelper. Blocks while the
+    // queue is full or source holds its fair share of it.
+    public CompletableFuture<U> submit(Object source, String displayName, ByteBuffer[] data) {
+        WriteJob<U> job = new WriteJob<>(source, displayName, data, System.nanoTime());
+        synchronized (this) {
+            if (mFirstSubmitNanos == 0) {
+                mFirstSubmitNanos = job.submitNanos;
+            }
+            Integer unfinished = mUnfinished.get(source);
+            mUnfinished.put(source, unfinished != null ? unfinished + 1 : 1);
+        }
+
+        try {
+            mQueue.put(source, job);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.result.completeExceptionally(new IOException("Interrupted while queueing " + displayName, e));
+            finish(job);
+            return job.result;
+        }
+
+        synchronized (this) {
+            if (mActiveWorkers >= mWorkerCount) {
+                return job.result; // A running worker picks the job up.
+            }
+            mActiveWorkers++;
+        }
+        try {
+            mExecutor.execute(mWorkerTask);
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                mActiveWorkers--;
+                notifyAll();
+            }
+            failQueued(new IOException("Writer executor is not running", e));
+        }
+        return job.result;
+    }
+
+    // Wait until every queued image has been written.
+    public synchronized void shutdown() {
+        while (mActiveWorkers > 0) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Wait until every image queued by source has been written or has failed. Images of other
+    // sources on a shared writer are not waited for, beyond the round-robin turns they take.
+    public synchronized void shutdown(Object source) {
+        while (mUnfinished.containsKey(source)) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Worker loop: take one job, add whatever else is queued up to the batch size, write them.
+    // Exits when the queue is empty.
+    private void workLoop() {
+        List<WriteJob<U>> batch = new ArrayList<>(mMaxBatchSize);
+        while (true) {
+            WriteJob<U> first = mQueue.poll();
+            if (first == null) {
+                synchronized (this) {
+                    // submit() queues before it checks mActiveWorkers, so a job queued after the
+                    // poll above is either seen here or gets a worker of its own.
+                    if (mQueue.isEmpty()) {
+                        mActiveWorkers--;
+                        notifyAll();
+                        return;
+                    }
+                }
+                continue;
+            }
+
+            batch.clear();
+            batch.add(first);
+            mQueue.drainTo(batch, mMaxBatchSize - 1);
+            writeBatch(batch);
+        }
+    }
+
+    // Insert the batch as pending records in one call, then write and publish each image.
+    private void writeBatch(List<WriteJob<U>> batch) {
+        List<String> names = new ArrayList<>(batch.size());
+        for (WriteJob<U> job : batch) {
+            names.add(job.displayName);
+        }
+
+        List<U> uris;
+        try {
+            uris = mStore.insertPending(names);
+            if (uris.size() != batch.size()) {
+                throw new IOException("Inserted " + uris.size() + " records for " + batch.size() + " images.");
+            }
+        } catch (IOException e) {
+            for (WriteJob<U> job : batch) {
+                fail(job, e);
+            }
+            return;
+        }
+
+        synchronized (this) {
+            mBatchCount++;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            WriteJob<U> job = batch.get(i);
+            U uri = uris.get(i);
+            long writeStart = System.nanoTime();
+            try {
+                mStore.write(uri, duplicate(job.data));
+                mStore.publish(uri);
+                mWriteLatency.record(System.nanoTime() - writeStart);
+            } catch (IOException e) {
+                mStore.delete(uri);
+                fail(job, e);
+                continue;
+            }
+            complete(job, uri);
+        }
+    }
+
+    private void complete(WriteJob<U> job, U uri) {
+        long now = System.nanoTime();
+        mLatency.record(now - job.submitNanos);
+        synchronized (this) {
+            mImagesWritten++;
+            for (ByteBuffer buffer : job.data) {
+                mBytesWritten += buffer.remaining();
+            }
+            mLastCompleteNanos = now;
+        }
+        job.result.complete(uri);
+        finish(job); // After the callbacks, which release the image.
+    }
+
+    // Views on data that the store can consume without moving the job's buffers.
+    private static ByteBuffer[] duplicate(ByteBuffer[] data) {
+        ByteBuffer[] views = new ByteBuffer[data.length];
+        for (int i = 0; i < data.length; i++) {
+            views[i] = data[i].duplicate();
+        }
+        return views;
+    }
+
+    // Fail every queued job, for when no worker can be scheduled to write them.
+    private void failQueued(IOException e) {
+        List<WriteJob<U>> queued = new ArrayList<>();
+        mQueue.drainTo(queued, Integer.MAX_VALUE);
+        for (WriteJob<U> job : queued) {
+            fail(job, e);
+        }
+    }
+
+    private void fail(WriteJob<U> job, IOException e) {
+        synchronized (this) {
+            mImagesFailed++;
+        }
+        job.result.completeExceptionally(e);
+        finish(job);
+    }
+
+    // Count a job of its source as done, for shutdown(Object).
+    private synchronized void finish(WriteJob<U> job) {
+        int unfinished = mUnfinished.get(job.source) - 1;
+        if (unfinished == 0) {
+            mUnfinished.remove(job.source);
+            notifyAll();
+        } else {
+            mUnfinished.put(job.source, unfinished);
+        }
+    }
+
+    public int getWorkerCount() {
+        return mWorkerCount;
+    }
+
+    // Number of worker tasks scheduled or running.
+    public synchronized int getActiveWorkerCount() {
+        return mActiveWorkers;
+    }
+
+    public int getQueueDepth() {
+        return mQueue.size();
+    }
+
+    public int getQueueCapacity() {
+        return mQueue.getCapacity();
+    }
+
+    // The executor the writes run on, for other storage work that must stay off the caller's thread.
+    public Executor getExecutor() {
+        return mExecutor;
+    }
+
+    // Images queued by one source, for monitoring.
+    public int getQueueDepth(Object source) {
+        return mQueue.size(source);
+    }
+
+    public synchronized long getImagesWritten() {
+        return mImagesWritten;
+    }
+
+    public synchronized long getImagesFailed() {
+        return mImagesFailed;
+    }
+
+    public synchronized long getBytesWritten() {
+        return mBytesWritten;
+    }
+
+    // Number of insert batches; lower than getImagesWritten() when bursts were batched.
+    public synchronized long getBatchCount() {
+        return mBatchCount;
+    }
+
+    public double getAverageLatencyMillis() {
+        return mLatency.getMeanNanos() / 1e6;
+    }
+
+    public double getMaxLatencyMillis() {
+        return mLatency.getMaxMillis();
+    }
+
+    // Time from submit() until the image is published, including time spent queued.
+    public LatencyHistogram getLatencyHistogram() {
+        return mLatency;
+    }
+
+    // Time to write and publish one image, excluding queueing and the batched insert.
+    public LatencyHistogram getWriteLatencyHistogram() {
+        return mWriteLatency;
+    }
+
+    // Write throughput from the first submit to the last completed write.
+    public synchronized double getThroughputMegabytesPerSecond() {
+        long elapsed = mLastCompleteNanos - mFirstSubmitNanos;
+        if (mImagesWritten == 0 || elapsed <= 0) {
+            return 0;
+        }
+        return mBytesWritten / (1024.0 * 1024.0) / (elapsed / 1e9);
+    }
+}
@@ -0,0 +1,272 @@
+package com.example.android_camera_example1;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// BufferPool hands out reusable direct ByteBuffers for data that must outlive its Image, so
+// continuous capture does not allocate a new buffer per frame. Buffers are grouped in
+// power-of-two size buckets and handed out as reference-counted leases. The total memory held
+// by the pool (leased plus idle) never exceeds a hard cap; idle buckets are evicted first when
+// room is needed and after they have been unused for the idle timeout.
+public class BufferPool {
+    private static final int MIN_BUCKET_SIZE = 4 * 1024; // Smallest buffer the pool hands out.
+    private static final long DEFAULT_IDLE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    // Source of monotonic time, replaceable in tests.
+    interface NanoClock {
+        long nanoTime();
+    }
+
+    // A reference-counted lease on a pooled buffer. The buffer returns to the pool when the
+    // last reference is released.
+    public final class Lease implements AutoCloseable {
+        private final ByteBuffer mBuffer;
+        private final AtomicInteger mReferences = new AtomicInteger(1);
+
+        private Lease(ByteBuffer buffer) {
+            mBuffer = buffer;
+        }
+
+        // The leased buffer, cleared with its limit set to the requested size.
+        public ByteBuffer getBuffer() {
+            return mBuffer;
+        }
+
+        // Add a reference, for example when the buffer is shared with a second consumer.
+        public Lease retain() {
+            while (true) {
+                int references = mReferences.get();
+                if (references == 0) {
+                    throw new IllegalStateException("Lease already released");
+                }
+                if (mReferences.compareAndSet(references, references + 1)) {
+                    return this;
+                }
+            }
+        }
+
+        // Drop a reference; the last one returns the buffer to the pool.
+        public void release() {
+            int references = mReferences.decrementAndGet();
+            if (references < 0) {
+                mReferences.incrementAndGet();
+                throw new IllegalStateException("Lease already released");
+            }
+            if (references == 0) {
+                recycle(mBuffer);
+            }
+        }
+
+        public int getReferenceCount() {
+            return mReferences.get();
+        }
+
+        @Override
+        public void close() {
+            release();
+        }
+    }
+
+    // Idle buffers of one size and the last time the bucket was used.
+    private static class Bucket {
+        final ArrayDeque<ByteBuffer> idle = new ArrayDeque<>();
+        long lastUsedNanos;
+    }
+
+    private final long mMaxBytes;
+    private final long mIdleTimeoutNanos;
+    private final NanoClock mClock;
+    private final TreeMap<Integer, Bucket> mBuckets = new TreeMap<>();
+
+    // Counters for monitoring, guarded by this.
+    private long mBytesInUse; // Capacity of leased buffers.
+    private long mBytesIdle; // Capacity of buffers waiting in buckets.
+    private long mPeakBytes;
+    private long mHits;
+    private long mMisses;
+    private long mRejections;
+    private long mEvictions;
+
+    // Constructor for the BufferPool class.
+    public BufferPool(long maxBytes) {
+        this(maxBytes, DEFAULT_IDLE_TIMEOUT_NANOS, new NanoClock() {
+            @Override
+            public long nanoTime() {
+                return System.nanoTime();
+            }
+        });
+    }
+
+    BufferPool(long maxBytes, long idleTimeoutNanos, NanoClock clock) {
+        if (maxBytes < MIN_BUCKET_SIZE) {
+            throw new IllegalArgumentException("maxBytes must be at least " + MIN_BUCKET_SIZE + ": " + maxBytes);
+        }
+        mMaxBytes = maxBytes;
+        mIdleTimeoutNanos = idleTimeoutNanos;
+        mClock = clock;
+    }
+
+    // Lease a buffer of at least size bytes. Returns null if it would exceed the memory cap even
+    // after evicting idle buffers; the caller should then fall back to an unpooled copy.
+    public Lease acquire(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("size must not be negative: " + size);
+        }
+        if (size > mMaxBytes / 2) {
+            synchronized (this) {
+                mRejections++; // A buffer this large would starve every other bucket.
+            }
+            return null;
+        }
+
+        int bucketSize = bucketSizeFor(size);
+        ByteBuffer buffer;
+        synchronized (this) {
+            long now = mClock.nanoTime();
+            trimIdle(now);
+
+            Bucket bucket = mBuckets.get(bucketSize);
+            buffer = bucket != null ? bucket.idle.pollFirst() : null;
+            if (buffer != null) {
+                mHits++;
+                mBytesIdle -= bucketSize;
+            } else {
+                mMisses++;
+                if (!makeRoom(bucketSize)) {
+                    mRejections++;
+                    return null;
+                }
+                if (bucket == null) {
+                    bucket = new Bucket();
+                    mBuckets.put(bucketSize, bucket);
+                }
+            }
+            bucket.lastUsedNanos = now;
+            mBytesInUse += bucketSize;
+            mPeakBytes = Math.max(mPeakBytes, mBytesInUse + mBytesIdle);
+        }
+
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(bucketSize);
+        }
+        buffer.clear();
+        buffer.limit(size);
+        return new Lease(buffer);
+    }
+
+    // Evict buckets that have been idle for longer than the idle timeout.
+    public synchronized void trim() {
+        trimIdle(mClock.nanoTime());
+    }
+
+    // Drop every idle buffer.
+    public synchronized void clear() {
+        for (Bucket bucket : mBuckets.values()) {
+            evict(bucket, bucket.idle.size());
+        }
+        removeEmptyBuckets();
+    }
+
+    private synchronized void recycle(ByteBuffer buffer) {
+        int bucketSize = buffer.capacity();
+        mBytesInUse -= bucketSize;
+
+        Bucket bucket = mBuckets.get(bucketSize);
+        if (bucket == null) {
+            bucket = new Bucket();
+            mBuckets.put(bucketSize, bucket);
+        }
+        bucket.idle.addFirst(buffer); // Most recently used first, so warm buffers are reused.
+        bucket.lastUsedNanos = mClock.nanoTime();
+        mBytesIdle += bucketSize;
+    }
+
+    // Free idle buffers, least recently used buckets first, until bytes more fit under the cap.
+    private boolean makeRoom(int bytes) {
+        while (mBytesInUse + mBytesIdle + bytes > mMaxBytes) {
+            Bucket oldest = null;
+            for (Bucket bucket : mBuckets.values()) {
+                if (!bucket.idle.isEmpty() && (oldest == null || bucket.lastUsedNanos < oldest.lastUsedNanos)) {
+                    oldest = bucket;
+                }
+            }
+            if (oldest == null) {
+                return false; // Everything left is leased.
+            }
+            evict(oldest, 1);
+        }
+        return true;
+    }
+
+    private void trimIdle(long now) {
+        for (Bucket bucket : mBuckets.values()) {
+            if (!bucket.idle.isEmpty() && now - bucket.lastUsedNanos > mIdleTimeoutNanos) {
+                evict(bucket, bucket.idle.size());
+            }
+        }
+        removeEmptyBuckets();
+    }
+
+    private void evict(Bucket bucket, int count) {
+        for (int i = 0; i < count && !bucket.idle.isEmpty(); i++) {
+            ByteBuffer buffer = bucket.idle.pollLast(); // Coldest buffer first.
+            mBytesIdle -= buffer.capacity();
+            mEvictions++;
+        }
+    }
+
+    private void removeEmptyBuckets() {
+        Iterator<Map.Entry<Integer, Bucket>> iterator = mBuckets.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getValue().idle.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    // Round up to the next power of two, with a minimum bucket size.
+    static int bucketSizeFor(int size) {
+        if (size <= MIN_BUCKET_SIZE) {
+            return MIN_BUCKET_SIZE;
+        }
+        int highest = Integer.highestOneBit(size);
+        return highest == size ? size : highest << 1;
+    }
+
+    public long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    public synchronized long getBytesInUse() {
+        return mBytesInUse;
+    }
+
+    public synchronized long getBytesIdle() {
+        return mBytesIdle;
+    }
+
+    public synchronized long getPeakBytes() {
+        return mPeakBytes;
+    }
+
+    public synchronized long getHits() {
+        return mHits;
+    }
+
+    public synchronized long getMisses() {
+        return mMisses;
+    }
+
+    public synchronized long getRejections() {
+        return mRejections;
+    }
+
+    public synchronized long getEvictions() {
+        return mEvictions;
+    }
+}
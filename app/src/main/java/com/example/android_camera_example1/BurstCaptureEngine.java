@@ -0,0 +1,330 @@
+package com.example.android_camera_example1;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+// BurstCaptureEngine drives burst and continuous still capture. Captured frames are tagged
+// with a per-frame sequence number and queued in a bounded in-flight queue that a drain task on
+// the given executor delivers into a FrameSink. At most one drain task runs at a time, so frames
+// arrive in order, and none is scheduled while the queue is empty. When the sink falls behind,
+// the backpressure policy decides whether the producer blocks or which frame is dropped.
+public class BurstCaptureEngine<T> {
+    // Frames one drain task delivers before it gives its thread back and continues in a new task
+    // at the back of the executor's queue. Each engine runs at most one drain task, so one
+    // camera's frame delivery holds at most one thread of a shared executor, and only for this
+    // many frames while other cameras' drains and analysis wait for a thread.
+    static final int MAX_FRAMES_PER_DRAIN = 4;
+
+    // What to do with a new frame when the in-flight queue is full.
+    public enum BackpressurePolicy {
+        BLOCK, // Block the producer until the sink frees a slot.
+        DROP_OLDEST, // Drop the oldest queued frame to make room for the new one.
+        DROP_NEWEST // Drop the new frame and keep the queued ones.
+    }
+
+    // Submits capture requests to the camera. Camera implements this with
+    // CameraCaptureSession.captureBurst/setRepeatingBurst; unit tests use a fake device.
+    public interface RequestSubmitter {
+        // Submit a burst of count still requests.
+        boolean submitBurst(int count);
+
+        // Start or stop a repeating still burst.
+        boolean setRepeatingBurst(boolean enabled);
+    }
+
+    // Receives frames from the drain task in sequence order.
+    public interface FrameSink<T> {
+        // Consume a frame, typically by encoding or writing it.
+        void onFrame(long sequence, T frame);
+
+        // Called for frames dropped by the backpressure policy so they can be released.
+        void onFrameDropped(long sequence, T frame);
+    }
+
+    // A queued frame and its sequence number.
+    private static class SequencedFrame<T> {
+        final long sequence;
+        final T frame;
+
+        SequencedFrame(long sequence, T frame) {
+            this.sequence = sequence;
+            this.frame = frame;
+        }
+    }
+
+    private final RequestSubmitter mSubmitter;
+    private final FrameSink<T> mSink;
+    private final int mCapacity;
+    private final ArrayDeque<SequencedFrame<T>> mQueue;
+    private final Executor mExecutor;
+    private BackpressurePolicy mPolicy;
+    private boolean mRunning;
+    private boolean mDraining; // A drain task is scheduled or running.
+    private boolean mContinuous;
+
+    // Counters for monitoring, guarded by this.
+    private long mNextSequence;
+    private long mFramesRequested;
+    private long mFramesCaptured;
+    private long mFramesDropped;
+    private long mFramesDelivered;
+    private long mFirstDeliveryNanos;
+    private long mLastDeliveryNanos;
+
+    private final Runnable mDrainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    // Constructor for the BurstCaptureEngine class. executor runs the drain task.
+    public BurstCaptureEngine(RequestSubmitter submitter, FrameSink<T> sink, int capacity, BackpressurePolicy policy,
+                              Executor executor) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1: " + capacity);
+        }
+        mSubmitter = submitter;
+        mSink = sink;
+        mCapacity = capacity;
+        mQueue = new ArrayDeque<>(capacity);
+        mPolicy = policy;
+        mExecutor = executor;
+    }
+
+    // Start accepting frames.
+    public synchronized void start() {
+        mRunning = true;
+    }
+
+    // Stop accepting frames and wait until every queued frame has been delivered.
+    public synchronized void stop() {
+        mRunning = false;
+        mContinuous = false;
+        notifyAll();
+
+        while (mDraining) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    public synchronized void setBackpressurePolicy(BackpressurePolicy policy) {
+        mPolicy = policy;
+        notifyAll();
+    }
+
+    // Request a burst of count still captures.
+    public boolean captureBurst(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("count must be at least 1: " + count);
+        }
+        if (!mSubmitter.submitBurst(count)) {
+            return false;
+        }
+        synchronized (this) {
+            mFramesRequested += count;
+        }
+        return true;
+    }
+
+    // Start continuous capture until stopContinuous() is called.
+    public boolean startContinuous() {
+        synchronized (this) {
+            if (mContinuous) {
+                return true;
+            }
+        }
+        if (!mSubmitter.setRepeatingBurst(true)) {
+            return false;
+        }
+        synchronized (this) {
+            mContinuous = true;
+        }
+        return true;
+    }
+
+    // Stop continuous capture. Frames already captured are still delivered.
+    public boolean stopContinuous() {
+        synchronized (this) {
+            if (!mContinuous) {
+                return true;
+            }
+            mContinuous = false;
+        }
+        return mSubmitter.setRepeatingBurst(false);
+    }
+
+    public synchronized boolean isContinuous() {
+        return mContinuous;
+    }
+
+    // Hand a captured frame to the engine. Returns its sequence number, or -1 if it was dropped.
+    public long offer(T frame) {
+        return offer(frame, true);
+    }
+
+    // Like offer(), but never waits: under BLOCK a full queue drops the new frame, as under
+    // DROP_NEWEST. For producers that must not stall, such as a camera callback thread.
+    public long tryOffer(T frame) {
+        return offer(frame, false);
+    }
+
+    private long offer(T frame, boolean mayBlock) {
+        SequencedFrame<T> dropped = null;
+        boolean schedule = false;
+        long sequence;
+
+        synchronized (this) {
+            sequence = mNextSequence++;
+            mFramesCaptured++;
+
+            if (mayBlock && mPolicy == BackpressurePolicy.BLOCK) {
+                while (mRunning && mQueue.size() >= mCapacity && mPolicy == BackpressurePolicy.BLOCK) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+
+            if (!mRunning || (mQueue.size() >= mCapacity && mPolicy != BackpressurePolicy.DROP_OLDEST)) {
+                mFramesDropped++;
+                dropped = new SequencedFrame<>(sequence, frame);
+                sequence = -1;
+            } else {
+                if (mQueue.size() >= mCapacity) {
+                    dropped = mQueue.pollFirst();
+                    mFramesDropped++;
+                }
+                mQueue.addLast(new SequencedFrame<>(sequence, frame));
+                if (!mDraining) {
+                    mDraining = true;
+                    schedule = true;
+                }
+            }
+        }
+
+        if (dropped != null) {
+            mSink.onFrameDropped(dropped.sequence, dropped.frame);
+        }
+        if (schedule) {
+            scheduleDrain();
+        }
+        return sequence;
+    }
+
+    private void scheduleDrain() {
+        try {
+            mExecutor.execute(mDrainTask);
+        } catch (RejectedExecutionException e) {
+            // The executor has quit; nothing will deliver the queued frames, so release them.
+            SequencedFrame<T>[] queued;
+            synchronized (this) {
+                queued = toArray(mQueue);
+                mQueue.clear();
+                mFramesDropped += queued.length;
+                mDraining = false;
+                notifyAll();
+            }
+            for (SequencedFrame<T> frame : queued) {
+                mSink.onFrameDropped(frame.sequence, frame.frame);
+            }
+        }
+    }
+
+    // Java can only create the generic array raw, so the copy needs an unchecked cast.
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T> SequencedFrame<T>[] toArray(ArrayDeque<SequencedFrame<T>> queue) {
+        return queue.toArray(new SequencedFrame[0]);
+    }
+
+    // Drain task: deliver queued frames in order until the queue is empty, yielding the thread
+    // every MAX_FRAMES_PER_DRAIN frames.
+    private void drain() {
+        for (int delivered = 0; ; delivered++) {
+            if (delivered == MAX_FRAMES_PER_DRAIN) {
+                boolean more;
+                synchronized (this) {
+                    more = !mQueue.isEmpty();
+                }
+                if (more && yieldDrain()) {
+                    return;
+                }
+                delivered = 0;
+            }
+
+            SequencedFrame<T> next;
+            synchronized (this) {
+                next = mQueue.pollFirst();
+                if (next == null) {
+                    mDraining = false;
+                    notifyAll(); // Wake stop().
+                    return;
+                }
+                notifyAll(); // Wake a blocked producer.
+            }
+
+            mSink.onFrame(next.sequence, next.frame);
+
+            synchronized (this) {
+                long now = System.nanoTime();
+                if (mFramesDelivered == 0) {
+                    mFirstDeliveryNanos = now;
+                }
+                mLastDeliveryNanos = now;
+                mFramesDelivered++;
+            }
+        }
+    }
+
+    // Continue draining in a new task. Returns false if the executor has quit, in which case
+    // the current task keeps draining.
+    private boolean yieldDrain() {
+        try {
+            mExecutor.execute(mDrainTask);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    public synchronized int getQueueDepth() {
+        return mQueue.size();
+    }
+
+    public synchronized long getFramesRequested() {
+        return mFramesRequested;
+    }
+
+    public synchronized long getFramesCaptured() {
+        return mFramesCaptured;
+    }
+
+    public synchronized long getFramesDropped() {
+        return mFramesDropped;
+    }
+
+    public synchronized long getFramesDelivered() {
+        return mFramesDelivered;
+    }
+
+    // Sustained delivery rate between the first and the last delivered frame.
+    public synchronized double getDeliveredFramesPerSecond() {
+        if (mFramesDelivered < 2 || mLastDeliveryNanos == mFirstDeliveryNanos) {
+            return 0;
+        }
+        return (mFramesDelivered - 1) * 1e9 / (mLastDeliveryNanos - mFirstDeliveryNanos);
+    }
+}
@@ -8,17 +8,18 @@ import android.graphics.ImageFormat;
 import android.graphics.SurfaceTexture;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
-import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraDevice;
 import android.hardware.camera2.CameraManager;
 import android.hardware.camera2.CameraMetadata;
+import android.hardware.camera2.CaptureFailure;
 import android.hardware.camera2.CaptureRequest;
 import android.hardware.camera2.TotalCaptureResult;
-import android.hardware.camera2.params.StreamConfigurationMap;
+import android.hardware.camera2.params.OutputConfiguration;
+import android.hardware.camera2.params.SessionConfiguration;
 import android.media.Image;
 import android.media.ImageReader;
+import android.net.Uri;
 import android.os.Handler;
-import android.os.HandlerThread;
 import android.util.Log;
 import android.util.Size;
 import android.util.SparseIntArray;
@@ -32,35 +33,107 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
-// Camera class that extends Thread for handling camera operations.
-public class Camera extends Thread {
+// Camera class for handling camera operations. Camera2 callbacks run on one camera-control
+// thread, analysis and frame delivery on a processing executor and MediaStore writes on an I/O
+// executor; all three are owned by mThreads and live from onResume to onPause.
+public class Camera {
     // Tag used for logging. Helps in identifying log messages related to this class.
     private static final String TAG = "CameraHelper";
 
     // Constants for camera ID and default image dimensions.
-    private static final String CAMERA_ID = "0"; // Default camera ID (typically the back camera).
+    private static final String DEFAULT_CAMERA_ID = "0"; // Default camera ID (typically the back camera).
     private static final int DEFAULT_WIDTH = 1920; // Default image width.
     private static final int DEFAULT_HEIGHT = 1080; // Default image height.
     private static final int PRIMARY_PLANE_INDEX = 0;
+    private static final int DEFAULT_JPEG_MAX_IMAGES = 4; // Default depth of the persistent JPEG reader.
+    private static final long MAX_PREVIEW_PIXELS = 1920 * 1080; // Preview buffers larger than this waste GPU bandwidth.
+    private static final double TARGET_PREVIEW_FPS = 30; // Rate the preview (and analysis) stream must sustain.
+    private static final long DEFAULT_METRICS_DUMP_INTERVAL_MILLIS = 60 * 1000; // Period of the metrics log dump.
+    // Quality ladder of the load governor, from best to cheapest. Still size steps take effect
+    // when the session is next configured; the others on the next request.
+    private static final LoadGovernor.Step[] LOAD_LADDER = {
+            new LoadGovernor.Step(95, Long.MAX_VALUE, 15, 30),
+            new LoadGovernor.Step(85, Long.MAX_VALUE, 15, 30),
+            new LoadGovernor.Step(85, 8_000_000L, 15, 30),
+            new LoadGovernor.Step(75, 8_000_000L, 15, 24),
+            new LoadGovernor.Step(70, 3_000_000L, 10, 15),
+    };
 
     // Variables for camera settings and context.
     private Size mPreviewSize; // Holds the size of the camera preview.
     private Context mContext; // Context for accessing system services.
-    private CameraDevice mCameraDevice; // Represents the camera device.
+    private volatile CameraDevice mCameraDevice; // Represents the camera device.
     private CaptureRequest.Builder mPreviewBuilder; // Used to build the request for camera preview.
-    private CameraCaptureSession mPreviewSession; // Session for camera preview.
+    private volatile CameraCaptureSession mPreviewSession; // Session for camera preview.
     private TextureView mTextureView; // View for displaying the camera preview.
     private Button mCameraCaptureButton; // Button to trigger image capture.
     private FileHelper mFileHelper; // Helper class for file operations.
+    private CameraCharacteristicsCache mCapabilitiesCache; // Characteristics and size tables per camera ID.
+    private final OutputSizeSelector mSizeSelector = new OutputSizeSelector(); // Picks output sizes per session.
+    private final String mCameraId; // The camera this instance streams from.
+    private final SharedCameraResources mResources; // Threads, writer and caches, possibly shared with other cameras.
+    private final CameraThreads mThreads; // Control thread and executors, from mResources.
+    private final CaptureMetrics mMetrics; // Per-stage capture latency, owned by mPipeline.
+    private long mMetricsDumpIntervalMillis = DEFAULT_METRICS_DUMP_INTERVAL_MILLIS; // 0 disables the dump.
+    private final CameraMetricsLogger mMetricsLogger; // Logs the metrics every mMetricsDumpIntervalMillis.
+    private final LoadGovernor mLoadGovernor = new LoadGovernor(LOAD_LADDER, new LoadGovernor.Thresholds());
+    private final CameraLoadSampler mLoadSampler; // Feeds mLoadGovernor while resumed.
+    private final Camera2RequestParameters mParameters; // Set through setZoom() and friends, applied to every request.
+    private final Camera2Precapture mPrecapture; // Holds persistent-session stills until AF and AE converge.
+    private final StartupMetrics mStartupMetrics; // Time to the first preview frame, by phase.
+    private volatile boolean mOpenRequested; // Set by openCamera(), cleared by onPause().
+    // What this camera holds mResources by, replaced at every pause: the close queued by a pause
+    // then releases its own hold, not the one of a resume that came before the close ran.
+    private volatile Object mResourceHold = new Object();
+
+    // Variables for the persistent capture session (preview + JPEG outputs in one session).
+    private boolean mPersistentSession = true; // When false, every shot rebuilds the session.
+    private int mJpegMaxImages = DEFAULT_JPEG_MAX_IMAGES; // Number of JPEG images the reader can hold.
+    private Size mStillSize; // Holds the size of the still capture.
+    private ImageReader mJpegReader; // Reader for still captures, allocated once per session.
+    private CaptureSessionManager mSessionManager; // Owns the long-lived preview + still session.
+    private Surface mPreviewSurface; // Preview output of the persistent session.
+    private OutputConfiguration mDeferredPreviewConfig; // Preview output still waiting for the TextureView.
+    private CapturePipeline<Uri> mPipeline; // Takes JPEG images from the reader to the writer.
+    private BurstCaptureEngine<CapturedFrame> mBurstEngine; // Queues captured frames between the reader and the writer.
+    private FileHelper.Sequence mSequence; // Archive that continuous frames go to while recording a sequence.
+    // Uri of the sequence being recorded, whose frames get no toast or index record of their
+    // own, and the record of its first frame, which finishSequence() adds for the whole sequence.
+    private volatile Uri mSequenceUri;
+    private volatile CaptureIndex.Record mSequenceRecord;
+
+    // Variables for zero-shutter-lag capture.
+    private boolean mZslEnabled; // When true, the preview request also fills mZsl's ring buffer with stills.
+    private final Camera2ZslCapture mZsl = new Camera2ZslCapture(); // Recent stills and their scores.
+    private final ThumbnailGenerator mThumbnailGenerator = new ThumbnailGenerator(); // Thumbnails from saved JPEG bytes.
+    private final ThumbnailCache mThumbnailCache; // Thumbnails of saved captures by Uri, in memory and on disk.
+    // Capture-result fields by sensor timestamp, waiting for their frames to be saved. Gives
+    // FileHelper the capture result of each frame it saves, so its EXIF is written from it.
+    private final Camera2CaptureResults mCaptureResults = new Camera2CaptureResults();
+
+    // Variables for the optional YUV analysis stream.
+    private FrameAnalyzer mFrameAnalyzer; // When set, the session gets a third, YUV output.
+    private Size mAnalysisSize; // Holds the size of the analysis stream.
+    private final Camera2AnalysisStream mAnalysisStream; // Reader and dispatcher of the analysis frames.
 
     // Orientation array to convert from screen rotation to JPEG orientation.
     private static final SparseIntArray ORIENTATIONS = new SparseIntArray(4);
 
+    // Display rotation in degrees for each screen rotation constant.
+    private static final SparseIntArray ROTATION_DEGREES = new SparseIntArray(4);
+
     static {
+        ROTATION_DEGREES.append(Surface.ROTATION_0, 0);
+        ROTATION_DEGREES.append(Surface.ROTATION_90, 90);
+        ROTATION_DEGREES.append(Surface.ROTATION_180, 180);
+        ROTATION_DEGREES.append(Surface.ROTATION_270, 270);
+
         // Mapping from screen rotation to JPEG orientation.
         ORIENTATIONS.append(Surface.ROTATION_0, 90);
         ORIENTATIONS.append(Surface.ROTATION_90, 0);
@@ -70,11 +143,55 @@ public class Camera extends Thread {
 
     // Constructor for Camera class.
     public Camera(Context context, TextureView textureView, Button captureButton) {
+        this(context, textureView, captureButton, Camera2CapabilitiesLoader.getSharedCache(context));
+    }
+
+    // Constructor with a shared characteristics cache, for example one warmed at app start.
+    public Camera(Context context, TextureView textureView, Button captureButton, CameraCharacteristicsCache capabilitiesCache) {
+        this(context, textureView, captureButton, capabilitiesCache, new StartupMetrics());
+    }
+
+    // Constructor with startup metrics started by the caller, for example in onCreate, so the
+    // time to the first preview frame includes view and permission setup.
+    public Camera(Context context, TextureView textureView, Button captureButton, CameraCharacteristicsCache capabilitiesCache,
+                  StartupMetrics startupMetrics) {
+        this(context, textureView, captureButton, capabilitiesCache, startupMetrics, DEFAULT_CAMERA_ID,
+                new SharedCameraResources(context));
+    }
+
+    // Constructor for one of several cameras streaming at once: they share resources, so
+    // threads and memory do not grow with the number of cameras. captureButton may be null
+    // when captures are triggered by the caller, for example MultiCameraController.
+    public Camera(Context context, TextureView textureView, Button captureButton, CameraCharacteristicsCache capabilitiesCache,
+                  StartupMetrics startupMetrics, String cameraId, SharedCameraResources resources) {
         mContext = context;
+        mStartupMetrics = startupMetrics;
+        mCapabilitiesCache = capabilitiesCache;
         mTextureView = textureView;
         mCameraCaptureButton = captureButton;
-        mFileHelper = new FileHelper(context);
+        mCameraId = cameraId;
+        mResources = resources;
+        mThreads = resources.getThreads();
+        mFileHelper = new FileHelper(context, resources.getWriter());
+        mFileHelper.setMetadataSource(mCaptureResults);
+        mSessionManager = new CaptureSessionManager(mSessionBackend);
+        mPipeline = new CapturePipeline<>(mFileHelper, mBurstSubmitter, mJpegMaxImages, mThreads.getProcessingExecutor());
+        mPipeline.setSaveListener(mSaveListener);
+        mPipeline.setSavedFrameObserver(mSavedFrameObserver);
+        mPipeline.setBlockingOffers(false); // Images arrive on the control thread, which must not wait.
+        mThumbnailCache = resources.getThumbnailCache();
+        mBurstEngine = mPipeline.getBurstEngine();
+        mMetrics = mPipeline.getMetrics();
+        mParameters = new Camera2RequestParameters(mThreads, mParametersRepeatingRequest);
+        mPrecapture = new Camera2Precapture(mThreads, mPrecaptureSession);
+        mAnalysisStream = new Camera2AnalysisStream(mThreads);
+        mMetricsLogger = new CameraMetricsLogger(this, mThreads);
+        mLoadSampler = new CameraLoadSampler(mThreads, mLoadGovernor, mMetrics, mFileHelper.getAsyncWriter(),
+                mLoadStepChangedListener);
 
+        if (null == mCameraCaptureButton) {
+            return;
+        }
         // Setting an onClick listener for the capture button.
         mCameraCaptureButton.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -84,28 +201,291 @@ public class Camera extends Thread {
         });
     }
 
-    // Method to open the camera. It sets up the camera and connects it.
+    // Method to open the camera. Call it as soon as the camera permission is known to be granted:
+    // the device is opened and the session configured on the control thread while the view is
+    // still being laid out, and the preview surface is attached once the TextureView has one.
+    // Calling it again while the camera is opening only attaches the preview surface.
     public void openCamera() {
+        // The permission result can arrive before onResume, so make sure the threads are up.
+        mResources.acquire(mResourceHold);
+        Handler handler = mThreads.getControlHandler();
+        if (mOpenRequested) {
+            handler.post(mSurfaceReadyRunnable);
+            return;
+        }
+        mOpenRequested = true;
+        handler.post(mOpenCameraRunnable);
+    }
+
+    // Sets up and connects the camera on the control thread. A close queued by onPause() runs
+    // before it, so opening and closing never overlap.
+    private Runnable mOpenCameraRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (!mOpenRequested) {
+                return; // Paused before the camera could be opened.
+            }
+            try {
+                setupCamera(); // Setup camera settings.
+                connectCamera(); // Connect to the camera.
+            } catch (CameraAccessException e) {
+                Log.e(TAG, "Camera access exception: ", e);
+            } catch (SecurityException e) {
+                mOpenRequested = false; // Opened again once the permission is granted.
+                Log.e(TAG, "Camera permission not granted: ", e);
+            }
+        }
+    };
+
+    // Attaches the TextureView to the session once it is available, on the control thread.
+    private Runnable mSurfaceReadyRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mPersistentSession) {
+                attachPreviewSurface(true);
+            } else {
+                startPreview(); // The per-shot session needs the surface up front.
+            }
+        }
+    };
+
+    // Enable or disable the persistent capture session. Takes effect the next time the camera is opened.
+    public void setPersistentSessionEnabled(boolean enabled) {
+        mPersistentSession = enabled;
+    }
+
+    // Set how many JPEG images the persistent reader can hold. Takes effect the next time the camera is opened.
+    public void setJpegMaxImages(int maxImages) {
+        if (maxImages < 1) {
+            throw new IllegalArgumentException("maxImages must be at least 1: " + maxImages);
+        }
+        mJpegMaxImages = maxImages;
+        mPipeline.setMaxImages(maxImages);
+    }
+
+    // Enable or disable zero-shutter-lag capture on the persistent session: the preview request
+    // keeps the last few stills in a ring buffer and the capture button saves the one nearest the
+    // press instead of requesting a new capture. Takes effect the next time the camera is opened.
+    public void setZeroShutterLagEnabled(boolean enabled) {
+        mZslEnabled = enabled;
+    }
+
+    // Zero-shutter-lag ring buffer (frames and bytes held, evictions, selections), for monitoring.
+    public ZslRingBuffer getZslBuffer() {
+        return mZsl.getBuffer();
+    }
+
+    // Set what happens to new frames when the writer falls behind during burst or continuous
+    // capture. Images arrive on the control thread, which never waits, so BLOCK drops the new
+    // frame like DROP_NEWEST.
+    public void setBackpressurePolicy(BurstCaptureEngine.BackpressurePolicy policy) {
+        mBurstEngine.setBackpressurePolicy(policy);
+    }
+
+    // Capture count stills in one burst on the persistent session.
+    public boolean captureBurst(int count) {
+        if (!mPersistentSession || !mSessionManager.isReady()) {
+            Log.e(TAG, "captureBurst failed, capture session is not open");
+            return false;
+        }
+        return mBurstEngine.captureBurst(count);
+    }
+
+    // Start capturing stills continuously until stopContinuousCapture() is called.
+    public boolean startContinuousCapture() {
+        if (!mPersistentSession || !mSessionManager.isReady()) {
+            Log.e(TAG, "startContinuousCapture failed, capture session is not open");
+            return false;
+        }
+        return mBurstEngine.startContinuous();
+    }
+
+    // Stop continuous capture and return to the plain preview request.
+    public boolean stopContinuousCapture() {
+        return mBurstEngine.stopContinuous();
+    }
+
+    // Start continuous capture into one sequence archive with a single MediaStore record, instead
+    // of one record and file per frame.
+    public synchronized boolean startSequenceRecording() {
+        if (null != mSequence) {
+            return true;
+        }
+        if (!mPersistentSession || !mSessionManager.isReady()) {
+            Log.e(TAG, "startSequenceRecording failed, capture session is not open");
+            return false;
+        }
+
         try {
-            setupCamera(); // Setup camera settings.
-            connectCamera(); // Connect to the camera.
-        } catch (CameraAccessException e) {
-            Log.e(TAG, "Camera access exception: ", e);
+            mSequence = mFileHelper.openSequence();
+        } catch (IOException e) {
+            Log.e(TAG, "startSequenceRecording failed to open the sequence: ", e);
+            return false;
+        }
+        mSequenceRecord = null;
+        mSequenceUri = mSequence.getUri();
+        mPipeline.setFrameStore(mSequence);
+        if (!mBurstEngine.startContinuous()) {
+            finishSequence();
+            return false;
+        }
+        return true;
+    }
+
+    // Stop recording, wait for queued frames and publish the sequence. Returns its Uri, or null
+    // if nothing was recorded. Blocks until the archive is closed.
+    public synchronized Uri stopSequenceRecording() {
+        if (null == mSequence) {
+            return null;
+        }
+        mPipeline.stop(); // Stops continuous capture and delivers queued frames into the archive.
+        Uri uri = finishSequence();
+        mPipeline.start();
+        return uri;
+    }
+
+    // Point the pipeline back at per-image saves and publish the sequence. The pipeline must be
+    // stopped or not delivering to the sequence.
+    private Uri finishSequence() {
+        FileHelper.Sequence sequence = mSequence;
+        mSequence = null;
+        mPipeline.setFrameStore(mFileHelper);
+        if (null == sequence) {
+            return null;
+        }
+
+        try {
+            sequence.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Saving sequence failed: ", e);
+            return null;
+        } finally {
+            mSequenceUri = null; // close() has waited for the appends and the callbacks they run.
+        }
+        int frames = sequence.getArchive().getFrameCount();
+        if (frames == 0) {
+            return null;
         }
+        CaptureIndex.Record record = mSequenceRecord;
+        if (null != record) {
+            record.sizeBytes = sequence.getArchive().getSize();
+            appendToIndex(record);
+        }
+        showToast("Sequence saved: " + frames + " frames");
+        Log.d(TAG, "Sequence of " + frames + " frames saved at: " + sequence.getUri());
+        return sequence.getUri();
+    }
+
+    // Burst engine counters (requested, captured, dropped, delivered, fps), for monitoring.
+    public BurstCaptureEngine<CapturedFrame> getBurstEngine() {
+        return mBurstEngine;
+    }
+
+    // Set the analyzer for the YUV analysis stream, or null to disable the stream. Takes effect
+    // the next time the camera is opened.
+    public void setFrameAnalyzer(FrameAnalyzer analyzer) {
+        mFrameAnalyzer = analyzer;
+    }
+
+    // Analysis counters (latency, drop rate) for the current session, or null if there is none.
+    public FrameAnalysisDispatcher getAnalysisDispatcher() {
+        return mAnalysisStream.getDispatcher();
+    }
+
+    // Pool for frame copies that outlive their Image (hits, misses, bytes in use), for monitoring.
+    public BufferPool getBufferPool() {
+        return mPipeline.getBufferPool();
+    }
+
+    // Per-stage capture latency histograms and capture counters, for monitoring.
+    public CaptureMetrics getCaptureMetrics() {
+        return mMetrics;
+    }
+
+    // Set how often the capture metrics are logged while resumed, or 0 to stop logging them.
+    // Takes effect on the next onResume.
+    public void setMetricsDumpInterval(long intervalMillis) {
+        mMetricsDumpIntervalMillis = intervalMillis;
+    }
+
+    // File helper (writer, metadata misses) of this camera, for the metrics log.
+    FileHelper getFileHelper() {
+        return mFileHelper;
+    }
+
+    // Time to the first preview frame, broken down by startup phase.
+    public StartupMetrics getStartupMetrics() {
+        return mStartupMetrics;
+    }
+
+    // Camera threads (thread count, processing and I/O queue depth), for monitoring.
+    public CameraThreads getThreads() {
+        return mThreads;
+    }
+
+    public String getCameraId() {
+        return mCameraId;
+    }
+
+    // Number of times the capture session has been configured, for monitoring.
+    public int getSessionReconfigurationCount() {
+        return mSessionManager.getReconfigurationCount();
+    }
+
+    // Rotation of the activity's display. Context.getDisplay() replaces getDefaultDisplay() only
+    // from API 30, and minSdk is 29.
+    @SuppressWarnings("deprecation")
+    private int getDisplayRotation() {
+        return ((Activity) mContext).getWindowManager().getDefaultDisplay().getRotation();
     }
 
-    // Setup camera settings like preview size.
+    // Setup camera settings like preview and still sizes from the cached capabilities. When the
+    // camera is opened before layout, the view size is still 0 and the preview size is chosen
+    // from the aspect ratio and pixel budget alone.
     private void setupCamera() throws CameraAccessException {
-        CameraManager manager = (CameraManager) mContext.getSystemService(Context.CAMERA_SERVICE);
-        CameraCharacteristics characteristics = manager.getCameraCharacteristics(CAMERA_ID);
-        StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
-        mPreviewSize = map.getOutputSizes(SurfaceTexture.class)[0]; // Get preview sizes and set the preview size.
+        CameraCapabilities capabilities = mCapabilitiesCache.get(mCameraId);
+        if (capabilities == null) {
+            throw new CameraAccessException(CameraAccessException.CAMERA_ERROR, "No characteristics for camera " + mCameraId);
+        }
+        mStartupMetrics.mark(StartupMetrics.Phase.CHARACTERISTICS_LOADED);
+
+        int rotation = getDisplayRotation();
+        OutputSizeSelector.Request request = new OutputSizeSelector.Request()
+                .setViewSize(mTextureView.getWidth(), mTextureView.getHeight())
+                .setDisplayRotation(ROTATION_DEGREES.get(rotation))
+                .setMaxPreviewPixels(MAX_PREVIEW_PIXELS)
+                .setMaxStillPixels(mLoadGovernor.getStep().maxStillPixels)
+                .setTargetFps(TARGET_PREVIEW_FPS);
+        if (null != mFrameAnalyzer) {
+            request.setAnalysisSize(Camera2AnalysisStream.TARGET_WIDTH, Camera2AnalysisStream.TARGET_HEIGHT);
+        }
+        OutputSizeSelector.Selection selection = mSizeSelector.select(
+                capabilities.getOutputSizes(CameraCapabilities.FORMAT_SURFACE_TEXTURE),
+                capabilities.getOutputSizes(ImageFormat.JPEG),
+                capabilities.getOutputSizes(ImageFormat.YUV_420_888),
+                capabilities.getSensorOrientation(), request);
+        if (selection == null) {
+            throw new CameraAccessException(CameraAccessException.CAMERA_ERROR, "No output sizes for camera " + mCameraId);
+        }
+
+        mParameters.setCapabilities(capabilities, selection.previewFps);
+        mPreviewSize = toSize(selection.preview);
+        mStillSize = toSize(selection.still);
+        mZsl.setRealtimeTimestamps(capabilities.hasRealtimeTimestamps());
+        mAnalysisSize = selection.analysis != null ? toSize(selection.analysis) : null;
+        Log.d(TAG, "Selected preview " + selection.preview + ", still " + selection.still
+                + ", analysis " + selection.analysis + ", preview fps " + selection.previewFps);
+    }
+
+    private static Size toSize(OutputSize size) {
+        return new Size(size.getWidth(), size.getHeight());
     }
 
     // Connect to the camera device.
     private void connectCamera() throws CameraAccessException {
         CameraManager manager = (CameraManager) mContext.getSystemService(Context.CAMERA_SERVICE);
-        manager.openCamera(CAMERA_ID, mCameraStateCallback, null);
+        manager.openCamera(mCameraId, mCameraStateCallback, mThreads.getControlHandler());
+        mStartupMetrics.mark(StartupMetrics.Phase.OPEN_REQUESTED);
     }
 
     // Callbacks for camera state changes like opening, disconnecting, and errors.
@@ -113,6 +493,11 @@ public class Camera extends Thread {
         @Override
         public void onOpened(CameraDevice camera) {
             Log.e(TAG, "onOpened");
+            if (!mOpenRequested) {
+                camera.close(); // Paused while the camera was opening.
+                return;
+            }
+            mStartupMetrics.mark(StartupMetrics.Phase.DEVICE_OPENED);
             mCameraDevice = camera;
             startPreview(); // Start the camera preview once the camera is opened.
         }
@@ -120,6 +505,7 @@ public class Camera extends Thread {
         @Override
         public void onDisconnected(CameraDevice camera) {
             Log.e(TAG, "onDisconnected");
+            releaseSession();
         }
 
         @Override
@@ -133,7 +519,8 @@ public class Camera extends Thread {
         @Override
         public void onSurfaceTextureAvailable(SurfaceTexture surface, int width, int height) {
             Log.e(TAG, "onSurfaceTextureAvailable, width=" + width + ", height=" + height);
-            openCamera(); // Open the camera when the surface is available.
+            mStartupMetrics.mark(StartupMetrics.Phase.SURFACE_AVAILABLE);
+            openCamera(); // Open the camera, or attach the surface if it is already opening.
         }
 
         @Override
@@ -148,17 +535,30 @@ public class Camera extends Thread {
 
         @Override
         public void onSurfaceTextureUpdated(SurfaceTexture surface) {
-            // Do nothing when the surface texture is updated.
+            if (mStartupMetrics.mark(StartupMetrics.Phase.FIRST_FRAME)) {
+                Log.i(TAG, "First preview frame, " + mStartupMetrics.format());
+            }
         }
     };
 
     // Start the camera preview.
     protected void startPreview() {
-        if (null == mCameraDevice || !mTextureView.isAvailable() || null == mPreviewSize) {
+        if (null == mCameraDevice || null == mPreviewSize) {
             Log.e(TAG, "startPreview fail, return");
             return;
         }
 
+        if (mPersistentSession) {
+            mPipeline.start(); // Stopped again by releaseSession().
+            mSessionManager.open(); // Configures preview + JPEG outputs once; no-op if already open.
+            return;
+        }
+
+        if (!mTextureView.isAvailable()) {
+            Log.d(TAG, "startPreview waiting for the preview surface");
+            return;
+        }
+
         SurfaceTexture texture = mTextureView.getSurfaceTexture();
         if (null == texture) {
             Log.e(TAG, "texture is null, return");
@@ -171,7 +571,7 @@ public class Camera extends Thread {
         try {
             mPreviewBuilder = mCameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
             mPreviewBuilder.addTarget(surface);
-            mCameraDevice.createCaptureSession(Arrays.asList(surface), new CameraCaptureSession.StateCallback() {
+            createCaptureSession(Collections.singletonList(new OutputConfiguration(surface)), new CameraCaptureSession.StateCallback() {
                 @Override
                 public void onConfigured(CameraCaptureSession session) {
                     mPreviewSession = session;
@@ -182,33 +582,104 @@ public class Camera extends Thread {
                 public void onConfigureFailed(CameraCaptureSession session) {
                     Log.e(TAG, "Configuration failed");
                 }
-            }, null);
+            });
         } catch (CameraAccessException e) {
             Log.e(TAG, "startPreview CameraAccessException: ", e);
         }
     }
 
-    // Update the camera preview.
-    protected void updatePreview() {
+    // Create a capture session whose callbacks run on the control thread.
+    private void createCaptureSession(List<OutputConfiguration> outputs, CameraCaptureSession.StateCallback callback)
+            throws CameraAccessException {
+        final Handler handler = mThreads.getControlHandler();
+        if (null == handler) {
+            throw new CameraAccessException(CameraAccessException.CAMERA_ERROR, "Camera threads are not running");
+        }
+        Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                if (!handler.post(command)) {
+                    Log.w(TAG, "Session callback dropped, control thread has quit");
+                }
+            }
+        };
+        mCameraDevice.createCaptureSession(new SessionConfiguration(SessionConfiguration.SESSION_REGULAR,
+                outputs, executor, callback));
+    }
+
+    // Update the camera preview. Returns true if the repeating request was submitted.
+    protected boolean updatePreview() {
         Log.d(TAG, "updatePreview called");
 
         if (null == mCameraDevice) {
             Log.e(TAG, "updatePreview error, return");
-            return;
+            return false;
+        }
+        if (mPersistentSession && null == mPreviewSurface) {
+            Log.d(TAG, "updatePreview waiting for the preview surface");
+            return false; // Started by attachPreviewSurface().
         }
 
         mPreviewBuilder.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
-        HandlerThread thread = new HandlerThread("CameraPreview");
-        thread.start();
-        Handler backgroundHandler = new Handler(thread.getLooper());
+        mParameters.applyTo(mPreviewBuilder, mLoadGovernor.getStep());
 
         try {
-            mPreviewSession.setRepeatingRequest(mPreviewBuilder.build(), null, backgroundHandler);
-        } catch (CameraAccessException e) {
-            Log.e(TAG, "updatePreview CameraAccessException: ", e);
+            mPreviewSession.setRepeatingRequest(mPreviewBuilder.build(), mPreviewCaptureCallback,
+                    mThreads.getControlHandler());
+            return true;
+        } catch (CameraAccessException | IllegalStateException e) {
+            Log.e(TAG, "updatePreview failed: ", e);
+            return false;
         }
     }
 
+    // Digital zoom ratio, 1 for none, clamped to the camera's maximum. Like the other parameter
+    // setters it can be called for every slider move: changes are merged and the repeating
+    // request is rebuilt at most once per frame, keeping the last value of each parameter.
+    public void setZoom(float zoom) {
+        mParameters.setZoom(zoom);
+    }
+
+    // Exposure compensation in the camera's steps, clamped to its range.
+    public void setExposureCompensation(int steps) {
+        mParameters.setExposureCompensation(steps);
+    }
+
+    // Focus on a point given as fractions (0 to 1) of the sensor's active array.
+    public void setAfRegion(float x, float y) {
+        mParameters.setAfRegion(x, y);
+    }
+
+    public void setTorch(boolean on) {
+        mParameters.setTorch(on);
+    }
+
+    // Preview frame rate range; the closest supported range is used, and the load governor's
+    // step can still lower it.
+    public void setFpsRange(int minFps, int maxFps) {
+        mParameters.setFpsRange(minFps, maxFps);
+    }
+
+    // Parameter update coalescer (updates, submissions, coalesced updates), for monitoring.
+    public RequestUpdateCoalescer<CaptureRequest.Key<?>> getParameterCoalescer() {
+        return mParameters.getCoalescer();
+    }
+
+    // Restarts the repeating request when coalesced parameter changes arrive, on the control thread.
+    private final Camera2RequestParameters.RepeatingRequest mParametersRepeatingRequest =
+            new Camera2RequestParameters.RepeatingRequest() {
+        @Override
+        public boolean restart() {
+            if (null == mCameraDevice || null == mPreviewSession || null == mPreviewBuilder) {
+                return false; // Applied when the preview starts.
+            }
+            if (mBurstEngine.isContinuous()) {
+                return mBurstSubmitter.setRepeatingBurst(true);
+            }
+            return updatePreview();
+        }
+    };
+
     // Capture an image with the camera.
     protected void captureImage() {
         if (null == mCameraDevice) {
@@ -216,32 +687,85 @@ public class Camera extends Thread {
             return;
         }
 
+        if (isZslActive() && captureZslFrame()) {
+            return;
+        }
+
+        long captureId = mMetrics.begin();
+        if (mPersistentSession) {
+            if (!mSessionManager.requestStill()) {
+                mMetrics.fail(captureId);
+                Log.e(TAG, "captureImage failed, capture session is not open");
+            }
+            return;
+        }
+
+        captureImageWithNewSession(captureId);
+    }
+
+    // Save the ring buffer frame nearest the button press. Returns false if the buffer is empty,
+    // for example right after the session started.
+    private boolean captureZslFrame() {
+        final CapturedFrame frame = mZsl.select();
+        if (null == frame) {
+            Log.d(TAG, "Zero-shutter-lag buffer is empty, requesting a still");
+            return false;
+        }
+
+        // The copy and the hand-off can block under backpressure, so keep them off the UI thread.
         try {
-            Size[] jpegAvailableSizes = null;
-            CameraManager cameraManager = (CameraManager) mContext.getSystemService(Context.CAMERA_SERVICE);
-            CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(CAMERA_ID);
-            StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+            mThreads.getProcessingExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!mPipeline.onRetainedImageSelected(frame.getData(), frame, frame.getTimestampNanos())) {
+                        Log.e(TAG, "Zero-shutter-lag frame not saved, pipeline is stopped");
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            frame.close();
+            Log.e(TAG, "Zero-shutter-lag frame not saved, camera threads are stopped: ", e);
+        }
+        return true;
+    }
+
+    private boolean isZslActive() {
+        return mZslEnabled && mPersistentSession;
+    }
 
-            if (map != null) {
-                jpegAvailableSizes = map.getOutputSizes(ImageFormat.JPEG);
+    // Watches the results of the repeating request: every frame goes to the precapture state
+    // machine, and with zero shutter lag to the ring buffer scoring as well.
+    private CameraCaptureSession.CaptureCallback mPreviewCaptureCallback = new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureCompleted(CameraCaptureSession session, CaptureRequest request, TotalCaptureResult result) {
+            mPrecapture.onRepeatingResult(result);
+            if (isZslActive()) {
+                mZsl.onRepeatingResult(result);
+                mCaptureResults.remember(result);
             }
-            int width = jpegAvailableSizes != null && jpegAvailableSizes.length > 0 ? jpegAvailableSizes[0].getWidth() : DEFAULT_WIDTH;
-            int height = jpegAvailableSizes != null && jpegAvailableSizes.length > 0 ? jpegAvailableSizes[0].getHeight() : DEFAULT_HEIGHT;
+        }
+    };
+
+    // Capture an image by rebuilding the session with a one-shot JPEG reader, then restart the preview.
+    private void captureImageWithNewSession(final long captureId) {
+        try {
+            // The still size was picked from the cached capabilities in setupCamera().
+            int width = mStillSize != null ? mStillSize.getWidth() : DEFAULT_WIDTH;
+            int height = mStillSize != null ? mStillSize.getHeight() : DEFAULT_HEIGHT;
 
             ImageReader reader = ImageReader.newInstance(width, height, ImageFormat.JPEG, 1);
-            List<Surface> outputSurfaces = new ArrayList<>(8);
-            outputSurfaces.add(reader.getSurface());
-            outputSurfaces.add(new Surface(mTextureView.getSurfaceTexture()));
+            List<OutputConfiguration> outputs = new ArrayList<>(2);
+            outputs.add(new OutputConfiguration(reader.getSurface()));
+            outputs.add(new OutputConfiguration(new Surface(mTextureView.getSurfaceTexture())));
 
             final CaptureRequest.Builder captureBuilder = mCameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
             captureBuilder.addTarget(reader.getSurface());
             captureBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, CameraMetadata.CONTROL_AF_TRIGGER_START);
-            int rotation = ((Activity) mContext).getWindowManager().getDefaultDisplay().getRotation();
+            int rotation = getDisplayRotation();
             captureBuilder.set(CaptureRequest.JPEG_ORIENTATION, ORIENTATIONS.get(rotation));
+            mParameters.applyTo(captureBuilder, mLoadGovernor.getStep());
 
-            HandlerThread thread = new HandlerThread("CameraPicture");
-            thread.start();
-            final Handler backgroundHandler = new Handler(thread.getLooper());
+            final Handler backgroundHandler = mThreads.getControlHandler();
             reader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener() {
                 @Override
                 public void onImageAvailable(ImageReader reader) {
@@ -250,60 +774,535 @@ public class Camera extends Thread {
                     try {
                         image = reader.acquireLatestImage();
                         if (image != null) {
+                            mMetrics.mark(captureId, CaptureMetrics.Stage.IMAGE_AVAILABLE);
                             printCameraCaptureDetails(image);
                             ByteBuffer buffer = image.getPlanes()[PRIMARY_PLANE_INDEX].getBuffer();
-                            byte[] data = new byte[buffer.capacity()];
+                            byte[] data = new byte[buffer.remaining()];
                             buffer.get(data);
-                            saveImage(data);
+                            mMetrics.mark(captureId, CaptureMetrics.Stage.BUFFER_COPIED);
+                            saveImageOnIoExecutor(data, captureId);
                         }
-                    } catch (FileNotFoundException e) {
-                        Log.e(TAG, "File not found exception: ", e);
-                    } catch (IOException e) {
-                        Log.e(TAG, "IO exception: ", e);
                     } finally {
                         if (image != null) {
                             image.close();
                             reader.close();
+                            startPreview(); // The one-shot session is done with once its image is in.
                         }
                     }
                 }
             }, backgroundHandler);
 
-            mCameraDevice.createCaptureSession(outputSurfaces, new CameraCaptureSession.StateCallback() {
+            createCaptureSession(outputs, new CameraCaptureSession.StateCallback() {
                 @Override
                 public void onConfigured(CameraCaptureSession session) {
+                    mMetrics.mark(captureId, CaptureMetrics.Stage.SESSION_CONFIGURED);
                     try {
                         session.capture(captureBuilder.build(), new CameraCaptureSession.CaptureCallback() {
                             @Override
                             public void onCaptureCompleted(CameraCaptureSession session, CaptureRequest request, TotalCaptureResult result) {
+                                mMetrics.mark(captureId, CaptureMetrics.Stage.CAPTURE_COMPLETED);
                                 Log.d(TAG, "onCaptureCompleted");
                                 super.onCaptureCompleted(session, request, result);
+                            }
 
-                                final Handler delayPreview = new Handler();
-                                delayPreview.postDelayed(new Runnable() {
-                                    @Override
-                                    public void run() {
-                                        startPreview(); // Call the startPreview method
-                                    }
-                                }, 500); // Delayed by 1000 milliseconds (1 second)
+                            @Override
+                            public void onCaptureFailed(CameraCaptureSession session, CaptureRequest request, CaptureFailure failure) {
+                                mMetrics.fail(captureId);
+                                Log.e(TAG, "captureImage failed, reason " + failure.getReason());
+                                startPreview(); // No image will come to restart it.
                             }
                         }, backgroundHandler);
-                    } catch (CameraAccessException e) {
-                        Log.e(TAG, "captureImage CameraAccessException: ", e);
+                        mMetrics.mark(captureId, CaptureMetrics.Stage.SUBMITTED);
+                    } catch (CameraAccessException | IllegalStateException e) {
+                        mMetrics.fail(captureId);
+                        Log.e(TAG, "captureImage failed: ", e);
                     }
                 }
 
                 @Override
                 public void onConfigureFailed(CameraCaptureSession session) {
+                    mMetrics.fail(captureId);
                     Log.e(TAG, "Capture session configuration failed");
                 }
-            }, backgroundHandler);
+            });
 
         } catch (CameraAccessException e) {
+            mMetrics.fail(captureId);
             Log.e(TAG, "captureImage CameraAccessException: ", e);
         }
     }
 
+    // Backend that drives the persistent session on top of Camera2.
+    private CaptureSessionManager.SessionBackend mSessionBackend = new CaptureSessionManager.SessionBackend() {
+        @Override
+        public boolean createSession() {
+            if (null == mCameraDevice) {
+                Log.e(TAG, "createSession fail, camera is not ready");
+                return false;
+            }
+
+            // Without a TextureView surface yet, the preview output is configured by size and
+            // class only and its surface is attached later, so the session does not wait for layout.
+            SurfaceTexture texture = mTextureView.getSurfaceTexture();
+            Surface previewSurface = null;
+            OutputConfiguration previewConfig;
+            if (null != texture) {
+                texture.setDefaultBufferSize(mPreviewSize.getWidth(), mPreviewSize.getHeight());
+                previewSurface = new Surface(texture);
+                previewConfig = new OutputConfiguration(previewSurface);
+            } else {
+                previewConfig = new OutputConfiguration(mPreviewSize, SurfaceTexture.class);
+                mDeferredPreviewConfig = previewConfig;
+            }
+            mPreviewSurface = previewSurface;
+            openJpegReader();
+            List<OutputConfiguration> outputs = new ArrayList<>(3);
+            outputs.add(previewConfig);
+            outputs.add(new OutputConfiguration(mJpegReader.getSurface()));
+            if (null != mFrameAnalyzer) {
+                mAnalysisStream.open(mFrameAnalyzer, mAnalysisSize);
+                outputs.add(new OutputConfiguration(mAnalysisStream.getSurface()));
+            }
+
+            try {
+                mZsl.onSessionConfigured();
+                if (isZslActive()) {
+                    // The repeating request fills the ring buffer with full-resolution stills.
+                    mPreviewBuilder = mCameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_ZERO_SHUTTER_LAG);
+                    mPreviewBuilder.addTarget(mJpegReader.getSurface());
+                    int rotation = getDisplayRotation();
+                    mPreviewBuilder.set(CaptureRequest.JPEG_ORIENTATION, ORIENTATIONS.get(rotation));
+                } else {
+                    mPreviewBuilder = mCameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+                }
+                if (null != previewSurface) {
+                    mPreviewBuilder.addTarget(previewSurface);
+                    mStartupMetrics.mark(StartupMetrics.Phase.SURFACE_ATTACHED);
+                }
+                Surface analysisSurface = mAnalysisStream.getSurface();
+                if (null != analysisSurface) {
+                    mPreviewBuilder.addTarget(analysisSurface); // Analysis frames follow the preview.
+                }
+                createCaptureSession(outputs, new CameraCaptureSession.StateCallback() {
+                    @Override
+                    public void onConfigured(CameraCaptureSession session) {
+                        mPreviewSession = session;
+                        mStartupMetrics.mark(StartupMetrics.Phase.SESSION_CONFIGURED);
+                        mMetrics.markAll(CaptureMetrics.Stage.SESSION_CONFIGURED); // Stills that waited for it.
+                        attachPreviewSurface(false); // The view may have been laid out meanwhile.
+                        mSessionManager.onSessionConfigured();
+                    }
+
+                    @Override
+                    public void onConfigureFailed(CameraCaptureSession session) {
+                        Log.e(TAG, "Persistent session configuration failed");
+                        mSessionManager.onSessionConfigureFailed();
+                    }
+                });
+                return true;
+            } catch (CameraAccessException e) {
+                Log.e(TAG, "createSession CameraAccessException: ", e);
+                mDeferredPreviewConfig = null;
+                mAnalysisStream.close();
+                closeJpegReader();
+                return false;
+            }
+        }
+
+        @Override
+        public boolean startRepeatingPreview() {
+            updatePreview();
+            return true;
+        }
+
+        @Override
+        public boolean submitStillCapture() {
+            if (null == mCameraDevice || null == mPreviewSession || null == mJpegReader) {
+                return false;
+            }
+
+            return mPrecapture.requestStill();
+        }
+
+        @Override
+        public void closeSession() {
+            int dropped = mPrecapture.cancel();
+            if (dropped > 0) {
+                mPipeline.onCapturesRejected(dropped); // Still waiting for 3A.
+            }
+            if (null != mPreviewSession) {
+                mPreviewSession.close();
+                mPreviewSession = null;
+            }
+            mPreviewSurface = null;
+            mDeferredPreviewConfig = null;
+            mAnalysisStream.close();
+            mZsl.clear(); // Its frames are images of the JPEG reader.
+            closeJpegReader();
+        }
+
+        @Override
+        public void onStillsDropped(int count) {
+            Log.e(TAG, count + " still captures dropped, capture session is not open");
+            mPipeline.onCapturesRejected(count);
+        }
+    };
+
+    // Add the TextureView surface to a session configured with a deferred preview output. Runs on
+    // the control thread; does nothing until both the session and the surface exist. Restarts
+    // the repeating request when asked, since it could not target the preview before.
+    private void attachPreviewSurface(boolean restartPreview) {
+        OutputConfiguration config = mDeferredPreviewConfig;
+        CameraCaptureSession session = mPreviewSession;
+        SurfaceTexture texture = mTextureView.getSurfaceTexture();
+        if (null == config || null == session || null == texture || null != mPreviewSurface) {
+            return;
+        }
+
+        texture.setDefaultBufferSize(mPreviewSize.getWidth(), mPreviewSize.getHeight());
+        Surface surface = new Surface(texture);
+        try {
+            config.addSurface(surface);
+            session.finalizeOutputConfigurations(Collections.singletonList(config));
+        } catch (CameraAccessException | IllegalArgumentException | IllegalStateException e) {
+            Log.e(TAG, "attachPreviewSurface failed: ", e);
+            return;
+        }
+        mDeferredPreviewConfig = null;
+        mPreviewSurface = surface;
+        mPreviewBuilder.addTarget(surface);
+        mStartupMetrics.mark(StartupMetrics.Phase.SURFACE_ATTACHED);
+
+        if (!restartPreview) {
+            return;
+        }
+        if (mBurstEngine.isContinuous()) {
+            mBurstSubmitter.setRepeatingBurst(true);
+        } else {
+            updatePreview();
+        }
+    }
+
+    // Build a still capture request that targets the persistent JPEG reader.
+    private CaptureRequest.Builder createStillCaptureBuilder() throws CameraAccessException {
+        CaptureRequest.Builder captureBuilder = mCameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
+        captureBuilder.addTarget(mJpegReader.getSurface());
+        int rotation = getDisplayRotation();
+        captureBuilder.set(CaptureRequest.JPEG_ORIENTATION, ORIENTATIONS.get(rotation));
+        mParameters.applyTo(captureBuilder, mLoadGovernor.getStep());
+        return captureBuilder;
+    }
+
+    // Callback for still requests submitted on the persistent session.
+    private CameraCaptureSession.CaptureCallback mStillCaptureCallback = new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureStarted(CameraCaptureSession session, CaptureRequest request, long timestamp, long frameNumber) {
+            if (isZslActive()) {
+                mZsl.onStillStarted(timestamp);
+            }
+            mPipeline.onCaptureStarted();
+        }
+
+        @Override
+        public void onCaptureCompleted(CameraCaptureSession session, CaptureRequest request, TotalCaptureResult result) {
+            mPipeline.onCaptureCompleted();
+            mCaptureResults.remember(result);
+            Log.d(TAG, "onCaptureCompleted");
+            super.onCaptureCompleted(session, request, result);
+        }
+
+        @Override
+        public void onCaptureFailed(CameraCaptureSession session, CaptureRequest request, CaptureFailure failure) {
+            mPipeline.onCaptureFailed();
+            Log.e(TAG, "onCaptureFailed, reason " + failure.getReason());
+        }
+    };
+
+    // The persistent session as seen by the precapture sequence, on the control thread.
+    private Camera2Precapture.Session mPrecaptureSession = new Camera2Precapture.Session() {
+        @Override
+        public CameraCaptureSession getSession() {
+            return mPreviewSession;
+        }
+
+        @Override
+        public CaptureRequest.Builder getRepeatingRequest() {
+            return mPreviewBuilder;
+        }
+
+        @Override
+        public boolean hasRepeatingResults() {
+            return null != mPreviewSurface && !mBurstEngine.isContinuous();
+        }
+
+        @Override
+        public Surface getTriggerExcludedTarget() {
+            // With zero shutter lag, leave out the JPEG reader while the preview is there to target.
+            return isZslActive() && null != mJpegReader && null != mPreviewSurface ? mJpegReader.getSurface() : null;
+        }
+
+        @Override
+        public boolean captureStill() {
+            if (null == mCameraDevice || null == mPreviewSession || null == mJpegReader) {
+                mPipeline.onCapturesRejected(1);
+                return false;
+            }
+
+            try {
+                // The repeating preview request keeps running; only this single request is added.
+                mPreviewSession.capture(createStillCaptureBuilder().build(), mStillCaptureCallback,
+                        mThreads.getControlHandler());
+                mPipeline.onCapturesSubmitted(1);
+                return true;
+            } catch (CameraAccessException | IllegalStateException e) {
+                mPipeline.onCapturesRejected(1);
+                Log.e(TAG, "captureStill failed: ", e);
+                return false;
+            }
+        }
+    };
+
+    // How long a still waits for AF and AE to converge before it is taken anyway.
+    public void setPrecaptureTimeoutMillis(long timeoutMillis) {
+        mPrecapture.getStateMachine().setTimeoutNanos(timeoutMillis * 1_000_000L);
+    }
+
+    // Precapture state machine (fast paths, timeouts, request-to-still latency), for monitoring.
+    public PrecaptureStateMachine getPrecapture() {
+        return mPrecapture.getStateMachine();
+    }
+
+    // Submits burst and repeating-burst requests on the persistent session.
+    private BurstCaptureEngine.RequestSubmitter mBurstSubmitter = new BurstCaptureEngine.RequestSubmitter() {
+        @Override
+        public boolean submitBurst(int count) {
+            if (null == mCameraDevice || null == mPreviewSession || null == mJpegReader) {
+                return false;
+            }
+
+            try {
+                CaptureRequest request = createStillCaptureBuilder().build();
+                List<CaptureRequest> requests = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    requests.add(request);
+                }
+                mPipeline.onCapturesRequested(count);
+                mPreviewSession.captureBurst(requests, mStillCaptureCallback, mThreads.getControlHandler());
+                mPipeline.onCapturesSubmitted(count);
+                return true;
+            } catch (CameraAccessException | IllegalStateException e) {
+                mPipeline.onCapturesRejected(count);
+                Log.e(TAG, "submitBurst failed: ", e);
+                return false;
+            }
+        }
+
+        @Override
+        public boolean setRepeatingBurst(boolean enabled) {
+            if (null == mCameraDevice || null == mPreviewSession || null == mJpegReader) {
+                return false;
+            }
+
+            if (!enabled) {
+                updatePreview(); // Replace the repeating burst with the plain preview request.
+                return true;
+            }
+
+            try {
+                // Target the preview as well so the preview keeps updating while stills repeat.
+                CaptureRequest.Builder captureBuilder = createStillCaptureBuilder();
+                if (null != mPreviewSurface) {
+                    captureBuilder.addTarget(mPreviewSurface);
+                }
+                Surface analysisSurface = mAnalysisStream.getSurface();
+                if (null != analysisSurface) {
+                    captureBuilder.addTarget(analysisSurface);
+                }
+                mPreviewSession.setRepeatingBurst(Collections.singletonList(captureBuilder.build()),
+                        mStillCaptureCallback, mThreads.getControlHandler());
+                return true;
+            } catch (CameraAccessException | IllegalStateException e) {
+                Log.e(TAG, "setRepeatingBurst failed: ", e);
+                return false;
+            }
+        }
+    };
+
+    // Reports the outcome of frames saved by the pipeline.
+    private CapturePipeline.SaveListener<Uri> mSaveListener = new CapturePipeline.SaveListener<Uri>() {
+        @Override
+        public void onSaved(long sequence, Uri uri) {
+            if (uri.equals(mSequenceUri) || mBurstEngine.isContinuous()) {
+                return; // Streams of frames are reported once, not per frame.
+            }
+            showToast("Image saved: " + uri);
+            Log.d(TAG, "Image saved at: " + uri);
+        }
+
+        @Override
+        public void onSaveFailed(long sequence, Throwable error) {
+            Log.e(TAG, "Saving frame " + sequence + " failed: ", error);
+        }
+
+        @Override
+        public void onFrameDropped(long sequence) {
+            Log.w(TAG, "Frame " + sequence + " dropped, writer is falling behind");
+        }
+    };
+
+    // Makes each saved capture's thumbnail while its JPEG bytes are still in memory, and adds
+    // the capture to the index. A sequence keeps the thumbnail of its first frame and is indexed
+    // once, when it is finished.
+    private CapturePipeline.SavedFrameObserver<Uri> mSavedFrameObserver = new CapturePipeline.SavedFrameObserver<Uri>() {
+        @Override
+        public void onFrameSaved(Uri uri, ByteBuffer data, long timestampNanos) {
+            if (!mThumbnailCache.containsInMemory(uri.toString())) {
+                cacheThumbnail(uri.toString(), data);
+            }
+            CaptureIndex.Record record = createIndexRecord(uri, data.remaining(), timestampNanos);
+            if (!uri.equals(mSequenceUri)) {
+                appendToIndex(record);
+            } else if (null == mSequenceRecord) {
+                mSequenceRecord = record; // Frames are saved one after another, so this is the first.
+            }
+        }
+    };
+
+    // Create the index record of a saved capture. Runs on the store's thread.
+    private CaptureIndex.Record createIndexRecord(Uri uri, long sizeBytes, long timestampNanos) {
+        CaptureMetadata metadata = timestampNanos != 0 ? mCaptureResults.take(timestampNanos) : null;
+        CaptureIndex.Record record = new CaptureIndex.Record();
+        record.sensorTimestampNanos = timestampNanos;
+        if (null != metadata) {
+            record.exposureTimeNanos = metadata.exposureTimeNanos;
+            record.sensitivity = metadata.sensitivity;
+            record.focusDistance = metadata.focusDistance;
+        }
+        record.timeMillis = System.currentTimeMillis();
+        record.uri = uri.toString();
+        record.sizeBytes = sizeBytes;
+        Size stillSize = mStillSize;
+        if (null != stillSize) {
+            record.width = stillSize.getWidth();
+            record.height = stillSize.getHeight();
+        }
+        return record;
+    }
+
+    private void appendToIndex(CaptureIndex.Record record) {
+        try {
+            mResources.getCaptureIndex().append(record);
+        } catch (IOException | IllegalArgumentException e) {
+            Log.e(TAG, "Failed to index capture " + record.uri + ": ", e);
+        }
+    }
+
+    // Captures saved by this app in [fromMillis, toMillis) of wall-clock time, oldest first,
+    // read from the local index on the I/O executor instead of querying MediaStore.
+    public CompletableFuture<List<CaptureIndex.Record>> queryCaptures(final long fromMillis, final long toMillis) {
+        final CompletableFuture<List<CaptureIndex.Record>> result = new CompletableFuture<>();
+        try {
+            mThreads.getIoExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        result.complete(mResources.getCaptureIndex().query(fromMillis, toMillis));
+                    } catch (IOException e) {
+                        result.completeExceptionally(e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private void cacheThumbnail(String key, ByteBuffer jpeg) {
+        byte[] thumbnail = mThumbnailGenerator.create(jpeg);
+        if (thumbnail != null) {
+            mThumbnailCache.put(key, thumbnail);
+        }
+    }
+
+    // Thumbnail of a capture saved by this app, from memory or the disk cache. Completes with
+    // null if it is not cached, for example because it was evicted.
+    public CompletableFuture<byte[]> getThumbnail(Uri uri) {
+        return mThumbnailCache.get(uri.toString());
+    }
+
+    // Thumbnail cache hit, miss and eviction counters, for monitoring.
+    public ThumbnailCache getThumbnailCache() {
+        return mThumbnailCache;
+    }
+
+    // Finish queued saves, then close the persistent session. Queued frames may still reference
+    // images owned by the JPEG reader, so the reader is only closed after they are written.
+    private void releaseSession() {
+        mPipeline.stop();
+        synchronized (this) {
+            finishSequence(); // Publish a sequence that was still recording.
+        }
+        mFileHelper.shutdown();
+        mResources.forceCaptureIndex();
+        mSessionManager.close();
+    }
+
+    // Allocate the JPEG reader used by the persistent session, sized once at setup time.
+    private void openJpegReader() {
+        closeJpegReader();
+
+        Size stillSize = mStillSize != null ? mStillSize : new Size(DEFAULT_WIDTH, DEFAULT_HEIGHT);
+        // With ZSL the ring buffer holds most of the reader's images, so the pipeline copies the
+        // images of explicit stills instead of holding them.
+        int maxImages = isZslActive() ? mZsl.getReaderMaxImages() : mJpegMaxImages;
+        mPipeline.setMaxImages(isZslActive() ? 1 : mJpegMaxImages);
+        mJpegReader = ImageReader.newInstance(stillSize.getWidth(), stillSize.getHeight(), ImageFormat.JPEG, maxImages);
+        mJpegReader.setOnImageAvailableListener(mJpegImageAvailableListener, mThreads.getControlHandler());
+    }
+
+    // Release the JPEG reader.
+    private void closeJpegReader() {
+        if (null != mJpegReader) {
+            mJpegReader.close();
+            mJpegReader = null;
+        }
+    }
+
+    // Listener for the persistent JPEG reader. The reader stays open across shots.
+    private ImageReader.OnImageAvailableListener mJpegImageAvailableListener = new ImageReader.OnImageAvailableListener() {
+        @Override
+        public void onImageAvailable(ImageReader reader) {
+            Image image = null;
+
+            try {
+                image = reader.acquireNextImage();
+                if (image != null) {
+                    final Image ownedImage = image;
+                    image = null; // The pipeline or the ring buffer owns the image now.
+                    AutoCloseable owner = new AutoCloseable() {
+                        @Override
+                        public void close() {
+                            ownedImage.close();
+                        }
+                    };
+                    ByteBuffer data = ownedImage.getPlanes()[PRIMARY_PLANE_INDEX].getBuffer();
+                    if (isZslActive() && mZsl.offer(data, owner, ownedImage.getTimestamp())) {
+                        return;
+                    }
+                    printCameraCaptureDetails(ownedImage);
+                    mPipeline.onImageAvailable(data, owner, ownedImage.getTimestamp()); // Saved on the processing executor.
+                }
+            } catch (IllegalStateException e) {
+                Log.e(TAG, "acquireNextImage failed: ", e);
+            } finally {
+                if (image != null) {
+                    image.close();
+                }
+            }
+        }
+    };
+
     // Log details of the captured image.
     private void printCameraCaptureDetails(Image image) {
         int imageWidth = image.getWidth();
@@ -312,9 +1311,51 @@ public class Camera extends Thread {
         Log.d(TAG, "Image captured - Width: " + imageWidth + ", Height: " + imageHeight + ", Format: " + imageFormat);
     }
 
+    // Save the captured image on the I/O executor, off the camera-control thread.
+    private void saveImageOnIoExecutor(final byte[] bytes, final long captureId) {
+        try {
+            mThreads.getIoExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        saveImage(bytes);
+                        mMetrics.mark(captureId, CaptureMetrics.Stage.FILE_WRITTEN);
+                    } catch (FileNotFoundException e) {
+                        mMetrics.fail(captureId);
+                        Log.e(TAG, "File not found exception: ", e);
+                    } catch (IOException e) {
+                        mMetrics.fail(captureId);
+                        Log.e(TAG, "IO exception: ", e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            mMetrics.fail(captureId);
+            Log.e(TAG, "Image not saved, camera threads are stopped: ", e);
+        }
+    }
+
+    // Restarts the repeating request when the load governor changes step, so the new step takes
+    // effect at once. Runs on the control thread.
+    private Runnable mLoadStepChangedListener = new Runnable() {
+        @Override
+        public void run() {
+            if (null != mCameraDevice && null != mPreviewSession && null != mPreviewBuilder
+                    && !mBurstEngine.isContinuous()) {
+                updatePreview();
+            }
+        }
+    };
+
+    // Load governor (current step, steps taken), for monitoring.
+    public LoadGovernor getLoadGovernor() {
+        return mLoadGovernor;
+    }
+
     // Save the captured image to a file.
     private void saveImage(byte[] bytes) throws IOException {
         String filePath = mFileHelper.saveImage(bytes);
+        cacheThumbnail(filePath, ByteBuffer.wrap(bytes));
         showToast("Image saved: " + filePath);
         Log.d(TAG, "Image saved at: " + filePath);
     }
@@ -337,26 +1378,53 @@ public class Camera extends Thread {
     // Resume the camera preview when the activity is resumed.
     public void onResume() {
         Log.d(TAG, "onResume");
+        if (mStartupMetrics.isReached(StartupMetrics.Phase.FIRST_FRAME)) {
+            mStartupMetrics.restart(); // The previous startup finished; measure this one as warm.
+        }
+        mResources.acquire(mResourceHold);
+        mMetricsLogger.start(mMetricsDumpIntervalMillis);
+        mLoadSampler.start();
         setSurfaceTextureListener();
+        if (mTextureView.isAvailable()) {
+            openCamera(); // The view kept its surface while paused, so no callback will open the camera.
+        }
     }
 
-    // A semaphore to control camera opening and closing.
-    private Semaphore mCameraOpenCloseLock = new Semaphore(1);
-
-    // Close the camera device when the activity is paused.
+    // Close the camera device when the activity is paused. The session is closed, queued saves
+    // drained and the writer shut down on the control thread, after the capture work already
+    // queued there, so the UI thread does not wait for them.
     public void onPause() {
         Log.d(TAG, "onPause");
-        try {
-            mCameraOpenCloseLock.acquire();
-            if (null != mCameraDevice) {
-                mCameraDevice.close();
-                mCameraDevice = null;
-                Log.d(TAG, "CameraDevice Close");
-            }
-        } catch (InterruptedException e) {
-            throw new RuntimeException("Interrupted while trying to lock camera closing.", e);
-        } finally {
-            mCameraOpenCloseLock.release();
+        mOpenRequested = false;
+        final Object hold = mResourceHold;
+        mResourceHold = new Object();
+        Handler handler = mThreads.getControlHandler();
+        if (null == handler) {
+            mResources.release(hold); // Never resumed, so there is nothing to close.
+            return;
+        }
+        // Other cameras may keep the shared control thread running.
+        mMetricsLogger.stop();
+        mLoadSampler.stop();
+        boolean posted = handler.post(new Runnable() {
+            @Override
+            public void run() {
+                closeCamera();
+                mResources.release(hold); // Last, after the session has drained onto the executors.
+            }
+        });
+        if (!posted) {
+            Log.w(TAG, "Control thread has quit, camera " + mCameraId + " closed with it");
+        }
+    }
+
+    // Close the session and the camera device, on the control thread.
+    private void closeCamera() {
+        releaseSession();
+        if (null != mCameraDevice) {
+            mCameraDevice.close();
+            mCameraDevice = null;
+            Log.d(TAG, "CameraDevice Close");
         }
     }
 }
@@ -0,0 +1,102 @@
+package com.example.android_camera_example1;
+
+import android.graphics.ImageFormat;
+import android.media.Image;
+import android.media.ImageReader;
+import android.util.Log;
+import android.util.Size;
+import android.view.Surface;
+
+// Camera2AnalysisStream is the optional YUV output of the persistent session: an ImageReader
+// whose newest image goes to a FrameAnalysisDispatcher, which runs the analyzer on the
+// processing executor and drops older frames the analyzer has not picked up yet. Opened and
+// closed on the control thread with the session.
+class Camera2AnalysisStream {
+    private static final String TAG = "CameraAnalysis";
+
+    static final int TARGET_WIDTH = 640; // Target width of the stream.
+    static final int TARGET_HEIGHT = 480; // Target height of the stream.
+    private static final int MAX_IMAGES = 3; // One being acquired, one waiting, one analyzed.
+    private static final long IDLE_TIMEOUT_MILLIS = 1000; // Wait for the analyzer before closing the reader.
+
+    private final CameraThreads mThreads;
+    private ImageReader mReader;
+    private volatile FrameAnalysisDispatcher mDispatcher;
+
+    Camera2AnalysisStream(CameraThreads threads) {
+        mThreads = threads;
+    }
+
+    // Allocate the reader at the given size, or the target size if null.
+    void open(FrameAnalyzer analyzer, Size size) {
+        close();
+
+        Size analysisSize = size != null ? size : new Size(TARGET_WIDTH, TARGET_HEIGHT);
+        FrameAnalysisDispatcher dispatcher = new FrameAnalysisDispatcher(mThreads.getProcessingExecutor(), analyzer);
+        dispatcher.setErrorListener(mErrorListener);
+        mDispatcher = dispatcher;
+        mReader = ImageReader.newInstance(analysisSize.getWidth(), analysisSize.getHeight(),
+                ImageFormat.YUV_420_888, MAX_IMAGES);
+        mReader.setOnImageAvailableListener(mImageAvailableListener, mThreads.getControlHandler());
+    }
+
+    // Release the reader after the analyzer has finished with its images.
+    void close() {
+        FrameAnalysisDispatcher dispatcher = mDispatcher;
+        if (null != dispatcher) {
+            dispatcher.clear();
+            if (!dispatcher.awaitIdle(IDLE_TIMEOUT_MILLIS)) {
+                Log.w(TAG, "Analyzer still busy while closing its reader");
+            }
+        }
+        if (null != mReader) {
+            mReader.close();
+            mReader = null;
+        }
+    }
+
+    // Output of the session, or null while closed.
+    Surface getSurface() {
+        return null != mReader ? mReader.getSurface() : null;
+    }
+
+    // Dispatcher of the current or last session, or null if there was none.
+    FrameAnalysisDispatcher getDispatcher() {
+        return mDispatcher;
+    }
+
+    private final ImageReader.OnImageAvailableListener mImageAvailableListener = new ImageReader.OnImageAvailableListener() {
+        @Override
+        public void onImageAvailable(ImageReader reader) {
+            Image image;
+            try {
+                image = reader.acquireLatestImage();
+            } catch (IllegalStateException e) {
+                Log.w(TAG, "Analysis image skipped: ", e);
+                return;
+            }
+            FrameAnalysisDispatcher dispatcher = mDispatcher;
+            if (image == null || null == dispatcher) {
+                if (image != null) {
+                    image.close();
+                }
+                return;
+            }
+
+            Image.Plane[] planes = image.getPlanes();
+            dispatcher.submit(new AnalysisFrame(image.getWidth(), image.getHeight(), image.getTimestamp(),
+                    toPlane(planes[0]), toPlane(planes[1]), toPlane(planes[2]), image));
+        }
+    };
+
+    private final FrameAnalysisDispatcher.ErrorListener mErrorListener = new FrameAnalysisDispatcher.ErrorListener() {
+        @Override
+        public void onAnalyzerFailed(RuntimeException error) {
+            Log.e(TAG, "Analyzer failed, frame skipped: ", error);
+        }
+    };
+
+    private static AnalysisFrame.Plane toPlane(Image.Plane plane) {
+        return new AnalysisFrame.Plane(plane.getBuffer(), plane.getRowStride(), plane.getPixelStride());
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.android_camera_example1;
+
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.SurfaceTexture;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.Range;
+import android.util.Size;
+
+import java.util.Collections;
+import java.util.Set;
+
+// Camera2CapabilitiesLoader loads CameraCapabilities from CameraManager for the
+// CameraCharacteristicsCache, converting the StreamConfigurationMap into size tables.
+public class Camera2CapabilitiesLoader implements CameraCharacteristicsCache.Loader {
+    private static final String TAG = "CameraCapabilities";
+
+    // Formats whose size tables are cached.
+    private static final int[] CACHED_FORMATS = {ImageFormat.JPEG, ImageFormat.YUV_420_888};
+
+    // Cache shared by every activity and Camera in the process, created on first use.
+    private static CameraCharacteristicsCache sSharedCache;
+
+    private final CameraManager mCameraManager;
+
+    // Constructor for the Camera2CapabilitiesLoader class.
+    public Camera2CapabilitiesLoader(CameraManager cameraManager) {
+        mCameraManager = cameraManager;
+    }
+
+    // Return the process-wide cache backed by the system CameraManager. It is created once and
+    // kept in sync with camera availability for the life of the process, so recreating an
+    // activity neither registers another AvailabilityCallback nor loses the warmed entries.
+    // Callbacks arrive on the main looper.
+    public static synchronized CameraCharacteristicsCache getSharedCache(Context context) {
+        if (null != sSharedCache) {
+            return sSharedCache;
+        }
+        CameraManager manager = (CameraManager) context.getApplicationContext().getSystemService(Context.CAMERA_SERVICE);
+        final CameraCharacteristicsCache cache = new CameraCharacteristicsCache(new Camera2CapabilitiesLoader(manager));
+        manager.registerAvailabilityCallback(new CameraManager.AvailabilityCallback() {
+            @Override
+            public void onCameraAvailable(String cameraId) {
+                cache.onCameraAvailabilityChanged(cameraId, true);
+            }
+
+            @Override
+            public void onCameraUnavailable(String cameraId) {
+                cache.onCameraAvailabilityChanged(cameraId, false);
+            }
+        }, new Handler(Looper.getMainLooper()));
+        sSharedCache = cache;
+        return cache;
+    }
+
+    @Override
+    public String[] loadCameraIds() {
+        try {
+            return mCameraManager.getCameraIdList();
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "getCameraIdList CameraAccessException: ", e);
+            return null;
+        }
+    }
+
+    @Override
+    public Set<Set<String>> loadConcurrentCameraIds() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.R) {
+            return Collections.emptySet(); // Not reported before Android 11.
+        }
+        try {
+            return mCameraManager.getConcurrentCameraIds();
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "getConcurrentCameraIds CameraAccessException: ", e);
+            return null;
+        }
+    }
+
+    @Override
+    public CameraCapabilities loadCapabilities(String cameraId) {
+        CameraCharacteristics characteristics;
+        try {
+            characteristics = mCameraManager.getCameraCharacteristics(cameraId);
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "getCameraCharacteristics CameraAccessException: ", e);
+            return null;
+        }
+
+        CameraCapabilities.Builder builder = new CameraCapabilities.Builder(cameraId);
+        Integer sensorOrientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+        if (sensorOrientation != null) {
+            builder.setSensorOrientation(sensorOrientation);
+        }
+        Integer timestampSource = characteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+        builder.setRealtimeTimestamps(timestampSource != null
+                && timestampSource == CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME);
+        Range<Integer>[] fpsRanges = characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+        if (fpsRanges != null) {
+            int[][] ranges = new int[fpsRanges.length][];
+            for (int i = 0; i < fpsRanges.length; i++) {
+                ranges[i] = new int[] {fpsRanges[i].getLower(), fpsRanges[i].getUpper()};
+            }
+            builder.setAeTargetFpsRanges(ranges);
+        }
+        Rect activeArray = characteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
+        if (activeArray != null) {
+            builder.setActiveArraySize(activeArray.width(), activeArray.height());
+        }
+        Float maxDigitalZoom = characteristics.get(CameraCharacteristics.SCALER_AVAILABLE_MAX_DIGITAL_ZOOM);
+        if (maxDigitalZoom != null) {
+            builder.setMaxDigitalZoom(maxDigitalZoom);
+        }
+        Range<Integer> compensation = characteristics.get(CameraCharacteristics.CONTROL_AE_COMPENSATION_RANGE);
+        if (compensation != null) {
+            builder.setExposureCompensationRange(compensation.getLower(), compensation.getUpper());
+        }
+
+        StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        if (map == null) {
+            return builder.build();
+        }
+
+        Size[] previewSizes = map.getOutputSizes(SurfaceTexture.class);
+        if (previewSizes != null) {
+            OutputSize[] table = new OutputSize[previewSizes.length];
+            for (int i = 0; i < previewSizes.length; i++) {
+                Size size = previewSizes[i];
+                table[i] = new OutputSize(size.getWidth(), size.getHeight(),
+                        map.getOutputMinFrameDuration(SurfaceTexture.class, size),
+                        map.getOutputStallDuration(SurfaceTexture.class, size));
+            }
+            builder.setOutputSizes(CameraCapabilities.FORMAT_SURFACE_TEXTURE, table);
+        }
+
+        for (int format : CACHED_FORMATS) {
+            Size[] sizes = map.getOutputSizes(format);
+            if (sizes == null) {
+                continue;
+            }
+            OutputSize[] table = new OutputSize[sizes.length];
+            for (int i = 0; i < sizes.length; i++) {
+                table[i] = new OutputSize(sizes[i].getWidth(), sizes[i].getHeight(),
+                        map.getOutputMinFrameDuration(format, sizes[i]),
+                        map.getOutputStallDuration(format, sizes[i]));
+            }
+            builder.setOutputSizes(format, table);
+        }
+        return builder.build();
+    }
+}
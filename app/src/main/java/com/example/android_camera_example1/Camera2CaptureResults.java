@@ -0,0 +1,80 @@
+package com.example.android_camera_example1;
+
+import android.hardware.camera2.CaptureResult;
+import android.os.Build;
+import android.os.SystemClock;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Camera2CaptureResults keeps the capture-result fields written to the file and the index, by
+// sensor timestamp, until the frame they belong to is saved. Results are added on the control
+// thread; FileHelper reads them on the processing thread, waiting briefly for a result that can
+// arrive after its image.
+class Camera2CaptureResults implements FileHelper.MetadataSource {
+    private static final int RECENT_RESULT_COUNT = 64; // About two seconds of ZSL results.
+    private static final long WAIT_MILLIS = 50; // How long a saved frame waits for its late capture result.
+
+    private final Map<Long, CaptureMetadata> mRecentResults = new LinkedHashMap<Long, CaptureMetadata>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, CaptureMetadata> eldest) {
+            return size() > RECENT_RESULT_COUNT;
+        }
+    };
+
+    void remember(CaptureResult result) {
+        Long timestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+        if (null == timestamp) {
+            return;
+        }
+        CaptureMetadata metadata = new CaptureMetadata();
+        metadata.sensorTimestampNanos = timestamp;
+        metadata.timeMillis = System.currentTimeMillis();
+        Long exposureNanos = result.get(CaptureResult.SENSOR_EXPOSURE_TIME);
+        metadata.exposureTimeNanos = exposureNanos != null ? exposureNanos : 0;
+        Integer sensitivity = result.get(CaptureResult.SENSOR_SENSITIVITY);
+        metadata.sensitivity = sensitivity != null ? sensitivity : 0;
+        Float focusDistance = result.get(CaptureResult.LENS_FOCUS_DISTANCE);
+        metadata.focusDistance = focusDistance != null ? focusDistance : Float.NaN;
+        Float aperture = result.get(CaptureResult.LENS_APERTURE);
+        metadata.aperture = aperture != null ? aperture : Float.NaN;
+        Float focalLength = result.get(CaptureResult.LENS_FOCAL_LENGTH);
+        metadata.focalLength = focalLength != null ? focalLength : Float.NaN;
+        Integer lensState = result.get(CaptureResult.LENS_STATE);
+        metadata.lensState = lensState != null ? lensState : -1;
+        metadata.make = Build.MANUFACTURER;
+        metadata.model = Build.MODEL;
+        synchronized (mRecentResults) {
+            mRecentResults.put(timestamp, metadata);
+            mRecentResults.notifyAll(); // A save may be waiting for it.
+        }
+    }
+
+    // The entry stays until take() is called for the frame, once it is indexed.
+    @Override
+    public CaptureMetadata getMetadata(long timestampNanos) {
+        long deadline = SystemClock.elapsedRealtime() + WAIT_MILLIS;
+        synchronized (mRecentResults) {
+            CaptureMetadata metadata = mRecentResults.get(timestampNanos);
+            long waitMillis = WAIT_MILLIS;
+            while (null == metadata && waitMillis > 0) {
+                try {
+                    mRecentResults.wait(waitMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+                metadata = mRecentResults.get(timestampNanos);
+                waitMillis = deadline - SystemClock.elapsedRealtime();
+            }
+            return metadata;
+        }
+    }
+
+    // Remove and return the entry of a saved frame, or null if there is none.
+    CaptureMetadata take(long timestampNanos) {
+        synchronized (mRecentResults) {
+            return mRecentResults.remove(timestampNanos);
+        }
+    }
+}
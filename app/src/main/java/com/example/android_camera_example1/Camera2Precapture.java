@@ -0,0 +1,203 @@
+package com.example.android_camera_example1;
+
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraMetadata;
+import android.hardware.camera2.CaptureFailure;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.TotalCaptureResult;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Surface;
+
+// Camera2Precapture runs the PrecaptureStateMachine on a persistent Camera2 session: it sends
+// the AF and AE triggers, feeds the state machine the results and times sequences out. All
+// methods except requestStill() are called on the control thread.
+class Camera2Precapture {
+    private static final String TAG = "CameraPrecapture";
+
+    // The session the triggers and stills go to, owned by Camera.
+    interface Session {
+        // Current session, or null when closed.
+        CameraCaptureSession getSession();
+
+        // Builder of the repeating request, or null before the session is configured. The
+        // triggers ride on a copy of it, so they change nothing else about the preview.
+        CaptureRequest.Builder getRepeatingRequest();
+
+        // Whether the repeating request has results to watch: the preview is attached and no
+        // repeating burst replaces it.
+        boolean hasRepeatingResults();
+
+        // Output of the repeating request that trigger requests leave out, or null. With zero
+        // shutter lag this is the JPEG reader, so triggers add no still to the ring buffer.
+        Surface getTriggerExcludedTarget();
+
+        // Submit one still; returns false and accounts for it when it could not be submitted.
+        boolean captureStill();
+    }
+
+    private final CameraThreads mThreads;
+    private final Session mSession;
+    private final PrecaptureStateMachine mStateMachine;
+
+    Camera2Precapture(CameraThreads threads, Session session) {
+        mThreads = threads;
+        mSession = session;
+        mStateMachine = new PrecaptureStateMachine(mActions);
+    }
+
+    PrecaptureStateMachine getStateMachine() {
+        return mStateMachine;
+    }
+
+    // Queue a still behind 3A; it waits on the control thread, where the results arrive.
+    boolean requestStill() {
+        Handler handler = mThreads.getControlHandler();
+        return null != handler && handler.post(mRequestRunnable);
+    }
+
+    // Feed a result of the repeating request to the state machine.
+    void onRepeatingResult(CaptureResult result) {
+        mStateMachine.onResult(afStateOf(result), aeStateOf(result), SystemClock.elapsedRealtimeNanos());
+    }
+
+    // End the running sequence as the session closes; returns the number of stills dropped.
+    int cancel() {
+        Handler handler = mThreads.getControlHandler();
+        if (null != handler) {
+            handler.removeCallbacks(mTimeoutRunnable);
+        }
+        return mStateMachine.cancel();
+    }
+
+    // Starts or joins a precapture sequence for one still, and times the sequence out.
+    private final Runnable mRequestRunnable = new Runnable() {
+        @Override
+        public void run() {
+            boolean starting = !mStateMachine.isRunning();
+            if (!mStateMachine.request(SystemClock.elapsedRealtimeNanos())) {
+                Log.e(TAG, "Still capture not submitted");
+            }
+            Handler handler = mThreads.getControlHandler();
+            if (starting && mStateMachine.isRunning() && null != handler) {
+                // Results normally time the sequence out; this covers results that stop coming.
+                handler.removeCallbacks(mTimeoutRunnable);
+                handler.postDelayed(mTimeoutRunnable, (mStateMachine.getTimeoutNanos() + 999_999) / 1_000_000);
+            }
+        }
+    };
+
+    private final Runnable mTimeoutRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mStateMachine.checkTimeout(SystemClock.elapsedRealtimeNanos());
+        }
+    };
+
+    // Sends the 3A triggers and the stills of a precapture sequence on the session.
+    private final PrecaptureStateMachine.Actions mActions = new PrecaptureStateMachine.Actions() {
+        @Override
+        public boolean sendTriggers(boolean focus, boolean precapture) {
+            CameraCaptureSession session = mSession.getSession();
+            CaptureRequest.Builder builder = mSession.getRepeatingRequest();
+            if (null == session || null == builder || !mSession.hasRepeatingResults()) {
+                return false; // No preview results to watch.
+            }
+
+            builder.set(CaptureRequest.CONTROL_AF_TRIGGER, focus
+                    ? CameraMetadata.CONTROL_AF_TRIGGER_START : CameraMetadata.CONTROL_AF_TRIGGER_IDLE);
+            builder.set(CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER, precapture
+                    ? CameraMetadata.CONTROL_AE_PRECAPTURE_TRIGGER_START : CameraMetadata.CONTROL_AE_PRECAPTURE_TRIGGER_IDLE);
+            try {
+                session.capture(buildTriggerRequest(builder), mTriggerCaptureCallback, mThreads.getControlHandler());
+                return true;
+            } catch (CameraAccessException | IllegalStateException e) {
+                Log.e(TAG, "sendTriggers failed: ", e);
+                return false;
+            }
+        }
+
+        @Override
+        public boolean captureStill() {
+            return mSession.captureStill();
+        }
+
+        @Override
+        public void cancelTriggers(boolean focus, boolean precapture) {
+            CameraCaptureSession session = mSession.getSession();
+            CaptureRequest.Builder builder = mSession.getRepeatingRequest();
+            if (null == session || null == builder) {
+                return;
+            }
+
+            if (focus) {
+                builder.set(CaptureRequest.CONTROL_AF_TRIGGER, CameraMetadata.CONTROL_AF_TRIGGER_CANCEL);
+            }
+            if (precapture) {
+                builder.set(CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER, CameraMetadata.CONTROL_AE_PRECAPTURE_TRIGGER_CANCEL);
+            }
+            try {
+                session.capture(buildTriggerRequest(builder), null, mThreads.getControlHandler());
+            } catch (CameraAccessException | IllegalStateException e) {
+                Log.e(TAG, "cancelTriggers failed: ", e);
+            }
+        }
+    };
+
+    // Build the one-shot copy of the repeating request that carries the triggers set on the
+    // builder, then take them off it again.
+    private CaptureRequest buildTriggerRequest(CaptureRequest.Builder builder) {
+        Surface excluded = mSession.getTriggerExcludedTarget();
+        if (null != excluded) {
+            builder.removeTarget(excluded);
+        }
+        try {
+            return builder.build();
+        } finally {
+            if (null != excluded) {
+                builder.addTarget(excluded);
+            }
+            // Triggers are one-shot; keep them off the repeating request.
+            builder.set(CaptureRequest.CONTROL_AF_TRIGGER, CameraMetadata.CONTROL_AF_TRIGGER_IDLE);
+            builder.set(CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER, CameraMetadata.CONTROL_AE_PRECAPTURE_TRIGGER_IDLE);
+        }
+    }
+
+    // Tells the state machine when the triggers are in effect.
+    private final CameraCaptureSession.CaptureCallback mTriggerCaptureCallback = new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureCompleted(CameraCaptureSession session, CaptureRequest request, TotalCaptureResult result) {
+            mStateMachine.onTriggerResult(afStateOf(result), aeStateOf(result), SystemClock.elapsedRealtimeNanos());
+        }
+
+        @Override
+        public void onCaptureFailed(CameraCaptureSession session, CaptureRequest request, CaptureFailure failure) {
+            Log.e(TAG, "3A trigger failed, reason " + failure.getReason());
+            mStateMachine.onTriggerFailed(SystemClock.elapsedRealtimeNanos());
+        }
+    };
+
+    // AF state of a result for the state machine; none without a focusing lens.
+    private static int afStateOf(CaptureResult result) {
+        Integer mode = result.get(CaptureResult.CONTROL_AF_MODE);
+        Integer state = result.get(CaptureResult.CONTROL_AF_STATE);
+        if (null == mode || null == state || mode == CaptureResult.CONTROL_AF_MODE_OFF
+                || mode == CaptureResult.CONTROL_AF_MODE_EDOF) {
+            return PrecaptureStateMachine.STATE_NONE;
+        }
+        return state;
+    }
+
+    // AE state of a result for the state machine; none with manual exposure.
+    private static int aeStateOf(CaptureResult result) {
+        Integer mode = result.get(CaptureResult.CONTROL_AE_MODE);
+        Integer state = result.get(CaptureResult.CONTROL_AE_STATE);
+        if (null == mode || null == state || mode == CaptureResult.CONTROL_AE_MODE_OFF) {
+            return PrecaptureStateMachine.STATE_NONE;
+        }
+        return state;
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.android_camera_example1;
+
+import android.graphics.Rect;
+import android.hardware.camera2.CameraMetadata;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.MeteringRectangle;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.Range;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Camera2RequestParameters holds the parameters set through Camera's update API (zoom, exposure
+// compensation, AF region, torch, frame rate) and sets them on every request. Updates are
+// merged by a RequestUpdateCoalescer, so the repeating request is rebuilt at most once per frame.
+class Camera2RequestParameters {
+    private static final String TAG = "CameraParameters";
+
+    private static final long DEFAULT_FRAME_INTERVAL_NANOS = 33_333_333L; // Update interval until the preview rate is known.
+    private static final float AF_REGION_FRACTION = 0.1f; // Side of the AF region as a fraction of the active array.
+
+    // Restarts the repeating request with the current parameters, on the control thread.
+    interface RepeatingRequest {
+        // Returns false when there is no repeating request yet; the parameters are then
+        // applied when the preview starts.
+        boolean restart();
+    }
+
+    private final CameraThreads mThreads;
+    private final RepeatingRequest mRepeatingRequest;
+    private final RequestUpdateCoalescer<CaptureRequest.Key<?>> mCoalescer;
+    private volatile CameraCapabilities mCapabilities; // Of the open camera, for frame rate, zoom and exposure limits.
+    // Last value per key. Replaced, never modified, on the control thread.
+    private volatile Map<CaptureRequest.Key<?>, Object> mParameters = Collections.emptyMap();
+
+    Camera2RequestParameters(CameraThreads threads, RepeatingRequest repeatingRequest) {
+        mThreads = threads;
+        mRepeatingRequest = repeatingRequest;
+        mCoalescer = new RequestUpdateCoalescer<>(mSubmitter, mScheduler, DEFAULT_FRAME_INTERVAL_NANOS);
+    }
+
+    // Capabilities of the camera being opened, and its preview rate, 0 if unknown.
+    void setCapabilities(CameraCapabilities capabilities, double previewFps) {
+        mCapabilities = capabilities;
+        mCoalescer.setMinIntervalNanos(previewFps > 0 ? (long) (1e9 / previewFps) : DEFAULT_FRAME_INTERVAL_NANOS);
+    }
+
+    RequestUpdateCoalescer<CaptureRequest.Key<?>> getCoalescer() {
+        return mCoalescer;
+    }
+
+    void setZoom(float zoom) {
+        CameraCapabilities capabilities = mCapabilities;
+        int[] crop = null != capabilities ? capabilities.findCropRegion(zoom) : null;
+        if (null == crop) {
+            Log.e(TAG, "setZoom: active array unknown, return");
+            return;
+        }
+        mCoalescer.set(CaptureRequest.SCALER_CROP_REGION, new Rect(crop[0], crop[1], crop[2], crop[3]));
+    }
+
+    void setExposureCompensation(int steps) {
+        CameraCapabilities capabilities = mCapabilities;
+        if (null == capabilities) {
+            Log.e(TAG, "setExposureCompensation: camera not set up, return");
+            return;
+        }
+        mCoalescer.set(CaptureRequest.CONTROL_AE_EXPOSURE_COMPENSATION, capabilities.clampExposureCompensation(steps));
+    }
+
+    void setAfRegion(float x, float y) {
+        CameraCapabilities capabilities = mCapabilities;
+        if (null == capabilities || capabilities.getActiveArrayWidth() <= 0) {
+            Log.e(TAG, "setAfRegion: active array unknown, return");
+            return;
+        }
+        int width = capabilities.getActiveArrayWidth();
+        int height = capabilities.getActiveArrayHeight();
+        int size = Math.round(Math.min(width, height) * AF_REGION_FRACTION);
+        int left = Math.max(0, Math.min(Math.round(x * width) - size / 2, width - size));
+        int top = Math.max(0, Math.min(Math.round(y * height) - size / 2, height - size));
+        mCoalescer.set(CaptureRequest.CONTROL_AF_REGIONS, new MeteringRectangle[] {
+                new MeteringRectangle(left, top, size, size, MeteringRectangle.METERING_WEIGHT_MAX)});
+    }
+
+    void setTorch(boolean on) {
+        mCoalescer.set(CaptureRequest.FLASH_MODE, on ? CameraMetadata.FLASH_MODE_TORCH : CameraMetadata.FLASH_MODE_OFF);
+    }
+
+    void setFpsRange(int minFps, int maxFps) {
+        CameraCapabilities capabilities = mCapabilities;
+        int[] range = null != capabilities ? capabilities.findAeTargetFpsRange(minFps, maxFps) : null;
+        if (null == range) {
+            Log.e(TAG, "setFpsRange: frame rate ranges unknown, return");
+            return;
+        }
+        mCoalescer.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, new Range<>(range[0], range[1]));
+    }
+
+    // Set the parameters, then the load governor's JPEG quality and frame rate range, on a
+    // request. A range from setFpsRange() is kept unless the step's range is lower.
+    @SuppressWarnings("unchecked")
+    void applyTo(CaptureRequest.Builder builder, LoadGovernor.Step step) {
+        Map<CaptureRequest.Key<?>, Object> parameters = mParameters;
+        for (Map.Entry<CaptureRequest.Key<?>, Object> entry : parameters.entrySet()) {
+            builder.set((CaptureRequest.Key<Object>) entry.getKey(), entry.getValue());
+        }
+
+        builder.set(CaptureRequest.JPEG_QUALITY, (byte) step.jpegQuality);
+        int minFps = step.minPreviewFps;
+        int maxFps = step.maxPreviewFps;
+        Range<Integer> requested = (Range<Integer>) parameters.get(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE);
+        if (null != requested) {
+            maxFps = Math.min(maxFps, requested.getUpper());
+            minFps = Math.min(requested.getLower(), maxFps);
+        }
+        CameraCapabilities capabilities = mCapabilities;
+        int[] fpsRange = null != capabilities ? capabilities.findAeTargetFpsRange(minFps, maxFps) : null;
+        if (null != fpsRange) {
+            builder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, new Range<>(fpsRange[0], fpsRange[1]));
+        }
+    }
+
+    // Merges the coalesced changes into mParameters and restarts the repeating request, on the
+    // control thread.
+    private final RequestUpdateCoalescer.Submitter<CaptureRequest.Key<?>> mSubmitter =
+            new RequestUpdateCoalescer.Submitter<CaptureRequest.Key<?>>() {
+        @Override
+        public boolean submit(Map<CaptureRequest.Key<?>, Object> changes) {
+            Map<CaptureRequest.Key<?>, Object> parameters = new LinkedHashMap<>(mParameters);
+            parameters.putAll(changes);
+            mParameters = Collections.unmodifiableMap(parameters);
+            return mRepeatingRequest.restart();
+        }
+    };
+
+    private final RequestUpdateCoalescer.Scheduler mScheduler = new RequestUpdateCoalescer.Scheduler() {
+        @Override
+        public long nowNanos() {
+            return SystemClock.elapsedRealtimeNanos();
+        }
+
+        @Override
+        public boolean schedule(Runnable task, long delayNanos) {
+            Handler handler = mThreads.getControlHandler();
+            return null != handler && handler.postDelayed(task, (delayNanos + 999_999) / 1_000_000);
+        }
+    };
+}
@@ -0,0 +1,103 @@
+package com.example.android_camera_example1;
+
+import android.hardware.camera2.CaptureResult;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+// Camera2ZslCapture keeps the stills of a zero-shutter-lag repeating request in a ZslRingBuffer,
+// scores them from their capture results and picks the one to save when the button is pressed.
+// Stills requested explicitly on the same reader are told apart by their sensor timestamps.
+class Camera2ZslCapture {
+    private static final String TAG = "CameraZsl";
+
+    private static final int FRAME_COUNT = 6; // About 200 ms of history at 30 fps.
+    private static final long MAX_BYTES = 24 * 1024 * 1024; // Cap on JPEG bytes held by the ring buffer.
+    private static final int READER_SLACK = 2; // Reader images beyond the ring: one being acquired, one being copied.
+    private static final int SHARPNESS_CANDIDATES = 3; // Frames nearest the press that compete on sharpness.
+
+    private final ZslRingBuffer mBuffer = new ZslRingBuffer(FRAME_COUNT, MAX_BYTES); // Recent stills.
+    private final Set<Long> mRequestedStillTimestamps = new HashSet<>(); // Explicit stills in flight, control thread only.
+    private volatile boolean mRealtimeTimestamps; // Sensor timestamps comparable with elapsedRealtimeNanos().
+
+    ZslRingBuffer getBuffer() {
+        return mBuffer;
+    }
+
+    void setRealtimeTimestamps(boolean realtime) {
+        mRealtimeTimestamps = realtime;
+    }
+
+    // Images the JPEG reader needs to fill the ring and still deliver explicit stills.
+    int getReaderMaxImages() {
+        return mBuffer.getCapacity() + READER_SLACK;
+    }
+
+    // Forget the stills in flight as a new session starts, on the control thread.
+    void onSessionConfigured() {
+        mRequestedStillTimestamps.clear();
+    }
+
+    // An explicit still started; its image goes to the pipeline, not the ring buffer.
+    void onStillStarted(long timestampNanos) {
+        mRequestedStillTimestamps.add(timestampNanos);
+    }
+
+    // Keep an image of the JPEG reader in the ring buffer, on the control thread. Returns false,
+    // leaving the image to the caller, when it belongs to an explicit still.
+    boolean offer(ByteBuffer data, AutoCloseable owner, long timestampNanos) {
+        if (mRequestedStillTimestamps.remove(timestampNanos)) {
+            return false;
+        }
+        mBuffer.put(new CapturedFrame(data, owner, -1, timestampNanos), timestampNanos);
+        return true;
+    }
+
+    // Scores a still of the repeating request by how sharp it is likely to be: focus settled and
+    // lens not moving, then the shorter exposure (less motion blur).
+    void onRepeatingResult(CaptureResult result) {
+        Long timestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+        if (null == timestamp) {
+            return;
+        }
+        float score = 0;
+        Integer afState = result.get(CaptureResult.CONTROL_AF_STATE);
+        if (null != afState && (afState == CaptureResult.CONTROL_AF_STATE_FOCUSED_LOCKED
+                || afState == CaptureResult.CONTROL_AF_STATE_PASSIVE_FOCUSED)) {
+            score += 2;
+        }
+        Integer lensState = result.get(CaptureResult.LENS_STATE);
+        if (null != lensState && lensState == CaptureResult.LENS_STATE_STATIONARY) {
+            score += 1;
+        }
+        Long exposureNanos = result.get(CaptureResult.SENSOR_EXPOSURE_TIME);
+        if (null != exposureNanos) {
+            score -= exposureNanos / 1e9f; // A tie-breaker; at most a fraction of a point.
+        }
+        mBuffer.putScore(timestamp, score);
+    }
+
+    // Take the frame nearest the button press out of the ring buffer: the sharpest of the few
+    // nearest when sensor timestamps can be compared with the press time, else the newest.
+    // Returns null if the buffer is empty, for example right after the session started.
+    CapturedFrame select() {
+        long pressNanos = SystemClock.elapsedRealtimeNanos();
+        boolean realtime = mRealtimeTimestamps;
+        ZslRingBuffer.Entry entry = realtime ? mBuffer.select(pressNanos, SHARPNESS_CANDIDATES) : mBuffer.selectNewest();
+        if (null == entry) {
+            return null;
+        }
+        if (realtime) {
+            Log.d(TAG, "Zero-shutter-lag frame " + (pressNanos - entry.getTimestampNanos()) / 1000000 + " ms before the press");
+        }
+        return entry.getFrame();
+    }
+
+    // Release the frames as the session closes; they are images of its JPEG reader.
+    void clear() {
+        mBuffer.clear();
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.android_camera_example1;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+// CameraCapabilities is the part of CameraCharacteristics the pipeline needs, loaded once per
+// camera ID: sensor orientation, the supported AE target frame rate ranges, the active array,
+// zoom and exposure compensation limits and, per output format, the stream configuration table
+// sorted by area (largest first).
+public class CameraCapabilities {
+    // Format key for SurfaceTexture outputs, which StreamConfigurationMap lists by class.
+    public static final int FORMAT_SURFACE_TEXTURE = -1;
+
+    private static final OutputSize[] NO_SIZES = new OutputSize[0];
+    private static final int[][] NO_FPS_RANGES = new int[0][];
+
+    // Largest area first; ties broken by width so the order is stable.
+    private static final Comparator<OutputSize> BY_AREA_DESCENDING = new Comparator<OutputSize>() {
+        @Override
+        public int compare(OutputSize a, OutputSize b) {
+            int byArea = Long.compare(b.getArea(), a.getArea());
+            return byArea != 0 ? byArea : Integer.compare(b.getWidth(), a.getWidth());
+        }
+    };
+
+    private final String mCameraId;
+    private final int mSensorOrientation;
+    private final boolean mRealtimeTimestamps;
+    private final int[][] mAeTargetFpsRanges; // {lower, upper} pairs.
+    private final int mActiveArrayWidth; // 0 if unknown.
+    private final int mActiveArrayHeight;
+    private final float mMaxDigitalZoom;
+    private final int mMinExposureCompensation;
+    private final int mMaxExposureCompensation;
+    private final Map<Integer, OutputSize[]> mOutputSizes;
+
+    private CameraCapabilities(Builder builder) {
+        mCameraId = builder.mCameraId;
+        mSensorOrientation = builder.mSensorOrientation;
+        mRealtimeTimestamps = builder.mRealtimeTimestamps;
+        mAeTargetFpsRanges = builder.mAeTargetFpsRanges;
+        mActiveArrayWidth = builder.mActiveArrayWidth;
+        mActiveArrayHeight = builder.mActiveArrayHeight;
+        mMaxDigitalZoom = builder.mMaxDigitalZoom;
+        mMinExposureCompensation = builder.mMinExposureCompensation;
+        mMaxExposureCompensation = builder.mMaxExposureCompensation;
+        mOutputSizes = Collections.unmodifiableMap(new HashMap<>(builder.mOutputSizes));
+    }
+
+    public String getCameraId() {
+        return mCameraId;
+    }
+
+    public int getSensorOrientation() {
+        return mSensorOrientation;
+    }
+
+    // True if sensor timestamps share the SystemClock.elapsedRealtimeNanos() time base, so they
+    // can be compared with the time of a button press.
+    public boolean hasRealtimeTimestamps() {
+        return mRealtimeTimestamps;
+    }
+
+    // The supported CONTROL_AE_TARGET_FPS_RANGE that best fits [minFps, maxFps] as {lower, upper}:
+    // the highest upper bound not above maxFps (or the lowest one if all are above it), then the
+    // lower bound nearest minFps. Null if the ranges are unknown.
+    public int[] findAeTargetFpsRange(int minFps, int maxFps) {
+        int[] best = null;
+        for (int[] range : mAeTargetFpsRanges) {
+            if (best == null || isBetterFpsRange(range, best, minFps, maxFps)) {
+                best = range;
+            }
+        }
+        return best != null ? best.clone() : null;
+    }
+
+    private static boolean isBetterFpsRange(int[] range, int[] best, int minFps, int maxFps) {
+        boolean fits = range[1] <= maxFps;
+        boolean bestFits = best[1] <= maxFps;
+        if (fits != bestFits) {
+            return fits;
+        }
+        if (range[1] != best[1]) {
+            return fits ? range[1] > best[1] : range[1] < best[1];
+        }
+        return Math.abs(range[0] - minFps) < Math.abs(best[0] - minFps);
+    }
+
+    public int getActiveArrayWidth() {
+        return mActiveArrayWidth;
+    }
+
+    public int getActiveArrayHeight() {
+        return mActiveArrayHeight;
+    }
+
+    // SCALER_CROP_REGION for a digital zoom ratio, clamped to [1, max digital zoom], as
+    // {left, top, right, bottom} in active array coordinates and centered. Null if the active
+    // array is unknown.
+    public int[] findCropRegion(float zoom) {
+        if (mActiveArrayWidth <= 0 || mActiveArrayHeight <= 0) {
+            return null;
+        }
+        float ratio = Math.max(1f, Math.min(zoom, mMaxDigitalZoom));
+        int width = Math.round(mActiveArrayWidth / ratio);
+        int height = Math.round(mActiveArrayHeight / ratio);
+        int left = (mActiveArrayWidth - width) / 2;
+        int top = (mActiveArrayHeight - height) / 2;
+        return new int[] {left, top, left + width, top + height};
+    }
+
+    // CONTROL_AE_EXPOSURE_COMPENSATION clamped to the supported range (0 if unsupported).
+    public int clampExposureCompensation(int steps) {
+        return Math.max(mMinExposureCompensation, Math.min(steps, mMaxExposureCompensation));
+    }
+
+    // Output sizes for an ImageFormat (or FORMAT_SURFACE_TEXTURE), largest first. Never null.
+    public OutputSize[] getOutputSizes(int format) {
+        OutputSize[] sizes = mOutputSizes.get(format);
+        return sizes != null ? sizes.clone() : NO_SIZES;
+    }
+
+    // Largest output size for a format, or null if the format is not supported.
+    public OutputSize getLargestOutputSize(int format) {
+        OutputSize[] sizes = mOutputSizes.get(format);
+        return sizes != null && sizes.length > 0 ? sizes[0] : null;
+    }
+
+    // Builder for CameraCapabilities; sorts each size table once when built.
+    public static class Builder {
+        private final String mCameraId;
+        private int mSensorOrientation;
+        private boolean mRealtimeTimestamps;
+        private int[][] mAeTargetFpsRanges = NO_FPS_RANGES;
+        private int mActiveArrayWidth;
+        private int mActiveArrayHeight;
+        private float mMaxDigitalZoom = 1f;
+        private int mMinExposureCompensation;
+        private int mMaxExposureCompensation;
+        private final Map<Integer, OutputSize[]> mOutputSizes = new HashMap<>();
+
+        public Builder(String cameraId) {
+            mCameraId = cameraId;
+        }
+
+        public Builder setSensorOrientation(int sensorOrientation) {
+            mSensorOrientation = sensorOrientation;
+            return this;
+        }
+
+        public Builder setRealtimeTimestamps(boolean realtimeTimestamps) {
+            mRealtimeTimestamps = realtimeTimestamps;
+            return this;
+        }
+
+        // Supported AE target frame rate ranges as {lower, upper} pairs.
+        public Builder setAeTargetFpsRanges(int[][] ranges) {
+            mAeTargetFpsRanges = new int[ranges.length][];
+            for (int i = 0; i < ranges.length; i++) {
+                mAeTargetFpsRanges[i] = new int[] {ranges[i][0], ranges[i][1]};
+            }
+            return this;
+        }
+
+        public Builder setActiveArraySize(int width, int height) {
+            mActiveArrayWidth = width;
+            mActiveArrayHeight = height;
+            return this;
+        }
+
+        public Builder setMaxDigitalZoom(float maxDigitalZoom) {
+            mMaxDigitalZoom = Math.max(1f, maxDigitalZoom);
+            return this;
+        }
+
+        // Supported CONTROL_AE_EXPOSURE_COMPENSATION steps.
+        public Builder setExposureCompensationRange(int min, int max) {
+            mMinExposureCompensation = min;
+            mMaxExposureCompensation = max;
+            return this;
+        }
+
+        public Builder setOutputSizes(int format, OutputSize[] sizes) {
+            OutputSize[] sorted = sizes.clone();
+            Arrays.sort(sorted, BY_AREA_DESCENDING);
+            mOutputSizes.put(format, sorted);
+            return this;
+        }
+
+        public CameraCapabilities build() {
+            return new CameraCapabilities(this);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.android_camera_example1;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// CameraCharacteristicsCache keeps the camera ID list and the CameraCapabilities of each camera,
+// so getCameraCharacteristics and the stream configuration tables are queried over binder once
+// per camera instead of on every setup and shutter press. It can be warmed in the background at
+// app start and is invalidated from CameraManager.AvailabilityCallback when cameras come and go.
+// For multi-camera streaming it also keeps the sets of cameras that can stream concurrently.
+public class CameraCharacteristicsCache {
+    // Queries the camera service. Camera2CapabilitiesLoader implements this on CameraManager;
+    // unit tests use a fake that counts the calls.
+    public interface Loader {
+        // Return the IDs of the connected cameras, or null if the service cannot be queried.
+        String[] loadCameraIds();
+
+        // Return the capabilities of a camera, or null if it cannot be queried.
+        CameraCapabilities loadCapabilities(String cameraId);
+
+        // Return the sets of camera IDs that can stream at the same time, or null if the
+        // service cannot be queried. Empty if the device does not say (before Android 11).
+        Set<Set<String>> loadConcurrentCameraIds();
+    }
+
+    private final Loader mLoader;
+    private final ConcurrentHashMap<String, CameraCapabilities> mCapabilities = new ConcurrentHashMap<>();
+    private volatile List<String> mCameraIds; // Null until loaded or after invalidation.
+    private volatile List<Set<String>> mConcurrentCameraIds; // Null with mCameraIds, or until loaded.
+
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    private final AtomicLong mInvalidations = new AtomicLong();
+
+    // Constructor for the CameraCharacteristicsCache class.
+    public CameraCharacteristicsCache(Loader loader) {
+        mLoader = loader;
+    }
+
+    // Capabilities of a camera, loaded on the first request. Returns null if loading failed;
+    // failures are not cached so the next request tries again.
+    public CameraCapabilities get(String cameraId) {
+        CameraCapabilities capabilities = mCapabilities.get(cameraId);
+        if (capabilities != null) {
+            mHits.incrementAndGet();
+            return capabilities;
+        }
+
+        mMisses.incrementAndGet();
+        synchronized (this) {
+            // Another thread may have loaded it while this one waited.
+            capabilities = mCapabilities.get(cameraId);
+            if (capabilities == null) {
+                capabilities = mLoader.loadCapabilities(cameraId);
+                if (capabilities != null) {
+                    mCapabilities.put(cameraId, capabilities);
+                }
+            }
+        }
+        return capabilities;
+    }
+
+    // IDs of the connected cameras, loaded on the first request. Empty if loading failed.
+    public List<String> getCameraIds() {
+        List<String> cameraIds = mCameraIds;
+        if (cameraIds != null) {
+            mHits.incrementAndGet();
+            return cameraIds;
+        }
+
+        mMisses.incrementAndGet();
+        synchronized (this) {
+            if (mCameraIds == null) {
+                String[] loaded = mLoader.loadCameraIds();
+                if (loaded == null) {
+                    return Collections.emptyList();
+                }
+                mCameraIds = Collections.unmodifiableList(Arrays.asList(loaded.clone()));
+            }
+            return mCameraIds;
+        }
+    }
+
+    // Sets of camera IDs that can stream concurrently, loaded on the first request. Empty if
+    // the device does not report them or loading failed.
+    public List<Set<String>> getConcurrentCameraIds() {
+        List<Set<String>> concurrent = mConcurrentCameraIds;
+        if (concurrent != null) {
+            mHits.incrementAndGet();
+            return concurrent;
+        }
+
+        mMisses.incrementAndGet();
+        synchronized (this) {
+            if (mConcurrentCameraIds == null) {
+                Set<Set<String>> loaded = mLoader.loadConcurrentCameraIds();
+                if (loaded == null) {
+                    return Collections.emptyList();
+                }
+                List<Set<String>> sets = new ArrayList<>(loaded.size());
+                for (Set<String> set : loaded) {
+                    sets.add(Collections.unmodifiableSet(set));
+                }
+                mConcurrentCameraIds = Collections.unmodifiableList(sets);
+            }
+            return mConcurrentCameraIds;
+        }
+    }
+
+    // Up to maxCameras connected cameras to stream at once, in ID list order. When the device
+    // reports concurrent sets, the largest set is used (the one with the earliest camera on a
+    // tie); otherwise the cameras are taken as independent, and one the device cannot run
+    // alongside the others fails to open with ERROR_MAX_CAMERAS_IN_USE.
+    public List<String> selectConcurrentCameras(int maxCameras) {
+        List<String> cameraIds = getCameraIds();
+        List<Set<String>> concurrent = getConcurrentCameraIds();
+        List<String> selected = new ArrayList<>();
+        if (concurrent.isEmpty()) {
+            for (String cameraId : cameraIds) {
+                if (selected.size() < maxCameras) {
+                    selected.add(cameraId);
+                }
+            }
+            return selected;
+        }
+
+        Set<String> best = null;
+        int bestFirst = Integer.MAX_VALUE;
+        for (Set<String> set : concurrent) {
+            int first = Integer.MAX_VALUE;
+            for (String cameraId : set) {
+                int index = cameraIds.indexOf(cameraId);
+                if (index >= 0) {
+                    first = Math.min(first, index);
+                }
+            }
+            int size = Math.min(count(set, cameraIds), maxCameras);
+            int bestSize = best != null ? Math.min(count(best, cameraIds), maxCameras) : -1;
+            if (size > bestSize || (size == bestSize && first < bestFirst)) {
+                best = set;
+                bestFirst = first;
+            }
+        }
+        for (String cameraId : cameraIds) {
+            if (best.contains(cameraId) && selected.size() < maxCameras) {
+                selected.add(cameraId);
+            }
+        }
+        return selected;
+    }
+
+    // Number of the cameras in set that are connected.
+    private static int count(Set<String> set, List<String> cameraIds) {
+        int count = 0;
+        for (String cameraId : set) {
+            if (cameraIds.contains(cameraId)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Load the camera ID list and the capabilities of every camera.
+    public void prefetch() {
+        for (String cameraId : getCameraIds()) {
+            get(cameraId);
+        }
+    }
+
+    // Run prefetch() on a background thread, for example while the activity is being created.
+    public Thread prefetchAsync() {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                prefetch();
+            }
+        }, "CameraPrefetch");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    // Availability changes from CameraManager.AvailabilityCallback. A camera becoming unavailable
+    // is usually just opened, so only the ID list is dropped. A camera ID the cache does not know
+    // becoming available is a newly connected device, so its entry is dropped too in case an
+    // earlier device used the same ID.
+    public void onCameraAvailabilityChanged(String cameraId, boolean available) {
+        List<String> cameraIds = mCameraIds;
+        if (available && cameraIds != null && cameraIds.contains(cameraId)) {
+            return; // A known camera was closed again.
+        }
+
+        mCameraIds = null;
+        mConcurrentCameraIds = null; // The combinations change with the cameras.
+        if (available) {
+            mCapabilities.remove(cameraId);
+        }
+        mInvalidations.incrementAndGet();
+    }
+
+    // Drop the cached capabilities of one camera.
+    public void invalidate(String cameraId) {
+        mCapabilities.remove(cameraId);
+        mInvalidations.incrementAndGet();
+    }
+
+    // Drop everything.
+    public void invalidateAll() {
+        mCapabilities.clear();
+        mCameraIds = null;
+        mConcurrentCameraIds = null;
+        mInvalidations.incrementAndGet();
+    }
+
+    public long getHits() {
+        return mHits.get();
+    }
+
+    public long getMisses() {
+        return mMisses.get();
+    }
+
+    public long getInvalidations() {
+        return mInvalidations.get();
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.android_camera_example1;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+// CameraLoadSampler feeds a LoadGovernor on the control thread: every sample holds the writer
+// queue fill, and the capture-to-save latency and frame drops since the previous sample. When
+// the governor changes step, the listener applies it.
+class CameraLoadSampler {
+    private static final String TAG = "CameraLoad";
+
+    private static final long SAMPLE_INTERVAL_MILLIS = 500; // Period of the samples.
+
+    private final CameraThreads mThreads;
+    private final LoadGovernor mGovernor;
+    private final CaptureMetrics mMetrics;
+    private final AsyncImageWriter<?> mWriter;
+    private final Runnable mStepChangedListener; // Runs on the control thread.
+    private long mSampledCaptures; // Totals at the previous sample, control thread only.
+    private long mSampledLatencyNanos;
+    private long mSampledDrops;
+
+    CameraLoadSampler(CameraThreads threads, LoadGovernor governor, CaptureMetrics metrics, AsyncImageWriter<?> writer,
+                      Runnable stepChangedListener) {
+        mThreads = threads;
+        mGovernor = governor;
+        mMetrics = metrics;
+        mWriter = writer;
+        mStepChangedListener = stepChangedListener;
+    }
+
+    void start() {
+        Handler handler = mThreads.getControlHandler();
+        if (null == handler) {
+            return;
+        }
+        handler.removeCallbacks(mSampleRunnable);
+        handler.postDelayed(mSampleRunnable, SAMPLE_INTERVAL_MILLIS);
+    }
+
+    void stop() {
+        Handler handler = mThreads.getControlHandler();
+        if (null != handler) {
+            handler.removeCallbacks(mSampleRunnable);
+        }
+    }
+
+    private final Runnable mSampleRunnable = new Runnable() {
+        @Override
+        public void run() {
+            sample();
+            Handler handler = mThreads.getControlHandler();
+            if (null != handler) {
+                handler.postDelayed(this, SAMPLE_INTERVAL_MILLIS);
+            }
+        }
+    };
+
+    private void sample() {
+        LatencyHistogram total = mMetrics.getTotalHistogram();
+        long captures = total.getCount();
+        long latencyNanos = total.getSumNanos();
+        long drops = mMetrics.getFramesDropped();
+        if (captures < mSampledCaptures || drops < mSampledDrops) {
+            mSampledCaptures = 0; // The metrics were reset.
+            mSampledLatencyNanos = 0;
+            mSampledDrops = 0;
+        }
+        double latencyMillis = captures > mSampledCaptures
+                ? (latencyNanos - mSampledLatencyNanos) / 1e6 / (captures - mSampledCaptures) : Double.NaN;
+        LoadGovernor.Sample sample = new LoadGovernor.Sample(
+                (double) mWriter.getQueueDepth() / mWriter.getQueueCapacity(), latencyMillis, drops - mSampledDrops);
+        mSampledCaptures = captures;
+        mSampledLatencyNanos = latencyNanos;
+        mSampledDrops = drops;
+
+        if (!mGovernor.update(sample, SystemClock.elapsedRealtime())) {
+            return;
+        }
+        Log.i(TAG, "Load step " + mGovernor.getStepIndex() + ": " + mGovernor.getStep());
+        mStepChangedListener.run();
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.android_camera_example1;
+
+import android.hardware.camera2.CaptureRequest;
+import android.os.Handler;
+import android.util.Log;
+
+import java.util.Locale;
+
+// CameraMetricsLogger logs the metrics of one camera periodically on the control thread: capture
+// latency, writer, thumbnails, zero shutter lag, load, parameter and precapture counters. Idle
+// periods, with no capture started since the previous dump, are skipped.
+class CameraMetricsLogger {
+    private static final String TAG = "CameraMetrics";
+
+    private final Camera mCamera;
+    private final CameraThreads mThreads;
+    private volatile long mIntervalMillis; // 0 while stopped.
+    private long mLastDumpedCaptures = -1; // Captures started at the last dump, control thread only.
+
+    CameraMetricsLogger(Camera camera, CameraThreads threads) {
+        mCamera = camera;
+        mThreads = threads;
+    }
+
+    // Start dumping every intervalMillis; 0 or less only stops the dump.
+    void start(long intervalMillis) {
+        stop();
+        Handler handler = mThreads.getControlHandler();
+        if (null == handler || intervalMillis <= 0) {
+            return;
+        }
+        mIntervalMillis = intervalMillis;
+        handler.postDelayed(mDumpRunnable, intervalMillis);
+    }
+
+    void stop() {
+        mIntervalMillis = 0;
+        Handler handler = mThreads.getControlHandler();
+        if (null != handler) {
+            handler.removeCallbacks(mDumpRunnable);
+        }
+    }
+
+    private final Runnable mDumpRunnable = new Runnable() {
+        @Override
+        public void run() {
+            dump();
+            Handler handler = mThreads.getControlHandler();
+            long intervalMillis = mIntervalMillis;
+            if (null != handler && intervalMillis > 0) {
+                handler.postDelayed(this, intervalMillis);
+            }
+        }
+    };
+
+    private void dump() {
+        CaptureMetrics metrics = mCamera.getCaptureMetrics();
+        long captures = metrics.getCapturesStarted();
+        if (captures == mLastDumpedCaptures) {
+            return;
+        }
+        mLastDumpedCaptures = captures;
+        FileHelper fileHelper = mCamera.getFileHelper();
+        ThumbnailCache thumbnails = mCamera.getThumbnailCache();
+        ZslRingBuffer zsl = mCamera.getZslBuffer();
+        LoadGovernor load = mCamera.getLoadGovernor();
+        RequestUpdateCoalescer<CaptureRequest.Key<?>> coalescer = mCamera.getParameterCoalescer();
+        PrecaptureStateMachine precapture = mCamera.getPrecapture();
+        Log.i(TAG, "Capture metrics of camera " + mCamera.getCameraId() + ":\n" + metrics.dump()
+                + "\nwriter: " + fileHelper.getAsyncWriter().getLatencyHistogram().format()
+                + ", " + fileHelper.getMetadataMissCount() + " saved without capture result"
+                + String.format(Locale.US, "\nthumbnails: hit ratio %.2f, memory %d KB, disk %d KB, evictions %d/%d",
+                        thumbnails.getHitRatio(), thumbnails.getMemoryBytes() / 1024,
+                        thumbnails.getDiskCache().getSize() / 1024, thumbnails.getMemoryEvictionCount(),
+                        thumbnails.getDiskEvictionCount())
+                + String.format(Locale.US, "\nzsl: %d frames, %d of %d KB, %d selected, %d evicted",
+                        zsl.getFrameCount(), zsl.getBytesHeld() / 1024, zsl.getMaxBytes() / 1024,
+                        zsl.getFramesSelected(), zsl.getFramesEvicted())
+                + String.format(Locale.US, "\nload: step %d of %d (%s), %d down, %d up",
+                        load.getStepIndex(), load.getStepCount(), load.getStep(),
+                        load.getStepDownCount(), load.getStepUpCount())
+                + String.format(Locale.US, "\nparameters: %d updates, %d submitted, %d coalesced",
+                        coalescer.getUpdateCount(), coalescer.getSubmittedCount(), coalescer.getCoalescedCount())
+                + String.format(Locale.US, "\nprecapture: %d sequences, %d fast, %d converged, %d timed out, %s",
+                        precapture.getSequenceCount(), precapture.getFastPathCount(),
+                        precapture.getConvergedCount(), precapture.getTimeoutCount(),
+                        precapture.getLatencyHistogram().format()));
+    }
+}
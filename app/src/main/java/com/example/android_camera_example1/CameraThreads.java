@@ -0,0 +1,108 @@
+package com.example.android_camera_example1;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import java.util.concurrent.TimeUnit;
+
+// CameraThreads owns every thread the camera pipeline uses, started in onResume and quit in
+// onPause:
+// - one camera-control thread (a HandlerThread) for Camera2 device, session and capture
+//   callbacks and the ImageReader listeners;
+// - one image-processing executor for analysis and for handing captured frames to storage;
+// - one I/O executor for MediaStore writes.
+// Camera2 calls back on a Handler, so the control thread is a Looper thread; the other two are
+// LifecycleExecutors that components keep across restarts.
+public class CameraThreads {
+    private static final String TAG = "CameraThreads";
+    // Analysis and frame delivery are each serialized, so two threads keep one from starving the
+    // other. With several cameras, each delivery drain yields its thread every few frames.
+    static final int PROCESSING_THREAD_COUNT = 2;
+    private static final long QUIT_TIMEOUT_MILLIS = 2000;
+
+    private final LifecycleExecutor mProcessingExecutor;
+    private final LifecycleExecutor mIoExecutor;
+    private HandlerThread mControlThread; // Null while quit, guarded by this.
+    private Handler mControlHandler;
+
+    // Constructor for the CameraThreads class. ioThreadCount should match the number of
+    // MediaStore writer workers.
+    public CameraThreads(int ioThreadCount) {
+        mProcessingExecutor = new LifecycleExecutor("CameraProcessing", PROCESSING_THREAD_COUNT);
+        mIoExecutor = new LifecycleExecutor("CameraIO", ioThreadCount);
+    }
+
+    // Start the control thread and both executors; no-op if they are running.
+    public synchronized void start() {
+        if (null == mControlThread) {
+            mControlThread = new HandlerThread("CameraControl");
+            mControlThread.start();
+            mControlHandler = new Handler(mControlThread.getLooper());
+        }
+        mProcessingExecutor.start();
+        mIoExecutor.start();
+    }
+
+    // Quit the control thread once its pending callbacks have run, then let queued processing
+    // and I/O tasks finish. Call after the camera and its session are closed. Called from a
+    // control-thread task, the control thread stops once that task returns.
+    public void quit() {
+        HandlerThread controlThread;
+        synchronized (this) {
+            controlThread = mControlThread;
+            mControlThread = null;
+            mControlHandler = null;
+        }
+
+        if (null != controlThread) {
+            controlThread.quitSafely();
+        }
+        if (null != controlThread && Thread.currentThread() != controlThread) {
+            try {
+                controlThread.join(QUIT_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (!mProcessingExecutor.quit(QUIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            Log.w(TAG, "Processing tasks still running after quit");
+        }
+        if (!mIoExecutor.quit(QUIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            Log.w(TAG, "I/O tasks still running after quit");
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return null != mControlThread;
+    }
+
+    // Handler for Camera2 and ImageReader callbacks, or null while quit.
+    public synchronized Handler getControlHandler() {
+        return mControlHandler;
+    }
+
+    public LifecycleExecutor getProcessingExecutor() {
+        return mProcessingExecutor;
+    }
+
+    public LifecycleExecutor getIoExecutor() {
+        return mIoExecutor;
+    }
+
+    // Number of live threads across the control thread and both executors, for monitoring.
+    public synchronized int getThreadCount() {
+        int controlThreads = null != mControlThread && mControlThread.isAlive() ? 1 : 0;
+        return controlThreads + mProcessingExecutor.getThreadCount() + mIoExecutor.getThreadCount();
+    }
+
+    // Tasks waiting for a processing thread, for monitoring.
+    public int getProcessingQueueDepth() {
+        return mProcessingExecutor.getQueueDepth();
+    }
+
+    // Tasks waiting for an I/O thread, for monitoring.
+    public int getIoQueueDepth() {
+        return mIoExecutor.getQueueDepth();
+    }
+}
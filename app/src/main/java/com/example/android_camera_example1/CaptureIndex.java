@@ -0,0 +1,258 @@
+package com.example.android_camera_example1;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// CaptureIndex is the app's own record of its captures: an append-only file of fixed-size
+// records, memory-mapped so an append is a few stores into the mapping and record N is at a
+// known offset. Records are kept in capture time order, so time range queries are a binary
+// search. Each record ends with a CRC; on open, records after the last intact one (a write
+// torn by a crash) are dropped and later appends overwrite them. Layout:
+//   header  magic, version, record size, record count (updated after each append)
+//   records capture ID, time, sensor timestamp, size, dimensions, exposure, sensitivity,
+//           focus distance, Uri (length-prefixed UTF-8), CRC32 of the preceding bytes
+public class CaptureIndex implements Closeable {
+    static final int MAGIC = 0x43494458; // "CIDX"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 256;
+    static final int MAX_URI_BYTES = RECORD_SIZE - 62; // Fixed fields, Uri length and CRC.
+    private static final int COUNT_OFFSET = 12;
+    private static final int CRC_OFFSET = RECORD_SIZE - 4;
+    private static final int INITIAL_CAPACITY = 1024; // Records mapped at first; doubles as needed.
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // One capture. Appends take the caller's fields and assign captureId and timeMillis.
+    public static final class Record {
+        public long captureId; // Strictly increasing, assigned by append().
+        public long timeMillis; // Wall-clock capture time, never decreasing along the index.
+        public long sensorTimestampNanos; // 0 if unknown.
+        public String uri;
+        public long sizeBytes;
+        public int width;
+        public int height;
+        public long exposureTimeNanos; // 0 if unknown.
+        public int sensitivity; // ISO; 0 if unknown.
+        public float focusDistance; // Diopters; NaN if unknown.
+
+        public Record() {
+            focusDistance = Float.NaN;
+        }
+    }
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private MappedByteBuffer mMap;
+    private int mCapacity; // Records that fit in mMap.
+    private int mCount;
+    private long mLastCaptureId;
+    private long mLastTimeMillis = Long.MIN_VALUE;
+    private final int mDroppedRecords; // Torn records found at open.
+    private final CRC32 mCrc = new CRC32();
+    private final byte[] mRecordBytes = new byte[RECORD_SIZE]; // Scratch for CRCs and Uri bytes.
+    private boolean mClosed;
+
+    private CaptureIndex(File file) throws IOException {
+        mFile = new RandomAccessFile(file, "rw");
+        mChannel = mFile.getChannel();
+        try {
+            long recordsOnDisk = Math.max(0, (mChannel.size() - HEADER_SIZE) / RECORD_SIZE);
+            map((int) Math.max(INITIAL_CAPACITY, recordsOnDisk));
+            if (mMap.getInt(0) == 0) {
+                mMap.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, RECORD_SIZE).putInt(COUNT_OFFSET, 0);
+            } else if (mMap.getInt(0) != MAGIC || mMap.getInt(4) != VERSION || mMap.getInt(8) != RECORD_SIZE) {
+                throw new IOException("Not a capture index: " + file);
+            }
+            mDroppedRecords = recover(Math.min(mMap.getInt(COUNT_OFFSET), mCapacity));
+        } catch (IOException e) {
+            mFile.close();
+            throw e;
+        }
+    }
+
+    // Open the index in file, creating it if it does not exist, and drop any torn records.
+    public static CaptureIndex open(File file) throws IOException {
+        return new CaptureIndex(file);
+    }
+
+    // Append a record. Assigns and returns its capture ID, and clamps its time so it is not
+    // before the previous record's. The Uri must fit MAX_URI_BYTES.
+    public synchronized long append(Record record) throws IOException {
+        if (mClosed) {
+            throw new IOException("Index is closed");
+        }
+        byte[] uri = (record.uri != null ? record.uri : "").getBytes(UTF_8);
+        if (uri.length > MAX_URI_BYTES) {
+            throw new IllegalArgumentException("Uri longer than " + MAX_URI_BYTES + " bytes: " + record.uri);
+        }
+        if (mCount == mCapacity) {
+            map(mCapacity * 2);
+        }
+
+        record.captureId = mLastCaptureId + 1;
+        record.timeMillis = Math.max(record.timeMillis, mLastTimeMillis);
+        int offset = recordOffset(mCount);
+        mMap.position(offset);
+        mMap.putLong(record.captureId).putLong(record.timeMillis).putLong(record.sensorTimestampNanos)
+                .putLong(record.sizeBytes).putInt(record.width).putInt(record.height)
+                .putLong(record.exposureTimeNanos).putInt(record.sensitivity).putFloat(record.focusDistance)
+                .putShort((short) uri.length).put(uri);
+        while (mMap.position() < offset + CRC_OFFSET) {
+            mMap.put((byte) 0); // Clear what a longer dropped record left behind.
+        }
+        mMap.putInt(offset + CRC_OFFSET, checksum(offset));
+
+        // The count is written last; a crash before it leaves a record that recover() checks.
+        mCount++;
+        mMap.putInt(COUNT_OFFSET, mCount);
+        mLastCaptureId = record.captureId;
+        mLastTimeMillis = record.timeMillis;
+        return record.captureId;
+    }
+
+    public synchronized int size() {
+        return mCount;
+    }
+
+    // Read record index into record, reusing it; returns record.
+    public synchronized Record read(int index, Record record) {
+        if (index < 0 || index >= mCount) {
+            throw new IndexOutOfBoundsException("Record " + index + " of " + mCount);
+        }
+        int offset = recordOffset(index);
+        mMap.position(offset);
+        record.captureId = mMap.getLong();
+        record.timeMillis = mMap.getLong();
+        record.sensorTimestampNanos = mMap.getLong();
+        record.sizeBytes = mMap.getLong();
+        record.width = mMap.getInt();
+        record.height = mMap.getInt();
+        record.exposureTimeNanos = mMap.getLong();
+        record.sensitivity = mMap.getInt();
+        record.focusDistance = mMap.getFloat();
+        int uriLength = mMap.getShort();
+        mMap.get(mRecordBytes, 0, uriLength);
+        record.uri = new String(mRecordBytes, 0, uriLength, UTF_8);
+        return record;
+    }
+
+    public Record read(int index) {
+        return read(index, new Record());
+    }
+
+    // Index of the first record taken at or after timeMillis, or size() if there is none.
+    public synchronized int findFirstAtOrAfter(long timeMillis) {
+        int low = 0;
+        int high = mCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (mMap.getLong(recordOffset(middle) + 8) < timeMillis) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Records taken in [fromMillis, toMillis), oldest first.
+    public synchronized List<Record> query(long fromMillis, long toMillis) {
+        List<Record> records = new ArrayList<>();
+        for (int i = findFirstAtOrAfter(fromMillis); i < mCount; i++) {
+            if (mMap.getLong(recordOffset(i) + 8) >= toMillis) {
+                break;
+            }
+            records.add(read(i));
+        }
+        return records;
+    }
+
+    // Torn records dropped when the index was opened, for monitoring.
+    public int getDroppedRecordCount() {
+        return mDroppedRecords;
+    }
+
+    // Write dirty pages to storage. Appends are already safe from a process crash once they
+    // return; this covers power loss, for example when the app goes to the background.
+    public synchronized void force() {
+        if (!mClosed) {
+            mMap.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        mMap.force();
+        mFile.close();
+    }
+
+    // Find the last intact record, starting from the stored count: back over torn records,
+    // then forward over intact ones whose count update was lost. Clears the first record past
+    // the end so a later open does not mistake it for data. Returns the number of records dropped.
+    private int recover(int storedCount) {
+        int count = storedCount;
+        while (count > 0 && !isIntact(count - 1)) {
+            count--;
+        }
+        while (count < mCapacity && isIntact(count)
+                && mMap.getLong(recordOffset(count)) == readCaptureId(count - 1) + 1) {
+            count++;
+        }
+        int dropped = storedCount - count;
+        if (count < mCapacity) {
+            int offset = recordOffset(count);
+            if (dropped <= 0 && mMap.getLong(offset) != 0) {
+                dropped = 1; // A record torn before its count was written.
+            }
+            mMap.putLong(offset, 0).putInt(offset + CRC_OFFSET, 0);
+        }
+        dropped = Math.max(0, dropped);
+
+        mCount = count;
+        mMap.putInt(COUNT_OFFSET, count);
+        if (count > 0) {
+            mLastCaptureId = readCaptureId(count - 1);
+            mLastTimeMillis = mMap.getLong(recordOffset(count - 1) + 8);
+        }
+        return dropped;
+    }
+
+    private long readCaptureId(int index) {
+        return index >= 0 ? mMap.getLong(recordOffset(index)) : 0;
+    }
+
+    private boolean isIntact(int index) {
+        int offset = recordOffset(index);
+        return mMap.getInt(offset + CRC_OFFSET) == checksum(offset) && mMap.getLong(offset) > 0;
+    }
+
+    private int checksum(int offset) {
+        mMap.position(offset);
+        mMap.get(mRecordBytes, 0, CRC_OFFSET);
+        mCrc.reset();
+        mCrc.update(mRecordBytes, 0, CRC_OFFSET);
+        return (int) mCrc.getValue();
+    }
+
+    // Map room for capacity records, growing the file as needed.
+    private void map(int capacity) throws IOException {
+        mMap = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+        mCapacity = capacity;
+    }
+
+    private static int recordOffset(int index) {
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+}
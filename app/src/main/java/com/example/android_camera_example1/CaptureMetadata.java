@@ -0,0 +1,26 @@
+package com.example.android_camera_example1;
+
+// CaptureMetadata holds the capture-result fields of one still, matched to its image by sensor
+// timestamp: what ExifInjector writes into the JPEG and CaptureIndex records about it.
+public class CaptureMetadata {
+    public static final int LENS_STATE_STATIONARY = 0; // Same values as CaptureResult.LENS_STATE.
+    public static final int LENS_STATE_MOVING = 1;
+
+    public long sensorTimestampNanos; // 0 if unknown.
+    public long timeMillis; // Wall-clock time the result arrived.
+    public long exposureTimeNanos; // 0 if unknown.
+    public int sensitivity; // ISO; 0 if unknown.
+    public float focusDistance; // Diopters, 0 for infinity; NaN if unknown.
+    public float aperture; // f-number; NaN if unknown.
+    public float focalLength; // Millimetres; NaN if unknown.
+    public int lensState; // LENS_STATE_*, or -1 if unknown.
+    public String make; // Device manufacturer and model; null if unknown.
+    public String model;
+
+    public CaptureMetadata() {
+        focusDistance = Float.NaN;
+        aperture = Float.NaN;
+        focalLength = Float.NaN;
+        lensState = -1;
+    }
+}
@@ -0,0 +1,276 @@
+package com.example.android_camera_example1;
+
+// CaptureMetrics timestamps every still capture as it moves through the pipeline and records
+// the time spent in each stage into a LatencyHistogram, plus the end-to-end time from request
+// to written file. The camera delivers results and images in submission order, so when a
+// callback carries no capture ID the stage is attributed to the oldest submitted capture that
+// has not reached it yet (markNext). Results and images of one capture may arrive in either
+// order, so each capture keeps the set of stages it has reached rather than a single position.
+// Slots are preallocated, so recording does not allocate and can stay enabled in production.
+public class CaptureMetrics {
+    // Captures tracked at once; more than the reader, burst queue and writer queue hold together.
+    private static final int DEFAULT_CAPACITY = 64;
+
+    // Pipeline stages. A stage's histogram holds the time since the most recent stage recorded
+    // for the same capture.
+    public enum Stage {
+        REQUESTED, // Button press, or burst request.
+        SESSION_CONFIGURED, // Only when the capture had to wait for a session.
+        SUBMITTED, // Request handed to the capture session.
+        CAPTURE_COMPLETED, // onCaptureCompleted.
+        IMAGE_AVAILABLE, // onImageAvailable for the JPEG.
+        BUFFER_COPIED, // Image data ready for storage (copied or handed off).
+        FILE_WRITTEN // Record published in MediaStore.
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private final int mCapacity;
+    private final long[] mIds; // Capture ID per slot; -1 when the slot is free.
+    private final int[] mReached; // Bit per stage ordinal the capture has reached.
+    private final long[] mLastNanos; // Timestamp of the most recent stage.
+    private final long[] mStartNanos; // Timestamp of REQUESTED.
+    private final LatencyHistogram[] mStageHistograms = new LatencyHistogram[STAGES.length];
+    private final LatencyHistogram mTotalHistogram = new LatencyHistogram();
+
+    // Counters for monitoring, guarded by this.
+    private long mNextId;
+    private long mCapturesStarted;
+    private long mCapturesCompleted;
+    private long mCapturesFailed;
+    private long mFramesDropped;
+    private long mCapturesAbandoned; // Evicted before finishing because too many were in flight.
+
+    // Constructor for the CaptureMetrics class.
+    public CaptureMetrics() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    CaptureMetrics(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1: " + capacity);
+        }
+        mCapacity = capacity;
+        mIds = new long[capacity];
+        mReached = new int[capacity];
+        mLastNanos = new long[capacity];
+        mStartNanos = new long[capacity];
+        for (int i = 0; i < capacity; i++) {
+            mIds[i] = -1;
+        }
+        for (int i = 0; i < STAGES.length; i++) {
+            mStageHistograms[i] = new LatencyHistogram();
+        }
+    }
+
+    // Start tracking a capture at REQUESTED. Returns its capture ID.
+    public long begin() {
+        return begin(System.nanoTime());
+    }
+
+    synchronized long begin(long nowNanos) {
+        long id = mNextId++;
+        int slot = (int) (id % mCapacity);
+        if (mIds[slot] != -1) {
+            mCapturesAbandoned++;
+        }
+        mIds[slot] = id;
+        mReached[slot] = bit(Stage.REQUESTED);
+        mLastNanos[slot] = nowNanos;
+        mStartNanos[slot] = nowNanos;
+        mCapturesStarted++;
+        return id;
+    }
+
+    // Record a stage for a capture. FILE_WRITTEN finishes the capture. Ignored for unknown
+    // captures and stages the capture has already passed.
+    public void mark(long captureId, Stage stage) {
+        mark(captureId, stage, System.nanoTime());
+    }
+
+    synchronized void mark(long captureId, Stage stage, long nowNanos) {
+        int slot = slotOf(captureId);
+        if (slot >= 0 && (mReached[slot] & bit(stage)) == 0) {
+            record(slot, stage, nowNanos);
+        }
+    }
+
+    // Record a stage for the oldest capture that can reach it next: for stages after SUBMITTED,
+    // a submitted capture without the stage; up to SUBMITTED, a capture not yet that far.
+    // Returns that capture's ID, or -1 if there is none.
+    public long markNext(Stage stage) {
+        return markNext(stage, System.nanoTime());
+    }
+
+    synchronized long markNext(Stage stage, long nowNanos) {
+        int oldest = oldestBefore(stage);
+        if (oldest == -1) {
+            return -1;
+        }
+        long id = mIds[oldest];
+        record(oldest, stage, nowNanos);
+        return id;
+    }
+
+    // Record a stage for every capture that has not reached it yet, for example
+    // SESSION_CONFIGURED for stills that were waiting for the session.
+    public void markAll(Stage stage) {
+        markAll(stage, System.nanoTime());
+    }
+
+    synchronized void markAll(Stage stage, long nowNanos) {
+        for (int slot = 0; slot < mCapacity; slot++) {
+            if (mIds[slot] != -1 && canReach(slot, stage)) {
+                record(slot, stage, nowNanos);
+            }
+        }
+    }
+
+    // Finish a capture that failed, for example because its write failed.
+    public synchronized void fail(long captureId) {
+        int slot = slotOf(captureId);
+        if (slot >= 0) {
+            mIds[slot] = -1;
+            mCapturesFailed++;
+        }
+    }
+
+    // Fail the oldest capture that can reach the stage next, for callbacks that report a
+    // failure without a capture ID (onCaptureFailed, for example). Returns its ID or -1.
+    public synchronized long failNext(Stage stage) {
+        int oldest = oldestBefore(stage);
+        if (oldest == -1) {
+            return -1;
+        }
+        long id = mIds[oldest];
+        mIds[oldest] = -1;
+        mCapturesFailed++;
+        return id;
+    }
+
+    // Finish a capture whose frame was dropped by backpressure.
+    public synchronized void drop(long captureId) {
+        int slot = slotOf(captureId);
+        if (slot >= 0) {
+            mIds[slot] = -1;
+        }
+        mFramesDropped++;
+    }
+
+    // Slot of the oldest tracked capture that can reach the stage next, or -1.
+    private int oldestBefore(Stage stage) {
+        int oldest = -1;
+        for (int slot = 0; slot < mCapacity; slot++) {
+            if (mIds[slot] != -1 && canReach(slot, stage)
+                    && (oldest == -1 || mIds[slot] < mIds[oldest])) {
+                oldest = slot;
+            }
+        }
+        return oldest;
+    }
+
+    private boolean canReach(int slot, Stage stage) {
+        int reached = mReached[slot];
+        if (stage.ordinal() > Stage.SUBMITTED.ordinal()) {
+            return (reached & bit(Stage.SUBMITTED)) != 0 && (reached & bit(stage)) == 0;
+        }
+        return reached >>> stage.ordinal() == 0; // Nothing at or after the stage yet.
+    }
+
+    private static int bit(Stage stage) {
+        return 1 << stage.ordinal();
+    }
+
+    private int slotOf(long captureId) {
+        if (captureId < 0) {
+            return -1;
+        }
+        int slot = (int) (captureId % mCapacity);
+        return mIds[slot] == captureId ? slot : -1;
+    }
+
+    private void record(int slot, Stage stage, long nowNanos) {
+        mStageHistograms[stage.ordinal()].record(nowNanos - mLastNanos[slot]);
+        mReached[slot] |= bit(stage);
+        mLastNanos[slot] = nowNanos;
+        if (stage == Stage.FILE_WRITTEN) {
+            mTotalHistogram.record(nowNanos - mStartNanos[slot]);
+            mIds[slot] = -1;
+            mCapturesCompleted++;
+        }
+    }
+
+    // Time spent reaching a stage from the previous recorded stage.
+    public LatencyHistogram getStageHistogram(Stage stage) {
+        return mStageHistograms[stage.ordinal()];
+    }
+
+    // Time from REQUESTED to FILE_WRITTEN.
+    public LatencyHistogram getTotalHistogram() {
+        return mTotalHistogram;
+    }
+
+    public synchronized long getCapturesStarted() {
+        return mCapturesStarted;
+    }
+
+    public synchronized long getCapturesCompleted() {
+        return mCapturesCompleted;
+    }
+
+    public synchronized long getCapturesFailed() {
+        return mCapturesFailed;
+    }
+
+    public synchronized long getFramesDropped() {
+        return mFramesDropped;
+    }
+
+    public synchronized long getCapturesAbandoned() {
+        return mCapturesAbandoned;
+    }
+
+    // Captures started but not yet written, failed or dropped.
+    public synchronized int getCapturesInFlight() {
+        int inFlight = 0;
+        for (long id : mIds) {
+            if (id != -1) {
+                inFlight++;
+            }
+        }
+        return inFlight;
+    }
+
+    // Forget every recorded latency and counter; captures in flight keep being tracked.
+    public synchronized void reset() {
+        for (LatencyHistogram histogram : mStageHistograms) {
+            histogram.reset();
+        }
+        mTotalHistogram.reset();
+        mCapturesStarted = 0;
+        mCapturesCompleted = 0;
+        mCapturesFailed = 0;
+        mFramesDropped = 0;
+        mCapturesAbandoned = 0;
+    }
+
+    // Multi-line summary of counters and every stage histogram that has values, for logging.
+    public String dump() {
+        StringBuilder builder = new StringBuilder();
+        synchronized (this) {
+            builder.append("captures started=").append(mCapturesStarted)
+                    .append(" completed=").append(mCapturesCompleted)
+                    .append(" failed=").append(mCapturesFailed)
+                    .append(" dropped=").append(mFramesDropped)
+                    .append(" abandoned=").append(mCapturesAbandoned);
+        }
+        for (Stage stage : STAGES) {
+            LatencyHistogram histogram = mStageHistograms[stage.ordinal()];
+            if (histogram.getCount() > 0) {
+                builder.append('\n').append(stage).append(": ").append(histogram.format());
+            }
+        }
+        builder.append("\nTOTAL: ").append(mTotalHistogram.format());
+        return builder.toString();
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.android_camera_example1;
+
+import java.util.TimeZone;
+
+// CaptureNameGenerator makes display names such as IMG_20240131_235959_123.jpg from the local
+// time with millisecond resolution. Names are strictly increasing within the process: a shot in
+// the same millisecond as the previous one (or after the clock stepped back) gets the previous
+// stamp plus one millisecond, so a burst never produces two equal names. The digits are written
+// into a reused buffer; no date formatter or calendar is created per shot.
+public class CaptureNameGenerator {
+    static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private final TimeZone mTimeZone;
+    private final char[] mStamp = new char["yyyyMMdd_HHmmss_SSS".length()];
+    private long mLastMillis = Long.MIN_VALUE;
+
+    // Constructor for the CaptureNameGenerator class, using the device time zone.
+    public CaptureNameGenerator() {
+        this(TimeZone.getDefault());
+    }
+
+    CaptureNameGenerator(TimeZone timeZone) {
+        mTimeZone = timeZone;
+    }
+
+    // The next name for a capture taken now.
+    public String next(String prefix, String extension) {
+        return next(prefix, extension, System.currentTimeMillis());
+    }
+
+    synchronized String next(String prefix, String extension, long currentTimeMillis) {
+        long millis = Math.max(currentTimeMillis, mLastMillis + 1);
+        mLastMillis = millis;
+        formatStamp(millis + mTimeZone.getOffset(millis));
+        return new StringBuilder(prefix.length() + mStamp.length + extension.length())
+                .append(prefix).append(mStamp).append(extension).toString();
+    }
+
+    // Write yyyyMMdd_HHmmss_SSS for local epoch milliseconds into mStamp.
+    private void formatStamp(long localMillis) {
+        long date = civilDate(Math.floorDiv(localMillis, MILLIS_PER_DAY));
+        int millisOfDay = (int) Math.floorMod(localMillis, MILLIS_PER_DAY);
+
+        putDigits(0, (int) (date / 10000), 4);
+        putDigits(4, (int) (date / 100 % 100), 2);
+        putDigits(6, (int) (date % 100), 2);
+        mStamp[8] = '_';
+        putDigits(9, millisOfDay / 3600000, 2);
+        putDigits(11, millisOfDay / 60000 % 60, 2);
+        putDigits(13, millisOfDay / 1000 % 60, 2);
+        mStamp[15] = '_';
+        putDigits(16, millisOfDay % 1000, 3);
+    }
+
+    // The civil date of days since 1970-01-01 (proleptic Gregorian) as yyyyMMdd, for example
+    // 20240131, computed by 400-year eras.
+    static long civilDate(long days) {
+        long shifted = days + 719468;
+        long era = Math.floorDiv(shifted, 146097);
+        int dayOfEra = (int) (shifted - era * 146097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int monthIndex = (5 * dayOfYear + 2) / 153; // 0 = March.
+        int day = dayOfYear - (153 * monthIndex + 2) / 5 + 1;
+        int month = monthIndex < 10 ? monthIndex + 3 : monthIndex - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return year * 10000 + month * 100 + day;
+    }
+
+    private void putDigits(int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            mStamp[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.example.android_camera_example1;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+// CapturePipeline is the device-independent part of still capture: it takes capture callbacks
+// and encoded images from a camera backend, tracks each capture in CaptureMetrics, queues the
+// frames in a BurstCaptureEngine and hands them to a FrameStore. Camera feeds it from Camera2
+// callbacks and an ImageReader; unit tests feed it from a simulated camera, so capture
+// throughput and latency can be measured on the JVM with the same code the app runs.
+public class CapturePipeline<U> {
+    // Where frames are written. FileHelper implements this with MediaStore.
+    public interface FrameStore<U> {
+        // Queue the remaining bytes of data for writing. The buffer stays valid until the
+        // returned future completes. timestampNanos is the frame's sensor timestamp, or 0 if
+        // it is unknown.
+        CompletableFuture<U> save(ByteBuffer data, long timestampNanos);
+    }
+
+    // Outcome of each frame, for user feedback. Called on the store's or the drain task's thread.
+    public interface SaveListener<U> {
+        void onSaved(long sequence, U handle);
+
+        void onSaveFailed(long sequence, Throwable error);
+
+        // A frame was dropped by the backpressure policy before it was saved.
+        void onFrameDropped(long sequence);
+    }
+
+    // Sees the bytes of each saved frame before its image is released, so derived data such as
+    // a thumbnail is made without reading the file back. Called on the store's thread; keep it short.
+    public interface SavedFrameObserver<U> {
+        // timestampNanos is the frame's sensor timestamp, or 0 if the backend did not give one.
+        void onFrameSaved(U handle, ByteBuffer data, long timestampNanos);
+    }
+
+    private static final int DEFAULT_BURST_QUEUE_CAPACITY = 8; // Captured frames waiting to be saved.
+    private static final long DEFAULT_BUFFER_POOL_BYTES = 32 * 1024 * 1024; // Cap for pooled frame copies.
+
+    private volatile FrameStore<U> mStore;
+    private final CaptureMetrics mMetrics = new CaptureMetrics();
+    private final BufferPool mBufferPool = new BufferPool(DEFAULT_BUFFER_POOL_BYTES);
+    private final BurstCaptureEngine<CapturedFrame> mBurstEngine;
+    private final AtomicInteger mHeldImages = new AtomicInteger(); // Backend images not yet closed.
+    private volatile int mMaxImages; // Images the backend's reader can hold.
+    private volatile boolean mBlockingOffers = true; // Frames may wait for room in the burst queue.
+    private volatile SaveListener<U> mSaveListener;
+    private volatile SavedFrameObserver<U> mSavedFrameObserver;
+
+    // Constructor for the CapturePipeline class. maxImages is the depth of the backend's image
+    // reader; processingExecutor runs the burst engine's drain task.
+    public CapturePipeline(FrameStore<U> store, BurstCaptureEngine.RequestSubmitter submitter, int maxImages,
+                           Executor processingExecutor) {
+        mStore = store;
+        setMaxImages(maxImages);
+        mBurstEngine = new BurstCaptureEngine<>(submitter, mFrameSink, DEFAULT_BURST_QUEUE_CAPACITY,
+                BurstCaptureEngine.BackpressurePolicy.BLOCK, processingExecutor);
+    }
+
+    // Set how many images the backend's reader can hold at once.
+    public void setMaxImages(int maxImages) {
+        if (maxImages < 1) {
+            throw new IllegalArgumentException("maxImages must be at least 1: " + maxImages);
+        }
+        mMaxImages = maxImages;
+    }
+
+    // Whether handing a frame over may block the caller while the queue is full under the BLOCK
+    // policy. Turn it off for backends that deliver images on a thread that must not stall; a
+    // full queue then drops the new frame.
+    public void setBlockingOffers(boolean blocking) {
+        mBlockingOffers = blocking;
+    }
+
+    // Send frames delivered from now on to another store, for example a sequence archive. Frames
+    // already handed to the previous store are still written there.
+    public void setFrameStore(FrameStore<U> store) {
+        mStore = store;
+    }
+
+    public void setSaveListener(SaveListener<U> listener) {
+        mSaveListener = listener;
+    }
+
+    public void setSavedFrameObserver(SavedFrameObserver<U> observer) {
+        mSavedFrameObserver = observer;
+    }
+
+    // Accept frames; call when the capture session opens.
+    public void start() {
+        mBurstEngine.start();
+    }
+
+    // Stop continuous capture and wait for queued frames to reach the store.
+    public void stop() {
+        mBurstEngine.stopContinuous();
+        mBurstEngine.stop();
+    }
+
+    // Called before count still requests are handed to the session.
+    public void onCapturesRequested(int count) {
+        for (int i = 0; i < count; i++) {
+            mMetrics.begin();
+        }
+    }
+
+    // Called once count still requests were accepted by the session.
+    public void onCapturesSubmitted(int count) {
+        for (int i = 0; i < count; i++) {
+            mMetrics.markNext(CaptureMetrics.Stage.SUBMITTED);
+        }
+    }
+
+    // Called when the session rejected count still requests.
+    public void onCapturesRejected(int count) {
+        for (int i = 0; i < count; i++) {
+            mMetrics.failNext(CaptureMetrics.Stage.SUBMITTED);
+        }
+    }
+
+    // Called when exposure of a still starts.
+    public void onCaptureStarted() {
+        if (mBurstEngine.isContinuous()) {
+            // Repeating stills have no request of their own; track them from the start of exposure.
+            mMetrics.mark(mMetrics.begin(), CaptureMetrics.Stage.SUBMITTED);
+        }
+    }
+
+    public void onCaptureCompleted() {
+        mMetrics.markNext(CaptureMetrics.Stage.CAPTURE_COMPLETED);
+    }
+
+    public void onCaptureFailed() {
+        mMetrics.failNext(CaptureMetrics.Stage.CAPTURE_COMPLETED);
+    }
+
+    // Called with each encoded image. owner releases the image back to the backend's reader and
+    // is closed once the frame is written or dropped. May block while the writer falls behind,
+    // unless blocking offers are off.
+    public void onImageAvailable(ByteBuffer data, AutoCloseable owner) {
+        onImageAvailable(data, owner, 0);
+    }
+
+    // Same as onImageAvailable(ByteBuffer, AutoCloseable), with the image's sensor timestamp.
+    public void onImageAvailable(ByteBuffer data, AutoCloseable owner, long timestampNanos) {
+        long captureId = mMetrics.markNext(CaptureMetrics.Stage.IMAGE_AVAILABLE);
+        offer(createCapturedFrame(data, owner, captureId, timestampNanos));
+    }
+
+    // Save a frame that was captured before it was asked for, such as one taken from a
+    // zero-shutter-lag ring buffer on a button press. Its bytes are copied, so the image goes
+    // back to the reader at once; the capture is tracked from the press. Returns false if the
+    // pipeline is not accepting frames.
+    public boolean onRetainedImageSelected(ByteBuffer data, AutoCloseable owner, long timestampNanos) {
+        long captureId = mMetrics.begin();
+        mMetrics.mark(captureId, CaptureMetrics.Stage.IMAGE_AVAILABLE);
+        return offer(copyCapturedFrame(data, owner, captureId, timestampNanos)) >= 0;
+    }
+
+    private long offer(CapturedFrame frame) {
+        return mBlockingOffers ? mBurstEngine.offer(frame) : mBurstEngine.tryOffer(frame);
+    }
+
+    // Wrap an image for the save path. The image is handed off without copying and closed once
+    // written, unless holding it would leave the reader without a free slot for the next image;
+    // then its bytes are copied into a pooled buffer and the image is closed right away.
+    private CapturedFrame createCapturedFrame(ByteBuffer data, final AutoCloseable owner, long captureId,
+                                              long timestampNanos) {
+        if (mHeldImages.incrementAndGet() < mMaxImages) {
+            mMetrics.mark(captureId, CaptureMetrics.Stage.BUFFER_COPIED);
+            return new CapturedFrame(data, new AutoCloseable() {
+                @Override
+                public void close() {
+                    mHeldImages.decrementAndGet();
+                    try {
+                        owner.close();
+                    } catch (Exception e) {
+                        throw new IllegalStateException("Failed to release image", e);
+                    }
+                }
+            }, captureId, timestampNanos);
+        }
+
+        mHeldImages.decrementAndGet();
+        return copyCapturedFrame(data, owner, captureId, timestampNanos);
+    }
+
+    // Copy an image's bytes into a pooled buffer, or the heap when the pool is at its cap, and
+    // release the image.
+    private CapturedFrame copyCapturedFrame(ByteBuffer data, AutoCloseable owner, long captureId, long timestampNanos) {
+        CapturedFrame frame;
+        BufferPool.Lease lease = mBufferPool.acquire(data.remaining());
+        if (lease != null) {
+            ByteBuffer copy = lease.getBuffer();
+            copy.put(data);
+            copy.flip();
+            frame = new CapturedFrame(copy, lease, captureId, timestampNanos);
+        } else {
+            // The pool is at its cap; fall back to an unpooled heap copy.
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            frame = new CapturedFrame(ByteBuffer.wrap(bytes), null, captureId, timestampNanos);
+        }
+        try {
+            owner.close();
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to release image", e);
+        }
+        mMetrics.mark(captureId, CaptureMetrics.Stage.BUFFER_COPIED);
+        return frame;
+    }
+
+    // Saves frames delivered by the burst engine in sequence order.
+    private final BurstCaptureEngine.FrameSink<CapturedFrame> mFrameSink = new BurstCaptureEngine.FrameSink<CapturedFrame>() {
+        @Override
+        public void onFrame(final long sequence, final CapturedFrame frame) {
+            CompletableFuture<U> saved;
+            try {
+                // Blocks while the writer queue is full, which in turn backs up the burst queue.
+                saved = mStore.save(frame.getData(), frame.getTimestampNanos());
+            } catch (RuntimeException e) {
+                // For example the store's executor has quit; report it like a failed write.
+                saved = new CompletableFuture<>();
+                saved.completeExceptionally(e);
+            }
+            saved.whenComplete(new BiConsumer<U, Throwable>() {
+                @Override
+                public void accept(U handle, Throwable error) {
+                    Throwable failure = error;
+                    try {
+                        SavedFrameObserver<U> observer = mSavedFrameObserver;
+                        if (failure == null && observer != null) {
+                            observer.onFrameSaved(handle, frame.getData(), frame.getTimestampNanos());
+                        }
+                    } catch (RuntimeException e) {
+                        failure = e; // What is derived from the frame is missing, so report the save as failed.
+                    } finally {
+                        frame.close(); // The write is done; release the image behind the frame.
+                        if (failure != null) {
+                            mMetrics.fail(frame.getCaptureId());
+                        }
+                    }
+                    SaveListener<U> listener = mSaveListener;
+                    if (failure != null) {
+                        if (listener != null) {
+                            listener.onSaveFailed(sequence, failure);
+                        }
+                        return;
+                    }
+                    mMetrics.mark(frame.getCaptureId(), CaptureMetrics.Stage.FILE_WRITTEN);
+                    if (listener != null) {
+                        listener.onSaved(sequence, handle);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onFrameDropped(long sequence, CapturedFrame frame) {
+            frame.close();
+            mMetrics.drop(frame.getCaptureId());
+            SaveListener<U> listener = mSaveListener;
+            if (listener != null) {
+                listener.onFrameDropped(sequence);
+            }
+        }
+    };
+
+    // Burst engine counters (requested, captured, dropped, delivered, fps), for monitoring.
+    public BurstCaptureEngine<CapturedFrame> getBurstEngine() {
+        return mBurstEngine;
+    }
+
+    // Per-stage capture latency histograms and capture counters, for monitoring.
+    public CaptureMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    // Pool for frame copies that outlive their image (hits, misses, bytes in use), for monitoring.
+    public BufferPool getBufferPool() {
+        return mBufferPool;
+    }
+
+    // Backend images currently held by queued frames.
+    public int getHeldImageCount() {
+        return mHeldImages.get();
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.android_camera_example1;
+
+// CaptureSessionManager owns the lifecycle of one long-lived capture session that carries
+// both the preview output and the still (JPEG) output. Stills are submitted as single
+// captures on the configured session while the repeating preview keeps running, so the
+// session is only reconfigured when it is (re)opened and never per shot.
+public class CaptureSessionManager {
+    // Operations against the underlying camera session. Camera implements these on top of
+    // Camera2; unit tests use a fake so the reconfiguration count can be checked on the JVM.
+    public interface SessionBackend {
+        // Create a session with every output attached. The backend must later report the
+        // outcome through onSessionConfigured() or onSessionConfigureFailed().
+        boolean createSession();
+
+        // Start (or restart) the repeating preview request on the configured session.
+        boolean startRepeatingPreview();
+
+        // Submit one still capture request on the configured session, possibly once 3A has
+        // converged; a still that cannot be submitted by then is reported to the pipeline.
+        boolean submitStillCapture();
+
+        // Close the session and release the outputs that belong to it.
+        void closeSession();
+
+        // Stills accepted by requestStill() that will never be submitted, because the session
+        // closed or failed to configure before they could be, or the backend refused them.
+        void onStillsDropped(int count);
+    }
+
+    private enum State {
+        CLOSED,
+        CONFIGURING,
+        READY
+    }
+
+    private final SessionBackend mBackend;
+    private State mState = State.CLOSED;
+    private int mPendingStills; // Stills requested while the session was still configuring.
+    private int mReconfigurationCount; // Number of createSession calls over the lifetime.
+    private int mStillCaptureCount; // Number of stills handed to the backend.
+
+    // Constructor for the CaptureSessionManager class.
+    public CaptureSessionManager(SessionBackend backend) {
+        mBackend = backend;
+    }
+
+    // Configure the session if it is not already configured or being configured.
+    public synchronized void open() {
+        if (mState != State.CLOSED) {
+            return;
+        }
+
+        mState = State.CONFIGURING;
+        mReconfigurationCount++;
+        if (!mBackend.createSession()) {
+            mState = State.CLOSED;
+            dropPendingStills();
+        }
+    }
+
+    // Called by the backend once the session is configured.
+    public synchronized void onSessionConfigured() {
+        if (mState != State.CONFIGURING) {
+            return;
+        }
+
+        mState = State.READY;
+        mBackend.startRepeatingPreview();
+
+        // Flush stills that were requested while the session was being configured.
+        int pending = mPendingStills;
+        mPendingStills = 0;
+        int dropped = 0;
+        for (int i = 0; i < pending; i++) {
+            if (!submitStill()) {
+                dropped++;
+            }
+        }
+        if (dropped > 0) {
+            mBackend.onStillsDropped(dropped);
+        }
+    }
+
+    // Called by the backend when the session could not be configured.
+    public synchronized void onSessionConfigureFailed() {
+        mState = State.CLOSED;
+        dropPendingStills();
+    }
+
+    // Request one still capture. Returns false if no session is open or being opened.
+    public synchronized boolean requestStill() {
+        switch (mState) {
+            case READY:
+                return submitStill();
+            case CONFIGURING:
+                mPendingStills++;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // Close the session. The next open() reconfigures it from scratch.
+    public synchronized void close() {
+        if (mState == State.CLOSED) {
+            return;
+        }
+
+        mState = State.CLOSED;
+        dropPendingStills();
+        mBackend.closeSession();
+    }
+
+    public synchronized boolean isReady() {
+        return mState == State.READY;
+    }
+
+    public synchronized int getReconfigurationCount() {
+        return mReconfigurationCount;
+    }
+
+    public synchronized int getStillCaptureCount() {
+        return mStillCaptureCount;
+    }
+
+    private void dropPendingStills() {
+        int dropped = mPendingStills;
+        mPendingStills = 0;
+        if (dropped > 0) {
+            mBackend.onStillsDropped(dropped);
+        }
+    }
+
+    private boolean submitStill() {
+        if (!mBackend.submitStillCapture()) {
+            return false;
+        }
+        mStillCaptureCount++;
+        return true;
+    }
+}
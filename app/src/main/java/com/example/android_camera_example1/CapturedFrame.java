@@ -0,0 +1,69 @@
+package com.example.android_camera_example1;
+
+import java.nio.ByteBuffer;
+
+// CapturedFrame is an encoded frame on its way to storage: a view on the frame bytes plus the
+// owner of the memory behind them (an Image, for example). The owner is closed exactly once,
+// after the bytes have been written or the frame has been dropped.
+public class CapturedFrame implements AutoCloseable {
+    private final ByteBuffer mData;
+    private final long mCaptureId;
+    private final long mTimestampNanos;
+    private AutoCloseable mOwner;
+
+    // Constructor for the CapturedFrame class. owner may be null for heap-backed data.
+    public CapturedFrame(ByteBuffer data, AutoCloseable owner) {
+        this(data, owner, -1);
+    }
+
+    // Constructor with the CaptureMetrics ID of the capture the frame belongs to.
+    public CapturedFrame(ByteBuffer data, AutoCloseable owner, long captureId) {
+        this(data, owner, captureId, 0);
+    }
+
+    // Constructor with the sensor timestamp of the frame as well.
+    public CapturedFrame(ByteBuffer data, AutoCloseable owner, long captureId, long timestampNanos) {
+        mData = data;
+        mOwner = owner;
+        mCaptureId = captureId;
+        mTimestampNanos = timestampNanos;
+    }
+
+    // Read-only view on the frame bytes; reading it does not move the frame's own position.
+    public ByteBuffer getData() {
+        return mData.asReadOnlyBuffer();
+    }
+
+    public int size() {
+        return mData.remaining();
+    }
+
+    // CaptureMetrics ID of the capture, or -1 if it is not tracked.
+    public long getCaptureId() {
+        return mCaptureId;
+    }
+
+    // Sensor timestamp of the frame, or 0 if it is not known.
+    public long getTimestampNanos() {
+        return mTimestampNanos;
+    }
+
+    // Release the memory behind the frame. Safe to call more than once.
+    @Override
+    public void close() {
+        AutoCloseable owner;
+        synchronized (this) {
+            owner = mOwner;
+            mOwner = null;
+        }
+        if (owner == null) {
+            return;
+        }
+
+        try {
+            owner.close();
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to release frame", e);
+        }
+    }
+}
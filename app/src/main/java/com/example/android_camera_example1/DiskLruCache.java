@@ -0,0 +1,181 @@
+package com.example.android_camera_example1;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// DiskLruCache keeps small blobs (thumbnails) as one file per key in a directory, capped at
+// maxBytes; the least recently used entries are deleted when a put goes over the cap. Files are
+// written to a temporary name and renamed, so a crash never leaves a half-written entry, and
+// reads refresh the file's modification time so the LRU order survives a restart. The
+// directory is scanned on first use, not in the constructor, so it can be created on any thread.
+public class DiskLruCache {
+    private static final String ENTRY_SUFFIX = ".entry";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<>(16, 0.75f, true); // File name to size.
+    private boolean mLoaded;
+    private long mSize;
+    private long mEvictionCount;
+
+    // Constructor for the DiskLruCache class.
+    public DiskLruCache(File directory, long maxBytes) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("maxBytes must be at least 1: " + maxBytes);
+        }
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+    }
+
+    // The entry for key, or null if there is none.
+    public synchronized byte[] get(String key) throws IOException {
+        ensureLoaded();
+        String name = fileName(key);
+        Long size = mEntries.get(name); // Marks the entry as most recently used.
+        if (size == null) {
+            return null;
+        }
+
+        File file = new File(mDirectory, name);
+        byte[] data = new byte[size.intValue()];
+        try (FileInputStream input = new FileInputStream(file)) {
+            int read = 0;
+            while (read < data.length) {
+                int count = input.read(data, read, data.length - read);
+                if (count < 0) {
+                    throw new IOException("Cache entry truncated: " + file);
+                }
+                read += count;
+            }
+        } catch (IOException e) {
+            removeEntry(name); // Deleted or damaged behind our back; forget it.
+            throw e;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        return data;
+    }
+
+    // Store data under key, replacing any previous entry, then evict down to the cap. Entries
+    // larger than the whole cache are not stored.
+    public synchronized void put(String key, byte[] data) throws IOException {
+        ensureLoaded();
+        String name = fileName(key);
+        if (data.length > mMaxBytes) {
+            removeEntry(name);
+            return;
+        }
+
+        File temp = new File(mDirectory, name + TEMP_SUFFIX);
+        try (FileOutputStream output = new FileOutputStream(temp)) {
+            output.write(data);
+        }
+        if (!temp.renameTo(new File(mDirectory, name))) {
+            temp.delete();
+            throw new IOException("Failed to commit cache entry " + name);
+        }
+
+        Long previous = mEntries.put(name, (long) data.length);
+        mSize += data.length - (previous != null ? previous : 0);
+        trimToSize();
+    }
+
+    // Remove the entry for key. Returns true if there was one.
+    public synchronized boolean remove(String key) throws IOException {
+        ensureLoaded();
+        return removeEntry(fileName(key));
+    }
+
+    public synchronized long getSize() {
+        return mSize;
+    }
+
+    public long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return mEntries.size();
+    }
+
+    public synchronized long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+        while (mSize > mMaxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            new File(mDirectory, eldest.getKey()).delete();
+            mSize -= eldest.getValue();
+            iterator.remove();
+            mEvictionCount++;
+        }
+    }
+
+    private boolean removeEntry(String name) {
+        Long size = mEntries.remove(name);
+        if (size == null) {
+            return false;
+        }
+        new File(mDirectory, name).delete();
+        mSize -= size;
+        return true;
+    }
+
+    // Index the directory, oldest first, and drop temporary files left by a crash.
+    private void ensureLoaded() throws IOException {
+        if (mLoaded) {
+            return;
+        }
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Failed to create cache directory " + mDirectory);
+        }
+
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            Arrays.sort(files, new Comparator<File>() {
+                @Override
+                public int compare(File a, File b) {
+                    return Long.compare(a.lastModified(), b.lastModified());
+                }
+            });
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    file.delete();
+                } else if (name.endsWith(ENTRY_SUFFIX)) {
+                    mEntries.put(name, file.length());
+                    mSize += file.length();
+                }
+            }
+        }
+        mLoaded = true;
+        trimToSize(); // The cap may have shrunk since the last run.
+    }
+
+    // Keys such as content Uris are not valid file names, so entries are named by their hash.
+    private static String fileName(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(UTF_8));
+            StringBuilder name = new StringBuilder(digest.length * 2 + ENTRY_SUFFIX.length());
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return name.append(ENTRY_SUFFIX).toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+}
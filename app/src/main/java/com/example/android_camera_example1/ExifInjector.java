@@ -0,0 +1,511 @@
+package com.example.android_camera_example1;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+// ExifInjector puts a still's capture-result metadata into its JPEG while the file is written,
+// without decoding or re-encoding the image. The camera's EXIF APP1 segment is rebuilt: the
+// tags of its IFD0, Exif, interoperability and GPS IFDs and its embedded thumbnail are carried
+// over, and the tags known from a CaptureMetadata are added or replace the camera's. inject()
+// returns the new header followed by views on the original bytes around the old segment, for
+// a gather write: the image data goes to the file straight from the camera's buffer, and the
+// file is not rewritten afterwards as ExifInterface.saveAttributes() would.
+public final class ExifInjector {
+    private static final int MAX_SEGMENT_LENGTH = 0xFFFF; // Length field of a JPEG segment.
+    private static final int TIFF_HEADER_SIZE = 8;
+    private static final int IFD_ENTRY_SIZE = 12;
+    private static final int TYPE_ASCII = 2;
+    private static final int TYPE_SHORT = 3;
+    private static final int TYPE_LONG = 4;
+    private static final int TYPE_RATIONAL = 5;
+    private static final int TYPE_UNDEFINED = 7;
+    private static final int TYPE_SSHORT = 8;
+    private static final int TYPE_SLONG = 9;
+    private static final int TYPE_SRATIONAL = 10;
+    private static final int TYPE_FLOAT = 11;
+    private static final int TYPE_DOUBLE = 12;
+    private static final int COMPRESSION_JPEG = 6;
+
+    // IFD0 and IFD1 tags.
+    private static final int TAG_COMPRESSION = 0x0103;
+    private static final int TAG_MAKE = 0x010F;
+    private static final int TAG_MODEL = 0x0110;
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TAG_DATE_TIME = 0x0132;
+    private static final int TAG_STRIP_OFFSETS = 0x0111;
+    private static final int TAG_TILE_OFFSETS = 0x0144;
+    private static final int TAG_SUB_IFDS = 0x014A;
+    private static final int TAG_JPEG_OFFSET = 0x0201;
+    private static final int TAG_JPEG_LENGTH = 0x0202;
+    private static final int TAG_EXIF_IFD = 0x8769;
+    private static final int TAG_GPS_IFD = 0x8825;
+
+    // Exif IFD tags.
+    private static final int TAG_EXPOSURE_TIME = 0x829A;
+    private static final int TAG_F_NUMBER = 0x829D;
+    private static final int TAG_ISO_SPEED = 0x8827;
+    private static final int TAG_EXIF_VERSION = 0x9000;
+    private static final int TAG_DATE_TIME_ORIGINAL = 0x9003;
+    private static final int TAG_SUBJECT_DISTANCE = 0x9206;
+    private static final int TAG_FOCAL_LENGTH = 0x920A;
+    private static final int TAG_USER_COMMENT = 0x9286;
+    private static final int TAG_MAKER_NOTE = 0x927C;
+    private static final int TAG_SUB_SEC_TIME_ORIGINAL = 0x9291;
+    private static final int TAG_INTEROPERABILITY_IFD = 0xA005;
+
+    // Tags whose values are offsets into the old segment; they are not carried over as they are.
+    private static final int[] OFFSET_TAGS = {TAG_STRIP_OFFSETS, TAG_TILE_OFFSETS, TAG_SUB_IFDS, TAG_JPEG_OFFSET,
+            TAG_JPEG_LENGTH, TAG_EXIF_IFD, TAG_GPS_IFD, TAG_INTEROPERABILITY_IFD};
+
+    private static final byte[] EXIF_HEADER = {'E', 'x', 'i', 'f', 0, 0};
+    private static final byte[] EXIF_VERSION = {'0', '2', '3', '2'};
+    private static final byte[] ASCII_CHARACTER_CODE = {'A', 'S', 'C', 'I', 'I', 0, 0, 0}; // UserComment prefix.
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    private ExifInjector() {
+    }
+
+    // The buffers that, written in order, make the JPEG in jpeg's remaining bytes with its EXIF
+    // segment built from metadata. The first is a new heap buffer holding the SOI marker and the
+    // new segment; the others are views on jpeg. Data that is not a JPEG comes back unchanged.
+    // jpeg's position is not moved.
+    public static ByteBuffer[] inject(ByteBuffer jpeg, CaptureMetadata metadata) {
+        return inject(jpeg, metadata, TimeZone.getDefault());
+    }
+
+    static ByteBuffer[] inject(ByteBuffer jpeg, CaptureMetadata metadata, TimeZone timeZone) {
+        ByteBuffer data = jpeg.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int start = data.position();
+        int limit = data.limit();
+        if (limit - start < 4 || (data.getShort(start) & 0xFFFF) != ExifReader.MARKER_SOI) {
+            return new ByteBuffer[] {data};
+        }
+
+        ByteBuffer header = createHeader(metadata, readCameraFields(data), ExifReader.findThumbnail(data), timeZone);
+        int segment = ExifReader.findExifSegment(data);
+        if (segment < 0) {
+            return new ByteBuffer[] {header, view(data, start + 2, limit)};
+        }
+        int segmentEnd = ExifReader.segmentEnd(data, segment);
+        if (segment == start + 2) {
+            return new ByteBuffer[] {header, view(data, segmentEnd, limit)};
+        }
+        // Segments before the old one (such as JFIF APP0) are kept, after the new one.
+        return new ByteBuffer[] {header, view(data, start + 2, segment), view(data, segmentEnd, limit)};
+    }
+
+    // The tags of the camera's EXIF segment in data's remaining bytes, none if it has none.
+    static CameraFields readCameraFields(ByteBuffer jpeg) {
+        CameraFields fields = new CameraFields();
+        ByteBuffer data = jpeg.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int segment = ExifReader.findExifSegment(data);
+        if (segment < 0) {
+            return fields;
+        }
+        int end = ExifReader.segmentEnd(data, segment);
+        int tiff = ExifReader.openTiff(data, segment, end);
+        if (tiff < 0) {
+            return fields;
+        }
+        long ifd0 = ExifReader.firstIfd(data, tiff, end);
+        readIfd(data, tiff, ifd0, end, fields.ifd0);
+        readIfd(data, tiff, pointer(data, tiff, fields.ifd0, TAG_EXIF_IFD, end), end, fields.exif);
+        readIfd(data, tiff, pointer(data, tiff, fields.ifd0, TAG_GPS_IFD, end), end, fields.gps);
+        readIfd(data, tiff, pointer(data, tiff, fields.exif, TAG_INTEROPERABILITY_IFD, end), end, fields.interop);
+        for (int tag : OFFSET_TAGS) {
+            fields.ifd0.remove(tag);
+            fields.exif.remove(tag);
+        }
+        return fields;
+    }
+
+    // SOI and an EXIF APP1 segment for metadata merged into the camera's fields, ready to be
+    // read. If the segment would not fit in 64 KB, the thumbnail is left out, then the maker
+    // note, then every camera field but the orientation.
+    static ByteBuffer createHeader(CaptureMetadata metadata, CameraFields camera, ByteBuffer thumbnail,
+                                   TimeZone timeZone) {
+        ByteBuffer header = createHeaderOrNull(metadata, camera, thumbnail, timeZone);
+        if (header == null && thumbnail != null) {
+            header = createHeaderOrNull(metadata, camera, null, timeZone);
+        }
+        if (header == null) {
+            camera = camera.copy();
+            camera.exif.remove(TAG_MAKER_NOTE);
+            header = createHeaderOrNull(metadata, camera, null, timeZone);
+        }
+        if (header == null) {
+            header = createHeaderOrNull(metadata, camera.orientationOnly(), null, timeZone);
+        }
+        return header;
+    }
+
+    // The header, or null if it would not fit the segment's 64 KB.
+    private static ByteBuffer createHeaderOrNull(CaptureMetadata metadata, CameraFields camera,
+                                                 ByteBuffer thumbnail, TimeZone timeZone) {
+        byte[] dateTime = formatDateTime(metadata.timeMillis, timeZone);
+
+        Ifd ifd0 = camera.ifd0.copy();
+        if (metadata.make != null) {
+            ifd0.put(TAG_MAKE, TYPE_ASCII, ascii(metadata.make));
+        }
+        if (metadata.model != null) {
+            ifd0.put(TAG_MODEL, TYPE_ASCII, ascii(metadata.model));
+        }
+        ifd0.put(TAG_DATE_TIME, TYPE_ASCII, dateTime);
+        Entry exifPointer = ifd0.put(TAG_EXIF_IFD, TYPE_LONG, longValue(0));
+        Entry gpsPointer = camera.gps.isEmpty() ? null : ifd0.put(TAG_GPS_IFD, TYPE_LONG, longValue(0));
+
+        Ifd exif = camera.exif.copy();
+        if (metadata.exposureTimeNanos > 0) {
+            exif.put(TAG_EXPOSURE_TIME, TYPE_RATIONAL, rational(metadata.exposureTimeNanos / 1000, 1000000));
+        }
+        if (!Float.isNaN(metadata.aperture)) {
+            exif.put(TAG_F_NUMBER, TYPE_RATIONAL, rational(Math.round(metadata.aperture * 100), 100));
+        }
+        if (metadata.sensitivity > 0) {
+            exif.put(TAG_ISO_SPEED, TYPE_SHORT, shortValue(Math.min(metadata.sensitivity, 0xFFFF)));
+        }
+        if (!exif.contains(TAG_EXIF_VERSION)) {
+            exif.put(TAG_EXIF_VERSION, TYPE_UNDEFINED, EXIF_VERSION);
+        }
+        exif.put(TAG_DATE_TIME_ORIGINAL, TYPE_ASCII, dateTime);
+        if (!Float.isNaN(metadata.focusDistance)) {
+            exif.put(TAG_SUBJECT_DISTANCE, TYPE_RATIONAL, subjectDistance(metadata.focusDistance));
+        }
+        if (!Float.isNaN(metadata.focalLength)) {
+            exif.put(TAG_FOCAL_LENGTH, TYPE_RATIONAL, rational(Math.round(metadata.focalLength * 100), 100));
+        }
+        exif.put(TAG_USER_COMMENT, TYPE_UNDEFINED, userComment(metadata));
+        byte[] subSecond = new byte[4]; // Milliseconds, so shots within one second sort correctly.
+        putDigits(subSecond, 0, (int) Math.floorMod(metadata.timeMillis, 1000L), 3);
+        exif.put(TAG_SUB_SEC_TIME_ORIGINAL, TYPE_ASCII, subSecond);
+        Entry interopPointer = camera.interop.isEmpty() ? null
+                : exif.put(TAG_INTEROPERABILITY_IFD, TYPE_LONG, longValue(0));
+
+        // Layout: TIFF header, IFD0, Exif IFD, the interoperability and GPS IFDs, then IFD1 and
+        // the thumbnail it points at.
+        int exifOffset = TIFF_HEADER_SIZE + ifd0.size();
+        exifPointer.value = longValue(exifOffset);
+        int next = exifOffset + exif.size();
+        if (interopPointer != null) {
+            interopPointer.value = longValue(next);
+            next += camera.interop.size();
+        }
+        if (gpsPointer != null) {
+            gpsPointer.value = longValue(next);
+            next += camera.gps.size();
+        }
+        int ifd1Offset = next;
+        int tiffLength = ifd1Offset;
+        Ifd ifd1 = null;
+        if (thumbnail != null) {
+            ifd1 = new Ifd();
+            ifd1.put(TAG_COMPRESSION, TYPE_SHORT, shortValue(COMPRESSION_JPEG));
+            Entry thumbnailOffset = ifd1.put(TAG_JPEG_OFFSET, TYPE_LONG, longValue(0));
+            ifd1.put(TAG_JPEG_LENGTH, TYPE_LONG, longValue(thumbnail.remaining()));
+            thumbnailOffset.value = longValue(ifd1Offset + ifd1.size());
+            tiffLength += ifd1.size() + thumbnail.remaining();
+        }
+
+        int segmentLength = 2 + EXIF_HEADER.length + tiffLength;
+        if (segmentLength > MAX_SEGMENT_LENGTH) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(4 + segmentLength);
+        header.putShort((short) ExifReader.MARKER_SOI);
+        header.put((byte) 0xFF).put((byte) ExifReader.MARKER_APP1).putShort((short) segmentLength);
+        header.put(EXIF_HEADER);
+        int tiff = header.position();
+        header.put((byte) 'M').put((byte) 'M').putShort((short) 42).putInt(TIFF_HEADER_SIZE);
+        ifd0.write(header, tiff, ifd1 != null ? ifd1Offset : 0);
+        exif.write(header, tiff, 0);
+        if (interopPointer != null) {
+            camera.interop.write(header, tiff, 0);
+        }
+        if (gpsPointer != null) {
+            camera.gps.write(header, tiff, 0);
+        }
+        if (ifd1 != null) {
+            ifd1.write(header, tiff, 0);
+            header.put(thumbnail.duplicate());
+        }
+        header.flip();
+        return header;
+    }
+
+    // Add the entries of the IFD at ifd to target, with their values in big-endian order.
+    // Entries of unknown types or with values outside the segment are skipped.
+    private static void readIfd(ByteBuffer data, int tiff, long ifd, int end, Ifd target) {
+        if (ifd < 0 || ifd + 2 > end) {
+            return;
+        }
+        int entries = data.getShort((int) ifd) & 0xFFFF;
+        for (int i = 0; i < entries; i++) {
+            int entry = (int) (ifd + 2 + (long) i * IFD_ENTRY_SIZE);
+            if (entry + IFD_ENTRY_SIZE > end) {
+                return;
+            }
+            int tag = data.getShort(entry) & 0xFFFF;
+            int type = data.getShort(entry + 2) & 0xFFFF;
+            int unit = unitSize(type);
+            long length = (data.getInt(entry + 4) & 0xFFFFFFFFL) * typeSize(type);
+            if (unit == 0 || length == 0 || length > end - tiff) {
+                continue;
+            }
+            long valuePosition = length <= 4 ? entry + 8 : tiff + (data.getInt(entry + 8) & 0xFFFFFFFFL);
+            if (valuePosition + length > end) {
+                continue;
+            }
+            byte[] value = new byte[(int) length];
+            for (int j = 0; j < value.length; j++) {
+                value[j] = data.get((int) valuePosition + j);
+            }
+            if (data.order() == ByteOrder.LITTLE_ENDIAN) {
+                for (int j = 0; j < value.length; j += unit) {
+                    reverse(value, j, unit);
+                }
+            }
+            target.put(tag, type, value);
+        }
+    }
+
+    // Position of the IFD that the LONG entry for tag in ifd points at, or -1 if there is none.
+    private static long pointer(ByteBuffer data, int tiff, Ifd ifd, int tag, int end) {
+        Entry entry = ifd.get(tag);
+        if (entry == null || entry.value.length != 4 || (entry.type != TYPE_LONG && entry.type != TYPE_UNDEFINED)) {
+            return -1;
+        }
+        long offset = ByteBuffer.wrap(entry.value).getInt() & 0xFFFFFFFFL;
+        return offset != 0 && tiff + offset + 2 <= end ? tiff + offset : -1;
+    }
+
+    private static void reverse(byte[] value, int from, int length) {
+        for (int i = from, j = from + length - 1; i < j; i++, j--) {
+            byte swap = value[i];
+            value[i] = value[j];
+            value[j] = swap;
+        }
+    }
+
+    // A view on data's bytes [from, to).
+    private static ByteBuffer view(ByteBuffer data, int from, int to) {
+        ByteBuffer view = data.duplicate();
+        view.limit(to).position(from);
+        return view.slice();
+    }
+
+    // SubjectDistance in meters from a focus distance in diopters; 0 diopters is infinity.
+    private static byte[] subjectDistance(float diopters) {
+        if (diopters <= 0) {
+            return rational(0xFFFFFFFFL, 1);
+        }
+        return rational(Math.round(1000 / diopters), 1000);
+    }
+
+    // Fields that EXIF has no tag for, as readable text.
+    private static byte[] userComment(CaptureMetadata metadata) {
+        String lensState = metadata.lensState == CaptureMetadata.LENS_STATE_STATIONARY ? "stationary"
+                : metadata.lensState == CaptureMetadata.LENS_STATE_MOVING ? "moving" : "unknown";
+        byte[] text = ("SensorTimestamp=" + metadata.sensorTimestampNanos + "; LensState=" + lensState)
+                .getBytes(US_ASCII);
+        byte[] value = new byte[ASCII_CHARACTER_CODE.length + text.length];
+        System.arraycopy(ASCII_CHARACTER_CODE, 0, value, 0, ASCII_CHARACTER_CODE.length);
+        System.arraycopy(text, 0, value, ASCII_CHARACTER_CODE.length, text.length);
+        return value;
+    }
+
+    // "yyyy:MM:dd HH:mm:ss" and a terminating NUL, in local time.
+    private static byte[] formatDateTime(long millis, TimeZone timeZone) {
+        long localMillis = millis + timeZone.getOffset(millis);
+        long date = CaptureNameGenerator.civilDate(Math.floorDiv(localMillis, CaptureNameGenerator.MILLIS_PER_DAY));
+        int secondOfDay = (int) (Math.floorMod(localMillis, CaptureNameGenerator.MILLIS_PER_DAY) / 1000);
+        byte[] text = new byte[20];
+        putDigits(text, 0, (int) (date / 10000), 4);
+        text[4] = ':';
+        putDigits(text, 5, (int) (date / 100 % 100), 2);
+        text[7] = ':';
+        putDigits(text, 8, (int) (date % 100), 2);
+        text[10] = ' ';
+        putDigits(text, 11, secondOfDay / 3600, 2);
+        text[13] = ':';
+        putDigits(text, 14, secondOfDay / 60 % 60, 2);
+        text[16] = ':';
+        putDigits(text, 17, secondOfDay % 60, 2);
+        return text;
+    }
+
+    private static void putDigits(byte[] text, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            text[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    // Values, big-endian to match the "MM" TIFF header.
+    private static byte[] ascii(String text) {
+        byte[] bytes = text.getBytes(US_ASCII);
+        byte[] value = new byte[bytes.length + 1];
+        System.arraycopy(bytes, 0, value, 0, bytes.length);
+        return value;
+    }
+
+    private static byte[] shortValue(int value) {
+        return new byte[] {(byte) (value >> 8), (byte) value};
+    }
+
+    private static byte[] longValue(long value) {
+        return new byte[] {(byte) (value >> 24), (byte) (value >> 16), (byte) (value >> 8), (byte) value};
+    }
+
+    private static byte[] rational(long numerator, long denominator) {
+        return ByteBuffer.allocate(8).putInt((int) numerator).putInt((int) denominator).array();
+    }
+
+    private static int typeSize(int type) {
+        switch (type) {
+            case TYPE_SHORT:
+            case TYPE_SSHORT:
+                return 2;
+            case TYPE_LONG:
+            case TYPE_SLONG:
+            case TYPE_FLOAT:
+                return 4;
+            case TYPE_RATIONAL:
+            case TYPE_SRATIONAL:
+            case TYPE_DOUBLE:
+                return 8;
+            default:
+                return 1; // BYTE, ASCII, SBYTE and UNDEFINED.
+        }
+    }
+
+    // Size of the units whose byte order differs between "II" and "MM", or 0 for an unknown type.
+    private static int unitSize(int type) {
+        if (type < 1 || type > TYPE_DOUBLE) {
+            return 0;
+        }
+        return type == TYPE_RATIONAL || type == TYPE_SRATIONAL ? 4 : typeSize(type);
+    }
+
+    // One IFD entry. value holds count values of type.
+    private static final class Entry {
+        final int tag;
+        final int type;
+        byte[] value;
+
+        Entry(int tag, int type, byte[] value) {
+            this.tag = tag;
+            this.type = type;
+            this.value = value;
+        }
+    }
+
+    // The camera's tags, per IFD, with big-endian values and without the offset tags.
+    static final class CameraFields {
+        final Ifd ifd0 = new Ifd();
+        final Ifd exif = new Ifd();
+        final Ifd gps = new Ifd();
+        final Ifd interop = new Ifd();
+
+        CameraFields copy() {
+            CameraFields copy = new CameraFields();
+            copy.ifd0.putAll(ifd0);
+            copy.exif.putAll(exif);
+            copy.gps.putAll(gps);
+            copy.interop.putAll(interop);
+            return copy;
+        }
+
+        CameraFields orientationOnly() {
+            CameraFields fields = new CameraFields();
+            Entry orientation = ifd0.get(TAG_ORIENTATION);
+            if (orientation != null) {
+                fields.ifd0.put(TAG_ORIENTATION, orientation.type, orientation.value);
+            }
+            return fields;
+        }
+    }
+
+    // An IFD being built, one entry per tag. Entries are written in increasing tag order, as
+    // TIFF requires; values longer than four bytes are stored after the entries, at even offsets.
+    static final class Ifd {
+        private final TreeMap<Integer, Entry> mEntries = new TreeMap<>();
+
+        // Add an entry, replacing the one for the same tag.
+        Entry put(int tag, int type, byte[] value) {
+            Entry entry = new Entry(tag, type, value);
+            mEntries.put(tag, entry);
+            return entry;
+        }
+
+        void putAll(Ifd other) {
+            for (Entry entry : other.mEntries.values()) {
+                put(entry.tag, entry.type, entry.value);
+            }
+        }
+
+        Entry get(int tag) {
+            return mEntries.get(tag);
+        }
+
+        boolean contains(int tag) {
+            return mEntries.containsKey(tag);
+        }
+
+        void remove(int tag) {
+            mEntries.remove(tag);
+        }
+
+        boolean isEmpty() {
+            return mEntries.isEmpty();
+        }
+
+        Ifd copy() {
+            Ifd copy = new Ifd();
+            copy.putAll(this);
+            return copy;
+        }
+
+        int size() {
+            int size = 2 + mEntries.size() * IFD_ENTRY_SIZE + 4;
+            for (Entry entry : mEntries.values()) {
+                if (entry.value.length > 4) {
+                    size += (entry.value.length + 1) & ~1;
+                }
+            }
+            return size;
+        }
+
+        // Write at out's position, which is the IFD's offset from tiff. nextIfdOffset links the
+        // following IFD, or is 0 for none.
+        void write(ByteBuffer out, int tiff, int nextIfdOffset) {
+            int valueOffset = out.position() - tiff + 2 + mEntries.size() * IFD_ENTRY_SIZE + 4;
+            out.putShort((short) mEntries.size());
+            for (Entry entry : mEntries.values()) {
+                out.putShort((short) entry.tag).putShort((short) entry.type)
+                        .putInt(entry.value.length / typeSize(entry.type));
+                if (entry.value.length <= 4) {
+                    out.put(entry.value);
+                    for (int i = entry.value.length; i < 4; i++) {
+                        out.put((byte) 0);
+                    }
+                } else {
+                    out.putInt(valueOffset);
+                    valueOffset += (entry.value.length + 1) & ~1;
+                }
+            }
+            out.putInt(nextIfdOffset);
+            for (Entry entry : mEntries.values()) {
+                if (entry.value.length > 4) {
+                    out.put(entry.value);
+                    if ((entry.value.length & 1) != 0) {
+                        out.put((byte) 0);
+                    }
+                }
+            }
+        }
+    }
+}
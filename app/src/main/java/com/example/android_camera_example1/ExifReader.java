@@ -0,0 +1,185 @@
+package com.example.android_camera_example1;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// ExifReader reads what the app needs from a capture's EXIF APP1 segment without decoding the
+// image: the small JPEG that cameras embed in IFD1 (sized by CaptureRequest.JPEG_THUMBNAIL_SIZE),
+// which costs a copy of a few kilobytes instead of a full-size decode, and the orientation tag.
+// Only the header segments are read; the scan data is never touched.
+public final class ExifReader {
+    static final int MARKER_SOI = 0xFFD8;
+    static final int MARKER_APP1 = 0xE1;
+    private static final int MARKER_SOS = 0xDA;
+    private static final int MARKER_EOI = 0xD9;
+    static final int EXIF_HEADER_SIZE = 6; // "Exif\0\0"
+    private static final int IFD_ENTRY_SIZE = 12;
+    private static final int TYPE_SHORT = 3;
+    private static final int TYPE_LONG = 4;
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TAG_JPEG_OFFSET = 0x0201; // JPEGInterchangeFormat
+    private static final int TAG_JPEG_LENGTH = 0x0202; // JPEGInterchangeFormatLength
+
+    private ExifReader() {
+    }
+
+    // The embedded thumbnail of the JPEG in jpeg's remaining bytes, as a read-only slice of it,
+    // or null if there is none. jpeg's position is not moved.
+    public static ByteBuffer findThumbnail(ByteBuffer jpeg) {
+        ByteBuffer data = jpeg.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int segment = findExifSegment(data);
+        if (segment < 0) {
+            return null;
+        }
+        int end = segmentEnd(data, segment);
+        int tiff = openTiff(data, segment, end);
+        if (tiff < 0) {
+            return null;
+        }
+        long ifd1 = nextIfd(data, tiff, firstIfd(data, tiff, end), end);
+        if (ifd1 < 0) {
+            return null; // No second IFD, so no thumbnail.
+        }
+
+        long offset = readTag(data, ifd1, end, TAG_JPEG_OFFSET);
+        long length = readTag(data, ifd1, end, TAG_JPEG_LENGTH);
+        if (offset <= 0 || length < 4 || tiff + offset + length > end) {
+            return null;
+        }
+
+        int start = (int) (tiff + offset);
+        data.order(ByteOrder.BIG_ENDIAN);
+        if ((data.getShort(start) & 0xFFFF) != MARKER_SOI) {
+            return null;
+        }
+        data.limit(start + (int) length).position(start);
+        return data.slice().asReadOnlyBuffer();
+    }
+
+    // The orientation tag (1 to 8) of the JPEG in jpeg's remaining bytes, or 0 if it has none.
+    // jpeg's position is not moved.
+    public static int findOrientation(ByteBuffer jpeg) {
+        ByteBuffer data = jpeg.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int segment = findExifSegment(data);
+        if (segment < 0) {
+            return 0;
+        }
+        int end = segmentEnd(data, segment);
+        int tiff = openTiff(data, segment, end);
+        if (tiff < 0) {
+            return 0;
+        }
+        long orientation = readTag(data, firstIfd(data, tiff, end), end, TAG_ORIENTATION);
+        return orientation >= 1 && orientation <= 8 ? (int) orientation : 0;
+    }
+
+    // Position of the marker of the EXIF APP1 segment in data's remaining bytes, or -1 if the
+    // data is not a JPEG or has no EXIF segment before its image data. The segment is known to
+    // end within data.
+    static int findExifSegment(ByteBuffer data) {
+        int position = data.position();
+        int limit = data.limit();
+        if (limit - position < 4 || (data.getShort(position) & 0xFFFF) != MARKER_SOI) {
+            return -1;
+        }
+
+        position += 2;
+        while (position + 4 <= limit) {
+            if ((data.get(position) & 0xFF) != 0xFF) {
+                return -1; // Not at a marker; the header is damaged.
+            }
+            int marker = data.get(position + 1) & 0xFF;
+            if (marker == 0xFF) {
+                position++; // Fill byte.
+                continue;
+            }
+            if (marker == MARKER_SOS || marker == MARKER_EOI) {
+                return -1; // Image data starts; EXIF always comes before it.
+            }
+            int end = segmentEnd(data, position);
+            if (end > limit) {
+                return -1;
+            }
+            if (marker == MARKER_APP1 && isExifHeader(data, position + 4, end)) {
+                return position;
+            }
+            position = end;
+        }
+        return -1;
+    }
+
+    // Position just past the segment whose marker is at position.
+    static int segmentEnd(ByteBuffer data, int position) {
+        return position + 2 + (data.getShort(position + 2) & 0xFFFF);
+    }
+
+    private static boolean isExifHeader(ByteBuffer data, int position, int end) {
+        return end - position >= EXIF_HEADER_SIZE
+                && data.get(position) == 'E' && data.get(position + 1) == 'x'
+                && data.get(position + 2) == 'i' && data.get(position + 3) == 'f'
+                && data.get(position + 4) == 0 && data.get(position + 5) == 0;
+    }
+
+    // Position of the TIFF structure in the EXIF segment at segment, or -1 if it is not valid.
+    // Sets data's byte order to the structure's. Offsets inside it are relative to this position.
+    static int openTiff(ByteBuffer data, int segment, int end) {
+        int tiff = segment + 4 + EXIF_HEADER_SIZE;
+        if (end - tiff < 8) {
+            return -1;
+        }
+        int byteOrder = data.getShort(tiff) & 0xFFFF;
+        if (byteOrder == 0x4949) { // "II"
+            data.order(ByteOrder.LITTLE_ENDIAN);
+        } else if (byteOrder != 0x4D4D) { // "MM"
+            return -1;
+        }
+        return (data.getShort(tiff + 2) & 0xFFFF) == 42 ? tiff : -1;
+    }
+
+    // Position of IFD0, or -1 if it is outside the segment.
+    static long firstIfd(ByteBuffer data, int tiff, int end) {
+        long ifd = tiff + (data.getInt(tiff + 4) & 0xFFFFFFFFL);
+        return ifd + 2 <= end ? ifd : -1;
+    }
+
+    // Position of the IFD linked from ifd, or -1 if there is none.
+    static long nextIfd(ByteBuffer data, int tiff, long ifd, int end) {
+        if (ifd < 0) {
+            return -1;
+        }
+        int entries = data.getShort((int) ifd) & 0xFFFF;
+        long link = ifd + 2 + (long) entries * IFD_ENTRY_SIZE;
+        if (link + 4 > end) {
+            return -1;
+        }
+        long offset = data.getInt((int) link) & 0xFFFFFFFFL;
+        return offset != 0 && tiff + offset + 2 <= end ? tiff + offset : -1;
+    }
+
+    // The value of the SHORT or LONG entry for tag in ifd, or -1 if there is none.
+    private static long readTag(ByteBuffer data, long ifd, int end, int tag) {
+        if (ifd < 0) {
+            return -1;
+        }
+        int entries = data.getShort((int) ifd) & 0xFFFF;
+        for (int i = 0; i < entries; i++) {
+            long entry = ifd + 2 + (long) i * IFD_ENTRY_SIZE;
+            if (entry + IFD_ENTRY_SIZE > end) {
+                return -1;
+            }
+            if ((data.getShort((int) entry) & 0xFFFF) == tag) {
+                return readValue(data, (int) entry);
+            }
+        }
+        return -1;
+    }
+
+    // The value of a single SHORT or LONG IFD entry, which is stored in the entry itself.
+    private static long readValue(ByteBuffer data, int entry) {
+        int type = data.getShort(entry + 2) & 0xFFFF;
+        if (type == TYPE_SHORT) {
+            return data.getShort(entry + 8) & 0xFFFF;
+        }
+        return type == TYPE_LONG ? data.getInt(entry + 8) & 0xFFFFFFFFL : -1;
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.android_camera_example1;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// FairWriteQueue is a bounded blocking queue shared by several sources, such as the cameras of
+// a multi-camera session writing through one AsyncImageWriter. Items are taken round-robin
+// across sources, so a burst from one camera does not delay another camera's image by the
+// whole burst. While more than one source is active (has items queued or is waiting to queue
+// one), each may hold at most its fair share of the capacity, so a bursting source blocks on
+// its own share instead of filling the queue; a lone source gets all of it.
+public class FairWriteQueue<T> {
+    private final int mCapacity;
+
+    // State, guarded by this. Sources with queued items, in round-robin order.
+    private final LinkedHashMap<Object, ArrayDeque<T>> mQueues = new LinkedHashMap<>();
+    private final Map<Object, Integer> mWaiting = new HashMap<>(); // Blocked put() calls per source.
+    private int mSize;
+
+    // Constructor for the FairWriteQueue class.
+    public FairWriteQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1: " + capacity);
+        }
+        mCapacity = capacity;
+    }
+
+    // Queue item for source, blocking while the queue is full or source holds its fair share.
+    public synchronized void put(Object source, T item) throws InterruptedException {
+        if (!hasRoom(source)) {
+            mWaiting.put(source, waitingCount(source) + 1);
+            try {
+                notifyAll(); // Other sources' shares just shrank.
+                while (!hasRoom(source)) {
+                    wait();
+                }
+            } finally {
+                int waiting = waitingCount(source) - 1;
+                if (waiting == 0) {
+                    mWaiting.remove(source);
+                } else {
+                    mWaiting.put(source, waiting);
+                }
+                notifyAll(); // Other sources' shares may have grown.
+            }
+        }
+
+        ArrayDeque<T> queue = mQueues.get(source);
+        if (queue == null) {
+            queue = new ArrayDeque<>();
+            mQueues.put(source, queue);
+        }
+        queue.addLast(item);
+        mSize++;
+    }
+
+    // Take the next item in round-robin order, or null if the queue is empty.
+    public synchronized T poll() {
+        Iterator<Map.Entry<Object, ArrayDeque<T>>> iterator = mQueues.entrySet().iterator();
+        if (!iterator.hasNext()) {
+            return null;
+        }
+        Map.Entry<Object, ArrayDeque<T>> next = iterator.next();
+        ArrayDeque<T> queue = next.getValue();
+        T item = queue.pollFirst();
+        iterator.remove();
+        if (!queue.isEmpty()) {
+            mQueues.put(next.getKey(), queue); // To the back of the rotation.
+        }
+        mSize--;
+        notifyAll();
+        return item;
+    }
+
+    // Move up to maxItems items into target in round-robin order. Returns the number moved.
+    public synchronized int drainTo(Collection<? super T> target, int maxItems) {
+        int moved = 0;
+        while (moved < maxItems && mSize > 0) {
+            target.add(poll());
+            moved++;
+        }
+        return moved;
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    public synchronized boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    // Items queued by one source.
+    public synchronized int size(Object source) {
+        ArrayDeque<T> queue = mQueues.get(source);
+        return queue != null ? queue.size() : 0;
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    // Capacity a source may hold while the current set of sources is active.
+    synchronized int getFairShare(Object source) {
+        int sources = mQueues.size();
+        for (Object waiting : mWaiting.keySet()) {
+            if (!mQueues.containsKey(waiting)) {
+                sources++;
+            }
+        }
+        if (!mQueues.containsKey(source) && !mWaiting.containsKey(source)) {
+            sources++; // The caller is about to become active.
+        }
+        return Math.max(1, mCapacity / sources);
+    }
+
+    private boolean hasRoom(Object source) {
+        return mSize < mCapacity && size(source) < getFairShare(source);
+    }
+
+    private int waitingCount(Object source) {
+        Integer waiting = mWaiting.get(source);
+        return waiting != null ? waiting : 0;
+    }
+}
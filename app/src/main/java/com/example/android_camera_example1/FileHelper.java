@@ -1,60 +1,267 @@
 package com.example.android_camera_example1;
 
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
+import android.media.Image;
 import android.net.Uri;
 import android.os.Environment;
+import android.os.ParcelFileDescriptor;
+import android.os.RemoteException;
 import android.provider.MediaStore;
-import android.widget.Toast;
 
+import java.io.Closeable;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 // FileHelper class for handling file operations using MediaStore, specifically for saving images.
-public class FileHelper {
+// It is the CapturePipeline's frame store on the device.
+public class FileHelper implements CapturePipeline.FrameStore<Uri> {
+    // Looks up the capture-result metadata of a frame by its sensor timestamp.
+    public interface MetadataSource {
+        // The metadata for the frame taken at timestampNanos, or null if it is not known. May
+        // wait briefly for a capture result that has not arrived yet.
+        CaptureMetadata getMetadata(long timestampNanos);
+    }
+
+    // Defaults for the asynchronous writer stage.
+    private static final int DEFAULT_WRITER_QUEUE_CAPACITY = 16; // Images waiting to be written.
+    static final int DEFAULT_WRITER_WORKER_COUNT = 2; // Concurrent writes to MediaStore.
+    private static final int DEFAULT_WRITER_MAX_BATCH_SIZE = 8; // Records inserted per applyBatch call.
+    private static final CaptureNameGenerator NAME_GENERATOR = new CaptureNameGenerator(); // Shared so names never repeat.
+
     private Context mContext;
+    private AsyncImageWriter<Uri> mAsyncWriter; // Writes queued images off the caller's thread.
+    private volatile MetadataSource mMetadataSource; // When set, saved frames get EXIF from their capture results.
+    private final LatencyHistogram mSaveLatency = new LatencyHistogram(); // Duration of synchronous saves.
+    private final AtomicLong mMetadataMisses = new AtomicLong(); // Frames saved without their capture result.
+
+    // Constructor for the FileHelper class. ioExecutor runs the asynchronous writes.
+    public FileHelper(Context context, Executor ioExecutor) {
+        this(context, ioExecutor, DEFAULT_WRITER_QUEUE_CAPACITY, DEFAULT_WRITER_WORKER_COUNT);
+    }
+
+    // Constructor with an explicit writer queue capacity and worker count.
+    public FileHelper(Context context, Executor ioExecutor, int writerQueueCapacity, int writerWorkerCount) {
+        this(context, createWriter(context, ioExecutor, writerQueueCapacity, writerWorkerCount));
+    }
 
-    // Constructor for the FileHelper class.
-    public FileHelper(Context context) {
+    // Constructor for a FileHelper that queues its images on a writer shared with other
+    // cameras. Its images are one source of the writer's fair queue.
+    public FileHelper(Context context, AsyncImageWriter<Uri> sharedWriter) {
         mContext = context;
+        mAsyncWriter = sharedWriter;
+    }
+
+    // A MediaStore writer with the default queue capacity and worker count, to share between
+    // the FileHelpers of several cameras.
+    public static AsyncImageWriter<Uri> createWriter(Context context, Executor ioExecutor) {
+        return createWriter(context, ioExecutor, DEFAULT_WRITER_QUEUE_CAPACITY, DEFAULT_WRITER_WORKER_COUNT);
+    }
+
+    private static AsyncImageWriter<Uri> createWriter(Context context, Executor ioExecutor, int queueCapacity,
+                                                     int workerCount) {
+        return new AsyncImageWriter<>(new ContentResolverStore(context.getContentResolver()),
+                queueCapacity, workerCount, DEFAULT_WRITER_MAX_BATCH_SIZE, ioExecutor);
     }
 
     // Method to save an image byte array using MediaStore.
     public String saveImage(byte[] bytes) throws IOException {
+        long start = System.nanoTime();
         // Generate a unique file name using the current timestamp.
         String fileName = createFileName();
 
-        // Create a ContentValues object to hold metadata about the file.
-        ContentValues values = new ContentValues();
-        values.put(MediaStore.MediaColumns.DISPLAY_NAME, fileName);
-        values.put(MediaStore.MediaColumns.MIME_TYPE, "image/jpeg");
-        values.put(MediaStore.MediaColumns.RELATIVE_PATH, Environment.DIRECTORY_PICTURES);
-
-        // Get the ContentResolver and insert the file into MediaStore.
+        // Insert a pending record so the gallery does not show the file until it is complete.
         ContentResolver resolver = mContext.getContentResolver();
-        Uri uri = resolver.insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
+        Uri uri = resolver.insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, createPendingValues(fileName));
         if (uri == null) {
             throw new IOException("Failed to create new MediaStore record.");
         }
 
-        // Write the byte array to the file using the obtained OutputStream.
-        writeToFile(resolver, uri, bytes);
+        // Write the byte array to the file using the obtained OutputStream, then publish it.
+        try {
+            writeToFile(resolver, uri, bytes);
+            publish(resolver, uri);
+        } catch (IOException e) {
+            resolver.delete(uri, null, null);
+            throw e;
+        }
+        mSaveLatency.record(System.nanoTime() - start);
 
         // Return the absolute path of the saved file.
         return uri.toString();
     }
 
-    // Create a unique file name using a timestamp.
+    // Queue an image byte array for writing on the I/O executor. The future receives the final Uri.
+    public CompletableFuture<Uri> saveImageAsync(byte[] bytes) {
+        return saveImageAsync(ByteBuffer.wrap(bytes));
+    }
+
+    // Queue the remaining bytes of a buffer for writing without copying them. The buffer must
+    // stay valid until the returned future completes.
+    public CompletableFuture<Uri> saveImageAsync(ByteBuffer data) {
+        return mAsyncWriter.submit(this, createFileName(), new ByteBuffer[] {data});
+    }
+
+    // Queue a captured frame for writing. When the metadata source knows the frame, its EXIF
+    // segment is rebuilt from the capture result as it is written; otherwise this is the same
+    // as saveImageAsync(ByteBuffer).
+    @Override
+    public CompletableFuture<Uri> save(ByteBuffer data, long timestampNanos) {
+        MetadataSource source = mMetadataSource;
+        CaptureMetadata metadata = null;
+        if (source != null && timestampNanos != 0) {
+            metadata = source.getMetadata(timestampNanos);
+        }
+        if (metadata == null) {
+            if (source != null) {
+                mMetadataMisses.incrementAndGet();
+            }
+            return saveImageAsync(data);
+        }
+        return mAsyncWriter.submit(this, createFileName(), ExifInjector.inject(data, metadata));
+    }
+
+    // Set where save() finds the metadata of captured frames, or null to save them unchanged.
+    public void setMetadataSource(MetadataSource source) {
+        mMetadataSource = source;
+    }
+
+    // Open a sequence: one pending MediaStore record holding a frame archive that frames are
+    // appended to until the sequence is closed, instead of one record and file per frame.
+    public Sequence openSequence() throws IOException {
+        String fileName = createFileName("SEQ_", ".frames");
+        ContentResolver resolver = mContext.getContentResolver();
+        Uri uri = resolver.insert(MediaStore.Downloads.EXTERNAL_CONTENT_URI, createPendingSequenceValues(fileName));
+        if (uri == null) {
+            throw new IOException("Failed to create new MediaStore record.");
+        }
+
+        try {
+            ParcelFileDescriptor descriptor = resolver.openFileDescriptor(uri, "w");
+            if (descriptor == null) {
+                throw new IOException("Failed to obtain file descriptor from MediaStore.");
+            }
+            FileChannel channel = new ParcelFileDescriptor.AutoCloseOutputStream(descriptor).getChannel();
+            return new Sequence(resolver, uri, new FrameArchiveWriter(channel), mAsyncWriter.getExecutor());
+        } catch (IOException e) {
+            resolver.delete(uri, null, null);
+            throw e;
+        }
+    }
+
+    // Queue a JPEG Image for writing straight from its plane buffer. The image is closed once the
+    // write has completed or failed.
+    public CompletableFuture<Uri> saveImageAsync(final Image image) {
+        ByteBuffer data = image.getPlanes()[0].getBuffer();
+        return saveImageAsync(data).whenComplete(new BiConsumer<Uri, Throwable>() {
+            @Override
+            public void accept(Uri uri, Throwable error) {
+                image.close();
+            }
+        });
+    }
+
+    // Writer counters (queue depth, images, MB/s, latency), for monitoring.
+    public AsyncImageWriter<Uri> getAsyncWriter() {
+        return mAsyncWriter;
+    }
+
+    // Frames saved with the camera's EXIF only, because their capture result was not known in
+    // time, for monitoring.
+    public long getMetadataMissCount() {
+        return mMetadataMisses.get();
+    }
+
+    // Insert, write and publish time of saveImage(), for monitoring.
+    public LatencyHistogram getSaveLatencyHistogram() {
+        return mSaveLatency;
+    }
+
+    // Wait for the images this FileHelper queued to be written. On a writer shared with other
+    // cameras, their queued images are not waited for.
+    public void shutdown() {
+        mAsyncWriter.shutdown(this);
+    }
+
+    // Metadata for a new pending image record.
+    private static ContentValues createPendingValues(String fileName) {
+        // Create a ContentValues object to hold metadata about the file.
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.MediaColumns.DISPLAY_NAME, fileName);
+        values.put(MediaStore.MediaColumns.MIME_TYPE, "image/jpeg");
+        values.put(MediaStore.MediaColumns.RELATIVE_PATH, Environment.DIRECTORY_PICTURES);
+        values.put(MediaStore.MediaColumns.IS_PENDING, 1);
+        return values;
+    }
+
+    // Metadata for a new pending sequence record.
+    private static ContentValues createPendingSequenceValues(String fileName) {
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.MediaColumns.DISPLAY_NAME, fileName);
+        values.put(MediaStore.MediaColumns.MIME_TYPE, "application/octet-stream");
+        values.put(MediaStore.MediaColumns.RELATIVE_PATH, Environment.DIRECTORY_DOWNLOADS);
+        values.put(MediaStore.MediaColumns.IS_PENDING, 1);
+        return values;
+    }
+
+    // Clear the pending flag so the image becomes visible to other apps.
+    private static void publish(ContentResolver resolver, Uri uri) throws IOException {
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.MediaColumns.IS_PENDING, 0);
+        if (resolver.update(uri, values, null, null) != 1) {
+            throw new IOException("Failed to publish MediaStore record " + uri);
+        }
+    }
+
+    // Create a unique file name from the current time, to the millisecond.
     private String createFileName() {
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMdd_HHmmss");
-        return "IMG_" + dateFormat.format(new Date()) + ".jpg";
+        return createFileName("IMG_", ".jpg");
+    }
+
+    private static String createFileName(String prefix, String extension) {
+        return NAME_GENERATOR.next(prefix, extension);
+    }
+
+    // Write the remaining bytes of the buffers, in order, to the specified Uri through a gathering
+    // FileChannel write, so direct buffers such as Image planes go to the file without an
+    // intermediate heap array.
+    private static void writeToFile(ContentResolver resolver, Uri uri, ByteBuffer[] data) throws IOException {
+        try (ParcelFileDescriptor descriptor = resolver.openFileDescriptor(uri, "w")) {
+            if (descriptor == null) {
+                throw new IOException("Failed to obtain file descriptor from MediaStore.");
+            }
+            try (FileOutputStream output = new FileOutputStream(descriptor.getFileDescriptor());
+                 FileChannel channel = output.getChannel()) {
+                // Count every buffer: an empty tail must not end the loop while earlier ones have data.
+                long remaining = 0;
+                for (ByteBuffer buffer : data) {
+                    remaining += buffer.remaining();
+                }
+                while (remaining > 0) {
+                    remaining -= channel.write(data);
+                }
+            }
+        }
     }
 
     // Write the byte array to the specified Uri using the ContentResolver.
-    private void writeToFile(ContentResolver resolver, Uri uri, byte[] bytes) throws IOException {
+    private static void writeToFile(ContentResolver resolver, Uri uri, byte[] bytes) throws IOException {
         try (OutputStream output = resolver.openOutputStream(uri)) {
             if (output != null) {
                 output.write(bytes);
@@ -63,4 +270,147 @@ public class FileHelper {
             }
         }
     }
+
+    // MediaStore operations for the asynchronous writer, backed by a ContentResolver.
+    private static class ContentResolverStore implements AsyncImageWriter.MediaStore<Uri> {
+        private final ContentResolver mResolver;
+
+        ContentResolverStore(ContentResolver resolver) {
+            mResolver = resolver;
+        }
+
+        @Override
+        public List<Uri> insertPending(List<String> displayNames) throws IOException {
+            if (displayNames.size() == 1) {
+                Uri uri = mResolver.insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
+                        createPendingValues(displayNames.get(0)));
+                if (uri == null) {
+                    throw new IOException("Failed to create new MediaStore record.");
+                }
+                return Collections.singletonList(uri);
+            }
+
+            // Insert every record of a burst in one transaction.
+            ArrayList<ContentProviderOperation> operations = new ArrayList<>(displayNames.size());
+            for (String displayName : displayNames) {
+                operations.add(ContentProviderOperation.newInsert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI)
+                        .withValues(createPendingValues(displayName))
+                        .build());
+            }
+
+            ContentProviderResult[] results;
+            try {
+                results = mResolver.applyBatch(MediaStore.AUTHORITY, operations);
+            } catch (RemoteException | OperationApplicationException e) {
+                throw new IOException("Failed to create new MediaStore records.", e);
+            }
+
+            List<Uri> uris = new ArrayList<>(results.length);
+            for (ContentProviderResult result : results) {
+                if (result.uri == null) {
+                    throw new IOException("Failed to create new MediaStore record.");
+                }
+                uris.add(result.uri);
+            }
+            return uris;
+        }
+
+        @Override
+        public void write(Uri uri, ByteBuffer[] data) throws IOException {
+            writeToFile(mResolver, uri, data);
+        }
+
+        @Override
+        public void publish(Uri uri) throws IOException {
+            FileHelper.publish(mResolver, uri);
+        }
+
+        @Override
+        public void delete(Uri uri) {
+            mResolver.delete(uri, null, null);
+        }
+    }
+
+    // A sequence being recorded: frames saved to it are appended to its archive, which is
+    // published as one MediaStore record when the sequence is closed. Appends run on the I/O
+    // executor, one after another in the order the frames were saved, so slow storage holds up
+    // the writes and not the thread that processes frames.
+    public static class Sequence implements CapturePipeline.FrameStore<Uri>, Closeable {
+        private final ContentResolver mResolver;
+        private final Uri mUri;
+        private final FrameArchiveWriter mArchive;
+        private final Executor mIoExecutor;
+        private CompletableFuture<Void> mLastAppend = CompletableFuture.completedFuture(null); // Guarded by this.
+
+        Sequence(ContentResolver resolver, Uri uri, FrameArchiveWriter archive, Executor ioExecutor) {
+            mResolver = resolver;
+            mUri = uri;
+            mArchive = archive;
+            mIoExecutor = ioExecutor;
+        }
+
+        // Queue a frame for appending, stamped with its sensor timestamp when known. The buffer
+        // must stay valid until the returned future completes.
+        @Override
+        public synchronized CompletableFuture<Uri> save(final ByteBuffer data, long timestampNanos) {
+            final long timestamp = timestampNanos != 0 ? timestampNanos : System.nanoTime();
+            final CompletableFuture<Uri> result = new CompletableFuture<>();
+            Runnable append = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        mArchive.append(data, timestamp);
+                        result.complete(mUri);
+                    } catch (IOException e) {
+                        result.completeExceptionally(e);
+                    }
+                }
+            };
+            try {
+                // Chained on the previous append, which never fails, so frames stay in order.
+                mLastAppend = mLastAppend.thenRunAsync(append, mIoExecutor)
+                        .exceptionally(new Function<Throwable, Void>() {
+                            @Override
+                            public Void apply(Throwable error) {
+                                result.completeExceptionally(error); // The executor refused it.
+                                return null;
+                            }
+                        });
+            } catch (RejectedExecutionException e) {
+                result.completeExceptionally(e);
+            }
+            return result;
+        }
+
+        public Uri getUri() {
+            return mUri;
+        }
+
+        // Frames and bytes appended so far, for monitoring.
+        public FrameArchiveWriter getArchive() {
+            return mArchive;
+        }
+
+        // Wait for queued frames, then write the archive index and publish the record; an empty
+        // sequence is deleted instead.
+        @Override
+        public void close() throws IOException {
+            CompletableFuture<Void> lastAppend;
+            synchronized (this) {
+                lastAppend = mLastAppend;
+            }
+            lastAppend.join();
+            try {
+                mArchive.close();
+            } catch (IOException e) {
+                mResolver.delete(mUri, null, null);
+                throw e;
+            }
+            if (mArchive.getFrameCount() == 0) {
+                mResolver.delete(mUri, null, null);
+                return;
+            }
+            publish(mResolver, mUri);
+        }
+    }
 }
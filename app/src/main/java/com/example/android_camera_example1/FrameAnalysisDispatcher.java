@@ -0,0 +1,175 @@
+package com.example.android_camera_example1;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+// FrameAnalysisDispatcher feeds analysis frames to a FrameAnalyzer on an executor with
+// "keep only latest" semantics: at most one frame waits while the analyzer is busy, and a newer
+// frame replaces (and releases) it. A slow analyzer therefore drops frames instead of queueing
+// them, and the camera never waits on analysis.
+public class FrameAnalysisDispatcher {
+    // Told when the analyzer throws; the frame is dropped and analysis goes on with the next one.
+    public interface ErrorListener {
+        void onAnalyzerFailed(RuntimeException error);
+    }
+
+    private final Executor mExecutor;
+    private final FrameAnalyzer mAnalyzer;
+    private final AtomicReference<AnalysisFrame> mPending = new AtomicReference<>();
+    private final AtomicBoolean mScheduled = new AtomicBoolean();
+    private volatile ErrorListener mErrorListener;
+
+    // Counters for monitoring, guarded by this.
+    private long mFramesSubmitted;
+    private long mFramesAnalyzed;
+    private long mFramesDropped;
+    private long mAnalyzerFailures;
+    private long mTotalAnalyzerNanos;
+    private long mMaxAnalyzerNanos;
+
+    private final Runnable mDrainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    // Constructor for the FrameAnalysisDispatcher class.
+    public FrameAnalysisDispatcher(Executor executor, FrameAnalyzer analyzer) {
+        mExecutor = executor;
+        mAnalyzer = analyzer;
+    }
+
+    public void setErrorListener(ErrorListener listener) {
+        mErrorListener = listener;
+    }
+
+    // Hand a new frame to the analyzer, replacing any frame that is still waiting.
+    public void submit(AnalysisFrame frame) {
+        synchronized (this) {
+            mFramesSubmitted++;
+        }
+
+        AnalysisFrame replaced = mPending.getAndSet(frame);
+        if (replaced != null) {
+            drop(replaced);
+        }
+        if (mScheduled.compareAndSet(false, true)) {
+            try {
+                mExecutor.execute(mDrainTask);
+            } catch (RejectedExecutionException e) {
+                // The executor has quit; release the frame instead of leaving it pending.
+                markIdle();
+                clear();
+            }
+        }
+    }
+
+    // Release a waiting frame without analyzing it, for example when the session closes.
+    public void clear() {
+        AnalysisFrame pending = mPending.getAndSet(null);
+        if (pending != null) {
+            drop(pending);
+        }
+    }
+
+    // Wait up to timeoutMillis for the analyzer to finish the frame it is working on. Call after
+    // clear() before closing the reader that owns the frames. Returns false on timeout.
+    public synchronized boolean awaitIdle(long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (mScheduled.get()) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private synchronized void markIdle() {
+        mScheduled.set(false);
+        notifyAll(); // Wake awaitIdle().
+    }
+
+    // Analyze the latest frame until none is waiting.
+    private void drain() {
+        while (true) {
+            AnalysisFrame frame = mPending.getAndSet(null);
+            if (frame == null) {
+                markIdle();
+                // A frame may have arrived after the check above but before the flag was cleared.
+                if (mPending.get() == null || !mScheduled.compareAndSet(false, true)) {
+                    return;
+                }
+                continue;
+            }
+
+            long start = System.nanoTime();
+            try {
+                mAnalyzer.analyze(frame);
+            } catch (RuntimeException e) {
+                // Keep draining: leaving here would keep mScheduled set and stop analysis for good.
+                synchronized (this) {
+                    mAnalyzerFailures++;
+                }
+                ErrorListener listener = mErrorListener;
+                if (listener != null) {
+                    listener.onAnalyzerFailed(e);
+                }
+            } finally {
+                frame.close();
+                long elapsed = System.nanoTime() - start;
+                synchronized (this) {
+                    mFramesAnalyzed++;
+                    mTotalAnalyzerNanos += elapsed;
+                    mMaxAnalyzerNanos = Math.max(mMaxAnalyzerNanos, elapsed);
+                }
+            }
+        }
+    }
+
+    private void drop(AnalysisFrame frame) {
+        frame.close();
+        synchronized (this) {
+            mFramesDropped++;
+        }
+    }
+
+    public synchronized long getFramesSubmitted() {
+        return mFramesSubmitted;
+    }
+
+    public synchronized long getFramesAnalyzed() {
+        return mFramesAnalyzed;
+    }
+
+    public synchronized long getFramesDropped() {
+        return mFramesDropped;
+    }
+
+    // Frames whose analysis threw.
+    public synchronized long getAnalyzerFailures() {
+        return mAnalyzerFailures;
+    }
+
+    // Fraction of submitted frames that were dropped instead of analyzed.
+    public synchronized double getDropRate() {
+        return mFramesSubmitted == 0 ? 0 : (double) mFramesDropped / mFramesSubmitted;
+    }
+
+    public synchronized double getAverageAnalyzerLatencyMillis() {
+        return mFramesAnalyzed == 0 ? 0 : mTotalAnalyzerNanos / 1e6 / mFramesAnalyzed;
+    }
+
+    public synchronized double getMaxAnalyzerLatencyMillis() {
+        return mMaxAnalyzerNanos / 1e6;
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.android_camera_example1;
+
+// FrameAnalyzer receives low-resolution YUV_420_888 frames from the analysis stream, for
+// per-frame work such as exposure histograms, sharpness or motion detection. It runs on the
+// analysis executor; frames that arrive while it is busy are dropped, and only the latest
+// one is kept for the next call.
+public interface FrameAnalyzer {
+    // Analyze one frame. The frame and its plane buffers are only valid during this call.
+    void analyze(AnalysisFrame frame);
+}
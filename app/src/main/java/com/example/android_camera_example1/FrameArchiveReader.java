@@ -0,0 +1,167 @@
+package com.example.android_camera_example1;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+// FrameArchiveReader gives random access to the frames of a FrameArchiveWriter file through
+// its index. An archive that was never closed has no index; its frames are then found by
+// walking the record headers up to the last complete record.
+public class FrameArchiveReader implements Closeable {
+    private final FileChannel mChannel;
+    private long[] mOffsets;
+    private int[] mLengths;
+    private long[] mTimestamps;
+    private int mFrameCount;
+    private final boolean mComplete;
+
+    // Constructor for the FrameArchiveReader class. The channel is closed by close().
+    public FrameArchiveReader(FileChannel channel) throws IOException {
+        mChannel = channel;
+        ByteBuffer header = readFully(0, FrameArchiveWriter.HEADER_SIZE);
+        if (header.getInt() != FrameArchiveWriter.MAGIC) {
+            throw new IOException("Not a frame archive");
+        }
+        int version = header.getInt();
+        if (version != FrameArchiveWriter.VERSION) {
+            throw new IOException("Unsupported frame archive version " + version);
+        }
+        long indexOffset = header.getLong();
+        int frameCount = header.getInt();
+
+        mComplete = indexOffset != 0;
+        if (mComplete) {
+            readIndex(indexOffset, frameCount);
+        } else {
+            scanRecords();
+        }
+    }
+
+    // False if the writer was not closed and the frames were recovered from record headers.
+    public boolean isComplete() {
+        return mComplete;
+    }
+
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    public int getFrameSize(int frame) {
+        checkFrame(frame);
+        return mLengths[frame];
+    }
+
+    public long getTimestampNanos(int frame) {
+        checkFrame(frame);
+        return mTimestamps[frame];
+    }
+
+    // Read a frame into dst at its position; dst must have getFrameSize(frame) bytes remaining.
+    public void readFrame(int frame, ByteBuffer dst) throws IOException {
+        checkFrame(frame);
+        int length = mLengths[frame];
+        if (dst.remaining() < length) {
+            throw new IllegalArgumentException("Frame " + frame + " needs " + length + " bytes, "
+                    + dst.remaining() + " remaining");
+        }
+        ByteBuffer target = dst.duplicate();
+        target.limit(target.position() + length);
+        long position = mOffsets[frame];
+        while (target.hasRemaining()) {
+            int read = mChannel.read(target, position);
+            if (read < 0) {
+                throw new IOException("Frame " + frame + " is truncated");
+            }
+            position += read;
+        }
+        dst.position(dst.position() + length);
+    }
+
+    // Read a frame into a new heap buffer.
+    public ByteBuffer readFrame(int frame) throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(getFrameSize(frame));
+        readFrame(frame, data);
+        data.flip();
+        return data;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mChannel.close();
+    }
+
+    private void readIndex(long indexOffset, int frameCount) throws IOException {
+        ByteBuffer index = readFully(indexOffset,
+                FrameArchiveWriter.INDEX_HEADER_SIZE + (long) frameCount * FrameArchiveWriter.INDEX_ENTRY_SIZE);
+        if (index.getInt() != FrameArchiveWriter.INDEX_MAGIC || index.getInt() != frameCount) {
+            throw new IOException("Frame archive index is corrupt");
+        }
+        allocate(frameCount);
+        for (int i = 0; i < frameCount; i++) {
+            mOffsets[i] = index.getLong();
+            mLengths[i] = index.getInt();
+            mTimestamps[i] = index.getLong();
+        }
+        mFrameCount = frameCount;
+    }
+
+    private void scanRecords() throws IOException {
+        allocate(16);
+        long size = mChannel.size();
+        long position = FrameArchiveWriter.HEADER_SIZE;
+        while (position + FrameArchiveWriter.RECORD_HEADER_SIZE <= size) {
+            ByteBuffer record = readFully(position, FrameArchiveWriter.RECORD_HEADER_SIZE);
+            if (record.getInt() != FrameArchiveWriter.RECORD_MAGIC) {
+                break;
+            }
+            int length = record.getInt();
+            long timestamp = record.getLong();
+            long offset = position + FrameArchiveWriter.RECORD_HEADER_SIZE;
+            if (length < 0 || offset + length > size) {
+                break; // The last record was cut off.
+            }
+            if (mFrameCount == mOffsets.length) {
+                grow(mOffsets.length * 2);
+            }
+            mOffsets[mFrameCount] = offset;
+            mLengths[mFrameCount] = length;
+            mTimestamps[mFrameCount] = timestamp;
+            mFrameCount++;
+            position = offset + length;
+        }
+    }
+
+    private void allocate(int capacity) {
+        mOffsets = new long[capacity];
+        mLengths = new int[capacity];
+        mTimestamps = new long[capacity];
+    }
+
+    private void grow(int capacity) {
+        mOffsets = Arrays.copyOf(mOffsets, capacity);
+        mLengths = Arrays.copyOf(mLengths, capacity);
+        mTimestamps = Arrays.copyOf(mTimestamps, capacity);
+    }
+
+    private ByteBuffer readFully(long position, long length) throws IOException {
+        if (length > Integer.MAX_VALUE || position + length > mChannel.size()) {
+            throw new IOException("Frame archive is truncated");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        while (buffer.hasRemaining()) {
+            if (mChannel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Frame archive is truncated");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private void checkFrame(int frame) {
+        if (frame < 0 || frame >= mFrameCount) {
+            throw new IndexOutOfBoundsException("Frame " + frame + " of " + mFrameCount);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.android_camera_example1;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+// FrameArchiveWriter appends encoded frames (JPEGs) to one file instead of creating a file and
+// a MediaStore record per frame. Frames are copied into a large direct buffer and written
+// through the FileChannel only when it fills, and the file is synced once at close. Layout:
+//   header  magic, version, index offset, frame count (patched at close)
+//   records per frame: magic, length, timestamp, then the frame bytes
+//   index   magic, count, then offset, length and timestamp per frame (written at close)
+// The index gives random access to frame N; the per-record headers let FrameArchiveReader
+// recover the frames of an archive that was never closed.
+public class FrameArchiveWriter implements Closeable {
+    static final int MAGIC = 0x46524D41; // "FRMA"
+    static final int RECORD_MAGIC = 0x46524D45; // "FRME"
+    static final int INDEX_MAGIC = 0x46494458; // "FIDX"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_HEADER_SIZE = 16;
+    static final int INDEX_HEADER_SIZE = 8;
+    static final int INDEX_ENTRY_SIZE = 20;
+    private static final int DEFAULT_BUFFER_SIZE = 4 * 1024 * 1024; // A dozen full-size JPEGs per write.
+    private static final int INITIAL_INDEX_CAPACITY = 256;
+
+    private final FileChannel mChannel;
+    private final ByteBuffer mBuffer; // Bytes after mFlushedPosition not yet written.
+    private long mFlushedPosition; // File offset of mBuffer's first byte.
+    private long[] mOffsets = new long[INITIAL_INDEX_CAPACITY];
+    private int[] mLengths = new int[INITIAL_INDEX_CAPACITY];
+    private long[] mTimestamps = new long[INITIAL_INDEX_CAPACITY];
+    private int mFrameCount;
+    private int mWriteCount; // Channel writes, for monitoring.
+    private boolean mClosed;
+
+    // Constructor for the FrameArchiveWriter class. The channel must be empty; it is closed by close().
+    public FrameArchiveWriter(FileChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    FrameArchiveWriter(FileChannel channel, int bufferSize) {
+        if (bufferSize < HEADER_SIZE + RECORD_HEADER_SIZE) {
+            throw new IllegalArgumentException("bufferSize too small: " + bufferSize);
+        }
+        mChannel = channel;
+        mBuffer = ByteBuffer.allocateDirect(bufferSize);
+        putHeader(mBuffer, 0, 0); // Patched at close; an index offset of 0 marks an unfinished archive.
+    }
+
+    // Append the remaining bytes of frame, without moving its position. Returns the frame's index.
+    public synchronized int append(ByteBuffer frame, long timestampNanos) throws IOException {
+        if (mClosed) {
+            throw new IOException("Archive is closed");
+        }
+
+        int length = frame.remaining();
+        if (mBuffer.remaining() < RECORD_HEADER_SIZE) {
+            flushBuffer();
+        }
+        mBuffer.putInt(RECORD_MAGIC).putInt(length).putLong(timestampNanos);
+        long offset = mFlushedPosition + mBuffer.position();
+
+        ByteBuffer data = frame.duplicate();
+        if (length > mBuffer.remaining()) {
+            flushBuffer();
+        }
+        if (length <= mBuffer.remaining()) {
+            mBuffer.put(data);
+        } else {
+            // Larger than the whole buffer; write it straight from the caller's buffer.
+            writeFully(data, mFlushedPosition);
+            mFlushedPosition += length;
+        }
+
+        addIndexEntry(offset, length, timestampNanos);
+        return mFrameCount++;
+    }
+
+    // Write buffered frames to the channel, for example periodically to bound what a crash loses.
+    public synchronized void flush() throws IOException {
+        if (!mClosed) {
+            flushBuffer();
+        }
+    }
+
+    // Write the index, patch the header and sync the file once. Closes the channel.
+    @Override
+    public synchronized void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+
+        try {
+            long indexOffset = mFlushedPosition + mBuffer.position();
+            if (mBuffer.remaining() < INDEX_HEADER_SIZE) {
+                flushBuffer();
+            }
+            mBuffer.putInt(INDEX_MAGIC).putInt(mFrameCount);
+            for (int i = 0; i < mFrameCount; i++) {
+                if (mBuffer.remaining() < INDEX_ENTRY_SIZE) {
+                    flushBuffer();
+                }
+                mBuffer.putLong(mOffsets[i]).putInt(mLengths[i]).putLong(mTimestamps[i]);
+            }
+            flushBuffer();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            putHeader(header, indexOffset, mFrameCount);
+            header.flip();
+            writeFully(header, 0);
+            mChannel.force(false);
+        } finally {
+            mChannel.close();
+        }
+    }
+
+    public synchronized int getFrameCount() {
+        return mFrameCount;
+    }
+
+    // Bytes in the archive so far, including buffered ones.
+    public synchronized long getSize() {
+        return mFlushedPosition + mBuffer.position();
+    }
+
+    // Number of writes issued to the channel, for monitoring.
+    public synchronized int getWriteCount() {
+        return mWriteCount;
+    }
+
+    private static void putHeader(ByteBuffer buffer, long indexOffset, int frameCount) {
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(indexOffset).putInt(frameCount).putInt(0).putLong(0);
+    }
+
+    private void addIndexEntry(long offset, int length, long timestampNanos) {
+        if (mFrameCount == mOffsets.length) {
+            int capacity = mOffsets.length * 2;
+            mOffsets = Arrays.copyOf(mOffsets, capacity);
+            mLengths = Arrays.copyOf(mLengths, capacity);
+            mTimestamps = Arrays.copyOf(mTimestamps, capacity);
+        }
+        mOffsets[mFrameCount] = offset;
+        mLengths[mFrameCount] = length;
+        mTimestamps[mFrameCount] = timestampNanos;
+    }
+
+    private void flushBuffer() throws IOException {
+        mBuffer.flip();
+        int length = mBuffer.remaining();
+        if (length > 0) {
+            writeFully(mBuffer, mFlushedPosition);
+            mFlushedPosition += length;
+        }
+        mBuffer.clear();
+    }
+
+    private void writeFully(ByteBuffer data, long position) throws IOException {
+        while (data.hasRemaining()) {
+            position += mChannel.write(data, position);
+        }
+        mWriteCount++;
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.android_camera_example1;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// LatencyHistogram records durations in log-linear buckets: each power of two is split into
+// SUB_BUCKET_COUNT linear buckets, so any value is reported within ~6% of its true size from
+// nanoseconds up to hours. Recording is lock-free and allocation-free (a few atomic adds), so
+// it can stay enabled in production; reading percentiles scans the fixed bucket array.
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mSumNanos = new AtomicLong();
+    private final AtomicLong mMaxNanos = new AtomicLong();
+
+    // Record one duration. Negative durations (clock skew between threads) count as 0.
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        mCounts.incrementAndGet(bucketIndex(nanos));
+        mCount.incrementAndGet();
+        mSumNanos.addAndGet(nanos);
+        long max = mMaxNanos.get();
+        while (nanos > max && !mMaxNanos.compareAndSet(max, nanos)) {
+            max = mMaxNanos.get();
+        }
+    }
+
+    // Bucket for a value: exact below SUB_BUCKET_COUNT, then SUB_BUCKET_COUNT buckets per power of two.
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKET_COUNT - 1);
+        return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    // Largest value that falls into the bucket.
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long lower = (long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    public long getCount() {
+        return mCount.get();
+    }
+
+    // Sum of all recorded durations; with getCount(), the mean over any interval between two reads.
+    public long getSumNanos() {
+        return mSumNanos.get();
+    }
+
+    public long getMaxNanos() {
+        return mMaxNanos.get();
+    }
+
+    public double getMeanNanos() {
+        long count = mCount.get();
+        return count == 0 ? 0 : (double) mSumNanos.get() / count;
+    }
+
+    // Smallest recorded bucket bound at or below which the given fraction (0-1) of values fall;
+    // 0 when nothing was recorded.
+    public long getPercentileNanos(double fraction) {
+        long count = mCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(count * fraction));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mCounts.get(i);
+            if (seen >= target) {
+                return Math.min(bucketUpperBound(i), mMaxNanos.get());
+            }
+        }
+        return mMaxNanos.get();
+    }
+
+    public double getPercentileMillis(double fraction) {
+        return getPercentileNanos(fraction) / 1e6;
+    }
+
+    public double getMaxMillis() {
+        return mMaxNanos.get() / 1e6;
+    }
+
+    // Forget every recorded value.
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts.set(i, 0);
+        }
+        mCount.set(0);
+        mSumNanos.set(0);
+        mMaxNanos.set(0);
+    }
+
+    // One-line summary, e.g. "n=42 p50=3.1ms p95=8.0ms p99=9.9ms max=10.2ms".
+    public String format() {
+        return String.format(Locale.US, "n=%d p50=%.1fms p95=%.1fms p99=%.1fms max=%.1fms",
+                getCount(), getPercentileMillis(0.50), getPercentileMillis(0.95),
+                getPercentileMillis(0.99), getMaxMillis());
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.android_camera_example1;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// LifecycleExecutor is a fixed-size pool of named threads that is started and quit with the
+// camera, and can be started again afterwards. Components hold on to it as a plain Executor, so
+// they keep working across pause/resume without knowing about the lifecycle. Tasks submitted
+// while it is quit are rejected. Thread count and queue depth are exposed for monitoring.
+public class LifecycleExecutor implements Executor {
+    private final String mName;
+    private final int mThreadCount;
+    private ThreadPoolExecutor mPool; // Null while quit, guarded by this.
+    private long mCompletedBeforeRestart; // Tasks completed by earlier pools, guarded by this.
+
+    // Constructor for the LifecycleExecutor class. Threads are named name-0, name-1, ...
+    public LifecycleExecutor(String name, int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("threadCount must be at least 1: " + threadCount);
+        }
+        mName = name;
+        mThreadCount = threadCount;
+    }
+
+    // Start the pool; no-op if it is already running. Threads are created on demand.
+    public synchronized void start() {
+        if (mPool != null) {
+            return;
+        }
+
+        final AtomicInteger index = new AtomicInteger();
+        mPool = new ThreadPoolExecutor(mThreadCount, mThreadCount, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, mName + "-" + index.getAndIncrement());
+            }
+        });
+    }
+
+    // Stop accepting tasks, let queued tasks finish and wait up to timeout for the threads to
+    // exit. Returns false if tasks were still running when the timeout expired.
+    public boolean quit(long timeout, TimeUnit unit) {
+        ThreadPoolExecutor pool;
+        synchronized (this) {
+            pool = mPool;
+            if (pool == null) {
+                return true;
+            }
+            mPool = null;
+            pool.shutdown();
+        }
+
+        boolean terminated;
+        try {
+            terminated = pool.awaitTermination(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            terminated = false;
+        }
+        synchronized (this) {
+            mCompletedBeforeRestart += pool.getCompletedTaskCount();
+        }
+        return terminated;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        ThreadPoolExecutor pool;
+        synchronized (this) {
+            pool = mPool;
+        }
+        if (pool == null) {
+            throw new RejectedExecutionException(mName + " is not running");
+        }
+        pool.execute(task);
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public synchronized boolean isRunning() {
+        return mPool != null;
+    }
+
+    // Maximum number of threads the pool runs.
+    public int getMaxThreadCount() {
+        return mThreadCount;
+    }
+
+    // Number of threads currently alive; 0 while quit.
+    public synchronized int getThreadCount() {
+        return mPool != null ? mPool.getPoolSize() : 0;
+    }
+
+    // Number of tasks waiting for a thread.
+    public synchronized int getQueueDepth() {
+        return mPool != null ? mPool.getQueue().size() : 0;
+    }
+
+    // Number of threads running a task right now.
+    public synchronized int getActiveCount() {
+        return mPool != null ? mPool.getActiveCount() : 0;
+    }
+
+    // Tasks completed since the executor was created, across restarts.
+    public synchronized long getCompletedTaskCount() {
+        return mCompletedBeforeRestart + (mPool != null ? mPool.getCompletedTaskCount() : 0);
+    }
+}
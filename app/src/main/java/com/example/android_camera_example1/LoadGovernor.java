@@ -0,0 +1,170 @@
+package com.example.android_camera_example1;
+
+import java.util.Locale;
+
+// LoadGovernor trades capture quality for throughput when the save path falls behind. Camera
+// samples the pipeline periodically (writer queue fill, capture-to-save latency and frames
+// dropped since the previous sample) and the governor moves along a ladder of Steps, from the
+// best quality at step 0 down to the cheapest: lower JPEG quality, smaller stills, lower preview
+// frame rates. It does not oscillate: pressure is judged against separate high and low
+// thresholds, stepping down takes a few consecutive high samples and stepping back up many
+// consecutive low ones, and no step follows another within the hold time. The logic only
+// uses the samples, so it can be driven by recorded load traces on the JVM.
+public class LoadGovernor {
+    // One rung of the ladder.
+    public static class Step {
+        public final int jpegQuality; // CaptureRequest.JPEG_QUALITY, 1 to 100.
+        public final long maxStillPixels; // Long.MAX_VALUE for the largest still size.
+        public final int minPreviewFps; // CONTROL_AE_TARGET_FPS_RANGE wanted for the preview.
+        public final int maxPreviewFps;
+
+        public Step(int jpegQuality, long maxStillPixels, int minPreviewFps, int maxPreviewFps) {
+            if (jpegQuality < 1 || jpegQuality > 100) {
+                throw new IllegalArgumentException("jpegQuality must be 1 to 100: " + jpegQuality);
+            }
+            if (maxStillPixels < 1 || minPreviewFps < 1 || maxPreviewFps < minPreviewFps) {
+                throw new IllegalArgumentException("Invalid step " + maxStillPixels + " px, "
+                        + minPreviewFps + "-" + maxPreviewFps + " fps");
+            }
+            this.jpegQuality = jpegQuality;
+            this.maxStillPixels = maxStillPixels;
+            this.minPreviewFps = minPreviewFps;
+            this.maxPreviewFps = maxPreviewFps;
+        }
+
+        @Override
+        public String toString() {
+            String pixels = maxStillPixels == Long.MAX_VALUE ? "full size"
+                    : String.format(Locale.US, "%.1f MP", maxStillPixels / 1e6);
+            return String.format(Locale.US, "quality %d, %s, %d-%d fps", jpegQuality, pixels, minPreviewFps, maxPreviewFps);
+        }
+    }
+
+    // Pipeline signals over one sampling interval.
+    public static class Sample {
+        public final double queueFill; // Writer queue depth over its capacity, 0 to 1.
+        public final double latencyMillis; // Mean capture-to-save time of captures finished in the interval; NaN if none.
+        public final long framesDropped; // Frames dropped by backpressure in the interval.
+
+        public Sample(double queueFill, double latencyMillis, long framesDropped) {
+            this.queueFill = queueFill;
+            this.latencyMillis = latencyMillis;
+            this.framesDropped = framesDropped;
+        }
+    }
+
+    // When the governor steps. A sample is high pressure if frames were dropped or the queue
+    // fill or latency reaches its high threshold, and low pressure if nothing was dropped and
+    // both are at or below their low thresholds; anything in between resets both counts.
+    public static class Thresholds {
+        private double mHighQueueFill = 0.75;
+        private double mLowQueueFill = 0.25;
+        private double mHighLatencyMillis = 1500;
+        private double mLowLatencyMillis = 500;
+        private int mStepDownSamples = 2;
+        private int mStepUpSamples = 10;
+        private long mHoldMillis = 2000;
+
+        public Thresholds setQueueFill(double low, double high) {
+            mLowQueueFill = low;
+            mHighQueueFill = high;
+            return this;
+        }
+
+        public Thresholds setLatencyMillis(double low, double high) {
+            mLowLatencyMillis = low;
+            mHighLatencyMillis = high;
+            return this;
+        }
+
+        // Consecutive high samples before a step down, and low samples before a step up.
+        public Thresholds setSampleCounts(int stepDown, int stepUp) {
+            mStepDownSamples = stepDown;
+            mStepUpSamples = stepUp;
+            return this;
+        }
+
+        // Minimum time between two steps, so the effect of one shows before the next.
+        public Thresholds setHoldMillis(long holdMillis) {
+            mHoldMillis = holdMillis;
+            return this;
+        }
+    }
+
+    private final Step[] mLadder;
+    private final Thresholds mThresholds;
+
+    // State, guarded by this.
+    private int mStepIndex;
+    private int mHighSamples; // Consecutive high-pressure samples.
+    private int mLowSamples; // Consecutive low-pressure samples.
+    private long mHoldUntilMillis = Long.MIN_VALUE;
+    private long mStepDowns;
+    private long mStepUps;
+
+    // Constructor for the LoadGovernor class. The ladder runs from best quality to cheapest.
+    public LoadGovernor(Step[] ladder, Thresholds thresholds) {
+        if (ladder.length == 0) {
+            throw new IllegalArgumentException("The ladder needs at least one step");
+        }
+        mLadder = ladder.clone();
+        mThresholds = thresholds;
+    }
+
+    // Take the sample for the interval ending at nowMillis. Returns true if the step changed.
+    public synchronized boolean update(Sample sample, long nowMillis) {
+        Thresholds thresholds = mThresholds;
+        boolean latencyKnown = !Double.isNaN(sample.latencyMillis);
+        if (sample.framesDropped > 0 || sample.queueFill >= thresholds.mHighQueueFill
+                || (latencyKnown && sample.latencyMillis >= thresholds.mHighLatencyMillis)) {
+            mHighSamples++;
+            mLowSamples = 0;
+        } else if (sample.queueFill <= thresholds.mLowQueueFill
+                && (!latencyKnown || sample.latencyMillis <= thresholds.mLowLatencyMillis)) {
+            mLowSamples++;
+            mHighSamples = 0;
+        } else {
+            mHighSamples = 0;
+            mLowSamples = 0;
+        }
+
+        if (nowMillis < mHoldUntilMillis) {
+            return false;
+        }
+        if (mHighSamples >= thresholds.mStepDownSamples && mStepIndex < mLadder.length - 1) {
+            mStepIndex++;
+            mStepDowns++;
+        } else if (mLowSamples >= thresholds.mStepUpSamples && mStepIndex > 0) {
+            mStepIndex--;
+            mStepUps++;
+        } else {
+            return false;
+        }
+        // The next step needs fresh evidence gathered at this one.
+        mHighSamples = 0;
+        mLowSamples = 0;
+        mHoldUntilMillis = nowMillis + thresholds.mHoldMillis;
+        return true;
+    }
+
+    public synchronized Step getStep() {
+        return mLadder[mStepIndex];
+    }
+
+    // 0 for the best quality, up to getStepCount() - 1.
+    public synchronized int getStepIndex() {
+        return mStepIndex;
+    }
+
+    public int getStepCount() {
+        return mLadder.length;
+    }
+
+    public synchronized long getStepDownCount() {
+        return mStepDowns;
+    }
+
+    public synchronized long getStepUpCount() {
+        return mStepUps;
+    }
+}
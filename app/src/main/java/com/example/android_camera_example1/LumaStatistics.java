@@ -0,0 +1,301 @@
+package com.example.android_camera_example1;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// LumaStatistics computes per-frame statistics on the Y plane of analysis frames: a histogram,
+// mean and percentile luminance, Laplacian-variance sharpness and a block-difference motion
+// score against the previous frame. The plane is first packed into a reusable dense array
+// (this is where rowStride and pixelStride are resolved); the kernels then run on primitive
+// arrays. Large frames are split into row bands on a ForkJoinPool. All work buffers are sized
+// on the first frame (and again only if the frame size changes), so steady-state analysis
+// does not allocate.
+public class LumaStatistics implements FrameAnalyzer {
+    private static final int LEVELS = 256;
+    static final int BLOCK_SIZE = 8; // Motion blocks are BLOCK_SIZE x BLOCK_SIZE pixels.
+    private static final int DEFAULT_PARALLEL_THRESHOLD = 320 * 240; // Smaller frames run on the caller.
+
+    // Receives statistics for each analyzed frame. The result is reused for the next frame.
+    public interface Listener {
+        void onLumaStatistics(long timestampNanos, Result result);
+    }
+
+    // Statistics of one frame. Percentiles are luma levels (0-255).
+    public static class Result {
+        public final int[] histogram = new int[LEVELS];
+        public long pixelCount;
+        public double mean;
+        public int p5;
+        public int p50;
+        public int p95;
+        public double sharpness; // Variance of the 4-neighbour Laplacian over interior pixels.
+        public double motion; // Mean absolute difference of block means; 0 on the first frame.
+    }
+
+    // Per-band partial sums, reduced after all bands complete. The tasks are reused in place and
+    // never serialized, so they have no serialVersionUID.
+    @SuppressWarnings("serial")
+    private final class Band extends RecursiveAction {
+        final int[] histogram = new int[LEVELS];
+        int rowStart;
+        int rowEnd;
+        long laplacianSum;
+        long laplacianSquares;
+        long motionSum;
+        long[] currentBlocks = new long[0];
+        long[] previousBlocks = new long[0];
+
+        @Override
+        protected void compute() {
+            computeBand(this);
+        }
+    }
+
+    // Root task that runs every band and waits for them.
+    @SuppressWarnings("serial")
+    private final class Root extends RecursiveAction {
+        @Override
+        protected void compute() {
+            invokeAll(mBands);
+        }
+    }
+
+    private final ForkJoinPool mPool;
+    private final int mParallelThreshold;
+    private final Result mResult = new Result();
+    private final Root mRoot = new Root();
+    private Listener mListener;
+
+    // Work buffers, reallocated only when the frame size changes.
+    private int mWidth;
+    private int mHeight;
+    private byte[] mCurrent = new byte[0];
+    private byte[] mPrevious = new byte[0];
+    private boolean mHasPrevious;
+    private Band[] mBands = new Band[0];
+
+    // Constructor for the LumaStatistics class. pool runs the row bands of large frames.
+    public LumaStatistics(ForkJoinPool pool) {
+        this(pool, DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    LumaStatistics(ForkJoinPool pool, int parallelThreshold) {
+        mPool = pool;
+        mParallelThreshold = parallelThreshold;
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    @Override
+    public void analyze(AnalysisFrame frame) {
+        AnalysisFrame.Plane y = frame.getY();
+        Result result = compute(y.getBuffer(), frame.getWidth(), frame.getHeight(), y.getRowStride(), y.getPixelStride());
+        Listener listener = mListener;
+        if (listener != null) {
+            listener.onLumaStatistics(frame.getTimestampNanos(), result);
+        }
+    }
+
+    // Compute statistics for a luma plane. The returned Result is reused by the next call.
+    public Result compute(ByteBuffer plane, int width, int height, int rowStride, int pixelStride) {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("Invalid frame size " + width + "x" + height);
+        }
+        prepare(width, height);
+        pack(plane, width, height, rowStride, pixelStride, mCurrent);
+
+        if (mBands.length > 1) {
+            mRoot.reinitialize();
+            for (Band band : mBands) {
+                band.reinitialize();
+            }
+            mPool.invoke(mRoot);
+        } else {
+            computeBand(mBands[0]);
+        }
+        reduce();
+
+        byte[] swap = mPrevious;
+        mPrevious = mCurrent;
+        mCurrent = swap;
+        mHasPrevious = true;
+        return mResult;
+    }
+
+    // Size work buffers and row bands for the frame; no-op while the size is unchanged.
+    private void prepare(int width, int height) {
+        if (width == mWidth && height == mHeight) {
+            return;
+        }
+
+        mWidth = width;
+        mHeight = height;
+        mCurrent = new byte[width * height];
+        mPrevious = new byte[width * height];
+        mHasPrevious = false;
+
+        // Bands are whole block rows so each motion block belongs to exactly one band.
+        int blockRows = (height + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int bandCount = 1;
+        if ((long) width * height >= mParallelThreshold) {
+            bandCount = Math.min(blockRows, mPool.getParallelism() * 4);
+        }
+        int blocksPerRow = (width + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        mBands = new Band[bandCount];
+        for (int i = 0; i < bandCount; i++) {
+            Band band = new Band();
+            band.rowStart = Math.min(height, blockRows * i / bandCount * BLOCK_SIZE);
+            band.rowEnd = Math.min(height, blockRows * (i + 1) / bandCount * BLOCK_SIZE);
+            band.currentBlocks = new long[blocksPerRow];
+            band.previousBlocks = new long[blocksPerRow];
+            mBands[i] = band;
+        }
+    }
+
+    // Copy a strided plane into a dense width x height array.
+    static void pack(ByteBuffer plane, int width, int height, int rowStride, int pixelStride, byte[] out) {
+        int position = plane.position();
+        if (pixelStride == 1) {
+            for (int row = 0; row < height; row++) {
+                plane.position(position + row * rowStride);
+                plane.get(out, row * width, width);
+            }
+            plane.position(position);
+            return;
+        }
+
+        for (int row = 0; row < height; row++) {
+            int source = position + row * rowStride;
+            int target = row * width;
+            for (int col = 0; col < width; col++) {
+                out[target + col] = plane.get(source + col * pixelStride);
+            }
+        }
+    }
+
+    // Histogram, Laplacian and block sums for the rows of one band.
+    private void computeBand(Band band) {
+        histogram(mCurrent, mWidth, band.rowStart, band.rowEnd, band.histogram);
+        laplacian(mCurrent, mWidth, mHeight, band.rowStart, band.rowEnd, band);
+
+        band.motionSum = mHasPrevious
+                ? blockDifference(mCurrent, mPrevious, mWidth, band.rowStart, band.rowEnd,
+                        band.currentBlocks, band.previousBlocks)
+                : 0;
+    }
+
+    // Count luma levels in rows [rowStart, rowEnd) of a dense plane.
+    static void histogram(byte[] luma, int width, int rowStart, int rowEnd, int[] histogram) {
+        for (int i = 0; i < LEVELS; i++) {
+            histogram[i] = 0;
+        }
+        int end = rowEnd * width;
+        for (int i = rowStart * width; i < end; i++) {
+            histogram[luma[i] & 0xFF]++;
+        }
+    }
+
+    // Sum and sum of squares of the 4-neighbour Laplacian over the interior pixels of
+    // rows [rowStart, rowEnd).
+    private static void laplacian(byte[] luma, int width, int height, int rowStart, int rowEnd, Band band) {
+        long sum = 0;
+        long squares = 0;
+        int first = Math.max(1, rowStart);
+        int last = Math.min(height - 1, rowEnd);
+        for (int row = first; row < last; row++) {
+            int index = row * width + 1;
+            int rowLast = row * width + width - 1;
+            for (; index < rowLast; index++) {
+                int value = 4 * (luma[index] & 0xFF)
+                        - (luma[index - 1] & 0xFF) - (luma[index + 1] & 0xFF)
+                        - (luma[index - width] & 0xFF) - (luma[index + width] & 0xFF);
+                sum += value;
+                squares += value * value;
+            }
+        }
+        band.laplacianSum = sum;
+        band.laplacianSquares = squares;
+    }
+
+    // Sum over the blocks in rows [rowStart, rowEnd) of |mean(current) - mean(previous)|,
+    // scaled by the block area. rowStart must be a multiple of BLOCK_SIZE.
+    static long blockDifference(byte[] current, byte[] previous, int width, int rowStart, int rowEnd,
+                                long[] currentBlocks, long[] previousBlocks) {
+        int blocksPerRow = currentBlocks.length;
+        long total = 0;
+        for (int blockRow = rowStart; blockRow < rowEnd; blockRow += BLOCK_SIZE) {
+            for (int i = 0; i < blocksPerRow; i++) {
+                currentBlocks[i] = 0;
+                previousBlocks[i] = 0;
+            }
+            int blockRowEnd = Math.min(rowEnd, blockRow + BLOCK_SIZE);
+            for (int row = blockRow; row < blockRowEnd; row++) {
+                int offset = row * width;
+                for (int col = 0; col < width; col++) {
+                    currentBlocks[col / BLOCK_SIZE] += current[offset + col] & 0xFF;
+                    previousBlocks[col / BLOCK_SIZE] += previous[offset + col] & 0xFF;
+                }
+            }
+            for (int i = 0; i < blocksPerRow; i++) {
+                total += Math.abs(currentBlocks[i] - previousBlocks[i]);
+            }
+        }
+        return total;
+    }
+
+    // Combine band results into mResult.
+    private void reduce() {
+        Result result = mResult;
+        int[] histogram = result.histogram;
+        for (int i = 0; i < LEVELS; i++) {
+            histogram[i] = 0;
+        }
+        long laplacianSum = 0;
+        long laplacianSquares = 0;
+        long motionSum = 0;
+        for (Band band : mBands) {
+            for (int i = 0; i < LEVELS; i++) {
+                histogram[i] += band.histogram[i];
+            }
+            laplacianSum += band.laplacianSum;
+            laplacianSquares += band.laplacianSquares;
+            motionSum += band.motionSum;
+        }
+
+        long pixels = (long) mWidth * mHeight;
+        long lumaSum = 0;
+        for (int i = 0; i < LEVELS; i++) {
+            lumaSum += (long) i * histogram[i];
+        }
+        result.pixelCount = pixels;
+        result.mean = (double) lumaSum / pixels;
+        result.p5 = percentile(histogram, pixels, 0.05);
+        result.p50 = percentile(histogram, pixels, 0.50);
+        result.p95 = percentile(histogram, pixels, 0.95);
+
+        long interior = (long) Math.max(0, mWidth - 2) * Math.max(0, mHeight - 2);
+        if (interior > 0) {
+            double laplacianMean = (double) laplacianSum / interior;
+            result.sharpness = (double) laplacianSquares / interior - laplacianMean * laplacianMean;
+        } else {
+            result.sharpness = 0;
+        }
+        result.motion = (double) motionSum / pixels;
+    }
+
+    // Smallest level at or below which the given fraction of pixels falls.
+    static int percentile(int[] histogram, long total, double fraction) {
+        long target = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int level = 0; level < LEVELS; level++) {
+            seen += histogram[level];
+            if (seen >= Math.max(1, target)) {
+                return level;
+            }
+        }
+        return LEVELS - 1;
+    }
+}
@@ -17,19 +17,29 @@ public class MainActivity extends AppCompatActivity {
     private static final int REQUEST_CAMERA_PERMISSION = 1; // Request code for camera permission.
 
     private Camera mCamera; // Instance of the Camera class to handle camera operations.
+    private CameraCharacteristicsCache mCapabilitiesCache; // Process-wide camera characteristics, warmed at startup.
+    private StartupMetrics mStartupMetrics; // Time to the first preview frame, from onCreate.
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        mStartupMetrics = new StartupMetrics();
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main); // Set the main layout as the content view.
 
-        // Check and request necessary permissions.
-        if (!hasRequiredPermissions()) {
-            requestNecessaryPermissions();
-        }
+        // Load camera characteristics in the background while the UI is being set up.
+        mCapabilitiesCache = Camera2CapabilitiesLoader.getSharedCache(this);
+        mCapabilitiesCache.prefetchAsync();
 
         // Initialize UI components.
         initializeComponents();
+
+        // Open the camera right away if permitted, in parallel with layout; otherwise ask.
+        if (hasRequiredPermissions()) {
+            mStartupMetrics.mark(StartupMetrics.Phase.PERMISSION_GRANTED);
+            mCamera.openCamera();
+        } else {
+            requestNecessaryPermissions();
+        }
     }
 
     // Method to initialize UI components and set up the camera.
@@ -38,7 +48,7 @@ public class MainActivity extends AppCompatActivity {
         Button captureButton = findViewById(R.id.capture_button);
 
         // Initialize the Camera with the TextureView and button.
-        mCamera = new Camera(this, cameraTextureView, captureButton);
+        mCamera = new Camera(this, cameraTextureView, captureButton, mCapabilitiesCache, mStartupMetrics);
     }
 
     // Check if the app has required permissions.
@@ -64,6 +74,7 @@ public class MainActivity extends AppCompatActivity {
         if (requestCode == REQUEST_CAMERA_PERMISSION) {
             // Check if the permissions were granted.
             if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
+                mStartupMetrics.mark(StartupMetrics.Phase.PERMISSION_GRANTED);
                 mCamera.openCamera(); // Open the camera if permission is granted.
                 Log.d(TAG, "Camera permission granted");
             } else {
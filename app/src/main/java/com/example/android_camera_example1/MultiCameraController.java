@@ -0,0 +1,129 @@
+package com.example.android_camera_example1;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.TextureView;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+// MultiCameraController streams from several cameras at once, one Camera per TextureView, each
+// with its own session and capture pipeline. The cameras are picked from the sets the device
+// can run concurrently and share one SharedCameraResources, so adding a camera adds no threads
+// and no writer or cache memory; the writer serves the cameras fairly. Per-camera throughput
+// and capture-to-file latency are logged periodically while the cameras run.
+public class MultiCameraController {
+    private static final String TAG = "MultiCamera";
+    private static final long DEFAULT_STATS_INTERVAL_MILLIS = 10 * 1000; // Period of the per-camera stats log.
+
+    private final SharedCameraResources mResources;
+    private final List<Camera> mCameras = new ArrayList<>();
+    private long mStatsIntervalMillis = DEFAULT_STATS_INTERVAL_MILLIS; // 0 disables the log.
+
+    // Counters at the previous stats report, control thread only.
+    private long[] mReportedCaptures;
+    private long mReportedMillis;
+
+    // Constructor for the MultiCameraController class. Uses as many of the views as there are
+    // cameras that can stream together; getCameras() tells which.
+    public MultiCameraController(Context context, CameraCharacteristicsCache capabilitiesCache, TextureView[] views) {
+        mResources = new SharedCameraResources(context);
+        List<String> cameraIds = capabilitiesCache.selectConcurrentCameras(views.length);
+        for (int i = 0; i < cameraIds.size(); i++) {
+            mCameras.add(new Camera(context, views[i], null, capabilitiesCache, new StartupMetrics(),
+                    cameraIds.get(i), mResources));
+        }
+        mReportedCaptures = new long[mCameras.size()];
+        Log.d(TAG, "Streaming from cameras " + cameraIds);
+    }
+
+    // Open every camera. Call once the camera permission is granted.
+    public void openCameras() {
+        for (Camera camera : mCameras) {
+            camera.openCamera();
+        }
+    }
+
+    public void onResume() {
+        for (Camera camera : mCameras) {
+            camera.onResume();
+        }
+        Handler handler = mResources.getThreads().getControlHandler();
+        if (null != handler && mStatsIntervalMillis > 0) {
+            mReportedMillis = SystemClock.elapsedRealtime();
+            handler.removeCallbacks(mStatsRunnable);
+            handler.postDelayed(mStatsRunnable, mStatsIntervalMillis);
+        }
+    }
+
+    // Close every camera; the shared threads quit with the last one.
+    public void onPause() {
+        Handler handler = mResources.getThreads().getControlHandler();
+        if (null != handler) {
+            handler.removeCallbacks(mStatsRunnable);
+        }
+        for (Camera camera : mCameras) {
+            camera.onPause();
+        }
+    }
+
+    // Take a still on every camera.
+    public void captureAll() {
+        for (Camera camera : mCameras) {
+            camera.captureImage();
+        }
+    }
+
+    public List<Camera> getCameras() {
+        return Collections.unmodifiableList(mCameras);
+    }
+
+    public SharedCameraResources getResources() {
+        return mResources;
+    }
+
+    // Set how often per-camera stats are logged while the cameras run; 0 disables the log.
+    public void setStatsIntervalMillis(long intervalMillis) {
+        mStatsIntervalMillis = intervalMillis;
+    }
+
+    // One line per camera: images saved per second since the previous call and the
+    // capture-to-file latency, then the shared writer and threads.
+    public String formatStats() {
+        long now = SystemClock.elapsedRealtime();
+        double seconds = Math.max(1, now - mReportedMillis) / 1000.0;
+        StringBuilder stats = new StringBuilder();
+        for (int i = 0; i < mCameras.size(); i++) {
+            Camera camera = mCameras.get(i);
+            CaptureMetrics metrics = camera.getCaptureMetrics();
+            long captures = metrics.getCapturesCompleted();
+            long saved = captures >= mReportedCaptures[i] ? captures - mReportedCaptures[i] : captures;
+            mReportedCaptures[i] = captures;
+            stats.append(String.format(Locale.US, "camera %s: %.1f images/s, %d dropped, %s\n",
+                    camera.getCameraId(), saved / seconds, metrics.getFramesDropped(),
+                    metrics.getTotalHistogram().format()));
+        }
+        mReportedMillis = now;
+        AsyncImageWriter<?> writer = mResources.getWriter();
+        stats.append(String.format(Locale.US, "writer: queue %d of %d, %.1f MB/s; threads %d",
+                writer.getQueueDepth(), writer.getQueueCapacity(), writer.getThroughputMegabytesPerSecond(),
+                mResources.getThreads().getThreadCount()));
+        return stats.toString();
+    }
+
+    // Log the per-camera stats periodically on the shared control thread.
+    private Runnable mStatsRunnable = new Runnable() {
+        @Override
+        public void run() {
+            Log.i(TAG, "Multi-camera stats:\n" + formatStats());
+            Handler handler = mResources.getThreads().getControlHandler();
+            if (null != handler && mStatsIntervalMillis > 0) {
+                handler.postDelayed(this, mStatsIntervalMillis);
+            }
+        }
+    };
+}
@@ -0,0 +1,50 @@
+package com.example.android_camera_example1;
+
+// OutputSize is one row of a stream configuration table: an output size and the minimum frame
+// duration and stall duration the camera reports for it. It mirrors what StreamConfigurationMap
+// returns for a format without holding Android types, so size tables can be cached, recorded
+// and tested on the JVM.
+public class OutputSize {
+    private final int mWidth;
+    private final int mHeight;
+    private final long mMinFrameDurationNanos;
+    private final long mStallDurationNanos;
+
+    // Constructor for the OutputSize class. Durations are 0 when the camera does not report them.
+    public OutputSize(int width, int height, long minFrameDurationNanos, long stallDurationNanos) {
+        mWidth = width;
+        mHeight = height;
+        mMinFrameDurationNanos = minFrameDurationNanos;
+        mStallDurationNanos = stallDurationNanos;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public long getArea() {
+        return (long) mWidth * mHeight;
+    }
+
+    public long getMinFrameDurationNanos() {
+        return mMinFrameDurationNanos;
+    }
+
+    public long getStallDurationNanos() {
+        return mStallDurationNanos;
+    }
+
+    // Highest frame rate this size supports on its own, or 0 if no minimum duration is reported.
+    public double getMaxFps() {
+        return mMinFrameDurationNanos > 0 ? 1e9 / mMinFrameDurationNanos : 0;
+    }
+
+    @Override
+    public String toString() {
+        return mWidth + "x" + mHeight;
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.android_camera_example1;
+
+// OutputSizeSelector picks the preview, analysis and still sizes for a session from the cached
+// stream configuration tables (see CameraCapabilities), instead of taking whatever size the HAL
+// lists first. It weighs the view size (rotated into sensor orientation), the target aspect
+// ratio, pixel budgets and the minimum frame and stall durations, so that the chosen outputs
+// together sustain the requested frame rate. The logic only uses table data and can be tested on the JVM against
+// recorded stream configuration maps.
+public class OutputSizeSelector {
+    private static final double ASPECT_TOLERANCE = 0.01;
+
+    // What the session needs. Sizes are in display orientation; the selector rotates them.
+    public static class Request {
+        private int mViewWidth;
+        private int mViewHeight;
+        private int mDisplayRotation;
+        private double mTargetAspectRatio;
+        private long mMaxPreviewPixels = Long.MAX_VALUE;
+        private long mMaxStillPixels = Long.MAX_VALUE;
+        private int mAnalysisWidth;
+        private int mAnalysisHeight;
+        private double mTargetFps = 30;
+        private double mTargetStillFps;
+
+        // Size of the view that shows the preview; 0 if it is not laid out yet.
+        public Request setViewSize(int width, int height) {
+            mViewWidth = width;
+            mViewHeight = height;
+            return this;
+        }
+
+        // Display rotation in degrees (0, 90, 180 or 270).
+        public Request setDisplayRotation(int degrees) {
+            mDisplayRotation = degrees;
+            return this;
+        }
+
+        // Aspect ratio (long side / short side) all outputs should share; 0 to use the sensor's
+        // native aspect ratio.
+        public Request setTargetAspectRatio(double aspectRatio) {
+            mTargetAspectRatio = aspectRatio;
+            return this;
+        }
+
+        public Request setMaxPreviewPixels(long pixels) {
+            mMaxPreviewPixels = pixels;
+            return this;
+        }
+
+        public Request setMaxStillPixels(long pixels) {
+            mMaxStillPixels = pixels;
+            return this;
+        }
+
+        // Target size of the YUV analysis stream, or 0 x 0 for no analysis stream.
+        public Request setAnalysisSize(int width, int height) {
+            mAnalysisWidth = width;
+            mAnalysisHeight = height;
+            return this;
+        }
+
+        // Frame rate the repeating preview (and analysis) request must sustain.
+        public Request setTargetFps(double fps) {
+            mTargetFps = fps;
+            return this;
+        }
+
+        // Rate at which continuous stills must be sustained, or 0 if any rate will do.
+        public Request setTargetStillFps(double fps) {
+            mTargetStillFps = fps;
+            return this;
+        }
+    }
+
+    // The chosen sizes. analysis is null when no analysis stream was requested or available.
+    public static class Selection {
+        public final OutputSize preview;
+        public final OutputSize analysis;
+        public final OutputSize still;
+        public final double previewFps; // Highest rate the preview + analysis request sustains.
+        public final double stillFps; // Highest continuous still rate, including stall time.
+
+        Selection(OutputSize preview, OutputSize analysis, OutputSize still, double previewFps, double stillFps) {
+            this.preview = preview;
+            this.analysis = analysis;
+            this.still = still;
+            this.previewFps = previewFps;
+            this.stillFps = stillFps;
+        }
+    }
+
+    // Pick sizes from the preview (SurfaceTexture), still (JPEG) and analysis (YUV) tables, each
+    // sorted largest first. Returns null if there are no preview or still sizes.
+    public Selection select(OutputSize[] previewSizes, OutputSize[] stillSizes, OutputSize[] analysisSizes,
+                            int sensorOrientation, Request request) {
+        if (previewSizes.length == 0 || stillSizes.length == 0) {
+            return null;
+        }
+
+        double aspect = request.mTargetAspectRatio > 0 ? request.mTargetAspectRatio : aspectOf(stillSizes[0]);
+        long frameBudget = request.mTargetFps > 0 ? (long) (1e9 / request.mTargetFps) : Long.MAX_VALUE;
+        long stillBudget = request.mTargetStillFps > 0 ? (long) (1e9 / request.mTargetStillFps) : Long.MAX_VALUE;
+
+        OutputSize still = chooseLargest(stillSizes, aspect, request.mMaxStillPixels, stillBudget);
+
+        // The view in sensor orientation: swapped when the sensor is rotated against the display.
+        boolean swapped = (sensorOrientation - request.mDisplayRotation + 360) % 180 != 0;
+        int viewWidth = swapped ? request.mViewHeight : request.mViewWidth;
+        int viewHeight = swapped ? request.mViewWidth : request.mViewHeight;
+        OutputSize preview = viewWidth > 0 && viewHeight > 0
+                ? chooseCovering(previewSizes, viewWidth, viewHeight, aspect, request.mMaxPreviewPixels, frameBudget)
+                : chooseLargest(previewSizes, aspect, request.mMaxPreviewPixels, frameBudget);
+
+        OutputSize analysis = null;
+        if (request.mAnalysisWidth > 0 && request.mAnalysisHeight > 0) {
+            analysis = chooseCovering(analysisSizes, request.mAnalysisWidth,
+                    request.mAnalysisHeight, aspect, Long.MAX_VALUE, frameBudget);
+        }
+
+        long previewDuration = preview.getMinFrameDurationNanos();
+        if (analysis != null) {
+            previewDuration = Math.max(previewDuration, analysis.getMinFrameDurationNanos());
+        }
+        double previewFps = previewDuration > 0 ? 1e9 / previewDuration : request.mTargetFps;
+        long stillDuration = still.getMinFrameDurationNanos() + still.getStallDurationNanos();
+        double stillFps = stillDuration > 0 ? 1e9 / stillDuration : 0;
+        return new Selection(preview, analysis, still, previewFps, stillFps);
+    }
+
+    // Largest size within the pixel budget and frame duration, preferring the target aspect ratio.
+    // Falls back to relaxing the aspect ratio, then the duration, then the budget.
+    static OutputSize chooseLargest(OutputSize[] sizes, double aspect, long maxPixels, long maxDuration) {
+        OutputSize[] passes = {
+                largest(sizes, aspect, maxPixels, maxDuration),
+                largest(sizes, 0, maxPixels, maxDuration),
+                largest(sizes, 0, maxPixels, Long.MAX_VALUE)
+        };
+        for (OutputSize size : passes) {
+            if (size != null) {
+                return size;
+            }
+        }
+        return sizes[sizes.length - 1]; // Smallest size; everything is over budget.
+    }
+
+    // Smallest size that covers width x height, or the largest one below it, within the pixel
+    // budget and frame duration, preferring the target aspect ratio. Relaxes the aspect ratio,
+    // then the frame duration, then the budget when nothing qualifies.
+    static OutputSize chooseCovering(OutputSize[] sizes, int width, int height, double aspect,
+                                     long maxPixels, long maxDuration) {
+        if (sizes.length == 0) {
+            return null;
+        }
+        OutputSize[] passes = {
+                covering(sizes, width, height, aspect, maxPixels, maxDuration),
+                covering(sizes, width, height, 0, maxPixels, maxDuration),
+                covering(sizes, width, height, 0, maxPixels, Long.MAX_VALUE)
+        };
+        for (OutputSize size : passes) {
+            if (size != null) {
+                return size;
+            }
+        }
+        return sizes[sizes.length - 1];
+    }
+
+    // Sizes are sorted largest first, so the last qualifying size that covers the target is the
+    // smallest cover, and the first qualifying size below it is the largest fallback.
+    private static OutputSize covering(OutputSize[] sizes, int width, int height, double aspect,
+                                       long maxPixels, long maxDuration) {
+        OutputSize smallestCover = null;
+        OutputSize largestBelow = null;
+        for (OutputSize size : sizes) {
+            if (!qualifies(size, aspect, maxPixels, maxDuration)) {
+                continue;
+            }
+            if (size.getWidth() >= width && size.getHeight() >= height) {
+                smallestCover = size;
+            } else if (largestBelow == null) {
+                largestBelow = size;
+            }
+        }
+        return smallestCover != null ? smallestCover : largestBelow;
+    }
+
+    private static OutputSize largest(OutputSize[] sizes, double aspect, long maxPixels, long maxDuration) {
+        for (OutputSize size : sizes) {
+            if (qualifies(size, aspect, maxPixels, maxDuration)) {
+                return size;
+            }
+        }
+        return null;
+    }
+
+    private static boolean qualifies(OutputSize size, double aspect, long maxPixels, long maxDuration) {
+        if (size.getArea() > maxPixels) {
+            return false;
+        }
+        if (size.getMinFrameDurationNanos() + size.getStallDurationNanos() > maxDuration
+                && maxDuration != Long.MAX_VALUE) {
+            return false;
+        }
+        return aspect <= 0 || Math.abs(aspectOf(size) - aspect) <= ASPECT_TOLERANCE;
+    }
+
+    // Long side over short side.
+    static double aspectOf(OutputSize size) {
+        int longSide = Math.max(size.getWidth(), size.getHeight());
+        int shortSide = Math.min(size.getWidth(), size.getHeight());
+        return shortSide == 0 ? 0 : (double) longSide / shortSide;
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.android_camera_example1;
+
+// PrecaptureStateMachine runs the 3A precapture sequence for stills taken while the repeating
+// preview request keeps running. Asked for a still, it fires at once if the last preview result
+// already shows focus and exposure settled. Otherwise it sends one request carrying the AF
+// trigger and/or the AE precapture trigger, watches the AF and AE states of every result from
+// that request on, and fires the still on the first frame where both have converged, or when
+// the timeout expires. Stills asked for meanwhile fire together with it. States are plain ints
+// with the values of CaptureResult.CONTROL_AF_STATE and CONTROL_AE_STATE, so Camera feeds its
+// results in and the transitions run on the JVM with scripted results.
+public class PrecaptureStateMachine {
+    public static final int STATE_NONE = -1; // No AF or AE: fixed focus, 3A off, or not in the result.
+    public static final int AF_STATE_INACTIVE = 0; // Same values as CaptureResult.CONTROL_AF_STATE.
+    public static final int AF_STATE_PASSIVE_SCAN = 1;
+    public static final int AF_STATE_PASSIVE_FOCUSED = 2;
+    public static final int AF_STATE_ACTIVE_SCAN = 3;
+    public static final int AF_STATE_FOCUSED_LOCKED = 4;
+    public static final int AF_STATE_NOT_FOCUSED_LOCKED = 5;
+    public static final int AF_STATE_PASSIVE_UNFOCUSED = 6;
+    public static final int AE_STATE_INACTIVE = 0; // Same values as CaptureResult.CONTROL_AE_STATE.
+    public static final int AE_STATE_SEARCHING = 1;
+    public static final int AE_STATE_CONVERGED = 2;
+    public static final int AE_STATE_LOCKED = 3;
+    public static final int AE_STATE_FLASH_REQUIRED = 4;
+    public static final int AE_STATE_PRECAPTURE = 5;
+    public static final long DEFAULT_TIMEOUT_NANOS = 1_000_000_000L;
+
+    // Requests on the capture session. Camera implements these on top of Camera2; unit tests
+    // record the calls.
+    public interface Actions {
+        // Submit one copy of the repeating request with the AF trigger and/or the AE precapture
+        // trigger set to START. Its result must be passed to onTriggerResult(), or to
+        // onTriggerFailed() if it fails. Returns false if it could not be submitted, for example
+        // before the preview runs; the stills then fire without waiting.
+        boolean sendTriggers(boolean focus, boolean precapture);
+
+        // Submit one still. Returns false if it could not be submitted.
+        boolean captureStill();
+
+        // Undo what the triggers left behind once the stills are submitted: the AF lock, and a
+        // precapture sequence that had not finished.
+        void cancelTriggers(boolean focus, boolean precapture);
+    }
+
+    private enum State {
+        IDLE, // Watching the repeating request.
+        TRIGGERED, // Waiting for the result of the trigger request.
+        CONVERGING // Waiting for a result with AF and AE settled.
+    }
+
+    private final Actions mActions;
+
+    // State, guarded by this.
+    private long mTimeoutNanos = DEFAULT_TIMEOUT_NANOS;
+    private State mState = State.IDLE;
+    private boolean mHaveResult; // mAfState and mAeState hold the last result.
+    private int mAfState;
+    private int mAeState;
+    private boolean mFocusTriggered;
+    private boolean mPrecaptureTriggered;
+    private long mRequestNanos; // When the running sequence was asked for.
+    private int mStills; // Stills to fire at the end of the running sequence.
+
+    // Counters for monitoring, guarded by this.
+    private final LatencyHistogram mLatency = new LatencyHistogram(); // Request to still submitted.
+    private long mSequences;
+    private long mFastPaths;
+    private long mConverged;
+    private long mTimeouts;
+    private long mStillsFired;
+
+    // Constructor for the PrecaptureStateMachine class.
+    public PrecaptureStateMachine(Actions actions) {
+        mActions = actions;
+    }
+
+    // How long to wait for convergence before firing anyway.
+    public synchronized void setTimeoutNanos(long timeoutNanos) {
+        if (timeoutNanos < 0) {
+            throw new IllegalArgumentException("timeoutNanos must not be negative: " + timeoutNanos);
+        }
+        mTimeoutNanos = timeoutNanos;
+    }
+
+    public synchronized long getTimeoutNanos() {
+        return mTimeoutNanos;
+    }
+
+    // Ask for one still. Returns false if it fired at once and could not be submitted.
+    public synchronized boolean request(long nowNanos) {
+        mStills++;
+        if (mState != State.IDLE) {
+            return true; // Fires with the sequence under way.
+        }
+
+        mSequences++;
+        mRequestNanos = nowNanos;
+        boolean focus = !mHaveResult || !isFocused(mAfState);
+        boolean precapture = !mHaveResult || !isExposed(mAeState);
+        if (!focus && !precapture) {
+            mFastPaths++;
+            return fire(nowNanos, true);
+        }
+        if (!mActions.sendTriggers(focus, precapture)) {
+            return fire(nowNanos, true); // Nothing to converge on; take the still as it is.
+        }
+        mFocusTriggered = focus;
+        mPrecaptureTriggered = precapture;
+        mState = State.TRIGGERED;
+        return true;
+    }
+
+    // Feed the AF and AE states of a result of the repeating request, in frame order.
+    public synchronized void onResult(int afState, int aeState, long nowNanos) {
+        mHaveResult = true;
+        mAfState = afState;
+        mAeState = aeState;
+        if (mState == State.CONVERGING && hasConverged(afState, aeState)) {
+            mConverged++;
+            fire(nowNanos, true);
+            return;
+        }
+        checkTimeout(nowNanos); // Results from before the trigger only count towards the timeout.
+    }
+
+    // Feed the result of the trigger request. Results of later frames reflect the triggers.
+    public synchronized void onTriggerResult(int afState, int aeState, long nowNanos) {
+        if (mState == State.TRIGGERED) {
+            mState = State.CONVERGING;
+        }
+        onResult(afState, aeState, nowNanos);
+    }
+
+    // The trigger request failed, so no result will show it: fire without waiting.
+    public synchronized void onTriggerFailed(long nowNanos) {
+        if (mState == State.TRIGGERED) {
+            fire(nowNanos, false);
+        }
+    }
+
+    // Fire the stills if the running sequence has waited for the timeout. Results call this
+    // themselves; Camera also calls it from a timer in case results stop.
+    public synchronized void checkTimeout(long nowNanos) {
+        if (mState != State.IDLE && nowNanos - mRequestNanos >= mTimeoutNanos) {
+            mTimeouts++;
+            fire(nowNanos, false);
+        }
+    }
+
+    // Drop the running sequence without firing, for example when the session closes; the
+    // triggers die with it. Returns the number of stills dropped.
+    public synchronized int cancel() {
+        int dropped = mState != State.IDLE ? mStills : 0;
+        reset();
+        mHaveResult = false; // The next session starts over.
+        return dropped;
+    }
+
+    public synchronized boolean isRunning() {
+        return mState != State.IDLE;
+    }
+
+    public LatencyHistogram getLatencyHistogram() {
+        return mLatency;
+    }
+
+    // Number of sequences started: fast paths plus triggered ones.
+    public synchronized long getSequenceCount() {
+        return mSequences;
+    }
+
+    // Sequences that fired at once, without triggers.
+    public synchronized long getFastPathCount() {
+        return mFastPaths;
+    }
+
+    // Triggered sequences that fired on a converged frame.
+    public synchronized long getConvergedCount() {
+        return mConverged;
+    }
+
+    public synchronized long getTimeoutCount() {
+        return mTimeouts;
+    }
+
+    // Stills submitted successfully.
+    public synchronized long getStillCount() {
+        return mStillsFired;
+    }
+
+    // Submit the stills asked for so far and release the triggers. Returns false if none was
+    // submitted.
+    private boolean fire(long nowNanos, boolean converged) {
+        int stills = mStills;
+        boolean releaseFocus = mFocusTriggered;
+        boolean releasePrecapture = mPrecaptureTriggered && !converged;
+        reset();
+
+        boolean submitted = false;
+        for (int i = 0; i < stills; i++) {
+            if (mActions.captureStill()) {
+                mStillsFired++;
+                submitted = true;
+            }
+        }
+        if (submitted) {
+            mLatency.record(nowNanos - mRequestNanos);
+        }
+        if (releaseFocus || releasePrecapture) {
+            // Queued after the stills, so they are taken with the lock held.
+            mActions.cancelTriggers(releaseFocus, releasePrecapture);
+        }
+        return submitted;
+    }
+
+    private void reset() {
+        mState = State.IDLE;
+        mStills = 0;
+        mFocusTriggered = false;
+        mPrecaptureTriggered = false;
+    }
+
+    // Once the triggers are in effect, AF has converged when it locks, in or out of focus, and
+    // AE when the precapture sequence has ended; a flash it asks for fires with the still.
+    private boolean hasConverged(int afState, int aeState) {
+        boolean focused = !mFocusTriggered || afState == STATE_NONE
+                || afState == AF_STATE_FOCUSED_LOCKED || afState == AF_STATE_NOT_FOCUSED_LOCKED;
+        boolean exposed = !mPrecaptureTriggered || isExposed(aeState) || aeState == AE_STATE_FLASH_REQUIRED;
+        return focused && exposed;
+    }
+
+    // Focus that needs no trigger: settled by continuous AF, still locked, or no AF at all.
+    private static boolean isFocused(int afState) {
+        return afState == STATE_NONE || afState == AF_STATE_PASSIVE_FOCUSED || afState == AF_STATE_FOCUSED_LOCKED;
+    }
+
+    // Exposure that needs no precapture sequence. FLASH_REQUIRED does: the flash must be metered.
+    private static boolean isExposed(int aeState) {
+        return aeState == STATE_NONE || aeState == AE_STATE_CONVERGED || aeState == AE_STATE_LOCKED;
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.android_camera_example1;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// RequestUpdateCoalescer merges rapid changes to the parameters of a repeating request, such as
+// a zoom or exposure slider. Each set() records the last value per key; the pending changes are
+// submitted together at most once per minimum interval (a frame), so a slider that moves many
+// times per frame costs one request rebuild. The first change after an idle interval is
+// submitted at once. Keys are opaque here: Camera uses CaptureRequest.Key and the Submitter
+// applies the values, so the coalescing logic runs on the JVM with a fake Scheduler.
+public class RequestUpdateCoalescer<K> {
+    // Runs the flush task on the thread that owns the request. Camera posts to the control
+    // handler; unit tests run the tasks by hand.
+    public interface Scheduler {
+        long nowNanos();
+
+        // Run task after delayNanos. Returns false if it cannot be run (threads stopped).
+        boolean schedule(Runnable task, long delayNanos);
+    }
+
+    // Applies the merged changes to the repeating request.
+    public interface Submitter<K> {
+        // Apply changes, in the order their keys were first set, and resubmit the repeating
+        // request. Returns false if there was nothing to submit to (no session); the changes
+        // must still be kept for the next request.
+        boolean submit(Map<K, Object> changes);
+    }
+
+    private final Submitter<K> mSubmitter;
+    private final Scheduler mScheduler;
+    private long mMinIntervalNanos;
+
+    // State, guarded by this.
+    private LinkedHashMap<K, Object> mPending = new LinkedHashMap<>();
+    private boolean mScheduled; // A flush task is scheduled.
+    private long mLastSubmitNanos;
+    private boolean mSubmitted; // mLastSubmitNanos is valid.
+
+    // Counters for monitoring, guarded by this.
+    private long mUpdates;
+    private long mCoalesced;
+    private long mSubmissions;
+
+    private final Runnable mFlushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    // Constructor for the RequestUpdateCoalescer class. minIntervalNanos is usually the frame
+    // duration of the repeating request.
+    public RequestUpdateCoalescer(Submitter<K> submitter, Scheduler scheduler, long minIntervalNanos) {
+        mSubmitter = submitter;
+        mScheduler = scheduler;
+        setMinIntervalNanos(minIntervalNanos);
+    }
+
+    public synchronized void setMinIntervalNanos(long minIntervalNanos) {
+        if (minIntervalNanos < 0) {
+            throw new IllegalArgumentException("minIntervalNanos must not be negative: " + minIntervalNanos);
+        }
+        mMinIntervalNanos = minIntervalNanos;
+    }
+
+    // Change a parameter. A later set() of the same key before the flush replaces the value.
+    public void set(K key, Object value) {
+        long delayNanos;
+        synchronized (this) {
+            mUpdates++;
+            if (mPending.containsKey(key) || mScheduled) {
+                mCoalesced++; // Rides on a submission that is already due.
+            }
+            mPending.put(key, value);
+            if (mScheduled) {
+                return;
+            }
+            mScheduled = true;
+            delayNanos = mSubmitted ? Math.max(0, mLastSubmitNanos + mMinIntervalNanos - mScheduler.nowNanos()) : 0;
+        }
+        if (!mScheduler.schedule(mFlushTask, delayNanos)) {
+            synchronized (this) {
+                mScheduled = false; // Kept pending for the next set() or flush().
+            }
+        }
+    }
+
+    // Submit the pending changes now, on the thread that owns the request. The flush task calls
+    // this; calling it directly skips the rest of the interval.
+    public void flush() {
+        Map<K, Object> changes;
+        synchronized (this) {
+            mScheduled = false;
+            if (mPending.isEmpty()) {
+                return;
+            }
+            changes = mPending;
+            mPending = new LinkedHashMap<>();
+            mLastSubmitNanos = mScheduler.nowNanos();
+            mSubmitted = true;
+        }
+        if (mSubmitter.submit(Collections.unmodifiableMap(changes))) {
+            synchronized (this) {
+                mSubmissions++;
+            }
+        }
+    }
+
+    // Number of set() calls.
+    public synchronized long getUpdateCount() {
+        return mUpdates;
+    }
+
+    // Number of set() calls merged into a submission that another call had already scheduled.
+    public synchronized long getCoalescedCount() {
+        return mCoalesced;
+    }
+
+    // Number of repeating requests submitted.
+    public synchronized long getSubmittedCount() {
+        return mSubmissions;
+    }
+}
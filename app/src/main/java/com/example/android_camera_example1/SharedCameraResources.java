@@ -0,0 +1,97 @@
+package com.example.android_camera_example1;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+// SharedCameraResources is what every Camera of the app shares, so the number of threads and
+// the memory held stay fixed however many cameras stream at once: the CameraThreads (one
+// control thread, the processing executor and the I/O executor), the MediaStore writer with its
+// fair queue, the thumbnail cache and the capture index. The threads run while at least one
+// camera holds the resources, from its onResume to its onPause.
+public class SharedCameraResources {
+    private static final String TAG = "SharedCameraResources";
+    private static final long THUMBNAIL_MEMORY_BYTES = 2 * 1024 * 1024; // About a hundred thumbnails.
+    private static final long THUMBNAIL_DISK_BYTES = 16 * 1024 * 1024;
+    private static final String THUMBNAIL_DIRECTORY = "thumbnails"; // Under the app's cache directory.
+    private static final String CAPTURE_INDEX_FILE = "capture_index.bin"; // Under the app's files directory.
+
+    private final CameraThreads mThreads = new CameraThreads(FileHelper.DEFAULT_WRITER_WORKER_COUNT);
+    private final AsyncImageWriter<Uri> mWriter;
+    private final ThumbnailCache mThumbnailCache;
+    private final File mCaptureIndexFile;
+    private final Set<Object> mHolders = new HashSet<>(); // Cameras holding the threads, guarded by this.
+    private final Object mCaptureIndexLock = new Object(); // Guards mCaptureIndex.
+    private CaptureIndex mCaptureIndex; // Opened on first use.
+
+    // Constructor for the SharedCameraResources class.
+    public SharedCameraResources(Context context) {
+        Context appContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        mWriter = FileHelper.createWriter(appContext, mThreads.getIoExecutor());
+        mThumbnailCache = new ThumbnailCache(THUMBNAIL_MEMORY_BYTES,
+                new DiskLruCache(new File(appContext.getCacheDir(), THUMBNAIL_DIRECTORY), THUMBNAIL_DISK_BYTES),
+                mThreads.getIoExecutor());
+        mCaptureIndexFile = new File(appContext.getFilesDir(), CAPTURE_INDEX_FILE);
+    }
+
+    // Start the threads on behalf of holder, typically a Camera; no-op if it already holds them.
+    public synchronized void acquire(Object holder) {
+        mHolders.add(holder);
+        mThreads.start();
+    }
+
+    // Let go of the threads; the last holder quits them. Call after the holder's camera and
+    // session are closed, since queued work drains as the threads quit.
+    public void release(Object holder) {
+        synchronized (this) {
+            if (!mHolders.remove(holder) || !mHolders.isEmpty()) {
+                return;
+            }
+        }
+        mThreads.quit();
+    }
+
+    public synchronized int getHolderCount() {
+        return mHolders.size();
+    }
+
+    public CameraThreads getThreads() {
+        return mThreads;
+    }
+
+    // The MediaStore writer; each camera's FileHelper queues on it as its own source.
+    public AsyncImageWriter<Uri> getWriter() {
+        return mWriter;
+    }
+
+    public ThumbnailCache getThumbnailCache() {
+        return mThumbnailCache;
+    }
+
+    // The capture index, opened on first use so the file is mapped off the main thread.
+    public CaptureIndex getCaptureIndex() throws IOException {
+        synchronized (mCaptureIndexLock) {
+            if (null == mCaptureIndex) {
+                mCaptureIndex = CaptureIndex.open(mCaptureIndexFile);
+                if (mCaptureIndex.getDroppedRecordCount() > 0) {
+                    Log.w(TAG, "Capture index dropped " + mCaptureIndex.getDroppedRecordCount() + " torn records");
+                }
+            }
+            return mCaptureIndex;
+        }
+    }
+
+    // Flush the capture index to storage if it is open; the app may be killed in the background.
+    public void forceCaptureIndex() {
+        synchronized (mCaptureIndexLock) {
+            if (null != mCaptureIndex) {
+                mCaptureIndex.force();
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.android_camera_example1;
+
+import java.util.Locale;
+
+// StartupMetrics records when each phase of bringing up the preview first happened, from
+// activity creation (or resume) to the first preview frame on screen. Device open, view layout
+// and session configuration run in parallel, so phases are reported as time since the start in
+// the order they happened, with the gap to the previous phase; the longest gap shows what the
+// first frame was waiting for.
+public class StartupMetrics {
+    // Startup phases. Only the first occurrence of each phase per startup is recorded.
+    public enum Phase {
+        CHARACTERISTICS_LOADED, // Cached capabilities available to size the outputs.
+        PERMISSION_GRANTED, // Camera permission known to be granted.
+        OPEN_REQUESTED, // CameraManager.openCamera called.
+        DEVICE_OPENED, // CameraDevice.StateCallback.onOpened.
+        SURFACE_AVAILABLE, // TextureView surface available.
+        SESSION_CONFIGURED, // Capture session configured, possibly with a deferred preview surface.
+        SURFACE_ATTACHED, // Preview surface added to the session.
+        FIRST_FRAME // First preview frame reached the TextureView.
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final long[] mPhaseNanos = new long[PHASES.length]; // 0 when not reached, guarded by this.
+    private long mStartNanos;
+    private boolean mWarm; // Started from a resume rather than from onCreate.
+
+    // Constructor for the StartupMetrics class. The cold start begins now.
+    public StartupMetrics() {
+        this(System.nanoTime());
+    }
+
+    StartupMetrics(long startNanos) {
+        mStartNanos = startNanos;
+    }
+
+    // Begin measuring a warm start, for example when the activity resumes.
+    public synchronized void restart() {
+        restart(System.nanoTime());
+    }
+
+    synchronized void restart(long startNanos) {
+        for (int i = 0; i < mPhaseNanos.length; i++) {
+            mPhaseNanos[i] = 0;
+        }
+        mStartNanos = startNanos;
+        mWarm = true;
+    }
+
+    // Record a phase. Returns true if this was its first occurrence in the current startup.
+    public boolean mark(Phase phase) {
+        return mark(phase, System.nanoTime());
+    }
+
+    synchronized boolean mark(Phase phase, long nowNanos) {
+        if (mPhaseNanos[phase.ordinal()] != 0) {
+            return false;
+        }
+        mPhaseNanos[phase.ordinal()] = Math.max(1, nowNanos - mStartNanos); // 0 means not reached.
+        return true;
+    }
+
+    public synchronized boolean isReached(Phase phase) {
+        return mPhaseNanos[phase.ordinal()] != 0;
+    }
+
+    // Time from the start to the phase, or -1 if it has not been reached.
+    public synchronized long getElapsedNanos(Phase phase) {
+        long elapsed = mPhaseNanos[phase.ordinal()];
+        return elapsed == 0 ? -1 : elapsed;
+    }
+
+    // Time to the first preview frame, or -1 if there has not been one yet.
+    public long getTimeToFirstFrameNanos() {
+        return getElapsedNanos(Phase.FIRST_FRAME);
+    }
+
+    public synchronized boolean isWarmStart() {
+        return mWarm;
+    }
+
+    // Reached phases in the order they happened, e.g.
+    // "cold start: PERMISSION_GRANTED +2.0ms (+2.0ms), DEVICE_OPENED +180.5ms (+178.5ms), ...".
+    public synchronized String format() {
+        StringBuilder builder = new StringBuilder(mWarm ? "warm start:" : "cold start:");
+        long previous = 0;
+        boolean[] printed = new boolean[PHASES.length];
+        for (int n = 0; n < PHASES.length; n++) {
+            int next = -1;
+            for (int i = 0; i < PHASES.length; i++) {
+                if (!printed[i] && mPhaseNanos[i] != 0 && (next == -1 || mPhaseNanos[i] < mPhaseNanos[next])) {
+                    next = i;
+                }
+            }
+            if (next == -1) {
+                break;
+            }
+            printed[next] = true;
+            builder.append(n == 0 ? " " : ", ").append(PHASES[next])
+                    .append(String.format(Locale.US, " +%.1fms (+%.1fms)",
+                            mPhaseNanos[next] / 1e6, (mPhaseNanos[next] - previous) / 1e6));
+            previous = mPhaseNanos[next];
+        }
+        return builder.toString();
+    }
+}
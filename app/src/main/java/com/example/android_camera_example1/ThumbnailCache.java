@@ -0,0 +1,206 @@
+package com.example.android_camera_example1;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+// ThumbnailCache keeps encoded thumbnails keyed by capture (the Uri string) in two levels: a
+// byte-bounded LRU in memory and a DiskLruCache that survives restarts. Puts go to memory at
+// once and to disk on diskExecutor; lookups that miss memory read the disk on diskExecutor and
+// promote the entry. Hits, misses and evictions are counted per level for monitoring.
+public class ThumbnailCache {
+    private final long mMaxMemoryBytes;
+    private final DiskLruCache mDiskCache;
+    private final Executor mDiskExecutor;
+    private final LinkedHashMap<String, byte[]> mMemory = new LinkedHashMap<>(16, 0.75f, true);
+    private long mMemoryBytes;
+    private long mMemoryHitCount;
+    private long mDiskHitCount;
+    private long mMissCount;
+    private long mMemoryEvictionCount;
+    private long mDiskErrorCount;
+
+    // Constructor for the ThumbnailCache class.
+    public ThumbnailCache(long maxMemoryBytes, DiskLruCache diskCache, Executor diskExecutor) {
+        if (maxMemoryBytes < 1) {
+            throw new IllegalArgumentException("maxMemoryBytes must be at least 1: " + maxMemoryBytes);
+        }
+        mMaxMemoryBytes = maxMemoryBytes;
+        mDiskCache = diskCache;
+        mDiskExecutor = diskExecutor;
+    }
+
+    // Cache thumbnail for key in memory now and on disk shortly after. The array is kept, not copied.
+    public void put(final String key, final byte[] thumbnail) {
+        putInMemory(key, thumbnail);
+        try {
+            mDiskExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        mDiskCache.put(key, thumbnail);
+                    } catch (IOException e) {
+                        countDiskError();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            countDiskError(); // Paused; the memory copy still serves this session.
+        }
+    }
+
+    // The thumbnail for key if it is in memory, else null. Does not touch the disk.
+    public synchronized byte[] getIfPresent(String key) {
+        return mMemory.get(key);
+    }
+
+    public synchronized boolean containsInMemory(String key) {
+        return mMemory.containsKey(key);
+    }
+
+    // Look key up in memory, then on disk. The future completes with null on a miss, and
+    // exceptionally if the disk could not be read.
+    public CompletableFuture<byte[]> get(final String key) {
+        synchronized (this) {
+            byte[] thumbnail = mMemory.get(key);
+            if (thumbnail != null) {
+                mMemoryHitCount++;
+                return CompletableFuture.completedFuture(thumbnail);
+            }
+        }
+
+        final CompletableFuture<byte[]> result = new CompletableFuture<>();
+        try {
+            mDiskExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        byte[] thumbnail = mDiskCache.get(key);
+                        if (thumbnail != null) {
+                            countDiskHit();
+                            putInMemory(key, thumbnail);
+                        } else {
+                            countMiss();
+                        }
+                        result.complete(thumbnail);
+                    } catch (IOException e) {
+                        countDiskError();
+                        result.completeExceptionally(e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    // Forget key in both levels, for example after its capture was deleted.
+    public void remove(final String key) {
+        synchronized (this) {
+            byte[] thumbnail = mMemory.remove(key);
+            if (thumbnail != null) {
+                mMemoryBytes -= thumbnail.length;
+            }
+        }
+        try {
+            mDiskExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        mDiskCache.remove(key);
+                    } catch (IOException e) {
+                        countDiskError();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            countDiskError();
+        }
+    }
+
+    // Drop the memory level, for example on onTrimMemory(). The disk level is kept.
+    public synchronized void trimMemory() {
+        mMemory.clear();
+        mMemoryBytes = 0;
+    }
+
+    public synchronized long getMemoryBytes() {
+        return mMemoryBytes;
+    }
+
+    public synchronized int getMemoryEntryCount() {
+        return mMemory.size();
+    }
+
+    public synchronized long getMemoryHitCount() {
+        return mMemoryHitCount;
+    }
+
+    public synchronized long getDiskHitCount() {
+        return mDiskHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    public synchronized long getMemoryEvictionCount() {
+        return mMemoryEvictionCount;
+    }
+
+    public long getDiskEvictionCount() {
+        return mDiskCache.getEvictionCount();
+    }
+
+    // Disk reads and writes that failed or were rejected while paused.
+    public synchronized long getDiskErrorCount() {
+        return mDiskErrorCount;
+    }
+
+    // Share of get() lookups served from either level, or 0 before the first lookup.
+    public synchronized double getHitRatio() {
+        long hits = mMemoryHitCount + mDiskHitCount;
+        long lookups = hits + mMissCount;
+        return lookups > 0 ? (double) hits / lookups : 0;
+    }
+
+    public DiskLruCache getDiskCache() {
+        return mDiskCache;
+    }
+
+    private synchronized void putInMemory(String key, byte[] thumbnail) {
+        byte[] previous = mMemory.remove(key);
+        if (previous != null) {
+            mMemoryBytes -= previous.length;
+        }
+        if (thumbnail.length > mMaxMemoryBytes) {
+            return; // Would evict everything else; it still goes to disk.
+        }
+        mMemory.put(key, thumbnail);
+        mMemoryBytes += thumbnail.length;
+
+        Iterator<Map.Entry<String, byte[]>> iterator = mMemory.entrySet().iterator();
+        while (mMemoryBytes > mMaxMemoryBytes && iterator.hasNext()) {
+            mMemoryBytes -= iterator.next().getValue().length;
+            iterator.remove();
+            mMemoryEvictionCount++;
+        }
+    }
+
+    private synchronized void countDiskHit() {
+        mDiskHitCount++;
+    }
+
+    private synchronized void countMiss() {
+        mMissCount++;
+    }
+
+    private synchronized void countDiskError() {
+        mDiskErrorCount++;
+    }
+}
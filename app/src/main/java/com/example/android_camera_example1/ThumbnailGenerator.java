@@ -0,0 +1,106 @@
+package com.example.android_camera_example1;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+// ThumbnailGenerator makes a small JPEG from a captured JPEG that is still in memory. The
+// thumbnail the camera embeds in the EXIF header is used when there is one; otherwise the
+// image is decoded at a reduced sample size, which skips most of the full-size decode, and
+// re-encoded.
+public class ThumbnailGenerator {
+    private static final String TAG = "ThumbnailGenerator";
+    private static final int DEFAULT_TARGET_SIZE = 320; // Longest side, in pixels.
+    private static final int JPEG_QUALITY = 85;
+
+    private final int mTargetSize;
+
+    // Constructor for the ThumbnailGenerator class.
+    public ThumbnailGenerator() {
+        this(DEFAULT_TARGET_SIZE);
+    }
+
+    public ThumbnailGenerator(int targetSize) {
+        mTargetSize = targetSize;
+    }
+
+    // A thumbnail for the JPEG in jpeg's remaining bytes, or null if it cannot be decoded.
+    // jpeg's position is not moved.
+    public byte[] create(ByteBuffer jpeg) {
+        ByteBuffer embedded = ExifReader.findThumbnail(jpeg);
+        if (embedded != null) {
+            byte[] thumbnail = new byte[embedded.remaining()];
+            embedded.get(thumbnail);
+            return thumbnail;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeStream(new ByteBufferInputStream(jpeg), null, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            Log.e(TAG, "Not a decodable image");
+            return null;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calculateSampleSize(Math.max(options.outWidth, options.outHeight), mTargetSize);
+        options.inPreferredConfig = Bitmap.Config.RGB_565; // Half the memory; fine for a preview.
+        Bitmap bitmap = BitmapFactory.decodeStream(new ByteBufferInputStream(jpeg), null, options);
+        if (bitmap == null) {
+            Log.e(TAG, "Failed to decode image for thumbnail");
+            return null;
+        }
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, output);
+            return output.toByteArray();
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    // Largest power of two that keeps the decoded image at least targetSize on its longest side.
+    static int calculateSampleSize(int longestSide, int targetSize) {
+        int sampleSize = 1;
+        while (longestSide / (sampleSize * 2) >= targetSize) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    // Reads a buffer, possibly direct, without copying it to a byte array first.
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer mData;
+
+        ByteBufferInputStream(ByteBuffer data) {
+            mData = data.duplicate();
+        }
+
+        @Override
+        public int read() {
+            return mData.hasRemaining() ? mData.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!mData.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, mData.remaining());
+            mData.get(buffer, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return mData.remaining();
+        }
+    }
+}
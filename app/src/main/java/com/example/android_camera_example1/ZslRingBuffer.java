@@ -0,0 +1,233 @@
+package com.example.android_camera_example1;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// ZslRingBuffer keeps the most recent full-resolution frames of the running session for
+// zero-shutter-lag capture: on a button press the frame nearest the press time is taken out
+// and saved, instead of requesting a new capture. One producer thread puts frames and
+// sharpness scores; any thread may select. Slots are claimed with atomic swaps, so whichever
+// side takes a frame out of its slot owns it and nobody else closes it; there are no locks.
+//
+// Capacity is bounded both in frames and in bytes; the oldest frames are evicted (closed) by
+// the producer when either bound is exceeded.
+public class ZslRingBuffer {
+    // A frame claimed by select(); the caller owns the frame and must close it.
+    public static final class Entry {
+        private final CapturedFrame mFrame;
+        private final long mTimestampNanos;
+        private final long mSequence;
+
+        Entry(CapturedFrame frame, long timestampNanos, long sequence) {
+            mFrame = frame;
+            mTimestampNanos = timestampNanos;
+            mSequence = sequence;
+        }
+
+        public CapturedFrame getFrame() {
+            return mFrame;
+        }
+
+        public long getTimestampNanos() {
+            return mTimestampNanos;
+        }
+    }
+
+    // Sharpness score of the frame with a sensor timestamp, from its capture result.
+    private static final class Score {
+        final long timestampNanos;
+        final float value;
+
+        Score(long timestampNanos, float value) {
+            this.timestampNanos = timestampNanos;
+            this.value = value;
+        }
+    }
+
+    private final int mCapacity;
+    private final long mMaxBytes;
+    private final AtomicReferenceArray<Entry> mSlots;
+    private final AtomicReferenceArray<Score> mScores; // Results can arrive before their frame.
+    private final AtomicLong mBytesHeld = new AtomicLong();
+    private final AtomicLong mFramesAdded = new AtomicLong();
+    private final AtomicLong mFramesEvicted = new AtomicLong();
+    private final AtomicLong mFramesSelected = new AtomicLong();
+    private long mNextSequence; // Producer only.
+    private long mNextScore; // Producer only.
+
+    // Constructor for the ZslRingBuffer class.
+    public ZslRingBuffer(int capacity, long maxBytes) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1: " + capacity);
+        }
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("maxBytes must be at least 1: " + maxBytes);
+        }
+        mCapacity = capacity;
+        mMaxBytes = maxBytes;
+        mSlots = new AtomicReferenceArray<>(capacity);
+        mScores = new AtomicReferenceArray<>(capacity * 2);
+    }
+
+    // Producer: add a frame, evicting the oldest ones past either bound. A frame larger than
+    // maxBytes on its own is closed right away; returns false then.
+    public boolean put(CapturedFrame frame, long timestampNanos) {
+        if (frame.size() > mMaxBytes) {
+            frame.close();
+            mFramesEvicted.incrementAndGet();
+            return false;
+        }
+
+        long sequence = mNextSequence++;
+        mBytesHeld.addAndGet(frame.size());
+        release(mSlots.getAndSet(slot(sequence), new Entry(frame, timestampNanos, sequence)));
+        mFramesAdded.incrementAndGet();
+
+        // Evict from the oldest slot forward until the bytes fit; never the frame just added.
+        for (long oldest = sequence - mCapacity + 1; mBytesHeld.get() > mMaxBytes && oldest < sequence; oldest++) {
+            if (oldest >= 0) {
+                release(mSlots.getAndSet(slot(oldest), null));
+            }
+        }
+        return true;
+    }
+
+    // Producer: record the sharpness score of the frame with this sensor timestamp, for
+    // example from its capture result. Higher is sharper.
+    public void putScore(long timestampNanos, float score) {
+        mScores.set((int) (mNextScore++ % mScores.length()), new Score(timestampNanos, score));
+    }
+
+    // Take the frame whose timestamp is closest to targetNanos out of the buffer. With
+    // candidates > 1, the sharpest of that many frames nearest the target is taken instead,
+    // the nearest one winning ties and frames without a score. Returns null when empty.
+    public Entry select(long targetNanos, int candidates) {
+        Entry[] nearest = new Entry[Math.max(1, Math.min(candidates, mCapacity))];
+        while (true) {
+            int count = findNearest(targetNanos, nearest);
+            if (count == 0) {
+                return null;
+            }
+
+            Entry best = nearest[0];
+            float bestScore = scoreOf(best);
+            for (int i = 1; i < count; i++) {
+                float score = scoreOf(nearest[i]);
+                if (score > bestScore || (Float.isNaN(bestScore) && !Float.isNaN(score))) {
+                    best = nearest[i];
+                    bestScore = score;
+                }
+            }
+
+            // Lost the race if the producer evicted it meanwhile; look again.
+            if (mSlots.compareAndSet(slot(best.mSequence), best, null)) {
+                mBytesHeld.addAndGet(-best.mFrame.size());
+                mFramesSelected.incrementAndGet();
+                return best;
+            }
+        }
+    }
+
+    // Take the newest frame, for when the press time cannot be related to sensor timestamps.
+    public Entry selectNewest() {
+        return select(Long.MAX_VALUE, 1);
+    }
+
+    // Close every frame, for example when the session closes or ZSL is turned off.
+    public void clear() {
+        for (int i = 0; i < mCapacity; i++) {
+            Entry entry = mSlots.getAndSet(i, null);
+            if (entry != null) {
+                mBytesHeld.addAndGet(-entry.mFrame.size());
+                entry.mFrame.close();
+            }
+        }
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    public long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    // Bytes of the frames currently held; the buffer's memory footprint.
+    public long getBytesHeld() {
+        return mBytesHeld.get();
+    }
+
+    public int getFrameCount() {
+        int count = 0;
+        for (int i = 0; i < mCapacity; i++) {
+            if (mSlots.get(i) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public long getFramesAdded() {
+        return mFramesAdded.get();
+    }
+
+    public long getFramesEvicted() {
+        return mFramesEvicted.get();
+    }
+
+    public long getFramesSelected() {
+        return mFramesSelected.get();
+    }
+
+    // Fill nearest with up to nearest.length entries, closest to targetNanos first.
+    private int findNearest(long targetNanos, Entry[] nearest) {
+        int count = 0;
+        for (int i = 0; i < mCapacity; i++) {
+            Entry entry = mSlots.get(i);
+            if (entry == null) {
+                continue;
+            }
+            long distance = distance(entry, targetNanos);
+            int position = count;
+            while (position > 0 && distance(nearest[position - 1], targetNanos) > distance) {
+                position--;
+            }
+            if (position >= nearest.length) {
+                continue;
+            }
+            int last = Math.min(count, nearest.length - 1);
+            System.arraycopy(nearest, position, nearest, position + 1, last - position);
+            nearest[position] = entry;
+            count = Math.min(count + 1, nearest.length);
+        }
+        return count;
+    }
+
+    private static long distance(Entry entry, long targetNanos) {
+        long difference = entry.mTimestampNanos - targetNanos;
+        return difference == Long.MIN_VALUE ? Long.MAX_VALUE : Math.abs(difference);
+    }
+
+    // The entry's score, or NaN if its capture result has not been seen.
+    private float scoreOf(Entry entry) {
+        for (int i = 0; i < mScores.length(); i++) {
+            Score score = mScores.get(i);
+            if (score != null && score.timestampNanos == entry.mTimestampNanos) {
+                return score.value;
+            }
+        }
+        return Float.NaN;
+    }
+
+    private void release(Entry entry) {
+        if (entry != null) {
+            mBytesHeld.addAndGet(-entry.mFrame.size());
+            entry.mFrame.close();
+            mFramesEvicted.incrementAndGet();
+        }
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % mCapacity);
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.android_camera_example1;
+
+import java.lang.management.ManagementFactory;
+
+// Measures heap bytes allocated by the current thread, or by all threads, for allocation checks
+// in unit tests.
+final class AllocationMeter {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private AllocationMeter() {
+    }
+
+    static long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // Heap bytes allocated so far by every live thread.
+    static long allocatedBytesAllThreads() {
+        long total = 0;
+        for (long bytes : THREADS.getThreadAllocatedBytes(THREADS.getAllThreadIds())) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+}
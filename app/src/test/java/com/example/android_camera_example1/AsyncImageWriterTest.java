@@ -0,0 +1,347 @@
+package com.example.android_camera_example1;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AsyncImageWriterTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private AsyncImageWriter<Integer> mWriter;
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(2);
+
+    @After
+    public void tearDown() {
+        if (mWriter != null) {
+            mWriter.shutdown();
+        }
+        mExecutor.shutdown();
+    }
+
+    @Test
+    public void submit_completesWithPublishedRecord() throws Exception {
+        FakeStore store = new FakeStore(0);
+        mWriter = new AsyncImageWriter<>(store, 4, 1, 4, mExecutor);
+
+        Integer uri = mWriter.submit("IMG_1.jpg", ByteBuffer.allocate(100)).get(5, TimeUnit.SECONDS);
+
+        assertEquals(100, store.contents.get(uri).length);
+        assertTrue(store.published.contains(uri));
+        assertEquals(1, mWriter.getImagesWritten());
+        assertEquals(100, mWriter.getBytesWritten());
+    }
+
+    @Test
+    public void gatheredBuffers_areWrittenInOrderWithoutMovingThem() throws Exception {
+        FakeStore store = new FakeStore(0);
+        mWriter = new AsyncImageWriter<>(store, 4, 1, 4, mExecutor);
+        ByteBuffer header = ByteBuffer.wrap(new byte[] {1, 2});
+        ByteBuffer body = ByteBuffer.wrap(new byte[] {9, 3, 4, 5});
+        body.position(1);
+
+        Integer uri = mWriter.submit("IMG_1.jpg", new ByteBuffer[] {header, body}).get(5, TimeUnit.SECONDS);
+
+        assertArrayEquals(new byte[] {1, 2, 3, 4, 5}, store.contents.get(uri));
+        assertEquals(5, mWriter.getBytesWritten());
+        assertEquals(0, header.position());
+        assertEquals(1, body.position());
+    }
+
+    @Test
+    public void queuedBurst_isInsertedInBatches() throws Exception {
+        FakeStore store = new FakeStore(0);
+        store.blockInserts = true;
+        mWriter = new AsyncImageWriter<>(store, 16, 1, 8, mExecutor);
+
+        // The first image occupies the worker; the rest of the burst queues up behind it.
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        futures.add(mWriter.submit("IMG_0.jpg", ByteBuffer.allocate(10)));
+        while (store.getInsertCalls() == 0) {
+            Thread.sleep(1);
+        }
+        for (int i = 1; i <= 8; i++) {
+            futures.add(mWriter.submit("IMG_" + i + ".jpg", ByteBuffer.allocate(10)));
+        }
+        store.releaseInserts();
+
+        for (CompletableFuture<Integer> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(9, mWriter.getImagesWritten());
+        assertEquals(2, mWriter.getBatchCount());
+        assertEquals(2, store.getInsertCalls());
+    }
+
+    @Test
+    public void sharedWriter_servesCamerasFairly() throws Exception {
+        FakeStore store = new FakeStore(0);
+        store.blockInserts = true;
+        mWriter = new AsyncImageWriter<>(store, 8, 1, 1, mExecutor);
+        final ByteBuffer[] image = {ByteBuffer.allocate(10)};
+
+        // The back camera bursts while the worker is stuck on its first image.
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        futures.add(mWriter.submit("back", "BACK_0.jpg", image));
+        while (store.getInsertCalls() == 0) {
+            Thread.sleep(1);
+        }
+        for (int i = 1; i <= 6; i++) {
+            futures.add(mWriter.submit("back", "BACK_" + i + ".jpg", image));
+        }
+        futures.add(mWriter.submit("front", "FRONT_0.jpg", image));
+        futures.add(mWriter.submit("front", "FRONT_1.jpg", image));
+        assertEquals(6, mWriter.getQueueDepth("back"));
+        assertEquals(2, mWriter.getQueueDepth("front"));
+        store.releaseInserts();
+
+        for (CompletableFuture<Integer> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        // The front camera's images go out between the back camera's, not after the burst.
+        List<String> order;
+        synchronized (store) {
+            order = new ArrayList<>(store.inserted);
+        }
+        assertEquals(Arrays.asList("BACK_0.jpg", "BACK_1.jpg", "FRONT_0.jpg", "BACK_2.jpg", "FRONT_1.jpg"),
+                order.subList(0, 5));
+    }
+
+    @Test
+    public void writeFailure_deletesPendingRecordAndFailsFuture() throws Exception {
+        FakeStore store = new FakeStore(0);
+        store.failWrites = true;
+        mWriter = new AsyncImageWriter<>(store, 4, 1, 4, mExecutor);
+
+        try {
+            mWriter.submit("IMG_1.jpg", ByteBuffer.allocate(10)).get(5, TimeUnit.SECONDS);
+            fail("Expected the write to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertEquals(1, store.deleted.size());
+        assertTrue(store.published.isEmpty());
+        assertEquals(1, mWriter.getImagesFailed());
+    }
+
+    @Test
+    public void shutdown_drainsQueuedImages() {
+        FakeStore store = new FakeStore(1);
+        mWriter = new AsyncImageWriter<>(store, 32, 2, 4, mExecutor);
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(mWriter.submit("IMG_" + i + ".jpg", ByteBuffer.allocate(10)));
+        }
+
+        mWriter.shutdown();
+
+        for (CompletableFuture<Integer> future : futures) {
+            assertTrue(future.isDone());
+        }
+        assertEquals(20, store.published.size());
+    }
+
+    @Test
+    public void shutdownOfOneSource_doesNotWaitForAnother() throws Exception {
+        FakeStore store = new FakeStore(0);
+        store.blockInserts = true;
+        mWriter = new AsyncImageWriter<>(store, 8, 1, 1, mExecutor);
+        final ByteBuffer[] image = {ByteBuffer.allocate(10)};
+
+        CompletableFuture<Integer> back = mWriter.submit("back", "BACK_0.jpg", image);
+        while (store.getInsertCalls() == 0) {
+            Thread.sleep(1);
+        }
+        mWriter.shutdown("front"); // Nothing queued by the front camera; returns while the back one is stuck.
+        assertFalse(back.isDone());
+
+        store.releaseInserts();
+        mWriter.shutdown("back");
+        assertTrue(back.isDone());
+        assertEquals(1, store.published.size());
+    }
+
+    @Test
+    public void workers_reportThroughputAndLatency() throws Exception {
+        // Each write takes ~2 ms; two workers should roughly double the image rate of one.
+        FakeStore store = new FakeStore(2);
+        mWriter = new AsyncImageWriter<>(store, 8, 2, 1, mExecutor);
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            futures.add(mWriter.submit("IMG_" + i + ".jpg", ByteBuffer.allocate(256 * 1024)));
+        }
+        for (CompletableFuture<Integer> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(40, mWriter.getImagesWritten());
+        assertTrue(mWriter.getThroughputMegabytesPerSecond() > 0);
+        assertTrue(mWriter.getAverageLatencyMillis() >= 2);
+        assertTrue(mWriter.getMaxLatencyMillis() >= mWriter.getAverageLatencyMillis());
+    }
+
+    @Test
+    public void directBuffer_isWrittenWithoutHeapCopy() throws Exception {
+        final int imageSize = 4 * 1024 * 1024;
+        final long[] writeAllocations = new long[1];
+        final File file = mFolder.newFile("IMG_0.jpg");
+        FakeStore store = new FakeStore(0) {
+            @Override
+            public void write(Integer uri, ByteBuffer[] data) throws IOException {
+                // Same FileChannel path as FileHelper, measured on the writer thread.
+                long before = AllocationMeter.allocatedBytes();
+                try (FileOutputStream output = new FileOutputStream(file);
+                     FileChannel channel = output.getChannel()) {
+                    while (data[data.length - 1].hasRemaining()) {
+                        channel.write(data);
+                    }
+                }
+                writeAllocations[0] = AllocationMeter.allocatedBytes() - before;
+            }
+        };
+        mWriter = new AsyncImageWriter<>(store, 4, 1, 1, mExecutor);
+        ByteBuffer image = ByteBuffer.allocateDirect(imageSize);
+
+        long before = AllocationMeter.allocatedBytes();
+        CompletableFuture<Integer> future = mWriter.submit("IMG_0.jpg", image);
+        long submitAllocations = AllocationMeter.allocatedBytes() - before;
+        future.get(5, TimeUnit.SECONDS);
+
+        assertEquals(imageSize, file.length());
+        assertEquals(imageSize, image.remaining());
+        assertTrue("submit allocated " + submitAllocations, submitAllocations < 16 * 1024);
+        assertTrue("write allocated " + writeAllocations[0], writeAllocations[0] < 64 * 1024);
+    }
+
+    @Test
+    public void idleWriter_releasesWorkers() throws Exception {
+        FakeStore store = new FakeStore(1);
+        mWriter = new AsyncImageWriter<>(store, 8, 2, 1, mExecutor);
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(mWriter.submit("IMG_" + i + ".jpg", ByteBuffer.allocate(10)));
+        }
+        assertTrue(mWriter.getActiveWorkerCount() <= 2);
+
+        mWriter.shutdown();
+
+        assertEquals(0, mWriter.getActiveWorkerCount());
+        assertEquals(8, store.published.size());
+    }
+
+    @Test
+    public void submit_afterExecutorQuit_failsFuture() throws Exception {
+        mWriter = new AsyncImageWriter<>(new FakeStore(0), 4, 1, 1, mExecutor);
+        mExecutor.shutdown();
+
+        try {
+            mWriter.submit("IMG_0.jpg", ByteBuffer.allocate(10)).get(5, TimeUnit.SECONDS);
+            fail("Expected the write to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertEquals(0, mWriter.getActiveWorkerCount());
+        assertEquals(0, mWriter.getQueueDepth());
+    }
+
+    // In-memory MediaStore that can simulate slow writes, blocked inserts and failures.
+    private static class FakeStore implements AsyncImageWriter.MediaStore<Integer> {
+        final Map<Integer, byte[]> contents = new HashMap<>();
+        final Set<Integer> published = new HashSet<>();
+        final Set<Integer> deleted = new HashSet<>();
+        final List<String> inserted = new ArrayList<>(); // Display names in insertion order.
+        final long writeMillis;
+        volatile boolean blockInserts;
+        volatile boolean failWrites;
+        int insertCalls;
+        private int mNextId;
+
+        FakeStore(long writeMillis) {
+            this.writeMillis = writeMillis;
+        }
+
+        @Override
+        public synchronized List<Integer> insertPending(List<String> displayNames) {
+            insertCalls++;
+            while (blockInserts) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            inserted.addAll(displayNames);
+            List<Integer> ids = new ArrayList<>();
+            for (int i = 0; i < displayNames.size(); i++) {
+                ids.add(mNextId++);
+            }
+            return ids;
+        }
+
+        synchronized int getInsertCalls() {
+            return insertCalls;
+        }
+
+        synchronized void releaseInserts() {
+            blockInserts = false;
+            notifyAll();
+        }
+
+        @Override
+        public void write(Integer uri, ByteBuffer[] data) throws IOException {
+            if (failWrites) {
+                throw new IOException("disk full");
+            }
+            if (writeMillis > 0) {
+                try {
+                    Thread.sleep(writeMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            for (ByteBuffer buffer : data) {
+                byte[] chunk = new byte[buffer.remaining()];
+                buffer.get(chunk);
+                bytes.write(chunk, 0, chunk.length);
+            }
+            synchronized (this) {
+                contents.put(uri, bytes.toByteArray());
+            }
+        }
+
+        @Override
+        public synchronized void publish(Integer uri) {
+            published.add(uri);
+        }
+
+        @Override
+        public synchronized void delete(Integer uri) {
+            deleted.add(uri);
+            contents.remove(uri);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.android_camera_example1;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BufferPoolTest {
+    private static final int KB = 1024;
+
+    private long mNow;
+    private final BufferPool.NanoClock mClock = new BufferPool.NanoClock() {
+        @Override
+        public long nanoTime() {
+            return mNow;
+        }
+    };
+
+    @Test
+    public void bucketSize_roundsUpToPowerOfTwo() {
+        assertEquals(4 * KB, BufferPool.bucketSizeFor(1));
+        assertEquals(4 * KB, BufferPool.bucketSizeFor(4 * KB));
+        assertEquals(8 * KB, BufferPool.bucketSizeFor(4 * KB + 1));
+        assertEquals(4 * KB * KB, BufferPool.bucketSizeFor(3 * KB * KB));
+    }
+
+    @Test
+    public void acquire_reusesReleasedBuffer() {
+        BufferPool pool = new BufferPool(1024 * KB, 1000, mClock);
+
+        BufferPool.Lease first = pool.acquire(100 * KB);
+        assertTrue(first.getBuffer().isDirect());
+        assertEquals(100 * KB, first.getBuffer().remaining());
+        first.release();
+        BufferPool.Lease second = pool.acquire(90 * KB);
+
+        assertSame(first.getBuffer(), second.getBuffer());
+        assertEquals(90 * KB, second.getBuffer().limit());
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getMisses());
+        assertEquals(128 * KB, pool.getBytesInUse());
+    }
+
+    @Test
+    public void lease_returnsToPoolAfterLastRelease() {
+        BufferPool pool = new BufferPool(1024 * KB, 1000, mClock);
+
+        BufferPool.Lease lease = pool.acquire(8 * KB);
+        lease.retain();
+        lease.release();
+        assertEquals(8 * KB, pool.getBytesInUse());
+        lease.close();
+
+        assertEquals(0, pool.getBytesInUse());
+        assertEquals(8 * KB, pool.getBytesIdle());
+        assertEquals(0, lease.getReferenceCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void release_failsWhenAlreadyReleased() {
+        BufferPool pool = new BufferPool(1024 * KB, 1000, mClock);
+        BufferPool.Lease lease = pool.acquire(8 * KB);
+        lease.release();
+        lease.release();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void retain_failsWhenAlreadyReleased() {
+        BufferPool pool = new BufferPool(1024 * KB, 1000, mClock);
+        BufferPool.Lease lease = pool.acquire(8 * KB);
+        lease.release();
+        lease.retain();
+    }
+
+    @Test
+    public void acquire_rejectsWhenLeasedBytesReachCap() {
+        BufferPool pool = new BufferPool(256 * KB, 1000, mClock);
+
+        assertNotNull(pool.acquire(128 * KB));
+        assertNotNull(pool.acquire(128 * KB));
+        assertNull(pool.acquire(4 * KB));
+        assertNull(pool.acquire(200 * KB));
+
+        assertEquals(2, pool.getRejections());
+        assertEquals(256 * KB, pool.getPeakBytes());
+    }
+
+    @Test
+    public void acquire_evictsLeastRecentlyUsedIdleBucketToStayUnderCap() {
+        BufferPool pool = new BufferPool(256 * KB, 1000, mClock);
+        mNow = 1;
+        pool.acquire(64 * KB).release();
+        mNow = 2;
+        pool.acquire(128 * KB).release();
+        mNow = 3;
+
+        BufferPool.Lease lease = pool.acquire(128 * KB + 1);
+
+        assertNull(lease); // Larger than half the cap.
+        lease = pool.acquire(100 * KB);
+        assertNotNull(lease); // Reuses the idle 128 KB buffer.
+        assertNotNull(pool.acquire(120 * KB)); // Needs the idle 64 KB bucket evicted.
+        assertEquals(1, pool.getEvictions());
+        assertTrue(pool.getBytesInUse() + pool.getBytesIdle() <= pool.getMaxBytes());
+    }
+
+    @Test
+    public void trim_evictsBucketsIdleLongerThanTimeout() {
+        BufferPool pool = new BufferPool(1024 * KB, 1000, mClock);
+        mNow = 0;
+        pool.acquire(8 * KB).release();
+        mNow = 900;
+        pool.acquire(16 * KB).release();
+
+        mNow = 1500;
+        pool.trim();
+
+        assertEquals(16 * KB, pool.getBytesIdle());
+        assertEquals(1, pool.getEvictions());
+    }
+
+    @Test
+    public void steadyStateCycle_doesNotAllocateBuffers() {
+        BufferPool pool = new BufferPool(64 * KB * KB);
+        int frameSize = 3 * KB * KB;
+        for (int i = 0; i < 4; i++) {
+            pool.acquire(frameSize).release(); // Warm up.
+        }
+
+        long before = AllocationMeter.allocatedBytes();
+        for (int i = 0; i < 1000; i++) {
+            BufferPool.Lease lease = pool.acquire(frameSize);
+            lease.getBuffer().put(0, (byte) i);
+            lease.release();
+        }
+        long perCycle = (AllocationMeter.allocatedBytes() - before) / 1000;
+
+        assertEquals(1, pool.getMisses());
+        assertTrue("allocated per cycle=" + perCycle, perCycle < 256);
+    }
+}
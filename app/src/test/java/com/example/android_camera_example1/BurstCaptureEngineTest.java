@@ -0,0 +1,350 @@
+package com.example.android_camera_example1;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BurstCaptureEngineTest {
+    private BurstCaptureEngine<Integer> mEngine;
+    private FakeCameraDevice mDevice;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (mDevice != null) {
+            mDevice.shutdown();
+        }
+        if (mEngine != null) {
+            mEngine.stop();
+        }
+        mExecutor.shutdown();
+    }
+
+    @Test
+    public void burst_deliversEveryFrameInSequenceOrder() throws InterruptedException {
+        RecordingSink sink = new RecordingSink(0, 20);
+        createEngine(sink, 4, BurstCaptureEngine.BackpressurePolicy.BLOCK, 0);
+
+        assertTrue(mEngine.captureBurst(20));
+        assertTrue(sink.await());
+        mEngine.stop(); // Waits for the drain task so the counters are final.
+
+        assertEquals(20, mEngine.getFramesRequested());
+        assertEquals(20, mEngine.getFramesDelivered());
+        assertEquals(0, mEngine.getFramesDropped());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(Long.valueOf(i), sink.delivered.get(i));
+        }
+    }
+
+    @Test
+    public void dropNewest_keepsQueuedFramesWhenSinkIsSlow() throws InterruptedException {
+        RecordingSink sink = new RecordingSink(5, 0);
+        createEngine(sink, 2, BurstCaptureEngine.BackpressurePolicy.DROP_NEWEST, 0);
+
+        mEngine.captureBurst(30);
+        mDevice.awaitIdle();
+        mEngine.stop();
+
+        assertTrue(mEngine.getFramesDropped() > 0);
+        assertEquals(30, mEngine.getFramesCaptured());
+        assertEquals(30, mEngine.getFramesDelivered() + mEngine.getFramesDropped());
+        assertEquals(mEngine.getFramesDropped(), sink.dropped.size());
+        assertInIncreasingOrder(sink.delivered);
+    }
+
+    @Test
+    public void dropOldest_alwaysDeliversLatestFrame() throws InterruptedException {
+        RecordingSink sink = new RecordingSink(5, 0);
+        createEngine(sink, 2, BurstCaptureEngine.BackpressurePolicy.DROP_OLDEST, 0);
+
+        mEngine.captureBurst(30);
+        mDevice.awaitIdle();
+        mEngine.stop();
+
+        assertTrue(mEngine.getFramesDropped() > 0);
+        assertEquals(30, mEngine.getFramesDelivered() + mEngine.getFramesDropped());
+        assertEquals(Long.valueOf(29), sink.delivered.get(sink.delivered.size() - 1));
+        assertInIncreasingOrder(sink.delivered);
+    }
+
+    @Test
+    public void block_neverExceedsCapacity() throws InterruptedException {
+        RecordingSink sink = new RecordingSink(1, 0);
+        createEngine(sink, 3, BurstCaptureEngine.BackpressurePolicy.BLOCK, 0);
+
+        mEngine.captureBurst(15);
+        while (!mDevice.isIdle()) {
+            assertTrue(mEngine.getQueueDepth() <= 3);
+            Thread.sleep(1);
+        }
+        mEngine.stop();
+
+        assertEquals(0, mEngine.getFramesDropped());
+        assertEquals(15, mEngine.getFramesDelivered());
+    }
+
+    @Test
+    public void continuous_sustainsDeviceFrameRate() throws InterruptedException {
+        RecordingSink sink = new RecordingSink(0, 60);
+        createEngine(sink, 8, BurstCaptureEngine.BackpressurePolicy.DROP_OLDEST, 5);
+
+        assertTrue(mEngine.startContinuous());
+        assertTrue(mEngine.isContinuous());
+        assertTrue(sink.await());
+        assertTrue(mEngine.stopContinuous());
+        assertFalse(mDevice.repeating);
+        mEngine.stop();
+
+        // The fake device produces one frame every 5 ms (200 fps); a fast sink must keep up
+        // with a comfortable margin for scheduling jitter.
+        double fps = mEngine.getDeliveredFramesPerSecond();
+        assertTrue("fps=" + fps, fps > 50);
+        assertEquals(0, mEngine.getFramesDropped());
+    }
+
+    @Test
+    public void idleEngine_holdsNoThread() throws InterruptedException {
+        final Set<String> drainThreads = Collections.synchronizedSet(new HashSet<String>());
+        RecordingSink sink = new RecordingSink(0, 5) {
+            @Override
+            public void onFrame(long sequence, Integer frame) {
+                drainThreads.add(Thread.currentThread().getName());
+                super.onFrame(sequence, frame);
+            }
+        };
+        createEngine(sink, 4, BurstCaptureEngine.BackpressurePolicy.BLOCK, 0);
+
+        mEngine.captureBurst(5);
+        assertTrue(sink.await());
+        mEngine.stop();
+
+        // Frames are delivered on the shared executor rather than a thread owned by the engine.
+        assertEquals(1, drainThreads.size());
+        assertFalse(drainThreads.contains("CaptureBurstWorker"));
+    }
+
+    @Test
+    public void offer_afterExecutorQuit_releasesFrame() {
+        RecordingSink sink = new RecordingSink(0, 0);
+        createEngine(sink, 4, BurstCaptureEngine.BackpressurePolicy.BLOCK, 0);
+        mExecutor.shutdown();
+
+        assertEquals(0, mEngine.offer(7));
+        mEngine.stop();
+
+        assertEquals(1, sink.dropped.size());
+        assertEquals(1, mEngine.getFramesDropped());
+    }
+
+    @Test
+    public void tryOffer_dropsInsteadOfBlocking() {
+        RecordingSink sink = new RecordingSink(50, 0);
+        createEngine(sink, 1, BurstCaptureEngine.BackpressurePolicy.BLOCK, 0);
+
+        long dropped = 0;
+        for (int i = 0; i < 3; i++) {
+            if (mEngine.tryOffer(i) < 0) {
+                dropped++;
+            }
+        }
+        mEngine.stop();
+
+        assertTrue(dropped > 0);
+        assertEquals(dropped, mEngine.getFramesDropped());
+        assertEquals(3 - dropped, mEngine.getFramesDelivered());
+    }
+
+    @Test
+    public void drain_yieldsTheSharedThreadToOtherEngines() throws InterruptedException {
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch release = new CountDownLatch(1);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await(); // Hold the only thread while both engines queue frames.
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        BurstCaptureEngine<Integer> back = createNamedEngine("back", order);
+        BurstCaptureEngine<Integer> front = createNamedEngine("front", order);
+        for (int i = 0; i < 8; i++) {
+            back.offer(i);
+        }
+        front.offer(0);
+
+        release.countDown();
+        back.stop();
+        front.stop();
+
+        assertEquals(9, order.size());
+        assertEquals("front 0", order.get(BurstCaptureEngine.MAX_FRAMES_PER_DRAIN));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void captureBurst_rejectsEmptyBurst() {
+        createEngine(new RecordingSink(0, 0), 1, BurstCaptureEngine.BackpressurePolicy.BLOCK, 0);
+        mEngine.captureBurst(0);
+    }
+
+    private void createEngine(RecordingSink sink, int capacity, BurstCaptureEngine.BackpressurePolicy policy,
+                              long frameIntervalMillis) {
+        mDevice = new FakeCameraDevice(frameIntervalMillis);
+        mEngine = new BurstCaptureEngine<>(mDevice, sink, capacity, policy, mExecutor);
+        mDevice.engine = mEngine;
+        mEngine.start();
+    }
+
+    // An engine on the shared executor whose sink records "name sequence" in order.
+    private BurstCaptureEngine<Integer> createNamedEngine(final String name, final List<String> order) {
+        BurstCaptureEngine<Integer> engine = new BurstCaptureEngine<>(new FakeCameraDevice(0),
+                new BurstCaptureEngine.FrameSink<Integer>() {
+                    @Override
+                    public void onFrame(long sequence, Integer frame) {
+                        order.add(name + " " + sequence);
+                    }
+
+                    @Override
+                    public void onFrameDropped(long sequence, Integer frame) {
+                    }
+                }, 8, BurstCaptureEngine.BackpressurePolicy.DROP_NEWEST, mExecutor);
+        engine.start();
+        return engine;
+    }
+
+    private static void assertInIncreasingOrder(List<Long> sequences) {
+        for (int i = 1; i < sequences.size(); i++) {
+            assertTrue(sequences.get(i) > sequences.get(i - 1));
+        }
+    }
+
+    // Fake camera device that produces one frame per request on its own thread.
+    private static class FakeCameraDevice implements BurstCaptureEngine.RequestSubmitter {
+        final long frameIntervalMillis;
+        BurstCaptureEngine<Integer> engine;
+        volatile boolean repeating;
+        private Thread mThread;
+
+        FakeCameraDevice(long frameIntervalMillis) {
+            this.frameIntervalMillis = frameIntervalMillis;
+        }
+
+        @Override
+        public boolean submitBurst(final int count) {
+            awaitIdleQuietly();
+            mThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < count; i++) {
+                        produce(i);
+                    }
+                }
+            });
+            mThread.start();
+            return true;
+        }
+
+        @Override
+        public boolean setRepeatingBurst(boolean enabled) {
+            repeating = enabled;
+            if (enabled) {
+                mThread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        int i = 0;
+                        while (repeating) {
+                            produce(i++);
+                        }
+                    }
+                });
+                mThread.start();
+            } else {
+                awaitIdleQuietly();
+            }
+            return true;
+        }
+
+        private void produce(int frame) {
+            if (frameIntervalMillis > 0) {
+                try {
+                    Thread.sleep(frameIntervalMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            engine.offer(frame);
+        }
+
+        boolean isIdle() {
+            return mThread == null || !mThread.isAlive();
+        }
+
+        void awaitIdle() throws InterruptedException {
+            if (mThread != null) {
+                mThread.join();
+            }
+        }
+
+        private void awaitIdleQuietly() {
+            try {
+                awaitIdle();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void shutdown() throws InterruptedException {
+            repeating = false;
+            awaitIdle();
+        }
+    }
+
+    // Sink that records sequence numbers and optionally simulates a slow writer.
+    private static class RecordingSink implements BurstCaptureEngine.FrameSink<Integer> {
+        final List<Long> delivered = Collections.synchronizedList(new ArrayList<Long>());
+        final List<Long> dropped = Collections.synchronizedList(new ArrayList<Long>());
+        private final long mWriteMillis;
+        private final CountDownLatch mLatch;
+
+        RecordingSink(long writeMillis, int expectedFrames) {
+            mWriteMillis = writeMillis;
+            mLatch = new CountDownLatch(expectedFrames);
+        }
+
+        @Override
+        public void onFrame(long sequence, Integer frame) {
+            if (mWriteMillis > 0) {
+                try {
+                    Thread.sleep(mWriteMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            delivered.add(sequence);
+            mLatch.countDown();
+        }
+
+        @Override
+        public void onFrameDropped(long sequence, Integer frame) {
+            dropped.add(sequence);
+        }
+
+        boolean await() throws InterruptedException {
+            return mLatch.await(5, TimeUnit.SECONDS);
+        }
+    }
+}
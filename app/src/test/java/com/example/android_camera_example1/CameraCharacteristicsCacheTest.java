@@ -0,0 +1,266 @@
+package com.example.android_camera_example1;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class CameraCharacteristicsCacheTest {
+    private static final int JPEG = 0x100;
+
+    @Test
+    public void get_loadsOncePerCamera() {
+        FakeCameraManager manager = new FakeCameraManager("0", "1");
+        CameraCharacteristicsCache cache = new CameraCharacteristicsCache(manager);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals("0", cache.get("0").getCameraId());
+        }
+        cache.get("1");
+
+        assertEquals(2, manager.characteristicsCalls.get());
+        assertEquals(2, cache.getMisses());
+        assertEquals(9, cache.getHits());
+    }
+
+    @Test
+    public void get_doesNotCacheFailures() {
+        FakeCameraManager manager = new FakeCameraManager("0");
+        CameraCharacteristicsCache cache = new CameraCharacteristicsCache(manager);
+
+        assertNull(cache.get("7"));
+        assertNull(cache.get("7"));
+
+        assertEquals(2, manager.characteristicsCalls.get());
+    }
+
+    @Test
+    public void concurrentMisses_issueOneLoad() throws InterruptedException {
+        final FakeCameraManager manager = new FakeCameraManager("0");
+        final CameraCharacteristicsCache cache = new CameraCharacteristicsCache(manager);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    assertNotNull(cache.get("0"));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, manager.characteristicsCalls.get());
+    }
+
+    @Test
+    public void sizeTables_areSortedLargestFirst() {
+        CameraCharacteristicsCache cache = new CameraCharacteristicsCache(new FakeCameraManager("0"));
+
+        OutputSize[] sizes = cache.get("0").getOutputSizes(JPEG);
+
+        assertEquals("4000x3000", sizes[0].toString());
+        assertEquals("1920x1080", sizes[1].toString());
+        assertEquals("640x480", sizes[2].toString());
+        assertEquals(sizes[0], cache.get("0").getLargestOutputSize(JPEG));
+        assertEquals(0, cache.get("0").getOutputSizes(CameraCapabilities.FORMAT_SURFACE_TEXTURE).length);
+        assertNull(cache.get("0").getLargestOutputSize(CameraCapabilities.FORMAT_SURFACE_TEXTURE));
+    }
+
+    @Test
+    public void aeTargetFpsRange_prefersHighestRateWithinTheLimit() {
+        CameraCapabilities capabilities = new CameraCapabilities.Builder("0")
+                .setAeTargetFpsRanges(new int[][] {{15, 15}, {7, 30}, {30, 30}, {15, 30}, {10, 24}, {24, 24}})
+                .build();
+
+        assertArrayEquals(new int[] {15, 30}, capabilities.findAeTargetFpsRange(15, 30));
+        assertArrayEquals(new int[] {24, 24}, capabilities.findAeTargetFpsRange(24, 24));
+        assertArrayEquals(new int[] {10, 24}, capabilities.findAeTargetFpsRange(10, 26));
+        assertArrayEquals(new int[] {15, 15}, capabilities.findAeTargetFpsRange(5, 10)); // Nothing fits: lowest.
+        assertNull(new CameraCapabilities.Builder("0").build().findAeTargetFpsRange(15, 30));
+    }
+
+    @Test
+    public void cropRegion_isCenteredAndClampedToMaxZoom() {
+        CameraCapabilities capabilities = new CameraCapabilities.Builder("0")
+                .setActiveArraySize(4000, 3000)
+                .setMaxDigitalZoom(8f)
+                .setExposureCompensationRange(-12, 12)
+                .build();
+
+        assertArrayEquals(new int[] {0, 0, 4000, 3000}, capabilities.findCropRegion(1f));
+        assertArrayEquals(new int[] {1000, 750, 3000, 2250}, capabilities.findCropRegion(2f));
+        assertArrayEquals(new int[] {1750, 1312, 2250, 1687}, capabilities.findCropRegion(20f));
+        assertArrayEquals(new int[] {0, 0, 4000, 3000}, capabilities.findCropRegion(0.5f));
+        assertEquals(12, capabilities.clampExposureCompensation(40));
+        assertEquals(-3, capabilities.clampExposureCompensation(-3));
+        assertNull(new CameraCapabilities.Builder("0").build().findCropRegion(2f));
+        assertEquals(0, new CameraCapabilities.Builder("0").build().clampExposureCompensation(2));
+    }
+
+    @Test
+    public void selectConcurrentCameras_usesTheLargestReportedSet() {
+        FakeCameraManager manager = new FakeCameraManager("0", "1", "2", "3");
+        manager.concurrentCameraIds = sets(Arrays.asList("0", "2"), Arrays.asList("1", "3"),
+                Arrays.asList("1", "2", "3"));
+        CameraCharacteristicsCache cache = new CameraCharacteristicsCache(manager);
+
+        assertEquals(Arrays.asList("1", "2", "3"), cache.selectConcurrentCameras(4));
+        assertEquals(Arrays.asList("0", "2"), cache.selectConcurrentCameras(2)); // Ties go to the earliest camera.
+        assertEquals(Arrays.asList("0"), cache.selectConcurrentCameras(1));
+        assertEquals(1, manager.concurrentCalls.get());
+    }
+
+    @Test
+    public void selectConcurrentCameras_withoutReportedSets_takesCamerasInOrder() {
+        CameraCharacteristicsCache cache = new CameraCharacteristicsCache(new FakeCameraManager("0", "1", "2"));
+
+        assertEquals(Arrays.asList("0", "1"), cache.selectConcurrentCameras(2));
+        assertEquals(Arrays.asList("0", "1", "2"), cache.selectConcurrentCameras(5));
+    }
+
+    @Test
+    public void connectedCamera_reloadsConcurrentSets() {
+        FakeCameraManager manager = new FakeCameraManager("0", "1");
+        manager.concurrentCameraIds = sets(Arrays.asList("0", "1"));
+        CameraCharacteristicsCache cache = new CameraCharacteristicsCache(manager);
+        assertEquals(Arrays.asList("0", "1"), cache.selectConcurrentCameras(3));
+        assertEquals(Arrays.asList("0", "1"), cache.selectConcurrentCameras(3));
+
+        manager.cameraIds = new String[] {"0", "1", "7"};
+        manager.concurrentCameraIds = sets(Arrays.asList("0", "1", "7"));
+        cache.onCameraAvailabilityChanged("7", true);
+
+        assertEquals(Arrays.asList("0", "1", "7"), cache.selectConcurrentCameras(3));
+        assertEquals(2, manager.concurrentCalls.get());
+    }
+
+    @Test
+    public void prefetch_loadsEveryCamera() throws InterruptedException {
+        FakeCameraManager manager = new FakeCameraManager("0", "1", "2");
+        CameraCharacteristicsCache cache = new CameraCharacteristicsCache(manager);
+
+        cache.prefetchAsync().join();
+        cache.get("0");
+        cache.get("2");
+
+        assertEquals(Arrays.asList("0", "1", "2"), cache.getCameraIds());
+        assertEquals(1, manager.idListCalls.get());
+        assertEquals(3, manager.characteristicsCalls.get());
+    }
+
+    @Test
+    public void openingAndClosingKnownCamera_keepsCapabilities() {
+        FakeCameraManager manager = new FakeCameraManager("0");
+        CameraCharacteristicsCache cache = new CameraCharacteristicsCache(manager);
+        cache.prefetch();
+
+        cache.onCameraAvailabilityChanged("0", false); // Opened.
+        cache.getCameraIds();
+        cache.onCameraAvailabilityChanged("0", true); // Closed.
+        cache.get("0");
+
+        assertEquals(1, manager.characteristicsCalls.get());
+        assertEquals(2, manager.idListCalls.get());
+    }
+
+    @Test
+    public void newlyConnectedCamera_invalidatesItsEntryAndIdList() {
+        FakeCameraManager manager = new FakeCameraManager("0");
+        CameraCharacteristicsCache cache = new CameraCharacteristicsCache(manager);
+        cache.prefetch();
+        cache.get("5"); // Not connected yet: fails and is not cached.
+
+        manager.cameraIds = new String[] {"0", "5"};
+        cache.onCameraAvailabilityChanged("5", true);
+
+        assertEquals(Arrays.asList("0", "5"), cache.getCameraIds());
+        assertNotNull(cache.get("5"));
+        assertNotNull(cache.get("0"));
+        assertEquals(1, cache.getInvalidations());
+        assertEquals(3, manager.characteristicsCalls.get());
+    }
+
+    @Test
+    public void invalidate_forcesReload() {
+        FakeCameraManager manager = new FakeCameraManager("0");
+        CameraCharacteristicsCache cache = new CameraCharacteristicsCache(manager);
+        cache.get("0");
+
+        cache.invalidate("0");
+        cache.get("0");
+        cache.invalidateAll();
+        cache.get("0");
+
+        assertEquals(3, manager.characteristicsCalls.get());
+    }
+
+    @SafeVarargs
+    private static Set<Set<String>> sets(List<String>... sets) {
+        Set<Set<String>> result = new LinkedHashSet<>();
+        for (List<String> set : sets) {
+            result.add(new HashSet<>(set));
+        }
+        return result;
+    }
+
+    // Fake camera service with several devices that counts binder calls.
+    private static class FakeCameraManager implements CameraCharacteristicsCache.Loader {
+        final AtomicInteger idListCalls = new AtomicInteger();
+        final AtomicInteger characteristicsCalls = new AtomicInteger();
+        final AtomicInteger concurrentCalls = new AtomicInteger();
+        volatile String[] cameraIds;
+        volatile Set<Set<String>> concurrentCameraIds = Collections.emptySet();
+
+        FakeCameraManager(String... cameraIds) {
+            this.cameraIds = cameraIds;
+        }
+
+        @Override
+        public String[] loadCameraIds() {
+            idListCalls.incrementAndGet();
+            return cameraIds;
+        }
+
+        @Override
+        public Set<Set<String>> loadConcurrentCameraIds() {
+            concurrentCalls.incrementAndGet();
+            return concurrentCameraIds;
+        }
+
+        @Override
+        public CameraCapabilities loadCapabilities(String cameraId) {
+            characteristicsCalls.incrementAndGet();
+            if (!Arrays.asList(cameraIds).contains(cameraId)) {
+                return null;
+            }
+            return new CameraCapabilities.Builder(cameraId)
+                    .setSensorOrientation(90)
+                    .setOutputSizes(JPEG, new OutputSize[] {
+                            new OutputSize(1920, 1080, 33333333L, 0),
+                            new OutputSize(640, 480, 33333333L, 0),
+                            new OutputSize(4000, 3000, 50000000L, 50000000L)
+                    })
+                    .build();
+        }
+    }
+}
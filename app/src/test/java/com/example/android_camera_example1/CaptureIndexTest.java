@@ -0,0 +1,160 @@
+package com.example.android_camera_example1;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CaptureIndexTest {
+    private File mDirectory;
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = Files.createTempDirectory("capture-index").toFile();
+        mFile = new File(mDirectory, "index.bin");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(mFile.toPath());
+        Files.delete(mDirectory.toPath());
+    }
+
+    @Test
+    public void append_assignsIdsAndSurvivesReopen() throws IOException {
+        try (CaptureIndex index = CaptureIndex.open(mFile)) {
+            for (int i = 0; i < 3; i++) {
+                assertEquals(i + 1, index.append(record(1000 + i, "content://media/external/images/media/" + i)));
+            }
+        }
+
+        try (CaptureIndex index = CaptureIndex.open(mFile)) {
+            assertEquals(3, index.size());
+            assertEquals(0, index.getDroppedRecordCount());
+            CaptureIndex.Record record = index.read(2);
+            assertEquals(3, record.captureId);
+            assertEquals(1002, record.timeMillis);
+            assertEquals("content://media/external/images/media/2", record.uri);
+            assertEquals(4032, record.width);
+            assertEquals(3024, record.height);
+            assertEquals(2_000_000L, record.sizeBytes);
+            assertEquals(10_000_000L, record.exposureTimeNanos);
+            assertEquals(400, record.sensitivity);
+            assertEquals(1.5f, record.focusDistance, 0);
+            assertEquals(4, index.append(record(2000, "content://4")));
+        }
+    }
+
+    @Test
+    public void query_findsTimeRangeByBinarySearch() throws IOException {
+        try (CaptureIndex index = CaptureIndex.open(mFile)) {
+            for (int i = 0; i < 100; i++) {
+                index.append(record(i * 10, "content://" + i));
+            }
+            index.append(record(500, "content://clock-stepped-back")); // Clamped to 990.
+
+            assertEquals(0, index.findFirstAtOrAfter(-5));
+            assertEquals(25, index.findFirstAtOrAfter(250));
+            assertEquals(26, index.findFirstAtOrAfter(251));
+            assertEquals(101, index.findFirstAtOrAfter(5000));
+
+            List<CaptureIndex.Record> records = index.query(250, 300);
+            assertEquals(5, records.size());
+            assertEquals("content://25", records.get(0).uri);
+            assertEquals(2, index.query(990, 991).size());
+        }
+    }
+
+    @Test
+    public void open_dropsTornTailRecord() throws IOException {
+        try (CaptureIndex index = CaptureIndex.open(mFile)) {
+            for (int i = 0; i < 5; i++) {
+                index.append(record(i, "content://" + i));
+            }
+        }
+        // Damage the last record as if the app died while writing it.
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            file.seek(CaptureIndex.HEADER_SIZE + 4L * CaptureIndex.RECORD_SIZE + 40);
+            file.writeInt(0x12345678);
+        }
+
+        try (CaptureIndex index = CaptureIndex.open(mFile)) {
+            assertEquals(4, index.size());
+            assertEquals(1, index.getDroppedRecordCount());
+            assertEquals(5, index.append(record(10, "content://new"))); // Overwrites the torn record.
+            assertEquals("content://new", index.read(4).uri);
+        }
+        try (CaptureIndex index = CaptureIndex.open(mFile)) {
+            assertEquals(5, index.size());
+            assertEquals(0, index.getDroppedRecordCount());
+        }
+    }
+
+    @Test
+    public void open_keepsIntactRecordsWrittenAfterTheCount() throws IOException {
+        try (CaptureIndex index = CaptureIndex.open(mFile)) {
+            for (int i = 0; i < 5; i++) {
+                index.append(record(i, "content://" + i));
+            }
+        }
+        // A crash between writing a record and updating the count.
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            file.seek(12);
+            file.writeInt(4);
+        }
+
+        try (CaptureIndex index = CaptureIndex.open(mFile)) {
+            assertEquals(5, index.size());
+            assertEquals(6, index.append(record(10, "content://6")));
+        }
+    }
+
+    @Test
+    public void append_growsPastInitialMapping() throws IOException {
+        int records = 3000;
+        try (CaptureIndex index = CaptureIndex.open(mFile)) {
+            for (int i = 0; i < records; i++) {
+                index.append(record(i, "content://media/external/images/media/" + i));
+            }
+            assertEquals(2999, index.findFirstAtOrAfter(2999));
+        }
+
+        try (CaptureIndex index = CaptureIndex.open(mFile)) {
+            assertEquals(records, index.size());
+            assertEquals("content://media/external/images/media/2500", index.read(2500).uri);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void append_rejectsOversizedUri() throws IOException {
+        StringBuilder uri = new StringBuilder("content://");
+        while (uri.length() <= CaptureIndex.MAX_URI_BYTES) {
+            uri.append('x');
+        }
+        try (CaptureIndex index = CaptureIndex.open(mFile)) {
+            index.append(record(0, uri.toString()));
+        }
+    }
+
+    private static CaptureIndex.Record record(long timeMillis, String uri) {
+        CaptureIndex.Record record = new CaptureIndex.Record();
+        record.timeMillis = timeMillis;
+        record.sensorTimestampNanos = timeMillis * 1_000_000L;
+        record.uri = uri;
+        record.sizeBytes = 2_000_000L;
+        record.width = 4032;
+        record.height = 3024;
+        record.exposureTimeNanos = 10_000_000L;
+        record.sensitivity = 400;
+        record.focusDistance = 1.5f;
+        return record;
+    }
+}
@@ -0,0 +1,271 @@
+package com.example.android_camera_example1;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+// Load scenarios for the capture pipeline on a simulated camera and MediaStore: single shots,
+// a burst and continuous capture. The assertions are on counters only, since wall-clock rates
+// depend on the machine. With -Dbenchmark=true each scenario also prints sustained shots per
+// second, end-to-end latency percentiles, allocation rate across all threads and the
+// pipeline's thread count.
+public class CaptureLoadTest {
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+    private static final double FPS = 30;
+    private static final long HAL_LATENCY_MILLIS = 60;
+    private static final int MAX_IMAGES = 4;
+    private static final long INSERT_MILLIS = 2;
+    private static final int WRITER_QUEUE_CAPACITY = 16;
+    private static final int WRITER_MAX_BATCH_SIZE = 8;
+    private static final boolean REPORT = Boolean.getBoolean("benchmark");
+    private static final int MAX_PIPELINE_THREADS = 2 + CameraThreads.PROCESSING_THREAD_COUNT
+            + FileHelper.DEFAULT_WRITER_WORKER_COUNT; // Simulator sensor and HAL, processing, I/O.
+
+    private final LifecycleExecutor mProcessing =
+            new LifecycleExecutor("CameraProcessing", CameraThreads.PROCESSING_THREAD_COUNT);
+    private final LifecycleExecutor mIo = new LifecycleExecutor("CameraIO", FileHelper.DEFAULT_WRITER_WORKER_COUNT);
+    private final Semaphore mSaved = new Semaphore(0);
+    private final AtomicLong mSaveFailures = new AtomicLong();
+    private final AtomicLong mNextName = new AtomicLong();
+    private SimulatedCamera mCamera;
+    private SimulatedMediaStore mStore;
+    private AsyncImageWriter<Long> mWriter;
+    private CapturePipeline<Long> mPipeline;
+    private CaptureSessionManager mSessionManager;
+    private long mStartNanos;
+    private long mStartAllocatedBytes;
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (mCamera != null) {
+            finish();
+        }
+        mProcessing.quit(1, TimeUnit.SECONDS);
+        mIo.quit(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void singleShots_eachStillIsWrittenBeforeTheNext() throws InterruptedException {
+        createPipeline(100);
+        int shots = 10;
+
+        begin();
+        for (int i = 0; i < shots; i++) {
+            mPipeline.getMetrics().begin(); // As Camera.captureImage() does.
+            assertTrue(mSessionManager.requestStill());
+            assertTrue(mSaved.tryAcquire(5, TimeUnit.SECONDS));
+        }
+        report("single", shots);
+        finish();
+
+        CaptureMetrics metrics = mPipeline.getMetrics();
+        assertEquals(shots, metrics.getCapturesCompleted());
+        assertEquals(0, metrics.getCapturesFailed());
+        assertTrue(metrics.getTotalHistogram().getPercentileNanos(0.5)
+                >= TimeUnit.MILLISECONDS.toNanos(HAL_LATENCY_MILLIS));
+        assertEquals(shots, mStore.getPublishedCount());
+    }
+
+    @Test
+    public void burst_keepsUpWithTheSensor() throws InterruptedException {
+        createPipeline(100);
+        int shots = 30;
+
+        begin();
+        assertTrue(mPipeline.getBurstEngine().captureBurst(shots));
+        assertTrue(mSaved.tryAcquire(shots, 10, TimeUnit.SECONDS));
+        report("burst", shots);
+        assertTrue(pipelineThreadCount() <= MAX_PIPELINE_THREADS);
+        finish();
+
+        CaptureMetrics metrics = mPipeline.getMetrics();
+        assertEquals(shots, metrics.getCapturesCompleted());
+        assertEquals(0, metrics.getCapturesFailed() + metrics.getFramesDropped() + metrics.getCapturesAbandoned());
+        assertEquals(0, mStore.getCorruptWrites());
+        assertEquals(0, mPipeline.getHeldImageCount());
+    }
+
+    @Test
+    public void continuous_slowStorageDropsOldestAndStaysBounded() throws InterruptedException {
+        createPipeline(1); // About 7 JPEGs per second across both writers, well below the 30 fps sensor.
+        mPipeline.getBurstEngine().setBackpressurePolicy(BurstCaptureEngine.BackpressurePolicy.DROP_OLDEST);
+        final AtomicInteger analyzed = new AtomicInteger();
+        FrameAnalysisDispatcher dispatcher = new FrameAnalysisDispatcher(mProcessing, new FrameAnalyzer() {
+            @Override
+            public void analyze(AnalysisFrame frame) {
+                ByteBuffer luma = frame.getY().getBuffer();
+                long sum = 0;
+                for (int i = luma.position(); i < luma.limit(); i++) {
+                    sum += luma.get(i) & 0xFF;
+                }
+                if (sum >= 0) {
+                    analyzed.incrementAndGet();
+                }
+            }
+        });
+        mCamera.setAnalysisDispatcher(dispatcher);
+
+        begin();
+        assertTrue(mPipeline.getBurstEngine().startContinuous());
+        Thread.sleep(2000); // Longer than the writer and burst queues can absorb.
+        assertTrue(mPipeline.getBurstEngine().stopContinuous());
+        int threads = pipelineThreadCount();
+        report("continuous", mPipeline.getMetrics().getCapturesCompleted());
+        finish();
+
+        BurstCaptureEngine<CapturedFrame> engine = mPipeline.getBurstEngine();
+        CaptureMetrics metrics = mPipeline.getMetrics();
+        assertTrue(engine.getFramesDropped() > 0);
+        assertEquals(engine.getFramesCaptured(), engine.getFramesDelivered() + engine.getFramesDropped());
+        assertEquals(engine.getFramesDelivered(), metrics.getCapturesCompleted());
+        assertEquals(engine.getFramesDelivered(), mStore.getPublishedCount());
+        assertEquals(0, metrics.getCapturesFailed() + metrics.getCapturesAbandoned());
+        assertEquals(0, mPipeline.getHeldImageCount());
+        assertEquals(0, mPipeline.getBufferPool().getBytesInUse());
+        assertTrue(analyzed.get() > 0);
+        assertTrue("threads " + threads, threads <= MAX_PIPELINE_THREADS);
+    }
+
+    @Test
+    public void singleShot_storeThatRefusesTheFrameReleasesIt() throws InterruptedException {
+        createPipeline(100);
+        mPipeline.setFrameStore(new CapturePipeline.FrameStore<Long>() {
+            @Override
+            public CompletableFuture<Long> save(ByteBuffer data, long timestampNanos) {
+                throw new RejectedExecutionException("writer has quit");
+            }
+        });
+
+        mPipeline.getMetrics().begin();
+        assertTrue(mSessionManager.requestStill());
+        awaitSaveFailures(1);
+        finish(1); // Returns only if the failure left the burst engine's drain.
+
+        assertEquals(1, mPipeline.getMetrics().getCapturesFailed());
+        assertEquals(0, mPipeline.getHeldImageCount());
+    }
+
+    @Test
+    public void singleShot_observerThatThrowsStillReleasesTheFrame() throws InterruptedException {
+        createPipeline(100);
+        mPipeline.setSavedFrameObserver(new CapturePipeline.SavedFrameObserver<Long>() {
+            @Override
+            public void onFrameSaved(Long handle, ByteBuffer data, long timestampNanos) {
+                throw new IllegalStateException("thumbnail failed");
+            }
+        });
+
+        mPipeline.getMetrics().begin();
+        assertTrue(mSessionManager.requestStill());
+        awaitSaveFailures(1);
+        finish(1);
+
+        assertEquals(1, mPipeline.getMetrics().getCapturesFailed());
+        assertEquals(0, mPipeline.getHeldImageCount());
+    }
+
+    private void createPipeline(double storeMegabytesPerSecond) throws InterruptedException {
+        mProcessing.start();
+        mIo.start();
+        mCamera = new SimulatedCamera(WIDTH, HEIGHT, FPS, HAL_LATENCY_MILLIS, MAX_IMAGES);
+        mStore = new SimulatedMediaStore(INSERT_MILLIS, storeMegabytesPerSecond);
+        mWriter = new AsyncImageWriter<>(mStore, WRITER_QUEUE_CAPACITY, FileHelper.DEFAULT_WRITER_WORKER_COUNT,
+                WRITER_MAX_BATCH_SIZE, mIo);
+        mPipeline = new CapturePipeline<>(new CapturePipeline.FrameStore<Long>() {
+            @Override
+            public CompletableFuture<Long> save(ByteBuffer data, long timestampNanos) {
+                return mWriter.submit("IMG_" + mNextName.getAndIncrement() + ".jpg", data);
+            }
+        }, mCamera, MAX_IMAGES, mProcessing);
+        mPipeline.setSaveListener(new CapturePipeline.SaveListener<Long>() {
+            @Override
+            public void onSaved(long sequence, Long handle) {
+                mSaved.release();
+            }
+
+            @Override
+            public void onSaveFailed(long sequence, Throwable error) {
+                mSaveFailures.incrementAndGet();
+            }
+
+            @Override
+            public void onFrameDropped(long sequence) {
+            }
+        });
+        mSessionManager = new CaptureSessionManager(mCamera);
+        mCamera.setPipeline(mPipeline);
+        mCamera.setSessionManager(mSessionManager);
+
+        mPipeline.start();
+        mSessionManager.open();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (!mSessionManager.isReady() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(mSessionManager.isReady());
+    }
+
+    // Stop the simulated sensor, then drain the pipeline and the writer so counters are final.
+    private void finish() throws InterruptedException {
+        finish(0);
+    }
+
+    private void finish(long expectedSaveFailures) throws InterruptedException {
+        mCamera.shutdown();
+        mPipeline.stop();
+        mWriter.shutdown();
+        mSessionManager.close();
+        mCamera = null;
+        assertEquals(expectedSaveFailures, mSaveFailures.get());
+    }
+
+    private void awaitSaveFailures(long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (mSaveFailures.get() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(count, mSaveFailures.get());
+    }
+
+    private void begin() {
+        mStartNanos = System.nanoTime();
+        mStartAllocatedBytes = AllocationMeter.allocatedBytesAllThreads();
+    }
+
+    // Print the scenario's throughput, latency, allocation and thread figures when benchmarking.
+    private void report(String scenario, long shots) {
+        if (!REPORT) {
+            return;
+        }
+        double seconds = (System.nanoTime() - mStartNanos) / 1e9;
+        double allocatedKilobytes = (AllocationMeter.allocatedBytesAllThreads() - mStartAllocatedBytes) / 1024.0;
+        double shotsPerSecond = shots / seconds;
+        System.out.println(String.format(Locale.US,
+                "%s: %d shots in %.2fs = %.1f shots/s, total %s, alloc %.1f KB/shot (%.1f MB/s), threads %d",
+                scenario, shots, seconds, shotsPerSecond, mPipeline.getMetrics().getTotalHistogram().format(),
+                allocatedKilobytes / Math.max(1, shots), allocatedKilobytes / 1024 / seconds, pipelineThreadCount()));
+    }
+
+    // Live threads that belong to the pipeline or the simulator.
+    private static int pipelineThreadCount() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            String name = thread.getName();
+            if (name.startsWith("CameraProcessing") || name.startsWith("CameraIO") || name.startsWith("Simulated")) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
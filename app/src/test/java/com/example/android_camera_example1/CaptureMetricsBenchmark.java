@@ -0,0 +1,48 @@
+package com.example.android_camera_example1;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+// Cost of recording capture stages. Wall-clock results depend on the machine, so this is
+// skipped by the unit tests; run it with -Dbenchmark=true.
+public class CaptureMetricsBenchmark {
+    @Before
+    public void assumeEnabled() {
+        Assume.assumeTrue("benchmark disabled", Boolean.getBoolean("benchmark"));
+    }
+
+    @Test
+    public void recording_costsAFewHundredNanosPerStage() {
+        CaptureMetrics metrics = new CaptureMetrics();
+        CaptureMetrics.Stage[] stages = {CaptureMetrics.Stage.SUBMITTED, CaptureMetrics.Stage.CAPTURE_COMPLETED,
+                CaptureMetrics.Stage.IMAGE_AVAILABLE, CaptureMetrics.Stage.BUFFER_COPIED,
+                CaptureMetrics.Stage.FILE_WRITTEN};
+        // Warm up so the JIT has compiled the recording path.
+        for (int i = 0; i < 20_000; i++) {
+            recordCapture(metrics, stages);
+        }
+
+        int captures = 100_000;
+        long start = System.nanoTime();
+        for (int i = 0; i < captures; i++) {
+            recordCapture(metrics, stages);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        // One capture is begin() plus five stages, each with a clock read and a histogram update.
+        double nanosPerStage = (double) elapsed / (captures * (stages.length + 1));
+        System.out.println("CaptureMetrics: " + Math.round(nanosPerStage) + " ns per stage");
+        assertTrue("ns per stage " + nanosPerStage, nanosPerStage < 2000);
+    }
+
+    private static void recordCapture(CaptureMetrics metrics, CaptureMetrics.Stage[] stages) {
+        long id = metrics.begin();
+        metrics.markNext(stages[0]);
+        for (int i = 1; i < stages.length; i++) {
+            metrics.mark(id, stages[i]);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.android_camera_example1;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CaptureMetricsTest {
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void stages_recordTimeSincePreviousStage() {
+        CaptureMetrics metrics = new CaptureMetrics(8);
+
+        long id = metrics.begin(0);
+        metrics.mark(id, CaptureMetrics.Stage.SUBMITTED, 2 * MS);
+        metrics.mark(id, CaptureMetrics.Stage.CAPTURE_COMPLETED, 52 * MS);
+        metrics.mark(id, CaptureMetrics.Stage.IMAGE_AVAILABLE, 80 * MS);
+        metrics.mark(id, CaptureMetrics.Stage.BUFFER_COPIED, 81 * MS);
+        metrics.mark(id, CaptureMetrics.Stage.FILE_WRITTEN, 101 * MS);
+
+        assertEquals(2 * MS, metrics.getStageHistogram(CaptureMetrics.Stage.SUBMITTED).getMaxNanos());
+        assertEquals(50 * MS, metrics.getStageHistogram(CaptureMetrics.Stage.CAPTURE_COMPLETED).getMaxNanos());
+        assertEquals(28 * MS, metrics.getStageHistogram(CaptureMetrics.Stage.IMAGE_AVAILABLE).getMaxNanos());
+        assertEquals(20 * MS, metrics.getStageHistogram(CaptureMetrics.Stage.FILE_WRITTEN).getMaxNanos());
+        assertEquals(0, metrics.getStageHistogram(CaptureMetrics.Stage.SESSION_CONFIGURED).getCount());
+        assertEquals(101 * MS, metrics.getTotalHistogram().getMaxNanos());
+        assertEquals(1, metrics.getCapturesCompleted());
+        assertEquals(0, metrics.getCapturesInFlight());
+    }
+
+    @Test
+    public void markNext_attributesCallbacksInSubmissionOrder() {
+        CaptureMetrics metrics = new CaptureMetrics(8);
+        long first = metrics.begin(0);
+        long second = metrics.begin(1 * MS);
+        long pending = metrics.begin(2 * MS); // Not submitted yet.
+        metrics.markNext(CaptureMetrics.Stage.SUBMITTED, 3 * MS);
+        metrics.markNext(CaptureMetrics.Stage.SUBMITTED, 3 * MS);
+
+        // The image of the first capture arrives before its result.
+        assertEquals(first, metrics.markNext(CaptureMetrics.Stage.IMAGE_AVAILABLE, 10 * MS));
+        assertEquals(first, metrics.markNext(CaptureMetrics.Stage.CAPTURE_COMPLETED, 11 * MS));
+        assertEquals(second, metrics.markNext(CaptureMetrics.Stage.CAPTURE_COMPLETED, 12 * MS));
+        assertEquals(second, metrics.markNext(CaptureMetrics.Stage.IMAGE_AVAILABLE, 13 * MS));
+        // The pending capture was never submitted, so it cannot have a result.
+        assertEquals(-1, metrics.markNext(CaptureMetrics.Stage.CAPTURE_COMPLETED, 14 * MS));
+
+        metrics.markAll(CaptureMetrics.Stage.SESSION_CONFIGURED, 20 * MS);
+        assertEquals(1, metrics.getStageHistogram(CaptureMetrics.Stage.SESSION_CONFIGURED).getCount());
+        assertEquals(18 * MS, metrics.getStageHistogram(CaptureMetrics.Stage.SESSION_CONFIGURED).getMaxNanos());
+        assertEquals(pending, metrics.markNext(CaptureMetrics.Stage.SUBMITTED, 21 * MS));
+    }
+
+    @Test
+    public void failuresDropsAndOverflow_areCounted() {
+        CaptureMetrics metrics = new CaptureMetrics(2);
+        long failed = metrics.begin(0);
+        long dropped = metrics.begin(0);
+        metrics.fail(failed);
+        metrics.drop(dropped);
+        metrics.fail(failed); // Already finished.
+
+        metrics.begin(0);
+        metrics.begin(0);
+        metrics.begin(0); // Evicts the oldest capture still in flight.
+        metrics.markNext(CaptureMetrics.Stage.SUBMITTED, 0);
+        assertTrue(metrics.failNext(CaptureMetrics.Stage.CAPTURE_COMPLETED) >= 0);
+
+        assertEquals(2, metrics.getCapturesFailed());
+        assertEquals(1, metrics.getFramesDropped());
+        assertEquals(1, metrics.getCapturesAbandoned());
+        assertEquals(5, metrics.getCapturesStarted());
+        assertEquals(1, metrics.getCapturesInFlight());
+        assertTrue(metrics.dump().startsWith("captures started=5 completed=0 failed=2 dropped=1 abandoned=1"));
+    }
+
+    @Test
+    public void recording_isAllocationFree() {
+        CaptureMetrics metrics = new CaptureMetrics();
+        CaptureMetrics.Stage[] stages = {CaptureMetrics.Stage.SUBMITTED, CaptureMetrics.Stage.CAPTURE_COMPLETED,
+                CaptureMetrics.Stage.IMAGE_AVAILABLE, CaptureMetrics.Stage.BUFFER_COPIED,
+                CaptureMetrics.Stage.FILE_WRITTEN};
+        // Warm up so the JIT has compiled the recording path.
+        for (int i = 0; i < 20_000; i++) {
+            recordCapture(metrics, stages);
+        }
+
+        int captures = 100_000;
+        long before = AllocationMeter.allocatedBytes();
+        for (int i = 0; i < captures; i++) {
+            recordCapture(metrics, stages);
+        }
+        long allocated = AllocationMeter.allocatedBytes() - before;
+
+        assertTrue("allocated " + allocated, allocated < 1024);
+    }
+
+    private static void recordCapture(CaptureMetrics metrics, CaptureMetrics.Stage[] stages) {
+        long id = metrics.begin();
+        metrics.markNext(stages[0]);
+        for (int i = 1; i < stages.length; i++) {
+            metrics.mark(id, stages[i]);
+        }
+    }
+}
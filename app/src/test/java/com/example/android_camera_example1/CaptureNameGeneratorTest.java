@@ -0,0 +1,42 @@
+package com.example.android_camera_example1;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class CaptureNameGeneratorTest {
+    @Test
+    public void next_matchesDateFormatInAnyTimeZone() {
+        long[] times = {0L, 951782400000L, 1704067199999L, 1718000000123L, 4102444800000L, -86400001L};
+        for (String zone : new String[] {"UTC", "Asia/Seoul", "America/Los_Angeles", "Asia/Kolkata"}) {
+            TimeZone timeZone = TimeZone.getTimeZone(zone);
+            SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd_HHmmss_SSS");
+            format.setTimeZone(timeZone);
+            for (long time : times) {
+                CaptureNameGenerator generator = new CaptureNameGenerator(timeZone);
+                assertEquals(zone + " " + time, "IMG_" + format.format(new Date(time)) + ".jpg",
+                        generator.next("IMG_", ".jpg", time));
+            }
+        }
+    }
+
+    @Test
+    public void next_neverRepeatsWithinTheSameMillisecond() {
+        CaptureNameGenerator generator = new CaptureNameGenerator(TimeZone.getTimeZone("UTC"));
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(names.add(generator.next("IMG_", ".jpg", 1718000000000L)));
+        }
+        // After the clock steps back, names keep increasing.
+        String last = generator.next("IMG_", ".jpg", 1718000000000L);
+        String stepped = generator.next("IMG_", ".jpg", 1717000000000L);
+        assertTrue(stepped.compareTo(last) > 0);
+        assertEquals("IMG_20240610_061321_001.jpg", stepped);
+    }
+}
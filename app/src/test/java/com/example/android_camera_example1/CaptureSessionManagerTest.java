@@ -0,0 +1,157 @@
+package com.example.android_camera_example1;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CaptureSessionManagerTest {
+    private FakeBackend mBackend;
+    private CaptureSessionManager mManager;
+
+    @Before
+    public void setUp() {
+        mBackend = new FakeBackend();
+        mManager = new CaptureSessionManager(mBackend);
+    }
+
+    @Test
+    public void stills_doNotReconfigureSession() {
+        mManager.open();
+        mManager.onSessionConfigured();
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(mManager.requestStill());
+        }
+
+        assertEquals(1, mManager.getReconfigurationCount());
+        assertEquals(1, mBackend.createCount);
+        assertEquals(1, mBackend.repeatingCount);
+        assertEquals(10, mBackend.stillCount);
+        assertEquals(10, mManager.getStillCaptureCount());
+    }
+
+    @Test
+    public void open_isIdempotentWhileSessionIsOpen() {
+        mManager.open();
+        mManager.open();
+        mManager.onSessionConfigured();
+        mManager.open();
+
+        assertEquals(1, mManager.getReconfigurationCount());
+        assertTrue(mManager.isReady());
+    }
+
+    @Test
+    public void stillsRequestedWhileConfiguring_areSubmittedOnceConfigured() {
+        mManager.open();
+        assertTrue(mManager.requestStill());
+        assertTrue(mManager.requestStill());
+        assertEquals(0, mBackend.stillCount);
+
+        mManager.onSessionConfigured();
+
+        assertEquals(2, mBackend.stillCount);
+    }
+
+    @Test
+    public void requestStill_failsWhenClosed() {
+        assertFalse(mManager.requestStill());
+
+        mManager.open();
+        mManager.onSessionConfigured();
+        mManager.close();
+
+        assertFalse(mManager.requestStill());
+        assertEquals(1, mBackend.closeCount);
+    }
+
+    @Test
+    public void reopenAfterClose_reconfiguresOnce() {
+        mManager.open();
+        mManager.onSessionConfigured();
+        mManager.close();
+        mManager.open();
+        mManager.onSessionConfigured();
+
+        assertEquals(2, mManager.getReconfigurationCount());
+    }
+
+    @Test
+    public void configureFailure_dropsPendingStills() {
+        mManager.open();
+        mManager.requestStill();
+        mManager.onSessionConfigureFailed();
+
+        assertFalse(mManager.isReady());
+        assertFalse(mManager.requestStill());
+        assertEquals(0, mBackend.stillCount);
+        assertEquals(1, mBackend.droppedCount);
+    }
+
+    @Test
+    public void close_reportsStillsStillWaitingForTheSession() {
+        mManager.open();
+        mManager.requestStill();
+        mManager.requestStill();
+        mManager.close();
+
+        assertEquals(0, mBackend.stillCount);
+        assertEquals(2, mBackend.droppedCount);
+
+        mManager.open();
+        mManager.onSessionConfigured();
+        assertEquals(0, mBackend.stillCount); // Nothing left over for the next session.
+    }
+
+    @Test
+    public void refusedPendingStills_areReported() {
+        mManager.open();
+        mManager.requestStill();
+        mBackend.refuseStills = true;
+        mManager.onSessionConfigured();
+
+        assertEquals(1, mBackend.droppedCount);
+        assertEquals(0, mManager.getStillCaptureCount());
+    }
+
+    private static class FakeBackend implements CaptureSessionManager.SessionBackend {
+        int createCount;
+        int repeatingCount;
+        int stillCount;
+        int closeCount;
+        int droppedCount;
+        boolean refuseStills;
+
+        @Override
+        public boolean createSession() {
+            createCount++;
+            return true;
+        }
+
+        @Override
+        public boolean startRepeatingPreview() {
+            repeatingCount++;
+            return true;
+        }
+
+        @Override
+        public boolean submitStillCapture() {
+            if (refuseStills) {
+                return false;
+            }
+            stillCount++;
+            return true;
+        }
+
+        @Override
+        public void closeSession() {
+            closeCount++;
+        }
+
+        @Override
+        public void onStillsDropped(int count) {
+            droppedCount += count;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.android_camera_example1;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class CapturedFrameTest {
+    @Test
+    public void close_releasesOwnerOnce() {
+        final int[] closeCount = new int[1];
+        CapturedFrame frame = new CapturedFrame(ByteBuffer.allocate(4), new AutoCloseable() {
+            @Override
+            public void close() {
+                closeCount[0]++;
+            }
+        });
+
+        frame.close();
+        frame.close();
+
+        assertEquals(1, closeCount[0]);
+    }
+
+    @Test
+    public void getData_doesNotConsumeFrame() {
+        CapturedFrame frame = new CapturedFrame(ByteBuffer.wrap(new byte[] {1, 2, 3}), null);
+
+        ByteBuffer first = frame.getData();
+        first.get(new byte[3]);
+
+        assertEquals(3, frame.size());
+        assertEquals(3, frame.getData().remaining());
+        assertEquals(1, frame.getData().get());
+    }
+
+    @Test
+    public void getData_sharesFrameMemory() {
+        ByteBuffer data = ByteBuffer.allocateDirect(4 * 1024 * 1024);
+        CapturedFrame frame = new CapturedFrame(data, null);
+
+        long before = AllocationMeter.allocatedBytes();
+        ByteBuffer view = frame.getData();
+        long allocated = AllocationMeter.allocatedBytes() - before;
+
+        assertTrue(view.isDirect());
+        assertTrue("allocated=" + allocated, allocated < 1024);
+    }
+}
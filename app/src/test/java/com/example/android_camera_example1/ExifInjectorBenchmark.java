@@ -0,0 +1,91 @@
+package com.example.android_camera_example1;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+// Cost of writing a JPEG with the EXIF segment injected, against a plain write and against
+// writing the file and then rewriting its EXIF. Wall-clock results depend on the machine and its
+// storage, so this is skipped by the unit tests; run it with -Dbenchmark=true.
+public class ExifInjectorBenchmark {
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Before
+    public void assumeEnabled() {
+        Assume.assumeTrue("benchmark disabled", Boolean.getBoolean("benchmark"));
+    }
+
+    @Test
+    public void injectedWrite_costsAboutAsMuchAsPlainWrite() throws IOException {
+        final int images = 20;
+        ByteBuffer jpeg = ExifInjectorTest.largeJpeg(4 * 1024 * 1024);
+        CaptureMetadata metadata = ExifInjectorTest.metadata();
+        try (RandomAccessFile output = new RandomAccessFile(mFolder.newFile("IMG.jpg"), "rw");
+             FileChannel channel = output.getChannel()) {
+            // Warm up both paths, then time building the header on its own.
+            write(channel, new ByteBuffer[] {jpeg.duplicate()});
+            for (int i = 0; i < 2000; i++) {
+                ExifInjector.inject(jpeg, metadata, UTC);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < 1000; i++) {
+                ExifInjector.inject(jpeg, metadata, UTC);
+            }
+            double injectMicros = (System.nanoTime() - start) / 1e3 / 1000;
+
+            start = System.nanoTime();
+            for (int i = 0; i < images; i++) {
+                write(channel, new ByteBuffer[] {jpeg.duplicate()});
+            }
+            long plainNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < images; i++) {
+                write(channel, ExifInjector.inject(jpeg, metadata, UTC));
+            }
+            long injectedNanos = System.nanoTime() - start;
+            long injectedSize = channel.size();
+
+            // What editing the file afterwards costs: write, read it back, write it again.
+            ByteBuffer readBack = ByteBuffer.allocateDirect((int) injectedSize + 1024);
+            start = System.nanoTime();
+            for (int i = 0; i < images; i++) {
+                write(channel, new ByteBuffer[] {jpeg.duplicate()});
+                readBack.clear();
+                channel.read(readBack, 0);
+                readBack.flip();
+                write(channel, ExifInjector.inject(readBack, metadata, UTC));
+            }
+            long rewriteNanos = System.nanoTime() - start;
+
+            System.out.println(String.format(Locale.US,
+                    "ExifInjector: %.1f us per inject; %.2f ms plain, %.2f ms injected, %.2f ms write-then-rewrite per 4 MB image",
+                    injectMicros, plainNanos / 1e6 / images, injectedNanos / 1e6 / images, rewriteNanos / 1e6 / images));
+            assertTrue("size " + injectedSize, Math.abs(injectedSize - jpeg.remaining()) < 1024);
+            assertTrue("injected " + injectedNanos + " ns, write-then-rewrite " + rewriteNanos + " ns",
+                    injectedNanos < rewriteNanos);
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer[] data) throws IOException {
+        channel.position(0);
+        while (data[data.length - 1].hasRemaining()) {
+            channel.write(data);
+        }
+        channel.truncate(channel.position());
+    }
+}
@@ -0,0 +1,296 @@
+package com.example.android_camera_example1;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class ExifInjectorTest {
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void inject_writesCaptureResultAndKeepsCameraFields() {
+        ByteBuffer jpeg = ExifReaderTest.createJpeg(ByteOrder.LITTLE_ENDIAN, true);
+        int position = jpeg.position();
+
+        byte[] result = concat(ExifInjector.inject(jpeg, metadata(), UTC));
+
+        assertEquals(position, jpeg.position());
+        ByteBuffer data = ByteBuffer.wrap(result);
+        assertEquals(ExifReader.MARKER_SOI, data.getShort(0) & 0xFFFF);
+        assertEquals(2, ExifReader.findExifSegment(data)); // The new segment comes first.
+        assertEquals(6, ExifReader.findOrientation(data));
+        assertEquals(ByteBuffer.wrap(ExifReaderTest.THUMBNAIL), ExifReader.findThumbnail(data));
+
+        assertEquals(ByteBuffer.wrap(rational(10000, 1000000)), findTag(result, 0x829A)); // 1/100 s.
+        assertEquals(ByteBuffer.wrap(rational(180, 100)), findTag(result, 0x829D)); // f/1.8
+        assertEquals(400, findTag(result, 0x8827).getShort());
+        assertEquals(ByteBuffer.wrap(rational(500, 1000)), findTag(result, 0x9206)); // 2 diopters is 0.5 m.
+        assertEquals(ByteBuffer.wrap(rational(470, 100)), findTag(result, 0x920A));
+        assertEquals("Pixel\0", text(findTag(result, 0x010F)));
+        assertEquals("2024:06:10 06:13:20\0", text(findTag(result, 0x9003)));
+        assertEquals("123\0", text(findTag(result, 0x9291)));
+        assertEquals("ASCII\0\0\0SensorTimestamp=987654321; LensState=stationary", text(findTag(result, 0x9286)));
+
+        // The camera's segment is gone; JFIF APP0 and the image data follow the new segment.
+        assertEquals(1, count(result, "Exif\0\0"));
+        assertEquals(1, count(result, "JFIF"));
+        assertEquals((byte) 0xD9, result[result.length - 1]);
+    }
+
+    @Test
+    public void inject_dateTimeMatchesDateFormatInLocalTime() {
+        TimeZone seoul = TimeZone.getTimeZone("Asia/Seoul");
+        SimpleDateFormat format = new SimpleDateFormat("yyyy:MM:dd HH:mm:ss", Locale.US);
+        format.setTimeZone(seoul);
+        CaptureMetadata metadata = metadata();
+
+        byte[] result = concat(ExifInjector.inject(ExifReaderTest.createJpeg(ByteOrder.BIG_ENDIAN, false), metadata, seoul));
+
+        assertEquals(format.format(new Date(metadata.timeMillis)) + "\0", text(findTag(result, 0x0132)));
+        assertNull(ExifReader.findThumbnail(ByteBuffer.wrap(result)));
+    }
+
+    @Test
+    public void inject_referencesImageDataWithoutCopying() {
+        ByteBuffer jpeg = largeJpeg(64 * 1024);
+
+        ByteBuffer[] buffers = ExifInjector.inject(jpeg, metadata(), UTC);
+
+        ByteBuffer imageData = buffers[buffers.length - 1];
+        assertTrue(imageData.isDirect());
+        jpeg.put(jpeg.limit() - 3, (byte) 0x42);
+        assertEquals(0x42, imageData.get(imageData.limit() - 3));
+    }
+
+    @Test
+    public void inject_leavesUnknownFieldsOutAndPassesOtherDataThrough() {
+        CaptureMetadata metadata = new CaptureMetadata();
+        byte[] result = concat(ExifInjector.inject(ExifReaderTest.createJpeg(ByteOrder.BIG_ENDIAN, true), metadata, UTC));
+        assertNull(findTag(result, 0x829A));
+        assertNull(findTag(result, 0x8827));
+        assertNull(findTag(result, 0x010F));
+        assertEquals("ASCII\0\0\0SensorTimestamp=0; LensState=unknown", text(findTag(result, 0x9286)));
+
+        ByteBuffer notJpeg = ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 5});
+        ByteBuffer[] buffers = ExifInjector.inject(notJpeg, metadata);
+        assertEquals(1, buffers.length);
+        assertEquals(notJpeg, buffers[0]);
+    }
+
+    @Test
+    public void createHeader_dropsThumbnailThatDoesNotFitTheSegment() {
+        ByteBuffer thumbnail = ByteBuffer.allocate(70000);
+        thumbnail.putShort(0, (short) ExifReader.MARKER_SOI);
+
+        ByteBuffer jpeg = ExifReaderTest.createJpeg(ByteOrder.BIG_ENDIAN, false);
+
+        ByteBuffer header = ExifInjector.createHeader(metadata(), ExifInjector.readCameraFields(jpeg), thumbnail, UTC);
+
+        assertTrue(header.remaining() < 1024);
+        assertEquals(6, ExifReader.findOrientation(header));
+        assertNull(ExifReader.findThumbnail(header));
+    }
+
+    @Test
+    public void inject_mergesIntoTheCameraTagsOfEitherByteOrder() {
+        for (ByteOrder order : new ByteOrder[] {ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN}) {
+            byte[] result = concat(ExifInjector.inject(cameraJpeg(order), metadata(), UTC));
+
+            assertEquals(0x19, findTag(result, 0x9209).getShort()); // Flash, from the camera.
+            assertEquals(1, findTag(result, 0xA403).getShort()); // White balance.
+            assertEquals(ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 5, 6}), findTag(result, 0x927C)); // Maker note.
+            assertEquals("N\0", text(findTag(result, 0x0001))); // GPS latitude reference.
+            ByteBuffer latitude = ByteBuffer.allocate(24).putInt(37).putInt(1).putInt(30).putInt(1).putInt(1234).putInt(100);
+            latitude.flip();
+            assertEquals(latitude, findTag(result, 0x0002));
+            assertEquals(6, ExifReader.findOrientation(ByteBuffer.wrap(result)));
+
+            // The capture result wins where both know the field.
+            assertEquals(ByteBuffer.wrap(rational(10000, 1000000)), findTag(result, 0x829A));
+            assertEquals("Pixel\0", text(findTag(result, 0x010F)));
+            assertEquals(1, count(result, "Exif\0\0"));
+        }
+
+        CaptureMetadata withoutMake = metadata();
+        withoutMake.make = null;
+        byte[] result = concat(ExifInjector.inject(cameraJpeg(ByteOrder.LITTLE_ENDIAN), withoutMake, UTC));
+        assertEquals("Camera\0", text(findTag(result, 0x010F)));
+    }
+
+    @Test
+    public void injectedWrite_addsOnlyTheHeader() throws IOException {
+        ByteBuffer jpeg = largeJpeg(4 * 1024 * 1024);
+        File file = mFolder.newFile("IMG.jpg");
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw");
+             FileChannel channel = output.getChannel()) {
+            write(channel, ExifInjector.inject(jpeg, metadata(), UTC));
+
+            assertTrue("size " + channel.size(), Math.abs(channel.size() - jpeg.remaining()) < 1024);
+        }
+    }
+
+    static CaptureMetadata metadata() {
+        CaptureMetadata metadata = new CaptureMetadata();
+        metadata.sensorTimestampNanos = 987654321L;
+        metadata.timeMillis = 1718000000123L;
+        metadata.exposureTimeNanos = 10_000_000L;
+        metadata.sensitivity = 400;
+        metadata.focusDistance = 2f;
+        metadata.aperture = 1.8f;
+        metadata.focalLength = 4.7f;
+        metadata.lensState = CaptureMetadata.LENS_STATE_STATIONARY;
+        metadata.make = "Pixel";
+        metadata.model = "Test";
+        return metadata;
+    }
+
+    // A JPEG whose EXIF segment holds IFD0 with make and orientation, an Exif IFD with
+    // exposure time, maker note, flash and white balance, and a GPS IFD with the latitude.
+    private static ByteBuffer cameraJpeg(ByteOrder order) {
+        ByteBuffer tiff = ByteBuffer.allocate(192).order(order);
+        tiff.put(order == ByteOrder.BIG_ENDIAN ? (byte) 'M' : (byte) 'I');
+        tiff.put(order == ByteOrder.BIG_ENDIAN ? (byte) 'M' : (byte) 'I');
+        tiff.putShort((short) 42).putInt(8);
+        tiff.putShort((short) 4); // IFD0 at 8, its values at 62.
+        putEntry(tiff, 0x010F, 2, 7, 62);
+        tiff.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) 6).putShort((short) 0);
+        putEntry(tiff, 0x8769, 4, 1, 70);
+        putEntry(tiff, 0x8825, 4, 1, 138);
+        tiff.putInt(0);
+        tiff.put("Camera\0\0".getBytes(US_ASCII));
+        tiff.putShort((short) 4); // Exif IFD at 70, its values at 124.
+        putEntry(tiff, 0x829A, 5, 1, 124);
+        tiff.putShort((short) 0x9209).putShort((short) 3).putInt(1).putShort((short) 0x19).putShort((short) 0);
+        putEntry(tiff, 0x927C, 7, 6, 132);
+        tiff.putShort((short) 0xA403).putShort((short) 3).putInt(1).putShort((short) 1).putShort((short) 0);
+        tiff.putInt(0);
+        tiff.putInt(1).putInt(50);
+        tiff.put(new byte[] {1, 2, 3, 4, 5, 6});
+        tiff.putShort((short) 2); // GPS IFD at 138, its values at 168.
+        tiff.putShort((short) 0x0001).putShort((short) 2).putInt(2).put((byte) 'N').put(new byte[3]);
+        putEntry(tiff, 0x0002, 5, 3, 168);
+        tiff.putInt(0);
+        tiff.putInt(37).putInt(1).putInt(30).putInt(1).putInt(1234).putInt(100);
+        tiff.flip();
+
+        ByteBuffer jpeg = ByteBuffer.allocate(256);
+        jpeg.putShort((short) 0xFFD8);
+        jpeg.putShort((short) 0xFFE1).putShort((short) (2 + 6 + tiff.remaining()));
+        jpeg.put("Exif".getBytes(US_ASCII)).put((byte) 0).put((byte) 0).put(tiff);
+        jpeg.putShort((short) 0xFFDA).putShort((short) 2).put(new byte[] {9, 9, 9}).putShort((short) 0xFFD9);
+        jpeg.flip();
+        return jpeg;
+    }
+
+    private static void putEntry(ByteBuffer tiff, int tag, int type, int count, int valueOrOffset) {
+        tiff.putShort((short) tag).putShort((short) type).putInt(count).putInt(valueOrOffset);
+    }
+
+    // A direct buffer holding the small test JPEG's header followed by size bytes in all.
+    static ByteBuffer largeJpeg(int size) {
+        ByteBuffer header = ExifReaderTest.createJpeg(ByteOrder.BIG_ENDIAN, true);
+        header.limit(header.limit() - 2); // Without its EOI.
+        ByteBuffer jpeg = ByteBuffer.allocateDirect(size);
+        jpeg.put(header);
+        while (jpeg.remaining() > 2) {
+            jpeg.put((byte) 0x55);
+        }
+        jpeg.putShort((short) 0xFFD9);
+        jpeg.flip();
+        return jpeg;
+    }
+
+    private static void write(FileChannel channel, ByteBuffer[] data) throws IOException {
+        channel.position(0);
+        while (data[data.length - 1].hasRemaining()) {
+            channel.write(data);
+        }
+        channel.truncate(channel.position());
+    }
+
+    private static byte[] concat(ByteBuffer[] buffers) {
+        int size = 0;
+        for (ByteBuffer buffer : buffers) {
+            size += buffer.remaining();
+        }
+        ByteBuffer result = ByteBuffer.allocate(size);
+        for (ByteBuffer buffer : buffers) {
+            result.put(buffer.duplicate());
+        }
+        return result.array();
+    }
+
+    private static byte[] rational(int numerator, int denominator) {
+        return ByteBuffer.allocate(8).putInt(numerator).putInt(denominator).array();
+    }
+
+    private static String text(ByteBuffer value) {
+        byte[] bytes = new byte[value.remaining()];
+        value.get(bytes);
+        return new String(bytes, US_ASCII);
+    }
+
+    private static int count(byte[] data, String text) {
+        byte[] pattern = text.getBytes(US_ASCII);
+        int matches = 0;
+        for (int i = 0; i + pattern.length <= data.length; i++) {
+            int j = 0;
+            while (j < pattern.length && data[i + j] == pattern[j]) {
+                j++;
+            }
+            if (j == pattern.length) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    // The value of tag in IFD0, the Exif IFD or the GPS IFD of jpeg, whose EXIF segment is
+    // big-endian, or null if it has no such tag.
+    private static ByteBuffer findTag(byte[] jpeg, int tag) {
+        ByteBuffer data = ByteBuffer.wrap(jpeg);
+        int tiff = ExifReader.findExifSegment(data) + 4 + ExifReader.EXIF_HEADER_SIZE;
+        List<Integer> ifds = new ArrayList<>();
+        ifds.add(tiff + data.getInt(tiff + 4));
+        for (int pass = 0; pass < ifds.size(); pass++) {
+            int ifd = ifds.get(pass);
+            int entries = data.getShort(ifd);
+            for (int i = 0; i < entries; i++) {
+                int entry = ifd + 2 + i * 12;
+                int entryTag = data.getShort(entry) & 0xFFFF;
+                if (entryTag == tag) {
+                    int type = data.getShort(entry + 2);
+                    int size = data.getInt(entry + 4) * (type == 3 ? 2 : type == 4 ? 4 : type == 5 ? 8 : 1);
+                    int value = size <= 4 ? entry + 8 : tiff + data.getInt(entry + 8);
+                    ByteBuffer view = data.duplicate();
+                    view.limit(value + size).position(value);
+                    return view.slice();
+                }
+                if (pass == 0 && (entryTag == 0x8769 || entryTag == 0x8825)) {
+                    ifds.add(tiff + data.getInt(entry + 8));
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.android_camera_example1;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class ExifReaderTest {
+    static final byte[] THUMBNAIL = {(byte) 0xFF, (byte) 0xD8, 1, 2, 3, 4, 5, (byte) 0xFF, (byte) 0xD9};
+
+    @Test
+    public void findThumbnail_returnsEmbeddedThumbnailInEitherByteOrder() {
+        for (ByteOrder order : new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            ByteBuffer jpeg = createJpeg(order, true);
+            int position = jpeg.position();
+
+            ByteBuffer thumbnail = ExifReader.findThumbnail(jpeg);
+            assertNotNull(order.toString(), thumbnail);
+            assertEquals(ByteBuffer.wrap(THUMBNAIL), thumbnail);
+            assertTrue(thumbnail.isReadOnly());
+            assertEquals(position, jpeg.position());
+        }
+    }
+
+    @Test
+    public void findThumbnail_returnsNullWithoutThumbnail() {
+        assertNull(ExifReader.findThumbnail(createJpeg(ByteOrder.BIG_ENDIAN, false)));
+        assertNull(ExifReader.findThumbnail(ByteBuffer.wrap(new byte[] {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xDA,
+                0, 2, (byte) 0xFF, (byte) 0xD9})));
+        assertNull(ExifReader.findThumbnail(ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 5, 6})));
+    }
+
+    @Test
+    public void findThumbnail_rejectsOffsetsOutsideTheSegment() {
+        ByteBuffer jpeg = createJpeg(ByteOrder.BIG_ENDIAN, true);
+        // Point JPEGInterchangeFormatLength past the end of the APP1 segment.
+        int entry = jpeg.limit() - 2;
+        while (jpeg.getShort(entry) != 0x0202) {
+            entry--;
+        }
+        jpeg.putInt(entry + 8, 10000);
+        assertNull(ExifReader.findThumbnail(jpeg));
+    }
+
+    @Test
+    public void findOrientation_readsTagInEitherByteOrder() {
+        assertEquals(6, ExifReader.findOrientation(createJpeg(ByteOrder.BIG_ENDIAN, false)));
+        assertEquals(6, ExifReader.findOrientation(createJpeg(ByteOrder.LITTLE_ENDIAN, true)));
+        assertEquals(0, ExifReader.findOrientation(ByteBuffer.wrap(new byte[] {(byte) 0xFF, (byte) 0xD8,
+                (byte) 0xFF, (byte) 0xDA, 0, 2, (byte) 0xFF, (byte) 0xD9})));
+    }
+
+    // SOI, a JFIF APP0, an EXIF APP1 with an orientation tag in IFD0 and, if withThumbnail, an
+    // IFD1 pointing at THUMBNAIL; then a stand-in for the scan data.
+    static ByteBuffer createJpeg(ByteOrder order, boolean withThumbnail) {
+        ByteBuffer tiff = ByteBuffer.allocate(256).order(order);
+        tiff.put(order == ByteOrder.BIG_ENDIAN ? (byte) 'M' : (byte) 'I');
+        tiff.put(order == ByteOrder.BIG_ENDIAN ? (byte) 'M' : (byte) 'I');
+        tiff.putShort((short) 42).putInt(8);
+        tiff.putShort((short) 1); // IFD0: orientation only.
+        tiff.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) 6).putShort((short) 0);
+        int ifd1 = tiff.position() + 4;
+        tiff.putInt(withThumbnail ? ifd1 : 0);
+        if (withThumbnail) {
+            int thumbnailOffset = ifd1 + 2 + 2 * 12 + 4;
+            tiff.putShort((short) 2);
+            tiff.putShort((short) 0x0201).putShort((short) 4).putInt(1).putInt(thumbnailOffset);
+            tiff.putShort((short) 0x0202).putShort((short) 4).putInt(1).putInt(THUMBNAIL.length);
+            tiff.putInt(0);
+            tiff.put(THUMBNAIL);
+        }
+        tiff.flip();
+
+        ByteBuffer jpeg = ByteBuffer.allocate(512);
+        jpeg.put(new byte[] {0, 0, 0}); // Start away from 0 to check positions are honoured.
+        jpeg.putShort((short) 0xFFD8);
+        jpeg.putShort((short) 0xFFE0).putShort((short) 16).put("JFIF".getBytes()).put(new byte[10]);
+        jpeg.putShort((short) 0xFFE1).putShort((short) (2 + 6 + tiff.remaining()));
+        jpeg.put("Exif".getBytes()).put((byte) 0).put((byte) 0).put(tiff);
+        jpeg.putShort((short) 0xFFDA).putShort((short) 2).put(new byte[] {9, 9, 9}).putShort((short) 0xFFD9);
+        jpeg.flip();
+        jpeg.position(3);
+        return jpeg;
+    }
+}
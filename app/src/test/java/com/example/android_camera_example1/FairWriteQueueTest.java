@@ -0,0 +1,99 @@
+package com.example.android_camera_example1;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class FairWriteQueueTest {
+    @Test
+    public void poll_servesSourcesRoundRobin() throws InterruptedException {
+        FairWriteQueue<String> queue = new FairWriteQueue<>(16);
+        for (int i = 0; i < 4; i++) {
+            queue.put("back", "b" + i);
+        }
+        queue.put("front", "f0");
+        queue.put("front", "f1");
+        queue.put("wide", "w0");
+
+        List<String> order = new ArrayList<>();
+        assertEquals(7, queue.drainTo(order, 100));
+
+        assertEquals(Arrays.asList("b0", "f0", "w0", "b1", "f1", "b2", "b3"), order);
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void loneSource_getsTheWholeCapacity() throws InterruptedException {
+        FairWriteQueue<Integer> queue = new FairWriteQueue<>(8);
+        for (int i = 0; i < 8; i++) {
+            queue.put("back", i);
+        }
+
+        assertEquals(8, queue.size("back"));
+        assertEquals(4, queue.getFairShare("front"));
+    }
+
+    @Test
+    public void burstingSource_blocksOnItsShareWhileAnotherQueues() throws Exception {
+        final FairWriteQueue<Integer> queue = new FairWriteQueue<>(4);
+        queue.put("back", 0);
+        queue.put("back", 1);
+        queue.put("front", 100);
+
+        // The back camera holds its share of two, so its next image waits for one of its own.
+        final CountDownLatch queued = new CountDownLatch(1);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    queue.put("back", 2);
+                    queued.countDown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        producer.start();
+        assertFalse(queued.await(100, TimeUnit.MILLISECONDS));
+        queue.put("front", 101); // Still within the front camera's share.
+
+        assertEquals(Integer.valueOf(0), queue.poll());
+        assertTrue(queued.await(5, TimeUnit.SECONDS));
+        producer.join();
+        assertEquals(2, queue.size("back"));
+        assertEquals(2, queue.size("front"));
+    }
+
+    @Test
+    public void interruptedPut_leavesTheQueueUnchanged() throws Exception {
+        final FairWriteQueue<Integer> queue = new FairWriteQueue<>(1);
+        queue.put("back", 0);
+        final boolean[] interrupted = new boolean[1];
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    queue.put("front", 1);
+                } catch (InterruptedException e) {
+                    interrupted[0] = true;
+                }
+            }
+        });
+        producer.start();
+        Thread.sleep(50);
+
+        producer.interrupt();
+        producer.join(5000);
+
+        assertTrue(interrupted[0]);
+        assertEquals(1, queue.size());
+        assertEquals(1, queue.getFairShare("back")); // The waiting front camera no longer counts.
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.android_camera_example1;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class FrameAnalysisDispatcherTest {
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 4;
+
+    @Test
+    public void busyAnalyzer_onlySeesLatestFrame() {
+        ManualExecutor executor = new ManualExecutor();
+        RecordingAnalyzer analyzer = new RecordingAnalyzer();
+        FrameAnalysisDispatcher dispatcher = new FrameAnalysisDispatcher(executor, analyzer);
+        AtomicInteger released = new AtomicInteger();
+
+        dispatcher.submit(createFrame(1, released));
+        dispatcher.submit(createFrame(2, released));
+        dispatcher.submit(createFrame(3, released));
+        assertEquals(1, executor.tasks.size()); // One drain task, however many frames arrive.
+        executor.runAll();
+
+        assertEquals(1, analyzer.timestamps.size());
+        assertEquals(Long.valueOf(3), analyzer.timestamps.get(0));
+        assertEquals(3, released.get()); // Dropped frames are released too.
+        assertEquals(3, dispatcher.getFramesSubmitted());
+        assertEquals(1, dispatcher.getFramesAnalyzed());
+        assertEquals(2, dispatcher.getFramesDropped());
+        assertEquals(2.0 / 3, dispatcher.getDropRate(), 1e-9);
+    }
+
+    @Test
+    public void idleAnalyzer_seesEveryFrame() {
+        ManualExecutor executor = new ManualExecutor();
+        RecordingAnalyzer analyzer = new RecordingAnalyzer();
+        FrameAnalysisDispatcher dispatcher = new FrameAnalysisDispatcher(executor, analyzer);
+
+        for (int i = 0; i < 5; i++) {
+            dispatcher.submit(createFrame(i, null));
+            executor.runAll();
+        }
+
+        assertEquals(5, analyzer.timestamps.size());
+        assertEquals(0, dispatcher.getFramesDropped());
+    }
+
+    @Test
+    public void analyzer_readsSyntheticPlaneWithStrides() {
+        ManualExecutor executor = new ManualExecutor();
+        final long[] sum = new long[1];
+        FrameAnalysisDispatcher dispatcher = new FrameAnalysisDispatcher(executor, new FrameAnalyzer() {
+            @Override
+            public void analyze(AnalysisFrame frame) {
+                AnalysisFrame.Plane y = frame.getY();
+                for (int row = 0; row < frame.getHeight(); row++) {
+                    for (int col = 0; col < frame.getWidth(); col++) {
+                        sum[0] += y.getBuffer().get(row * y.getRowStride() + col * y.getPixelStride()) & 0xFF;
+                    }
+                }
+            }
+        });
+
+        dispatcher.submit(createFrame(0, null));
+        executor.runAll();
+
+        // Every luma sample is 10; the row padding holds 255 and must not be read.
+        assertEquals(10L * WIDTH * HEIGHT, sum[0]);
+    }
+
+    @Test
+    public void clear_releasesWaitingFrame() {
+        ManualExecutor executor = new ManualExecutor();
+        RecordingAnalyzer analyzer = new RecordingAnalyzer();
+        FrameAnalysisDispatcher dispatcher = new FrameAnalysisDispatcher(executor, analyzer);
+        AtomicInteger released = new AtomicInteger();
+
+        dispatcher.submit(createFrame(1, released));
+        dispatcher.clear();
+        executor.runAll();
+
+        assertEquals(1, released.get());
+        assertTrue(analyzer.timestamps.isEmpty());
+    }
+
+    @Test
+    public void slowAnalyzer_dropsFramesAndReportsLatency() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        final CountDownLatch analyzed = new CountDownLatch(3);
+        FrameAnalysisDispatcher dispatcher = new FrameAnalysisDispatcher(executor, new FrameAnalyzer() {
+            @Override
+            public void analyze(AnalysisFrame frame) {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                analyzed.countDown();
+            }
+        });
+
+        // Frames arrive every 1 ms while each analysis takes 10 ms.
+        for (int i = 0; i < 60 && analyzed.getCount() > 0; i++) {
+            dispatcher.submit(createFrame(i, null));
+            Thread.sleep(1);
+        }
+        assertTrue(analyzed.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertTrue(dispatcher.getFramesDropped() > 0);
+        assertEquals(dispatcher.getFramesSubmitted(), dispatcher.getFramesAnalyzed() + dispatcher.getFramesDropped());
+        assertTrue(dispatcher.getAverageAnalyzerLatencyMillis() >= 9);
+        assertTrue(dispatcher.getMaxAnalyzerLatencyMillis() >= dispatcher.getAverageAnalyzerLatencyMillis());
+    }
+
+    @Test
+    public void awaitIdle_waitsForRunningAnalysis() {
+        ManualExecutor executor = new ManualExecutor();
+        FrameAnalysisDispatcher dispatcher = new FrameAnalysisDispatcher(executor, new RecordingAnalyzer());
+        AtomicInteger released = new AtomicInteger();
+
+        assertTrue(dispatcher.awaitIdle(0));
+        dispatcher.submit(createFrame(1, released));
+        assertFalse(dispatcher.awaitIdle(10)); // Scheduled but not run yet.
+        executor.runAll();
+
+        assertTrue(dispatcher.awaitIdle(0));
+        assertEquals(1, released.get());
+    }
+
+    @Test
+    public void throwingAnalyzer_nextFrameIsStillAnalyzed() {
+        ManualExecutor executor = new ManualExecutor();
+        final List<Long> analyzed = new ArrayList<>();
+        FrameAnalysisDispatcher dispatcher = new FrameAnalysisDispatcher(executor, new FrameAnalyzer() {
+            @Override
+            public void analyze(AnalysisFrame frame) {
+                if (frame.getTimestampNanos() == 1) {
+                    throw new IllegalStateException("analyzer bug");
+                }
+                analyzed.add(frame.getTimestampNanos());
+            }
+        });
+        final List<RuntimeException> errors = new ArrayList<>();
+        dispatcher.setErrorListener(new FrameAnalysisDispatcher.ErrorListener() {
+            @Override
+            public void onAnalyzerFailed(RuntimeException error) {
+                errors.add(error);
+            }
+        });
+        AtomicInteger released = new AtomicInteger();
+
+        dispatcher.submit(createFrame(1, released));
+        executor.runAll();
+        assertTrue(dispatcher.awaitIdle(0));
+        dispatcher.submit(createFrame(2, released));
+        executor.runAll();
+
+        assertEquals(1, errors.size());
+        assertEquals(1, dispatcher.getAnalyzerFailures());
+        assertEquals(1, analyzed.size());
+        assertEquals(Long.valueOf(2), analyzed.get(0));
+        assertEquals(2, released.get());
+        assertTrue(dispatcher.awaitIdle(0));
+    }
+
+    @Test
+    public void rejectedExecution_releasesFrame() {
+        FrameAnalysisDispatcher dispatcher = new FrameAnalysisDispatcher(new java.util.concurrent.Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new java.util.concurrent.RejectedExecutionException("quit");
+            }
+        }, new RecordingAnalyzer());
+        AtomicInteger released = new AtomicInteger();
+
+        dispatcher.submit(createFrame(1, released));
+
+        assertEquals(1, released.get());
+        assertEquals(1, dispatcher.getFramesDropped());
+        assertTrue(dispatcher.awaitIdle(0));
+    }
+
+    // Synthetic YUV_420_888 frame with padded luma rows and interleaved chroma (pixelStride 2).
+    private static AnalysisFrame createFrame(long timestamp, final AtomicInteger released) {
+        int rowStride = WIDTH + 4;
+        byte[] luma = new byte[rowStride * HEIGHT];
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int col = 0; col < rowStride; col++) {
+                luma[row * rowStride + col] = (byte) (col < WIDTH ? 10 : 255);
+            }
+        }
+        ByteBuffer chroma = ByteBuffer.allocate(rowStride * HEIGHT / 2);
+        AnalysisFrame.Plane y = new AnalysisFrame.Plane(ByteBuffer.wrap(luma), rowStride, 1);
+        AnalysisFrame.Plane u = new AnalysisFrame.Plane(chroma, rowStride, 2);
+        AnalysisFrame.Plane v = new AnalysisFrame.Plane(chroma.duplicate(), rowStride, 2);
+        AutoCloseable owner = released == null ? null : new AutoCloseable() {
+            @Override
+            public void close() {
+                released.incrementAndGet();
+            }
+        };
+        return new AnalysisFrame(WIDTH, HEIGHT, timestamp, y, u, v, owner);
+    }
+
+    private static class ManualExecutor implements java.util.concurrent.Executor {
+        final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.poll().run();
+            }
+        }
+    }
+
+    private static class RecordingAnalyzer implements FrameAnalyzer {
+        final List<Long> timestamps = new ArrayList<>();
+
+        @Override
+        public void analyze(AnalysisFrame frame) {
+            timestamps.add(frame.getTimestampNanos());
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.android_camera_example1;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+// Throughput of a sequence saved as one frame archive against one file per frame. Wall-clock
+// results depend on the machine and its storage, so this is skipped by the unit tests; run it
+// with -Dbenchmark=true.
+public class FrameArchiveBenchmark {
+    private Path mDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        Assume.assumeTrue("benchmark disabled", Boolean.getBoolean("benchmark"));
+        mDirectory = Files.createTempDirectory("frame-archive-benchmark");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (mDirectory == null) {
+            return;
+        }
+        File[] files = mDirectory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.delete(file.toPath());
+            }
+        }
+        Files.delete(mDirectory);
+    }
+
+    @Test
+    public void archive_outpacesOneFilePerFrame() throws IOException {
+        int frames = 200;
+        ByteBuffer frame = ByteBuffer.allocateDirect(300 * 1024); // A 1080p JPEG.
+        while (frame.hasRemaining()) {
+            frame.put((byte) frame.position());
+        }
+        frame.flip();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+            // What each per-image save does besides the MediaStore insert and update.
+            try (FileChannel channel = openForWrite(mDirectory.resolve("IMG_" + i + ".jpg"))) {
+                ByteBuffer data = frame.duplicate();
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+                channel.force(false);
+            }
+        }
+        double perFileSeconds = (System.nanoTime() - start) / 1e9;
+
+        start = System.nanoTime();
+        FrameArchiveWriter writer = new FrameArchiveWriter(openForWrite(mDirectory.resolve("seq.frames")));
+        for (int i = 0; i < frames; i++) {
+            writer.append(frame, i);
+        }
+        writer.close();
+        double archiveSeconds = (System.nanoTime() - start) / 1e9;
+
+        double megabytes = frames * frame.remaining() / (1024.0 * 1024.0);
+        System.out.println(String.format(Locale.US,
+                "Per-file saves: %.0f frames/s (%.0f MB/s); archive: %.0f frames/s (%.0f MB/s), %d writes",
+                frames / perFileSeconds, megabytes / perFileSeconds, frames / archiveSeconds,
+                megabytes / archiveSeconds, writer.getWriteCount()));
+        assertEquals(frames, writer.getFrameCount());
+        assertTrue("archive " + archiveSeconds + "s, per-file " + perFileSeconds + "s", archiveSeconds < perFileSeconds);
+    }
+
+    private static FileChannel openForWrite(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+    }
+}
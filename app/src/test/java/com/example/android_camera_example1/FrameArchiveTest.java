@@ -0,0 +1,152 @@
+package com.example.android_camera_example1;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.*;
+
+public class FrameArchiveTest {
+    private Path mDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = Files.createTempDirectory("frame-archive");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        File[] files = mDirectory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.delete(file.toPath());
+            }
+        }
+        Files.delete(mDirectory);
+    }
+
+    @Test
+    public void closedArchive_givesRandomAccessThroughIndex() throws IOException {
+        Path path = mDirectory.resolve("seq.frames");
+        FrameArchiveWriter writer = new FrameArchiveWriter(openForWrite(path), 4096);
+        for (int i = 0; i < 50; i++) {
+            ByteBuffer frame = createFrame(i, 100 + i * 37);
+            assertEquals(i, writer.append(frame, 1000L * i));
+            assertEquals(0, frame.position()); // The caller's buffer is not consumed.
+        }
+        writer.close();
+        assertTrue(writer.getWriteCount() < 50); // Buffered, not one write per frame.
+
+        try (FrameArchiveReader reader = new FrameArchiveReader(openForRead(path))) {
+            assertTrue(reader.isComplete());
+            assertEquals(50, reader.getFrameCount());
+            for (int i : new int[] {49, 0, 17, 33}) {
+                assertEquals(100 + i * 37, reader.getFrameSize(i));
+                assertEquals(1000L * i, reader.getTimestampNanos(i));
+                assertEquals(createFrame(i, 100 + i * 37), reader.readFrame(i));
+            }
+        }
+    }
+
+    @Test
+    public void framesLargerThanBuffer_areWrittenDirectly() throws IOException {
+        Path path = mDirectory.resolve("large.frames");
+        FrameArchiveWriter writer = new FrameArchiveWriter(openForWrite(path), 1024);
+        writer.append(createFrame(1, 100), 1);
+        writer.append(createFrame(2, 5000), 2);
+        writer.append(createFrame(3, 100), 3);
+        writer.close();
+
+        try (FrameArchiveReader reader = new FrameArchiveReader(openForRead(path))) {
+            assertEquals(3, reader.getFrameCount());
+            ByteBuffer direct = ByteBuffer.allocateDirect(5000);
+            reader.readFrame(1, direct);
+            direct.flip();
+            assertEquals(createFrame(2, 5000), direct);
+            assertEquals(createFrame(3, 100), reader.readFrame(2));
+        }
+    }
+
+    @Test
+    public void unclosedArchive_recoversFlushedFrames() throws IOException {
+        Path path = mDirectory.resolve("crash.frames");
+        FileChannel channel = openForWrite(path);
+        FrameArchiveWriter writer = new FrameArchiveWriter(channel, 4096);
+        for (int i = 0; i < 10; i++) {
+            writer.append(createFrame(i, 300), i);
+        }
+        writer.flush();
+        writer.append(createFrame(10, 300), 10); // Still buffered when the app dies.
+        channel.close();
+
+        try (FrameArchiveReader reader = new FrameArchiveReader(openForRead(path))) {
+            assertFalse(reader.isComplete());
+            assertEquals(10, reader.getFrameCount());
+            assertEquals(createFrame(9, 300), reader.readFrame(9));
+            assertEquals(9, reader.getTimestampNanos(9));
+        }
+    }
+
+    @Test
+    public void emptyArchive_hasNoFrames() throws IOException {
+        Path path = mDirectory.resolve("empty.frames");
+        new FrameArchiveWriter(openForWrite(path)).close();
+
+        try (FrameArchiveReader reader = new FrameArchiveReader(openForRead(path))) {
+            assertTrue(reader.isComplete());
+            assertEquals(0, reader.getFrameCount());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void appendAfterClose_fails() throws IOException {
+        FrameArchiveWriter writer = new FrameArchiveWriter(openForWrite(mDirectory.resolve("closed.frames")));
+        writer.close();
+        writer.append(createFrame(0, 10), 0);
+    }
+
+    @Test
+    public void archive_batchesFramesIntoFewWrites() throws IOException {
+        int frames = 200;
+        ByteBuffer frame = ByteBuffer.allocateDirect(300 * 1024); // A 1080p JPEG.
+        while (frame.hasRemaining()) {
+            frame.put((byte) frame.position());
+        }
+        frame.flip();
+
+        FrameArchiveWriter writer = new FrameArchiveWriter(openForWrite(mDirectory.resolve("seq.frames")));
+        for (int i = 0; i < frames; i++) {
+            writer.append(frame, i);
+        }
+        writer.close();
+
+        assertEquals(frames, writer.getFrameCount());
+        assertTrue(writer.getWriteCount() < frames / 4);
+    }
+
+    private static ByteBuffer createFrame(int seed, int size) {
+        ByteBuffer frame = ByteBuffer.allocate(size);
+        for (int i = 0; i < size; i++) {
+            frame.put((byte) (seed * 31 + i));
+        }
+        frame.flip();
+        return frame;
+    }
+
+    private static FileChannel openForWrite(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+    }
+
+    private static FileChannel openForRead(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.READ);
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.android_camera_example1;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+    @Test
+    public void bucketBounds_coverEveryValueWithinSixPercent() {
+        long[] values = {0, 1, 15, 16, 17, 31, 32, 1000, 999_999, 33_333_333L, 5_000_000_000L, Long.MAX_VALUE};
+        for (long value : values) {
+            int index = LatencyHistogram.bucketIndex(value);
+            long upper = LatencyHistogram.bucketUpperBound(index);
+            assertTrue(index < LatencyHistogram.BUCKET_COUNT);
+            assertTrue("value=" + value + " upper=" + upper, upper >= value);
+            assertTrue("value=" + value + " upper=" + upper, upper - value <= value / 16);
+            if (index > 0) {
+                assertTrue(LatencyHistogram.bucketUpperBound(index - 1) < value);
+            }
+        }
+    }
+
+    @Test
+    public void percentiles_matchUniformDistribution() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.record(millis * 1_000_000L);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(50, histogram.getPercentileMillis(0.50), 50 * 0.07);
+        assertEquals(95, histogram.getPercentileMillis(0.95), 95 * 0.07);
+        assertEquals(99, histogram.getPercentileMillis(0.99), 99 * 0.07);
+        assertEquals(100, histogram.getMaxMillis(), 0);
+        assertEquals(50.5e6, histogram.getMeanNanos(), 1);
+        assertTrue(histogram.getPercentileNanos(1.0) <= histogram.getMaxNanos());
+    }
+
+    @Test
+    public void emptyAndReset_reportZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileNanos(0.5));
+
+        histogram.record(-5); // Clock skew counts as zero.
+        histogram.record(10);
+        assertEquals(0, histogram.getPercentileNanos(0.5));
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxNanos());
+        assertEquals("n=0 p50=0.0ms p95=0.0ms p99=0.0ms max=0.0ms", histogram.format());
+    }
+
+    @Test
+    public void concurrentRecording_losesNoValues() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10_000; i++) {
+                        histogram.record(i + offset);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(40_000, histogram.getCount());
+        assertEquals(10_002, histogram.getMaxNanos());
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.android_camera_example1;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class LifecycleExecutorTest {
+    private final LifecycleExecutor mExecutor = new LifecycleExecutor("Test", 2);
+
+    @After
+    public void tearDown() {
+        mExecutor.quit(5, TimeUnit.SECONDS);
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void execute_beforeStart_isRejected() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+    }
+
+    @Test
+    public void threads_areNamedAndCapped() throws InterruptedException {
+        mExecutor.start();
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(2);
+        final String[] names = new String[4];
+        final AtomicInteger index = new AtomicInteger();
+        for (int i = 0; i < 4; i++) {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    names[index.getAndIncrement()] = Thread.currentThread().getName();
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertEquals(2, mExecutor.getThreadCount());
+        assertEquals(2, mExecutor.getActiveCount());
+        assertEquals(2, mExecutor.getQueueDepth());
+        assertTrue(names[0].startsWith("Test-"));
+
+        release.countDown();
+        assertTrue(mExecutor.quit(5, TimeUnit.SECONDS));
+        assertEquals(4, mExecutor.getCompletedTaskCount());
+    }
+
+    @Test
+    public void quit_runsQueuedTasksAndReleasesThreads() {
+        mExecutor.start();
+        final AtomicInteger ran = new AtomicInteger();
+        for (int i = 0; i < 10; i++) {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    ran.incrementAndGet();
+                }
+            });
+        }
+
+        assertTrue(mExecutor.quit(5, TimeUnit.SECONDS));
+
+        assertEquals(10, ran.get());
+        assertFalse(mExecutor.isRunning());
+        assertEquals(0, mExecutor.getThreadCount());
+    }
+
+    @Test
+    public void restart_acceptsTasksAgain() throws InterruptedException {
+        mExecutor.start();
+        mExecutor.quit(5, TimeUnit.SECONDS);
+        mExecutor.start();
+        final CountDownLatch ran = new CountDownLatch(1);
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                ran.countDown();
+            }
+        });
+
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+    }
+}
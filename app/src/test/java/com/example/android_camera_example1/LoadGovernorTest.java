@@ -0,0 +1,184 @@
+package com.example.android_camera_example1;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LoadGovernorTest {
+    private static final long INTERVAL_MILLIS = 500;
+
+    private static final LoadGovernor.Step[] LADDER = {
+            new LoadGovernor.Step(95, Long.MAX_VALUE, 15, 30),
+            new LoadGovernor.Step(85, Long.MAX_VALUE, 15, 30),
+            new LoadGovernor.Step(75, 8_000_000L, 15, 24),
+            new LoadGovernor.Step(70, 3_000_000L, 10, 15),
+    };
+
+    private static final LoadGovernor.Sample LIGHT = new LoadGovernor.Sample(0.1, 200, 0);
+    private static final LoadGovernor.Sample IDLE = new LoadGovernor.Sample(0, Double.NaN, 0);
+    private static final LoadGovernor.Sample NORMAL = new LoadGovernor.Sample(0.5, 800, 0);
+    private static final LoadGovernor.Sample OVERLOAD = new LoadGovernor.Sample(0.9, 2500, 3);
+
+    @Test
+    public void lightLoad_staysAtBestQuality() {
+        LoadGovernor governor = new LoadGovernor(LADDER, new LoadGovernor.Thresholds());
+
+        assertEquals(0, run(governor, 0, repeat(LIGHT, 20)));
+        assertEquals(0, run(governor, 20, repeat(IDLE, 20)));
+
+        assertEquals(0, governor.getStepIndex());
+        assertSame(LADDER[0], governor.getStep());
+    }
+
+    @Test
+    public void sustainedOverload_stepsDownOncePerHoldAndStopsAtTheBottom() {
+        LoadGovernor governor = new LoadGovernor(LADDER, new LoadGovernor.Thresholds());
+
+        // Two samples to react, then one step per two second hold (four samples).
+        assertEquals(1, run(governor, 0, repeat(OVERLOAD, 2)));
+        assertEquals(1, governor.getStepIndex());
+        assertEquals(0, run(governor, 2, repeat(OVERLOAD, 3)));
+        assertEquals(1, run(governor, 5, repeat(OVERLOAD, 1)));
+        assertEquals(2, governor.getStepIndex());
+
+        run(governor, 6, repeat(OVERLOAD, 40));
+        assertEquals(LADDER.length - 1, governor.getStepIndex());
+        assertEquals(LADDER.length - 1, governor.getStepDownCount());
+        assertEquals(0, governor.getStepUpCount());
+    }
+
+    @Test
+    public void eachSignal_aloneCountsAsPressure() {
+        LoadGovernor.Sample[] signals = {
+                new LoadGovernor.Sample(0.8, 100, 0),
+                new LoadGovernor.Sample(0.1, 1600, 0),
+                new LoadGovernor.Sample(0.1, Double.NaN, 1),
+        };
+        for (LoadGovernor.Sample signal : signals) {
+            LoadGovernor governor = new LoadGovernor(LADDER, new LoadGovernor.Thresholds());
+            assertEquals(1, run(governor, 0, repeat(signal, 2)));
+        }
+    }
+
+    @Test
+    public void singleSpike_doesNotStep() {
+        LoadGovernor governor = new LoadGovernor(LADDER, new LoadGovernor.Thresholds());
+
+        assertEquals(0, run(governor, 0, LIGHT, OVERLOAD, LIGHT, LIGHT, OVERLOAD, NORMAL, OVERLOAD, LIGHT));
+
+        assertEquals(0, governor.getStepIndex());
+    }
+
+    @Test
+    public void normalBand_holdsTheCurrentStep() {
+        LoadGovernor governor = new LoadGovernor(LADDER, new LoadGovernor.Thresholds());
+        run(governor, 0, repeat(OVERLOAD, 2));
+
+        assertEquals(0, run(governor, 2, repeat(NORMAL, 50)));
+
+        assertEquals(1, governor.getStepIndex());
+    }
+
+    @Test
+    public void recovery_needsALongRunOfLowSamplesPerStep() {
+        LoadGovernor governor = new LoadGovernor(LADDER, new LoadGovernor.Thresholds());
+        run(governor, 0, repeat(OVERLOAD, 6));
+        assertEquals(2, governor.getStepIndex());
+
+        // Nine low samples and one in the normal band reset the count.
+        assertEquals(0, run(governor, 6, repeat(LIGHT, 9)));
+        assertEquals(0, run(governor, 15, NORMAL));
+        assertEquals(0, run(governor, 16, repeat(LIGHT, 9)));
+        assertEquals(1, run(governor, 25, LIGHT));
+        assertEquals(1, governor.getStepIndex());
+        assertEquals(1, run(governor, 26, repeat(LIGHT, 10)));
+        assertEquals(0, governor.getStepIndex());
+        assertEquals(2, governor.getStepUpCount());
+    }
+
+    @Test
+    public void recordedTrace_settlesWithoutOscillating() {
+        // Queue fill, latency in ms ("-" when nothing finished) and drops per 500 ms sample from a
+        // burst that saturates the writer, then settles just under what one step lower sustains.
+        String trace = "0.1 300 0, 0.2 400 0, 0.6 900 0, 0.9 1800 2, 1.0 2600 5, 1.0 2900 4, 0.9 2400 1,"
+                + " 0.8 1900 0, 0.8 1600 0, 0.6 1100 0, 0.5 900 0, 0.6 1000 0, 0.4 800 0, 0.5 900 0,"
+                + " 0.4 700 0, 0.6 1000 0, 0.5 800 0, 0.4 700 0, 0.5 900 0, 0.4 800 0, 0.5 900 0,"
+                + " 0.3 600 0, 0.2 450 0, 0.1 300 0, 0.1 - 0, 0.0 - 0, 0.0 - 0, 0.0 - 0, 0.0 - 0,"
+                + " 0.0 - 0, 0.0 - 0, 0.0 - 0, 0.0 - 0, 0.0 - 0, 0.0 - 0, 0.0 - 0, 0.0 - 0, 0.0 - 0,"
+                + " 0.0 - 0, 0.0 - 0, 0.0 - 0, 0.0 - 0, 0.0 - 0";
+        LoadGovernor governor = new LoadGovernor(LADDER, new LoadGovernor.Thresholds());
+
+        int changes = run(governor, 0, parse(trace));
+
+        // Down twice while overloaded, nothing in the normal band, up twice once idle.
+        assertEquals(4, changes);
+        assertEquals(2, governor.getStepDownCount());
+        assertEquals(2, governor.getStepUpCount());
+        assertEquals(0, governor.getStepIndex());
+    }
+
+    @Test
+    public void thresholds_areConfigurable() {
+        LoadGovernor governor = new LoadGovernor(LADDER, new LoadGovernor.Thresholds()
+                .setQueueFill(0.1, 0.4)
+                .setLatencyMillis(100, 300)
+                .setSampleCounts(1, 2)
+                .setHoldMillis(0));
+
+        assertEquals(1, run(governor, 0, new LoadGovernor.Sample(0.5, 200, 0)));
+        assertEquals(1, run(governor, 1, new LoadGovernor.Sample(0.2, 350, 0)));
+        assertEquals(2, governor.getStepIndex());
+        assertEquals(1, run(governor, 2, repeat(new LoadGovernor.Sample(0.05, 50, 0), 2)));
+        assertEquals(1, governor.getStepIndex());
+    }
+
+    @Test
+    public void invalidLadder_isRejected() {
+        try {
+            new LoadGovernor(new LoadGovernor.Step[0], new LoadGovernor.Thresholds());
+            fail("Expected an empty ladder to be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            new LoadGovernor.Step(0, Long.MAX_VALUE, 15, 30);
+            fail("Expected quality 0 to be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            new LoadGovernor.Step(90, Long.MAX_VALUE, 30, 15);
+            fail("Expected an inverted frame rate range to be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    // Feed the samples at INTERVAL_MILLIS apart, the first one at sample index first. Returns the
+    // number of step changes.
+    private static int run(LoadGovernor governor, int first, LoadGovernor.Sample... samples) {
+        int changes = 0;
+        for (int i = 0; i < samples.length; i++) {
+            if (governor.update(samples[i], (first + i) * INTERVAL_MILLIS)) {
+                changes++;
+            }
+        }
+        return changes;
+    }
+
+    private static LoadGovernor.Sample[] repeat(LoadGovernor.Sample sample, int count) {
+        LoadGovernor.Sample[] samples = new LoadGovernor.Sample[count];
+        for (int i = 0; i < count; i++) {
+            samples[i] = sample;
+        }
+        return samples;
+    }
+
+    private static LoadGovernor.Sample[] parse(String trace) {
+        String[] entries = trace.split(",");
+        LoadGovernor.Sample[] samples = new LoadGovernor.Sample[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            String[] fields = entries[i].trim().split(" ");
+            samples[i] = new LoadGovernor.Sample(Double.parseDouble(fields[0]),
+                    "-".equals(fields[1]) ? Double.NaN : Double.parseDouble(fields[1]), Long.parseLong(fields[2]));
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.android_camera_example1;
+
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+// Throughput of the luma statistics kernels. Wall-clock results depend on the machine, so this
+// is skipped by the unit tests; run it with -Dbenchmark=true.
+public class LumaStatisticsBenchmark {
+    private static ForkJoinPool sPool;
+
+    @BeforeClass
+    public static void createPool() {
+        Assume.assumeTrue("benchmark disabled", Boolean.getBoolean("benchmark"));
+        sPool = new ForkJoinPool(2);
+    }
+
+    @AfterClass
+    public static void shutdownPool() {
+        if (sPool != null) {
+            sPool.shutdown();
+        }
+    }
+
+    @Test
+    public void keepsUpWithThirtyFpsOnTwoCores() {
+        int[][] sizes = {{640, 480}, {1280, 720}, {1920, 1080}};
+        for (int[] size : sizes) {
+            int width = size[0];
+            int height = size[1];
+            LumaStatistics statistics = new LumaStatistics(sPool);
+            ByteBuffer[] frames = {
+                    ByteBuffer.allocateDirect(width * height).put(random(width, height, 3)),
+                    ByteBuffer.allocateDirect(width * height).put(random(width, height, 4))
+            };
+            frames[0].flip();
+            frames[1].flip();
+            for (int i = 0; i < 10; i++) {
+                statistics.compute(frames[i % 2], width, height, width, 1); // Warm up.
+            }
+
+            int frameCount = 30;
+            long start = System.nanoTime();
+            for (int i = 0; i < frameCount; i++) {
+                statistics.compute(frames[i % 2], width, height, width, 1);
+            }
+            double fps = frameCount * 1e9 / (System.nanoTime() - start);
+
+            System.out.println("LumaStatistics " + width + "x" + height + ": " + Math.round(fps) + " fps");
+            assertTrue(width + "x" + height + " fps=" + fps, fps >= 30);
+        }
+    }
+
+    private static byte[] random(int width, int height, long seed) {
+        byte[] luma = new byte[width * height];
+        new Random(seed).nextBytes(luma);
+        return luma;
+    }
+}
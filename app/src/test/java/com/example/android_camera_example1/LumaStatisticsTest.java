@@ -0,0 +1,152 @@
+package com.example.android_camera_example1;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class LumaStatisticsTest {
+    private static ForkJoinPool sPool;
+
+    @BeforeClass
+    public static void createPool() {
+        sPool = new ForkJoinPool(2);
+    }
+
+    @AfterClass
+    public static void shutdownPool() {
+        sPool.shutdown();
+    }
+
+    @Test
+    public void uniformFrame_hasFlatStatistics() {
+        LumaStatistics statistics = new LumaStatistics(sPool);
+        byte[] luma = filled(64, 48, 100);
+
+        LumaStatistics.Result result = statistics.compute(ByteBuffer.wrap(luma), 64, 48, 64, 1);
+
+        assertEquals(64 * 48, result.pixelCount);
+        assertEquals(64 * 48, result.histogram[100]);
+        assertEquals(100.0, result.mean, 1e-9);
+        assertEquals(100, result.p5);
+        assertEquals(100, result.p95);
+        assertEquals(0.0, result.sharpness, 1e-9);
+        assertEquals(0.0, result.motion, 1e-9);
+    }
+
+    @Test
+    public void stridedPlane_ignoresRowPaddingAndSkippedSamples() {
+        // 4x2 frame, pixelStride 2, rowStride 10: samples at even offsets, padding is 255.
+        byte[] plane = new byte[20];
+        java.util.Arrays.fill(plane, (byte) 255);
+        for (int row = 0; row < 2; row++) {
+            for (int col = 0; col < 4; col++) {
+                plane[row * 10 + col * 2] = (byte) (row * 4 + col);
+            }
+        }
+        LumaStatistics statistics = new LumaStatistics(sPool);
+
+        LumaStatistics.Result result = statistics.compute(ByteBuffer.wrap(plane), 4, 2, 10, 2);
+
+        assertEquals(0, result.histogram[255]);
+        assertEquals(3.5, result.mean, 1e-9);
+        assertEquals(0, result.p5);
+        assertEquals(3, result.p50);
+        assertEquals(7, result.p95);
+    }
+
+    @Test
+    public void packedPlane_restoresBufferPosition() {
+        ByteBuffer plane = ByteBuffer.wrap(filled(16, 16, 7));
+        new LumaStatistics(sPool).compute(plane, 16, 16, 16, 1);
+        assertEquals(0, plane.position());
+    }
+
+    @Test
+    public void sharpEdges_scoreHigherThanBlur() {
+        LumaStatistics statistics = new LumaStatistics(sPool);
+        byte[] checker = new byte[64 * 64];
+        byte[] gradient = new byte[64 * 64];
+        for (int row = 0; row < 64; row++) {
+            for (int col = 0; col < 64; col++) {
+                checker[row * 64 + col] = (byte) (((row / 4 + col / 4) % 2) * 200);
+                gradient[row * 64 + col] = (byte) (col * 3);
+            }
+        }
+
+        double sharp = statistics.compute(ByteBuffer.wrap(checker), 64, 64, 64, 1).sharpness;
+        double blurred = statistics.compute(ByteBuffer.wrap(gradient), 64, 64, 64, 1).sharpness;
+
+        assertTrue(sharp > 1000);
+        assertEquals(0.0, blurred, 1e-9); // A linear ramp has a zero Laplacian.
+    }
+
+    @Test
+    public void motion_measuresBlockMeanChange() {
+        LumaStatistics statistics = new LumaStatistics(sPool);
+        statistics.compute(ByteBuffer.wrap(filled(32, 32, 50)), 32, 32, 32, 1);
+
+        // Brighten the top-left 8x8 block, one of 16 blocks, by 80.
+        byte[] next = filled(32, 32, 50);
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                next[row * 32 + col] = (byte) 130;
+            }
+        }
+        LumaStatistics.Result result = statistics.compute(ByteBuffer.wrap(next), 32, 32, 32, 1);
+
+        assertEquals(80.0 / 16, result.motion, 1e-9);
+    }
+
+    @Test
+    public void parallelBands_matchSequentialResult() {
+        byte[] first = random(1280, 720, 1);
+        byte[] second = random(1280, 720, 2);
+        LumaStatistics parallel = new LumaStatistics(sPool, 1);
+        LumaStatistics sequential = new LumaStatistics(sPool, Integer.MAX_VALUE);
+
+        parallel.compute(ByteBuffer.wrap(first), 1280, 720, 1280, 1);
+        sequential.compute(ByteBuffer.wrap(first), 1280, 720, 1280, 1);
+        LumaStatistics.Result a = parallel.compute(ByteBuffer.wrap(second), 1280, 720, 1280, 1);
+        LumaStatistics.Result b = sequential.compute(ByteBuffer.wrap(second), 1280, 720, 1280, 1);
+
+        assertArrayEquals(b.histogram, a.histogram);
+        assertEquals(b.mean, a.mean, 1e-9);
+        assertEquals(b.sharpness, a.sharpness, 1e-6);
+        assertEquals(b.motion, a.motion, 1e-9);
+    }
+
+    @Test
+    public void steadyState_doesNotAllocate() {
+        LumaStatistics statistics = new LumaStatistics(sPool);
+        ByteBuffer plane = ByteBuffer.allocateDirect(640 * 480);
+        for (int i = 0; i < 5; i++) {
+            statistics.compute(plane, 640, 480, 640, 1); // Warm up.
+        }
+
+        long before = AllocationMeter.allocatedBytes();
+        for (int i = 0; i < 50; i++) {
+            statistics.compute(plane, 640, 480, 640, 1);
+        }
+        long perFrame = (AllocationMeter.allocatedBytes() - before) / 50;
+
+        assertTrue("allocated per frame=" + perFrame, perFrame < 256);
+    }
+
+    private static byte[] filled(int width, int height, int value) {
+        byte[] luma = new byte[width * height];
+        java.util.Arrays.fill(luma, (byte) value);
+        return luma;
+    }
+
+    private static byte[] random(int width, int height, long seed) {
+        byte[] luma = new byte[width * height];
+        new Random(seed).nextBytes(luma);
+        return luma;
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.android_camera_example1;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class OutputSizeSelectorTest {
+    private static final long FPS_30 = 33333333L;
+    private static final long FPS_20 = 50000000L;
+    private static final long FPS_15 = 66666666L;
+
+    // Stream configuration tables in the shape StreamConfigurationMap reports for a typical
+    // back camera with a 4:3 sensor mounted at 90 degrees. Columns: width, height, min frame
+    // duration, stall duration.
+    private static final long[][] PREVIEW_TABLE = {
+            {4032, 3024, FPS_20, 0},
+            {4032, 2268, FPS_20, 0},
+            {2560, 1440, FPS_30, 0},
+            {1920, 1080, FPS_30, 0},
+            {1440, 1080, FPS_30, 0},
+            {1280, 720, FPS_30, 0},
+            {960, 720, FPS_30, 0},
+            {640, 480, FPS_30, 0},
+            {320, 240, FPS_30, 0},
+    };
+    private static final long[][] JPEG_TABLE = {
+            {4032, 3024, FPS_20, FPS_20},
+            {4032, 2268, FPS_20, FPS_20},
+            {3264, 2448, FPS_30, 0},
+            {2560, 1440, FPS_30, 0},
+            {1920, 1080, FPS_30, 0},
+            {1440, 1080, FPS_30, 0},
+            {640, 480, FPS_30, 0},
+    };
+    private static final long[][] YUV_TABLE = {
+            {4032, 3024, FPS_15, 0},
+            {1920, 1080, FPS_30, 0},
+            {1280, 720, FPS_30, 0},
+            {800, 600, FPS_30, 0},
+            {640, 480, FPS_30, 0},
+            {320, 240, FPS_30, 0},
+    };
+    private static final int SENSOR_ORIENTATION = 90;
+    private static final long FULL_HD = 1920 * 1080;
+
+    // Each case: name, request, expected preview, expected still, expected analysis (or null).
+    private static final Object[][] CASES = {
+            {"portrait phone, native 4:3, preview capped at full HD",
+                    new OutputSizeSelector.Request().setViewSize(1080, 2047).setDisplayRotation(0)
+                            .setMaxPreviewPixels(FULL_HD),
+                    "1440x1080", "4032x3024", null},
+            {"landscape phone gives the same sizes as portrait",
+                    new OutputSizeSelector.Request().setViewSize(2047, 1080).setDisplayRotation(90)
+                            .setMaxPreviewPixels(FULL_HD),
+                    "1440x1080", "4032x3024", null},
+            {"16:9 target aspect",
+                    new OutputSizeSelector.Request().setViewSize(1080, 2047).setTargetAspectRatio(16.0 / 9)
+                            .setMaxPreviewPixels(FULL_HD),
+                    "1920x1080", "4032x2268", null},
+            {"small view gets the smallest covering preview, not the largest",
+                    new OutputSizeSelector.Request().setViewSize(480, 640),
+                    "640x480", "4032x3024", null},
+            {"no pixel budget: 4032x3024 preview only reaches 20 fps, so 30 fps drops to a covering 4:3 size",
+                    new OutputSizeSelector.Request().setViewSize(3024, 4032).setTargetFps(30),
+                    "1440x1080", "4032x3024", null},
+            {"20 fps target allows the full sensor preview",
+                    new OutputSizeSelector.Request().setViewSize(3024, 4032).setTargetFps(20),
+                    "4032x3024", "4032x3024", null},
+            {"view not laid out yet: largest preview within budget",
+                    new OutputSizeSelector.Request().setMaxPreviewPixels(FULL_HD),
+                    "1440x1080", "4032x3024", null},
+            {"continuous stills at 15 fps exclude the stalling full-resolution JPEG",
+                    new OutputSizeSelector.Request().setViewSize(1080, 1440).setTargetStillFps(15),
+                    "1440x1080", "3264x2448", null},
+            {"still pixel budget",
+                    new OutputSizeSelector.Request().setViewSize(1080, 1440).setMaxStillPixels(2_000_000),
+                    "1440x1080", "1440x1080", null},
+            {"analysis stream at VGA",
+                    new OutputSizeSelector.Request().setViewSize(1080, 1440).setAnalysisSize(640, 480),
+                    "1440x1080", "4032x3024", "640x480"},
+            {"analysis target between table sizes is covered by the next 4:3 size",
+                    new OutputSizeSelector.Request().setViewSize(1080, 1440).setAnalysisSize(700, 500),
+                    "1440x1080", "4032x3024", "800x600"},
+            {"unavailable 21:9 aspect falls back to any aspect",
+                    new OutputSizeSelector.Request().setViewSize(1080, 2520).setTargetAspectRatio(21.0 / 9)
+                            .setMaxPreviewPixels(FULL_HD),
+                    "1920x1080", "4032x3024", null},
+    };
+
+    @Test
+    public void selectsExpectedSizesForEveryCase() {
+        OutputSizeSelector selector = new OutputSizeSelector();
+        for (Object[] testCase : CASES) {
+            String name = (String) testCase[0];
+            OutputSizeSelector.Selection selection = selector.select(table(PREVIEW_TABLE), table(JPEG_TABLE),
+                    table(YUV_TABLE), SENSOR_ORIENTATION, (OutputSizeSelector.Request) testCase[1]);
+
+            assertEquals(name + " (preview)", testCase[2], selection.preview.toString());
+            assertEquals(name + " (still)", testCase[3], selection.still.toString());
+            assertEquals(name + " (analysis)", testCase[4],
+                    selection.analysis == null ? null : selection.analysis.toString());
+        }
+    }
+
+    @Test
+    public void selection_reportsSustainedRates() {
+        OutputSizeSelector.Selection selection = new OutputSizeSelector().select(table(PREVIEW_TABLE),
+                table(JPEG_TABLE), table(YUV_TABLE), SENSOR_ORIENTATION,
+                new OutputSizeSelector.Request().setViewSize(1080, 1440).setAnalysisSize(640, 480));
+
+        assertEquals(30, selection.previewFps, 0.01);
+        assertEquals(10, selection.stillFps, 0.01); // 50 ms frame + 50 ms stall.
+    }
+
+    @Test
+    public void missingTables_returnNull() {
+        OutputSizeSelector selector = new OutputSizeSelector();
+        OutputSizeSelector.Request request = new OutputSizeSelector.Request();
+
+        assertNull(selector.select(new OutputSize[0], table(JPEG_TABLE), table(YUV_TABLE), 90, request));
+        assertNull(selector.select(table(PREVIEW_TABLE), new OutputSize[0], table(YUV_TABLE), 90, request));
+    }
+
+    @Test
+    public void missingAnalysisTable_leavesAnalysisEmpty() {
+        OutputSizeSelector.Selection selection = new OutputSizeSelector().select(table(PREVIEW_TABLE),
+                table(JPEG_TABLE), new OutputSize[0], SENSOR_ORIENTATION,
+                new OutputSizeSelector.Request().setAnalysisSize(640, 480));
+
+        assertNull(selection.analysis);
+    }
+
+    // Build a table sorted the way CameraCapabilities stores it.
+    private static OutputSize[] table(long[][] rows) {
+        OutputSize[] sizes = new OutputSize[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            sizes[i] = new OutputSize((int) rows[i][0], (int) rows[i][1], rows[i][2], rows[i][3]);
+        }
+        return new CameraCapabilities.Builder("0").setOutputSizes(0, sizes).build().getOutputSizes(0);
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.android_camera_example1;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.example.android_camera_example1.PrecaptureStateMachine.*;
+import static org.junit.Assert.*;
+
+public class PrecaptureStateMachineTest {
+    private static final long FRAME_NANOS = 33_333_333L;
+
+    @Test
+    public void alreadyConverged_firesAtOnce() {
+        FakeActions actions = new FakeActions();
+        PrecaptureStateMachine machine = new PrecaptureStateMachine(actions);
+        machine.onResult(AF_STATE_PASSIVE_FOCUSED, AE_STATE_CONVERGED, 0);
+
+        assertTrue(machine.request(FRAME_NANOS));
+
+        assertEquals(Collections.singletonList("still"), actions.calls);
+        assertFalse(machine.isRunning());
+        assertEquals(1, machine.getFastPathCount());
+        assertEquals(1, machine.getLatencyHistogram().getCount());
+        assertEquals(0, machine.getLatencyHistogram().getMaxNanos());
+    }
+
+    @Test
+    public void fixedFocusCamera_needsOnlyExposure() {
+        FakeActions actions = new FakeActions();
+        PrecaptureStateMachine machine = new PrecaptureStateMachine(actions);
+        machine.onResult(STATE_NONE, AE_STATE_LOCKED, 0);
+
+        machine.request(0);
+
+        assertEquals(Collections.singletonList("still"), actions.calls);
+    }
+
+    @Test
+    public void stillFires_onFirstConvergedFrameAfterTheTrigger() {
+        FakeActions actions = new FakeActions();
+        PrecaptureStateMachine machine = new PrecaptureStateMachine(actions);
+        machine.onResult(AF_STATE_PASSIVE_SCAN, AE_STATE_SEARCHING, 0);
+
+        machine.request(0);
+        assertEquals(Collections.singletonList("triggers focus precapture"), actions.calls);
+
+        // Frames already in flight settle before the trigger takes effect; they must not fire it.
+        feed(machine, FRAME_NANOS, new int[][] {
+                {AF_STATE_PASSIVE_FOCUSED, AE_STATE_CONVERGED},
+        });
+        assertEquals(1, actions.calls.size());
+        machine.onTriggerResult(AF_STATE_ACTIVE_SCAN, AE_STATE_PRECAPTURE, 2 * FRAME_NANOS);
+        feed(machine, 3 * FRAME_NANOS, new int[][] {
+                {AF_STATE_ACTIVE_SCAN, AE_STATE_PRECAPTURE},
+                {AF_STATE_FOCUSED_LOCKED, AE_STATE_PRECAPTURE},
+                {AF_STATE_FOCUSED_LOCKED, AE_STATE_CONVERGED}, // Fires here, at 5 frames.
+                {AF_STATE_FOCUSED_LOCKED, AE_STATE_CONVERGED},
+        });
+
+        assertEquals(Arrays.asList("triggers focus precapture", "still", "cancel focus"), actions.calls);
+        assertEquals(1, machine.getConvergedCount());
+        assertEquals(0, machine.getTimeoutCount());
+        assertEquals(5 * FRAME_NANOS, machine.getLatencyHistogram().getMaxNanos(), 5 * FRAME_NANOS / 10.0);
+    }
+
+    @Test
+    public void onlyTheUnsettledSideIsTriggered() {
+        FakeActions actions = new FakeActions();
+        PrecaptureStateMachine machine = new PrecaptureStateMachine(actions);
+        machine.onResult(AF_STATE_PASSIVE_FOCUSED, AE_STATE_FLASH_REQUIRED, 0);
+
+        machine.request(0);
+        machine.onTriggerResult(AF_STATE_PASSIVE_SCAN, AE_STATE_PRECAPTURE, FRAME_NANOS);
+        feed(machine, 2 * FRAME_NANOS, new int[][] {
+                {AF_STATE_PASSIVE_SCAN, AE_STATE_PRECAPTURE},
+                {AF_STATE_PASSIVE_SCAN, AE_STATE_FLASH_REQUIRED}, // Metered; the flash fires with the still.
+        });
+
+        // Exposure converged, so nothing is left to cancel.
+        assertEquals(Arrays.asList("triggers precapture", "still"), actions.calls);
+    }
+
+    @Test
+    public void focusThatCannotLock_stillConverges() {
+        FakeActions actions = new FakeActions();
+        PrecaptureStateMachine machine = new PrecaptureStateMachine(actions);
+        machine.onResult(AF_STATE_PASSIVE_UNFOCUSED, AE_STATE_CONVERGED, 0);
+
+        machine.request(0);
+        machine.onTriggerResult(AF_STATE_ACTIVE_SCAN, AE_STATE_CONVERGED, FRAME_NANOS);
+        machine.onResult(AF_STATE_NOT_FOCUSED_LOCKED, AE_STATE_CONVERGED, 2 * FRAME_NANOS);
+
+        assertEquals(Arrays.asList("triggers focus", "still", "cancel focus"), actions.calls);
+    }
+
+    @Test
+    public void timeout_firesAnywayAndCancelsTheTriggers() {
+        FakeActions actions = new FakeActions();
+        PrecaptureStateMachine machine = new PrecaptureStateMachine(actions);
+        machine.setTimeoutNanos(10 * FRAME_NANOS);
+        machine.onResult(AF_STATE_PASSIVE_SCAN, AE_STATE_SEARCHING, 0);
+
+        machine.request(0);
+        machine.onTriggerResult(AF_STATE_ACTIVE_SCAN, AE_STATE_PRECAPTURE, FRAME_NANOS);
+        for (int i = 2; i < 10; i++) {
+            machine.onResult(AF_STATE_ACTIVE_SCAN, AE_STATE_PRECAPTURE, i * FRAME_NANOS);
+        }
+        assertTrue(machine.isRunning());
+        machine.onResult(AF_STATE_ACTIVE_SCAN, AE_STATE_PRECAPTURE, 10 * FRAME_NANOS);
+
+        assertEquals(Arrays.asList("triggers focus precapture", "still", "cancel focus precapture"), actions.calls);
+        assertEquals(1, machine.getTimeoutCount());
+        assertEquals(0, machine.getConvergedCount());
+    }
+
+    @Test
+    public void timeout_firesWithoutResults() {
+        FakeActions actions = new FakeActions();
+        PrecaptureStateMachine machine = new PrecaptureStateMachine(actions);
+        machine.setTimeoutNanos(10 * FRAME_NANOS);
+
+        machine.request(0); // No result yet, so both triggers.
+        machine.checkTimeout(5 * FRAME_NANOS);
+        assertEquals(1, actions.calls.size());
+        machine.checkTimeout(10 * FRAME_NANOS);
+
+        assertEquals(Arrays.asList("triggers focus precapture", "still", "cancel focus precapture"), actions.calls);
+    }
+
+    @Test
+    public void stillsAskedForMeanwhile_fireTogether() {
+        FakeActions actions = new FakeActions();
+        PrecaptureStateMachine machine = new PrecaptureStateMachine(actions);
+        machine.onResult(AF_STATE_PASSIVE_SCAN, AE_STATE_CONVERGED, 0);
+
+        machine.request(0);
+        machine.onResult(AF_STATE_PASSIVE_SCAN, AE_STATE_CONVERGED, FRAME_NANOS);
+        machine.request(FRAME_NANOS);
+        machine.onTriggerResult(AF_STATE_FOCUSED_LOCKED, AE_STATE_CONVERGED, 2 * FRAME_NANOS);
+        machine.request(3 * FRAME_NANOS); // Focus is still locked: fast path.
+
+        assertEquals(Arrays.asList("triggers focus", "still", "still", "cancel focus", "still"), actions.calls);
+        assertEquals(2, machine.getSequenceCount());
+        assertEquals(1, machine.getFastPathCount());
+        assertEquals(3, machine.getStillCount());
+    }
+
+    @Test
+    public void unsentOrFailedTriggers_fireWithoutWaiting() {
+        FakeActions actions = new FakeActions();
+        actions.acceptTriggers = false;
+        PrecaptureStateMachine machine = new PrecaptureStateMachine(actions);
+        machine.onResult(AF_STATE_PASSIVE_SCAN, AE_STATE_SEARCHING, 0);
+
+        assertTrue(machine.request(0));
+        assertEquals(Arrays.asList("triggers focus precapture", "still"), actions.calls);
+
+        actions.calls.clear();
+        actions.acceptTriggers = true;
+        machine.request(FRAME_NANOS);
+        machine.onTriggerFailed(2 * FRAME_NANOS);
+
+        assertEquals(Arrays.asList("triggers focus precapture", "still", "cancel focus precapture"), actions.calls);
+        assertFalse(machine.isRunning());
+    }
+
+    @Test
+    public void cancel_dropsTheWaitingStills() {
+        FakeActions actions = new FakeActions();
+        PrecaptureStateMachine machine = new PrecaptureStateMachine(actions);
+        machine.onResult(AF_STATE_PASSIVE_SCAN, AE_STATE_CONVERGED, 0);
+        machine.request(0);
+        machine.request(0);
+
+        assertEquals(2, machine.cancel());
+        machine.onTriggerResult(AF_STATE_FOCUSED_LOCKED, AE_STATE_CONVERGED, FRAME_NANOS);
+
+        assertEquals(Collections.singletonList("triggers focus"), actions.calls);
+        assertEquals(0, machine.cancel());
+    }
+
+    @Test
+    public void rejectedStill_isReported() {
+        FakeActions actions = new FakeActions();
+        actions.acceptStills = false;
+        PrecaptureStateMachine machine = new PrecaptureStateMachine(actions);
+        machine.onResult(AF_STATE_FOCUSED_LOCKED, AE_STATE_CONVERGED, 0);
+
+        assertFalse(machine.request(0));
+        assertEquals(0, machine.getStillCount());
+        assertEquals(0, machine.getLatencyHistogram().getCount());
+    }
+
+    // Feed one result per frame, starting at startNanos.
+    private static void feed(PrecaptureStateMachine machine, long startNanos, int[][] frames) {
+        for (int i = 0; i < frames.length; i++) {
+            machine.onResult(frames[i][0], frames[i][1], startNanos + i * FRAME_NANOS);
+        }
+    }
+
+    // Records the requests the state machine makes.
+    private static class FakeActions implements PrecaptureStateMachine.Actions {
+        final List<String> calls = new ArrayList<>();
+        boolean acceptTriggers = true;
+        boolean acceptStills = true;
+
+        @Override
+        public boolean sendTriggers(boolean focus, boolean precapture) {
+            calls.add("triggers" + (focus ? " focus" : "") + (precapture ? " precapture" : ""));
+            return acceptTriggers;
+        }
+
+        @Override
+        public boolean captureStill() {
+            calls.add("still");
+            return acceptStills;
+        }
+
+        @Override
+        public void cancelTriggers(boolean focus, boolean precapture) {
+            calls.add("cancel" + (focus ? " focus" : "") + (precapture ? " precapture" : ""));
+        }
+    }
+}
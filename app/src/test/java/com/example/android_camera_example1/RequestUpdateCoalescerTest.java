@@ -0,0 +1,208 @@
+package com.example.android_camera_example1;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class RequestUpdateCoalescerTest {
+    private static final long FRAME_NANOS = 33_333_333L;
+
+    @Test
+    public void firstUpdate_isSubmittedWithoutDelay() {
+        FakeScheduler scheduler = new FakeScheduler();
+        FakeSubmitter submitter = new FakeSubmitter(scheduler);
+        RequestUpdateCoalescer<String> coalescer = new RequestUpdateCoalescer<>(submitter, scheduler, FRAME_NANOS);
+
+        coalescer.set("zoom", 2f);
+
+        assertEquals(0, scheduler.delays.get(0).longValue());
+        scheduler.runDue();
+        assertEquals(1, submitter.submissions.size());
+        assertEquals(2f, submitter.submissions.get(0).get("zoom"));
+        assertEquals(1, coalescer.getSubmittedCount());
+        assertEquals(0, coalescer.getCoalescedCount());
+    }
+
+    @Test
+    public void updatesWithinAFrame_areMergedLastWriterWins() {
+        FakeScheduler scheduler = new FakeScheduler();
+        FakeSubmitter submitter = new FakeSubmitter(scheduler);
+        RequestUpdateCoalescer<String> coalescer = new RequestUpdateCoalescer<>(submitter, scheduler, FRAME_NANOS);
+        coalescer.set("zoom", 1f);
+        scheduler.runDue();
+
+        coalescer.set("zoom", 1.5f);
+        coalescer.set("ev", -1);
+        coalescer.set("zoom", 2f);
+        coalescer.set("torch", true);
+        coalescer.set("ev", 2);
+
+        assertEquals(1, scheduler.tasks.size()); // One flush for all five.
+        assertEquals(FRAME_NANOS, scheduler.delays.get(1).longValue());
+        scheduler.advance(FRAME_NANOS);
+
+        Map<String, Object> changes = submitter.submissions.get(1);
+        assertEquals(Arrays.asList("zoom", "ev", "torch"), new ArrayList<>(changes.keySet()));
+        assertEquals(2f, changes.get("zoom"));
+        assertEquals(2, changes.get("ev"));
+        assertEquals(6, coalescer.getUpdateCount());
+        assertEquals(2, coalescer.getSubmittedCount());
+        assertEquals(4, coalescer.getCoalescedCount());
+    }
+
+    @Test
+    public void updateAfterAnIdleFrame_isNotDelayed() {
+        FakeScheduler scheduler = new FakeScheduler();
+        FakeSubmitter submitter = new FakeSubmitter(scheduler);
+        RequestUpdateCoalescer<String> coalescer = new RequestUpdateCoalescer<>(submitter, scheduler, FRAME_NANOS);
+        coalescer.set("zoom", 1f);
+        scheduler.runDue();
+
+        scheduler.advance(FRAME_NANOS / 3);
+        coalescer.set("zoom", 2f);
+        assertEquals(FRAME_NANOS - FRAME_NANOS / 3, scheduler.delays.get(1).longValue());
+        scheduler.advance(FRAME_NANOS);
+
+        scheduler.advance(5 * FRAME_NANOS);
+        coalescer.set("zoom", 3f);
+        assertEquals(0, scheduler.delays.get(2).longValue());
+    }
+
+    @Test
+    public void slider_submitsAtMostOncePerFrame() {
+        FakeScheduler scheduler = new FakeScheduler();
+        FakeSubmitter submitter = new FakeSubmitter(scheduler);
+        RequestUpdateCoalescer<String> coalescer = new RequestUpdateCoalescer<>(submitter, scheduler, FRAME_NANOS);
+
+        // A second of slider moves every 2 ms, with the zoom and exposure changing together.
+        for (int i = 0; i < 500; i++) {
+            coalescer.set("zoom", 1 + i / 100f);
+            coalescer.set("ev", i % 7);
+            scheduler.advance(2_000_000L);
+        }
+        scheduler.advance(FRAME_NANOS);
+
+        assertTrue("submitted " + submitter.submissions.size(), submitter.submissions.size() <= 31);
+        for (int i = 1; i < submitter.times.size(); i++) {
+            assertTrue(submitter.times.get(i) - submitter.times.get(i - 1) >= FRAME_NANOS);
+        }
+        Map<String, Object> last = submitter.submissions.get(submitter.submissions.size() - 1);
+        assertEquals(1 + 499 / 100f, last.get("zoom"));
+        assertEquals(499 % 7, last.get("ev"));
+        assertEquals(1000, coalescer.getUpdateCount());
+        assertEquals(1000 - coalescer.getSubmittedCount(), coalescer.getCoalescedCount());
+    }
+
+    @Test
+    public void failedSubmit_isNotCounted() {
+        FakeScheduler scheduler = new FakeScheduler();
+        FakeSubmitter submitter = new FakeSubmitter(scheduler);
+        submitter.accept = false;
+        RequestUpdateCoalescer<String> coalescer = new RequestUpdateCoalescer<>(submitter, scheduler, FRAME_NANOS);
+
+        coalescer.set("torch", true);
+        scheduler.runDue();
+
+        assertEquals(1, submitter.submissions.size());
+        assertEquals(0, coalescer.getSubmittedCount());
+    }
+
+    @Test
+    public void refusedSchedule_keepsChangesForTheNextUpdate() {
+        FakeScheduler scheduler = new FakeScheduler();
+        FakeSubmitter submitter = new FakeSubmitter(scheduler);
+        RequestUpdateCoalescer<String> coalescer = new RequestUpdateCoalescer<>(submitter, scheduler, FRAME_NANOS);
+
+        scheduler.stopped = true;
+        coalescer.set("zoom", 2f);
+        scheduler.stopped = false;
+        coalescer.set("ev", 1);
+        scheduler.runDue();
+
+        assertEquals(1, submitter.submissions.size());
+        assertEquals(2f, submitter.submissions.get(0).get("zoom"));
+        assertEquals(1, submitter.submissions.get(0).get("ev"));
+    }
+
+    @Test
+    public void flush_submitsAtOnce() {
+        FakeScheduler scheduler = new FakeScheduler();
+        FakeSubmitter submitter = new FakeSubmitter(scheduler);
+        RequestUpdateCoalescer<String> coalescer = new RequestUpdateCoalescer<>(submitter, scheduler, FRAME_NANOS);
+        coalescer.set("zoom", 1f);
+        scheduler.runDue();
+        coalescer.set("zoom", 2f);
+
+        coalescer.flush();
+        scheduler.advance(FRAME_NANOS); // The scheduled flush finds nothing left.
+
+        assertEquals(2, submitter.submissions.size());
+        assertEquals(2, coalescer.getSubmittedCount());
+    }
+
+    // Scheduler on a manual clock; due tasks run when the clock is advanced.
+    private static class FakeScheduler implements RequestUpdateCoalescer.Scheduler {
+        final List<Runnable> tasks = new ArrayList<>();
+        final List<Long> dueTimes = new ArrayList<>();
+        final List<Long> delays = new ArrayList<>();
+        boolean stopped;
+        long now = 1_000_000_000L;
+
+        @Override
+        public long nowNanos() {
+            return now;
+        }
+
+        @Override
+        public boolean schedule(Runnable task, long delayNanos) {
+            if (stopped) {
+                return false;
+            }
+            tasks.add(task);
+            dueTimes.add(now + delayNanos);
+            delays.add(delayNanos);
+            return true;
+        }
+
+        void advance(long nanos) {
+            now += nanos;
+            runDue();
+        }
+
+        void runDue() {
+            for (int i = 0; i < tasks.size(); i++) {
+                if (dueTimes.get(i) <= now) {
+                    Runnable task = tasks.remove(i);
+                    dueTimes.remove(i);
+                    task.run();
+                    i = -1; // The task may have scheduled another.
+                }
+            }
+        }
+    }
+
+    // Records each submission and the fake time it happened at.
+    private static class FakeSubmitter implements RequestUpdateCoalescer.Submitter<String> {
+        final List<Map<String, Object>> submissions = new ArrayList<>();
+        final List<Long> times = new ArrayList<>();
+        final FakeScheduler clock;
+        boolean accept = true;
+
+        FakeSubmitter(FakeScheduler clock) {
+            this.clock = clock;
+        }
+
+        @Override
+        public boolean submit(Map<String, Object> changes) {
+            submissions.add(new LinkedHashMap<>(changes));
+            times.add(clock.now);
+            return accept;
+        }
+    }
+}
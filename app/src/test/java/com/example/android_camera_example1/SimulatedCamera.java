@@ -0,0 +1,233 @@
+package com.example.android_camera_example1;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Stands in for the camera device in JVM tests. A sensor thread produces a frame every 1/fps
+// seconds; a still request is exposed on the next frame and its synthetic JPEG is delivered
+// halLatency later from a reader of maxImages buffers, whose producer blocks while every
+// buffer is held, like an ImageReader. While the preview runs, every frame also yields a
+// synthetic YUV frame for the analysis dispatcher. It implements the session and request
+// interfaces Camera implements on top of Camera2 and makes the same CapturePipeline calls.
+final class SimulatedCamera implements CaptureSessionManager.SessionBackend, BurstCaptureEngine.RequestSubmitter {
+    private static final long SESSION_CONFIGURE_MILLIS = 5;
+    private static final byte[] JPEG_HEADER = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0};
+
+    // One reader buffer; closing it returns it to the reader.
+    private final class ImageSlot implements AutoCloseable {
+        final ByteBuffer buffer;
+
+        ImageSlot(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void close() {
+            mFreeSlots.add(this);
+        }
+    }
+
+    private final int mWidth;
+    private final int mHeight;
+    private final long mFramePeriodNanos;
+    private final long mHalLatencyNanos;
+    private final BlockingQueue<ImageSlot> mFreeSlots;
+    private final ScheduledExecutorService mSensor = createScheduler("SimulatedSensor");
+    private final ScheduledExecutorService mHal = createScheduler("SimulatedHal");
+    private final AtomicInteger mPendingStills = new AtomicInteger();
+    private final ByteBuffer mLuma;
+    private final ByteBuffer mChroma;
+    private volatile boolean mPreviewRunning;
+    private volatile boolean mRepeatingStills;
+    private volatile CapturePipeline<?> mPipeline;
+    private volatile CaptureSessionManager mSessionManager;
+    private volatile FrameAnalysisDispatcher mAnalysisDispatcher;
+    private long mFrameCount; // Sensor thread only.
+
+    private final Runnable mFrameTask = new Runnable() {
+        @Override
+        public void run() {
+            onFrame();
+        }
+    };
+
+    private final Runnable mDeliverTask = new Runnable() {
+        @Override
+        public void run() {
+            deliverStill();
+        }
+    };
+
+    private final Runnable mConfiguredTask = new Runnable() {
+        @Override
+        public void run() {
+            mSessionManager.onSessionConfigured();
+        }
+    };
+
+    // width x height is the still size; JPEGs are about a tenth of the YUV size.
+    SimulatedCamera(int width, int height, double fps, long halLatencyMillis, int maxImages) {
+        mWidth = width;
+        mHeight = height;
+        mFramePeriodNanos = (long) (1e9 / fps);
+        mHalLatencyNanos = TimeUnit.MILLISECONDS.toNanos(halLatencyMillis);
+        mFreeSlots = new ArrayBlockingQueue<>(maxImages);
+        int jpegSize = width * height * 3 / 2 / 10;
+        for (int i = 0; i < maxImages; i++) {
+            mFreeSlots.add(new ImageSlot(createJpeg(jpegSize, i)));
+        }
+        mLuma = ByteBuffer.allocateDirect(width / 4 * (height / 4));
+        mChroma = ByteBuffer.allocateDirect(width / 8 * (height / 8) * 2);
+        mSensor.scheduleAtFixedRate(mFrameTask, mFramePeriodNanos, mFramePeriodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void setPipeline(CapturePipeline<?> pipeline) {
+        mPipeline = pipeline;
+    }
+
+    void setSessionManager(CaptureSessionManager sessionManager) {
+        mSessionManager = sessionManager;
+    }
+
+    // Analysis frames go to the dispatcher at the preview rate; null disables them.
+    void setAnalysisDispatcher(FrameAnalysisDispatcher dispatcher) {
+        mAnalysisDispatcher = dispatcher;
+    }
+
+    void shutdown() throws InterruptedException {
+        mSensor.shutdownNow();
+        mHal.shutdownNow();
+        mSensor.awaitTermination(1, TimeUnit.SECONDS);
+        mHal.awaitTermination(1, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public boolean createSession() {
+        mHal.schedule(mConfiguredTask, SESSION_CONFIGURE_MILLIS, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    @Override
+    public boolean startRepeatingPreview() {
+        mPreviewRunning = true;
+        return true;
+    }
+
+    @Override
+    public boolean submitStillCapture() {
+        mPendingStills.incrementAndGet();
+        mPipeline.onCapturesSubmitted(1);
+        return true;
+    }
+
+    @Override
+    public void closeSession() {
+        mPreviewRunning = false;
+        mRepeatingStills = false;
+    }
+
+    @Override
+    public void onStillsDropped(int count) {
+        mPipeline.onCapturesRejected(count);
+    }
+
+    @Override
+    public boolean submitBurst(int count) {
+        if (!mPreviewRunning) {
+            return false;
+        }
+        mPipeline.onCapturesRequested(count);
+        mPendingStills.addAndGet(count);
+        mPipeline.onCapturesSubmitted(count);
+        return true;
+    }
+
+    @Override
+    public boolean setRepeatingBurst(boolean enabled) {
+        if (!mPreviewRunning) {
+            return false;
+        }
+        mRepeatingStills = enabled;
+        return true;
+    }
+
+    // Sensor thread: one exposure per frame period.
+    private void onFrame() {
+        if (!mPreviewRunning) {
+            return;
+        }
+        mFrameCount++;
+        if (mRepeatingStills || takePendingStill()) {
+            mPipeline.onCaptureStarted();
+            mHal.schedule(mDeliverTask, mHalLatencyNanos, TimeUnit.NANOSECONDS);
+        }
+
+        FrameAnalysisDispatcher dispatcher = mAnalysisDispatcher;
+        if (dispatcher != null) {
+            int width = mWidth / 4;
+            int height = mHeight / 4;
+            mLuma.put(0, (byte) mFrameCount);
+            dispatcher.submit(new AnalysisFrame(width, height, mFrameCount * mFramePeriodNanos,
+                    new AnalysisFrame.Plane(mLuma.duplicate(), width, 1),
+                    new AnalysisFrame.Plane(mChroma.duplicate(), width / 2 * 2, 2),
+                    new AnalysisFrame.Plane(mChroma.duplicate(), width / 2 * 2, 2), null));
+        }
+    }
+
+    private boolean takePendingStill() {
+        while (true) {
+            int pending = mPendingStills.get();
+            if (pending == 0) {
+                return false;
+            }
+            if (mPendingStills.compareAndSet(pending, pending - 1)) {
+                return true;
+            }
+        }
+    }
+
+    // HAL thread: result, then image, in capture order.
+    private void deliverStill() {
+        mPipeline.onCaptureCompleted();
+        ImageSlot slot;
+        try {
+            slot = mFreeSlots.take(); // The producer stalls while the app holds every buffer.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        ByteBuffer data = slot.buffer.duplicate();
+        data.clear();
+        mPipeline.onImageAvailable(data, slot);
+    }
+
+    private static ByteBuffer createJpeg(int size, int seed) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(size, 8));
+        buffer.put(JPEG_HEADER);
+        int value = seed * 31 + 17;
+        while (buffer.remaining() > 2) {
+            value = value * 1103515245 + 12345;
+            buffer.put((byte) (value >>> 16));
+        }
+        buffer.put((byte) 0xFF).put((byte) 0xD9);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static ScheduledExecutorService createScheduler(final String name) {
+        return new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.android_camera_example1;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// MediaStore for load tests: each insert call costs a fixed latency (one binder transaction,
+// whatever the batch size) and each write costs its size divided by the storage bandwidth.
+// Data is checked for JPEG markers but not kept.
+final class SimulatedMediaStore implements AsyncImageWriter.MediaStore<Long> {
+    private final long mInsertNanos;
+    private final double mNanosPerByte;
+    private final AtomicLong mNextId = new AtomicLong();
+    private final AtomicLong mPublished = new AtomicLong();
+    private final AtomicLong mBytesWritten = new AtomicLong();
+    private final AtomicLong mCorruptWrites = new AtomicLong();
+
+    SimulatedMediaStore(long insertMillis, double megabytesPerSecond) {
+        mInsertNanos = TimeUnit.MILLISECONDS.toNanos(insertMillis);
+        mNanosPerByte = 1e9 / (megabytesPerSecond * 1024 * 1024);
+    }
+
+    @Override
+    public List<Long> insertPending(List<String> displayNames) {
+        LockSupport.parkNanos(mInsertNanos);
+        List<Long> ids = new ArrayList<>(displayNames.size());
+        for (int i = 0; i < displayNames.size(); i++) {
+            ids.add(mNextId.getAndIncrement());
+        }
+        return ids;
+    }
+
+    @Override
+    public void write(Long uri, ByteBuffer[] data) throws IOException {
+        ByteBuffer first = data[0];
+        ByteBuffer last = data[data.length - 1];
+        long size = 0;
+        for (ByteBuffer buffer : data) {
+            size += buffer.remaining();
+        }
+        if (size < 4 || first.remaining() < 2 || !last.hasRemaining()
+                || first.get(first.position()) != (byte) 0xFF || first.get(first.position() + 1) != (byte) 0xD8
+                || last.get(last.limit() - 1) != (byte) 0xD9) {
+            mCorruptWrites.incrementAndGet();
+            throw new IOException("Not a JPEG: " + uri);
+        }
+        LockSupport.parkNanos((long) (size * mNanosPerByte));
+        for (ByteBuffer buffer : data) {
+            buffer.position(buffer.limit());
+        }
+        mBytesWritten.addAndGet(size);
+    }
+
+    @Override
+    public void publish(Long uri) {
+        mPublished.incrementAndGet();
+    }
+
+    @Override
+    public void delete(Long uri) {
+    }
+
+    long getPublishedCount() {
+        return mPublished.get();
+    }
+
+    long getBytesWritten() {
+        return mBytesWritten.get();
+    }
+
+    long getCorruptWrites() {
+        return mCorruptWrites.get();
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.android_camera_example1;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StartupMetricsTest {
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void mark_recordsFirstOccurrenceOnly() {
+        StartupMetrics metrics = new StartupMetrics(1000 * MS);
+
+        assertTrue(metrics.mark(StartupMetrics.Phase.DEVICE_OPENED, 1150 * MS));
+        assertFalse(metrics.mark(StartupMetrics.Phase.DEVICE_OPENED, 1300 * MS));
+
+        assertTrue(metrics.isReached(StartupMetrics.Phase.DEVICE_OPENED));
+        assertEquals(150 * MS, metrics.getElapsedNanos(StartupMetrics.Phase.DEVICE_OPENED));
+        assertFalse(metrics.isReached(StartupMetrics.Phase.FIRST_FRAME));
+        assertEquals(-1, metrics.getTimeToFirstFrameNanos());
+    }
+
+    @Test
+    public void format_listsPhasesInOrderTheyHappened() {
+        StartupMetrics metrics = new StartupMetrics(0);
+        // Layout finished before the device opened; the surface is attached after configuration.
+        metrics.mark(StartupMetrics.Phase.PERMISSION_GRANTED, 2 * MS);
+        metrics.mark(StartupMetrics.Phase.SURFACE_AVAILABLE, 60 * MS);
+        metrics.mark(StartupMetrics.Phase.DEVICE_OPENED, 180 * MS);
+        metrics.mark(StartupMetrics.Phase.SESSION_CONFIGURED, 250 * MS);
+        metrics.mark(StartupMetrics.Phase.SURFACE_ATTACHED, 251 * MS);
+        metrics.mark(StartupMetrics.Phase.FIRST_FRAME, 300 * MS);
+
+        assertEquals("cold start: PERMISSION_GRANTED +2.0ms (+2.0ms), SURFACE_AVAILABLE +60.0ms (+58.0ms), "
+                        + "DEVICE_OPENED +180.0ms (+120.0ms), SESSION_CONFIGURED +250.0ms (+70.0ms), "
+                        + "SURFACE_ATTACHED +251.0ms (+1.0ms), FIRST_FRAME +300.0ms (+49.0ms)",
+                metrics.format());
+        assertEquals(300 * MS, metrics.getTimeToFirstFrameNanos());
+    }
+
+    @Test
+    public void restart_measuresWarmStartFromScratch() {
+        StartupMetrics metrics = new StartupMetrics(0);
+        metrics.mark(StartupMetrics.Phase.FIRST_FRAME, 400 * MS);
+
+        metrics.restart(10_000 * MS);
+        assertTrue(metrics.isWarmStart());
+        assertFalse(metrics.isReached(StartupMetrics.Phase.FIRST_FRAME));
+        assertTrue(metrics.mark(StartupMetrics.Phase.FIRST_FRAME, 10_120 * MS));
+        assertEquals(120 * MS, metrics.getTimeToFirstFrameNanos());
+        assertEquals("warm start: FIRST_FRAME +120.0ms (+120.0ms)", metrics.format());
+    }
+
+    @Test
+    public void markAtStart_countsAsReached() {
+        StartupMetrics metrics = new StartupMetrics(5 * MS);
+        assertTrue(metrics.mark(StartupMetrics.Phase.PERMISSION_GRANTED, 5 * MS));
+        assertTrue(metrics.isReached(StartupMetrics.Phase.PERMISSION_GRANTED));
+        assertFalse(metrics.mark(StartupMetrics.Phase.PERMISSION_GRANTED, 6 * MS));
+    }
+}
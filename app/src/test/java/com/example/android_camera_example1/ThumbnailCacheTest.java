@@ -0,0 +1,156 @@
+package com.example.android_camera_example1;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.*;
+
+public class ThumbnailCacheTest {
+    private File mDirectory;
+    private final ManualExecutor mExecutor = new ManualExecutor();
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = Files.createTempDirectory("thumbnails").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.delete(file.toPath());
+            }
+        }
+        Files.delete(mDirectory.toPath());
+    }
+
+    @Test
+    public void memory_evictsLeastRecentlyUsedByBytes() {
+        ThumbnailCache cache = new ThumbnailCache(300, new DiskLruCache(mDirectory, 10000), mExecutor);
+        cache.put("a", thumbnail(1, 100));
+        cache.put("b", thumbnail(2, 100));
+        cache.put("c", thumbnail(3, 100));
+        assertNotNull(cache.get("a").getNow(null)); // "a" is now the most recently used.
+        cache.put("d", thumbnail(4, 100));
+
+        assertEquals(300, cache.getMemoryBytes());
+        assertEquals(1, cache.getMemoryEvictionCount());
+        assertFalse(cache.containsInMemory("b"));
+        assertTrue(cache.containsInMemory("a"));
+        assertTrue(cache.containsInMemory("d"));
+    }
+
+    @Test
+    public void get_readsThroughToDiskAndPromotes() throws Exception {
+        ThumbnailCache cache = new ThumbnailCache(150, new DiskLruCache(mDirectory, 10000), mExecutor);
+        cache.put("a", thumbnail(1, 100));
+        cache.put("b", thumbnail(2, 100)); // Pushes "a" out of memory.
+        mExecutor.runAll(); // Both written to disk.
+        assertFalse(cache.containsInMemory("a"));
+
+        CompletableFuture<byte[]> result = cache.get("a");
+        assertFalse(result.isDone()); // Waits for the disk executor.
+        mExecutor.runAll();
+        assertArrayEquals(thumbnail(1, 100), result.get());
+        assertTrue(cache.containsInMemory("a"));
+
+        assertNotNull(cache.get("a").getNow(null));
+        CompletableFuture<byte[]> missing = cache.get("missing");
+        mExecutor.runAll();
+        assertNull(missing.get());
+
+        assertEquals(1, cache.getMemoryHitCount());
+        assertEquals(1, cache.getDiskHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2.0 / 3, cache.getHitRatio(), 1e-9);
+    }
+
+    @Test
+    public void rejectedDiskExecutor_keepsMemoryAndFailsDiskLookups() {
+        Executor stopped = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException("stopped");
+            }
+        };
+        ThumbnailCache cache = new ThumbnailCache(1000, new DiskLruCache(mDirectory, 10000), stopped);
+        cache.put("a", thumbnail(1, 100));
+
+        assertNotNull(cache.get("a").getNow(null));
+        assertTrue(cache.get("b").isCompletedExceptionally());
+        assertEquals(1, cache.getDiskErrorCount());
+    }
+
+    @Test
+    public void disk_evictsLeastRecentlyUsedBySize() throws IOException {
+        DiskLruCache disk = new DiskLruCache(mDirectory, 250);
+        disk.put("content://media/1", thumbnail(1, 100));
+        disk.put("content://media/2", thumbnail(2, 100));
+        assertNotNull(disk.get("content://media/1"));
+        disk.put("content://media/3", thumbnail(3, 100));
+
+        assertEquals(200, disk.getSize());
+        assertEquals(1, disk.getEvictionCount());
+        assertNull(disk.get("content://media/2"));
+        assertArrayEquals(thumbnail(1, 100), disk.get("content://media/1"));
+        assertEquals(2, mDirectory.listFiles().length);
+
+        disk.put("content://media/4", thumbnail(4, 1000)); // Larger than the cache; not stored.
+        assertNull(disk.get("content://media/4"));
+        assertEquals(200, disk.getSize());
+    }
+
+    @Test
+    public void disk_survivesRestartAndDropsPartialWrites() throws IOException {
+        DiskLruCache disk = new DiskLruCache(mDirectory, 1000);
+        disk.put("a", thumbnail(1, 100));
+        disk.put("b", thumbnail(2, 120));
+        disk.put("b", thumbnail(3, 80)); // Replaces, not adds.
+        assertEquals(180, disk.getSize());
+        assertTrue(new File(mDirectory, "crashed.entry.tmp").createNewFile());
+
+        DiskLruCache reopened = new DiskLruCache(mDirectory, 1000);
+        assertArrayEquals(thumbnail(1, 100), reopened.get("a"));
+        assertArrayEquals(thumbnail(3, 80), reopened.get("b"));
+        assertEquals(2, reopened.getEntryCount());
+        assertEquals(180, reopened.getSize());
+        assertFalse(new File(mDirectory, "crashed.entry.tmp").exists());
+
+        assertTrue(reopened.remove("a"));
+        assertNull(reopened.get("a"));
+        assertEquals(80, reopened.getSize());
+    }
+
+    private static byte[] thumbnail(int seed, int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (seed * 31 + i);
+        }
+        return data;
+    }
+
+    private static class ManualExecutor implements Executor {
+        final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.poll().run();
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.android_camera_example1;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.*;
+
+public class ZslRingBufferTest {
+    private final AtomicInteger mClosed = new AtomicInteger();
+
+    @Test
+    public void put_evictsOldestPastCapacity() {
+        ZslRingBuffer buffer = new ZslRingBuffer(3, 10000);
+        for (int i = 0; i < 5; i++) {
+            buffer.put(frame(100), i * 1000L);
+        }
+
+        assertEquals(3, buffer.getFrameCount());
+        assertEquals(300, buffer.getBytesHeld());
+        assertEquals(2, buffer.getFramesEvicted());
+        assertEquals(2, mClosed.get());
+        assertEquals(4000L, buffer.selectNewest().getTimestampNanos());
+    }
+
+    @Test
+    public void put_evictsOldestPastMaxBytes() {
+        ZslRingBuffer buffer = new ZslRingBuffer(8, 250);
+        buffer.put(frame(100), 1);
+        buffer.put(frame(100), 2);
+        buffer.put(frame(100), 3);
+
+        assertEquals(2, buffer.getFrameCount());
+        assertEquals(200, buffer.getBytesHeld());
+        assertEquals(2L, buffer.select(1, 1).getTimestampNanos()); // The oldest went first.
+
+        assertFalse(buffer.put(frame(300), 4)); // Larger than the whole buffer.
+        assertEquals(2, mClosed.get());
+        assertEquals(1, buffer.getFrameCount());
+    }
+
+    @Test
+    public void select_takesNearestFrameOut() {
+        ZslRingBuffer buffer = new ZslRingBuffer(4, 10000);
+        for (int i = 1; i <= 4; i++) {
+            buffer.put(frame(10), i * 33_000_000L);
+        }
+
+        ZslRingBuffer.Entry entry = buffer.select(70_000_000L, 1);
+        assertEquals(66_000_000L, entry.getTimestampNanos());
+        assertEquals(3, buffer.getFrameCount());
+        assertEquals(30, buffer.getBytesHeld());
+        assertEquals(0, mClosed.get()); // The caller owns it now.
+        entry.getFrame().close();
+
+        assertEquals(99_000_000L, buffer.select(70_000_000L, 1).getTimestampNanos());
+        assertEquals(2, buffer.getFramesSelected());
+    }
+
+    @Test
+    public void select_prefersSharpestAmongCandidates() {
+        ZslRingBuffer buffer = new ZslRingBuffer(6, 10000);
+        for (int i = 1; i <= 6; i++) {
+            buffer.put(frame(10), i * 100L);
+        }
+        buffer.putScore(500, 1f);
+        buffer.putScore(400, 3f); // Sharpest of the three nearest 520.
+        buffer.putScore(100, 9f); // Sharper still, but too far from the press.
+
+        assertEquals(400L, buffer.select(520, 3).getTimestampNanos());
+        assertEquals(500L, buffer.select(520, 1).getTimestampNanos());
+        // No scores among the candidates: nearest wins.
+        assertEquals(600L, buffer.select(580, 2).getTimestampNanos());
+    }
+
+    @Test
+    public void clear_closesEveryFrame() {
+        ZslRingBuffer buffer = new ZslRingBuffer(4, 10000);
+        for (int i = 0; i < 3; i++) {
+            buffer.put(frame(10), i);
+        }
+        buffer.clear();
+
+        assertEquals(3, mClosed.get());
+        assertEquals(0, buffer.getBytesHeld());
+        assertNull(buffer.selectNewest());
+    }
+
+    @Test
+    public void concurrentProducerAndSelector_closeEachFrameExactlyOnce() throws InterruptedException {
+        final int frames = 20000;
+        final ZslRingBuffer buffer = new ZslRingBuffer(4, 10000);
+        final AtomicIntegerArray closes = new AtomicIntegerArray(frames);
+        final CountDownLatch produced = new CountDownLatch(1);
+
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < frames; i++) {
+                    final int index = i;
+                    buffer.put(new CapturedFrame(ByteBuffer.allocate(10), new AutoCloseable() {
+                        @Override
+                        public void close() {
+                            closes.incrementAndGet(index);
+                        }
+                    }), i);
+                    buffer.putScore(i, i % 7);
+                }
+                produced.countDown();
+            }
+        });
+        producer.start();
+
+        int selected = 0;
+        while (produced.getCount() > 0) {
+            ZslRingBuffer.Entry entry = buffer.select(Long.MAX_VALUE, 3);
+            if (entry != null) {
+                entry.getFrame().close();
+                selected++;
+            }
+        }
+        producer.join();
+        buffer.clear();
+
+        for (int i = 0; i < frames; i++) {
+            assertEquals("frame " + i, 1, closes.get(i));
+        }
+        assertEquals(selected, buffer.getFramesSelected());
+        assertEquals(0, buffer.getBytesHeld());
+    }
+
+    private CapturedFrame frame(int size) {
+        return new CapturedFrame(ByteBuffer.allocate(size), new AutoCloseable() {
+            @Override
+            public void close() {
+                mClosed.incrementAndGet();
+            }
+        });
+    }
+}